@@ -0,0 +1,4 @@
+#!/bin/bash
+
+# Usage: bin/run-ingest-benchmark.sh [key=value ...], e.g. bench.rate=1000 bench.duration.s=120
+sbt test:compile "test:runMain com.github.lightcopy.bench.IngestBenchmark $*"
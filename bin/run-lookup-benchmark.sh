@@ -0,0 +1,4 @@
+#!/bin/bash
+
+# Usage: bin/run-lookup-benchmark.sh [key=value ...], e.g. bench.nodes=1000000 bench.depth=12
+sbt test:compile "test:runMain com.github.lightcopy.bench.PathLookupBenchmark $*"
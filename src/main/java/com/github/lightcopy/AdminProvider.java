@@ -0,0 +1,84 @@
+package com.github.lightcopy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.bson.Document;
+
+import com.github.lightcopy.conf.Tunables;
+
+/**
+ * Admin REST API to inspect and change [[Tunables]] at runtime. Changes apply to all namespaces
+ * and are not persisted, restart resets values to configuration file.
+ */
+@Path("/api/admin")
+@Produces(MediaType.APPLICATION_JSON)
+public class AdminProvider {
+  private final Tunables tunables;
+
+  public AdminProvider(Tunables tunables) {
+    this.tunables = tunables;
+  }
+
+  /** Get tunable definition, fails with 404 if key is not registered */
+  private static Tunables.Tunable tunable(String key) {
+    Tunables.Tunable tunable = Tunables.lookup(key);
+    if (tunable == null) {
+      throw ApiProvider.error(Response.Status.NOT_FOUND, "Tunable '" + key + "' does not exist");
+    }
+    return tunable;
+  }
+
+  /** Convert tunable with current value into document */
+  private Document toDocument(Tunables.Tunable tunable) {
+    return new Document("key", tunable.getKey())
+      .append("value", this.tunables.get(tunable.getKey()))
+      .append("default", tunable.getDefault())
+      .append("min", tunable.getMin())
+      .append("max", tunable.getMax())
+      .append("description", tunable.getDescription());
+  }
+
+  @GET
+  @Path("tunables")
+  public Response list() {
+    List<Document> docs = new ArrayList<Document>();
+    for (Tunables.Tunable tunable : Tunables.registry()) {
+      docs.add(toDocument(tunable));
+    }
+    return Response.ok(new Document("tunables", docs).toJson()).build();
+  }
+
+  @GET
+  @Path("tunables/{key}")
+  public Response get(@PathParam("key") String key) {
+    return Response.ok(toDocument(tunable(key)).toJson()).build();
+  }
+
+  @PUT
+  @Path("tunables/{key}")
+  public Response set(
+      @PathParam("key") String key,
+      @QueryParam("value") String value) {
+    Tunables.Tunable tunable = tunable(key);
+    if (value == null || value.trim().isEmpty()) {
+      throw ApiProvider.error(Response.Status.BAD_REQUEST, "Expected value for " + key);
+    }
+    int previous;
+    try {
+      previous = this.tunables.set(key, value);
+    } catch (IllegalArgumentException err) {
+      throw ApiProvider.error(Response.Status.BAD_REQUEST, err.getMessage());
+    }
+    return Response.ok(toDocument(tunable).append("previous", previous).toJson()).build();
+  }
+}
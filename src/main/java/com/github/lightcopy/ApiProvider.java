@@ -0,0 +1,611 @@
+package com.github.lightcopy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.hadoop.hdfs.inotify.Event;
+
+import org.bson.Document;
+
+import com.github.lightcopy.fs.ChangeFeed;
+import com.github.lightcopy.fs.GrowthSample;
+import com.github.lightcopy.fs.GrowthTier;
+import com.github.lightcopy.fs.HdfsManager;
+import com.github.lightcopy.fs.INode;
+import com.github.lightcopy.fs.INodePath;
+import com.github.lightcopy.fs.ModificationTracker;
+import com.github.lightcopy.fs.NamespaceExport;
+import com.github.lightcopy.fs.NamespaceManager;
+import com.github.lightcopy.fs.SubtreeResync;
+import com.github.lightcopy.fs.UsageRollup;
+
+/**
+ * REST API for namespaces managed by [[NamespaceManager]]. All responses are JSON documents.
+ * Metadata queries (files, usage, growth) are asynchronous: request is suspended and query runs
+ * on dedicated executor, so slow store does not tie up server worker threads, which keep serving
+ * static assets and cheap endpoints. Queries are rejected with 503 when executor queue is full or
+ * query does not complete within timeout. Change feed subscribers wait for changes on a separate
+ * executor, so long-poll requests and event streams never hold server worker threads or delay
+ * metadata queries.
+ */
+@Path("/api")
+@Produces(MediaType.APPLICATION_JSON)
+public class ApiProvider {
+  // default range of growth query, when start is not provided
+  private static final long GROWTH_RANGE_MS = 24L * 3600000L;
+  // bounds of change feed requests
+  private static final long FEED_MAX_TIMEOUT_MS = 60000L;
+  private static final int FEED_MAX_LIMIT = 10000;
+  // interval to send keep-alive comment on idle event stream
+  private static final long FEED_HEARTBEAT_MS = 15000L;
+  // tagged responses can be cached, but must be revalidated on every use
+  private static final CacheControl NO_CACHE = CacheControl.valueOf("no-cache");
+
+  private final NamespaceManager manager;
+  private final ExecutorService executor;
+  private final ExecutorService feedExecutor;
+  private final long timeoutMs;
+
+  public ApiProvider(NamespaceManager manager, ExecutorService executor,
+      ExecutorService feedExecutor, long timeoutMs) {
+    this.manager = manager;
+    this.executor = executor;
+    this.feedExecutor = feedExecutor;
+    this.timeoutMs = timeoutMs;
+  }
+
+  /** Build JSON error response with status */
+  static WebApplicationException error(Response.Status status, String message) {
+    Document doc = new Document("error", status.getReasonPhrase()).append("message", message);
+    return new WebApplicationException(
+      Response.status(status).entity(doc.toJson()).type(MediaType.APPLICATION_JSON).build());
+  }
+
+  /** Run query on metadata executor and resume suspended response with its result */
+  private void submit(final AsyncResponse response, final Callable<Response> query) {
+    response.setTimeout(this.timeoutMs, TimeUnit.MILLISECONDS);
+    response.setTimeoutHandler(new TimeoutHandler() {
+      @Override
+      public void handleTimeout(AsyncResponse asyncResponse) {
+        asyncResponse.resume(error(Response.Status.SERVICE_UNAVAILABLE,
+          "Query did not complete within " + ApiProvider.this.timeoutMs + " ms"));
+      }
+    });
+    try {
+      this.executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          // response might have timed out while query was queued
+          if (response.isDone()) return;
+          try {
+            response.resume(query.call());
+          } catch (Throwable err) {
+            response.resume(err);
+          }
+        }
+      });
+    } catch (RejectedExecutionException err) {
+      response.resume(error(Response.Status.SERVICE_UNAVAILABLE,
+        "Too many metadata queries in progress"));
+    }
+  }
+
+  /**
+   * Run change feed subscriber on feed executor and resume suspended response with its result.
+   * Response is written by feed thread, so streaming entity is also served by feed executor.
+   * Subscriber waits are bounded by feed read timeout, response does not time out.
+   */
+  private void subscribe(final AsyncResponse response, final Callable<Response> subscriber) {
+    try {
+      this.feedExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            response.resume(subscriber.call());
+          } catch (Throwable err) {
+            response.resume(err);
+          }
+        }
+      });
+    } catch (RejectedExecutionException err) {
+      response.resume(error(Response.Status.SERVICE_UNAVAILABLE,
+        "Too many change feed subscribers"));
+    }
+  }
+
+  /** Get manager for namespace, fails with 404 if namespace does not exist */
+  private HdfsManager namespace(String namespace) {
+    HdfsManager hdfs = this.manager.get(namespace);
+    if (hdfs == null) {
+      throw error(Response.Status.NOT_FOUND, "Namespace '" + namespace + "' does not exist");
+    }
+    return hdfs;
+  }
+
+  /** Convert resync job into document */
+  private static Document toDocument(SubtreeResync.Job job) {
+    return new Document("id", job.getId())
+      .append("path", job.getPath().toPathString())
+      .append("state", job.getState().name())
+      .append("startTime", job.getStartTime())
+      .append("endTime", job.getEndTime())
+      .append("directories", job.getDirectories())
+      .append("inserted", job.getInserted())
+      .append("updated", job.getUpdated())
+      .append("deleted", job.getDeleted())
+      .append("error", job.getError());
+  }
+
+  /** Convert export job into document */
+  private static Document toDocument(NamespaceExport.Job job) {
+    return new Document("id", job.getId())
+      .append("directory", job.getDirectory())
+      .append("state", job.getState().name())
+      .append("transactionId", job.getTransactionId())
+      .append("startTime", job.getStartTime())
+      .append("endTime", job.getEndTime())
+      .append("partitions", job.getPartitions())
+      .append("completedPartitions", job.getCompletedPartitions())
+      .append("rows", job.getRows())
+      .append("estimatedRows", job.getEstimatedRows())
+      .append("progress", job.getProgress())
+      .append("error", job.getError());
+  }
+
+  /** Convert node into document */
+  private static Document toDocument(INode node) {
+    return new Document("path", node.getPath().toPathString())
+      .append("type", node.getTypeName())
+      .append("size", node.getSize())
+      .append("replication", node.getReplicationFactor())
+      .append("blockSize", node.getBlockSize())
+      .append("owner", node.getOwner())
+      .append("group", node.getGroup())
+      .append("permission", node.getPermission())
+      .append("accessTime", node.getAccessTime())
+      .append("modificationTime", node.getModificationTime())
+      .append("txid", node.getTransactionId());
+  }
+
+  /** Convert usage by name into list of documents */
+  private static List<Document> toDocuments(Map<String, UsageRollup.Usage> usage) {
+    List<Document> docs = new ArrayList<Document>();
+    for (Map.Entry<String, UsageRollup.Usage> entry : usage.entrySet()) {
+      docs.add(new Document("name", entry.getKey())
+        .append("files", entry.getValue().getFiles())
+        .append("directories", entry.getValue().getDirectories())
+        .append("bytes", entry.getValue().getBytes())
+        .append("replicatedBytes", entry.getValue().getReplicatedBytes()));
+    }
+    return docs;
+  }
+
+  @GET
+  @Path("namespaces/{namespace}/usage")
+  public void usage(
+      @Suspended AsyncResponse response,
+      @PathParam("namespace") final String namespace,
+      @QueryParam("by") final String by) {
+    submit(response, new Callable<Response>() {
+      @Override
+      public Response call() {
+        return usage(namespace, by);
+      }
+    });
+  }
+
+  private Response usage(String namespace, String by) {
+    HdfsManager hdfs = namespace(namespace);
+    String[] kinds =
+      new String[] {UsageRollup.KIND_OWNER, UsageRollup.KIND_GROUP, UsageRollup.KIND_SUBTREE};
+    if (by != null && !Arrays.asList(kinds).contains(by)) {
+      throw error(Response.Status.BAD_REQUEST,
+        "Expected usage by 'owner', 'group' or 'subtree', found " + by);
+    }
+    Document doc = new Document();
+    try {
+      for (String kind : kinds) {
+        if (by != null && !by.equals(kind)) continue;
+        Map<String, UsageRollup.Usage> usage = hdfs.getUsage(kind);
+        if (usage == null) {
+          throw error(Response.Status.NOT_FOUND, "Usage rollups are disabled");
+        }
+        doc.append(kind + "s", toDocuments(usage));
+      }
+    } catch (IOException ioe) {
+      throw error(Response.Status.SERVICE_UNAVAILABLE, "Failed to load usage: " + ioe.getMessage());
+    }
+    return Response.ok(doc.toJson()).build();
+  }
+
+  /**
+   * Get node and its direct children, served by read path of metadata store. If `txid` is
+   * provided, response observes all events up to that transaction; response "txid" is the newest
+   * transaction seen in the response and can be passed to the next request to keep session
+   * monotonic (read-your-writes).
+   *
+   * Response carries entity tag derived from in-memory modification tracker; request with
+   * matching If-None-Match header is answered with 304 without querying metadata store.
+   */
+  @GET
+  @Path("namespaces/{namespace}/files")
+  public void files(
+      @Suspended AsyncResponse response,
+      @Context Request request,
+      @PathParam("namespace") final String namespace,
+      @QueryParam("path") final String path,
+      @DefaultValue("-1") @QueryParam("txid") final long txid) {
+    final HdfsManager hdfs;
+    final INodePath nodePath;
+    try {
+      hdfs = namespace(namespace);
+      if (path == null || !path.startsWith("/")) {
+        throw error(Response.Status.BAD_REQUEST, "Expected absolute path, found " + path);
+      }
+      nodePath = new INodePath(path);
+    } catch (WebApplicationException err) {
+      response.resume(err);
+      return;
+    }
+    // version is resolved before query, so tag is never newer than content it is attached to
+    ModificationTracker.Version version = hdfs.getVersion(nodePath);
+    final EntityTag etag = new EntityTag(version.getTag());
+    Response.ResponseBuilder notModified = request.evaluatePreconditions(etag);
+    if (notModified != null) {
+      response.resume(notModified.cacheControl(NO_CACHE).build());
+      return;
+    }
+    // read must observe modification of the tag, otherwise replica could return older state
+    final long pinned = Math.max(txid, version.getTransactionId());
+    submit(response, new Callable<Response>() {
+      @Override
+      public Response call() {
+        return files(hdfs, nodePath, txid, pinned, etag);
+      }
+    });
+  }
+
+  private Response files(
+      HdfsManager hdfs,
+      INodePath nodePath,
+      long txid,
+      long pinned,
+      EntityTag etag) {
+    String path = nodePath.toPathString();
+    INode node = hdfs.getNode(nodePath, pinned);
+    if (node == null) {
+      throw error(Response.Status.NOT_FOUND, "Path " + path + " does not exist");
+    }
+    long observed = Math.max(txid, node.getTransactionId());
+    List<Document> children = new ArrayList<Document>();
+    if (node.isDirectory()) {
+      try {
+        for (INode child : hdfs.listNodes(nodePath, pinned)) {
+          children.add(toDocument(child));
+          observed = Math.max(observed, child.getTransactionId());
+        }
+      } catch (IOException ioe) {
+        throw error(Response.Status.SERVICE_UNAVAILABLE,
+          "Failed to list " + path + ": " + ioe.getMessage());
+      }
+    }
+    Document doc = new Document("node", toDocument(node))
+      .append("children", children)
+      .append("txid", observed);
+    return Response.ok(doc.toJson()).tag(etag).cacheControl(NO_CACHE).build();
+  }
+
+  /** Parse comma separated event types, returns null if all types are requested */
+  private static Set<String> eventTypes(String types) {
+    if (types == null || types.trim().isEmpty()) return null;
+    Set<String> result = new HashSet<String>();
+    for (String type : types.split(",")) {
+      try {
+        result.add(Event.EventType.valueOf(type.trim().toUpperCase()).name());
+      } catch (IllegalArgumentException err) {
+        throw error(Response.Status.BAD_REQUEST, "Unknown event type '" + type.trim() + "'");
+      }
+    }
+    return result;
+  }
+
+  /** Parse optional path prefix */
+  private static INodePath prefix(String prefix) {
+    if (prefix == null) return null;
+    if (!prefix.startsWith("/")) {
+      throw error(Response.Status.BAD_REQUEST, "Expected absolute prefix, found " + prefix);
+    }
+    return new INodePath(prefix);
+  }
+
+  private static Document toDocument(ChangeFeed.Change change) {
+    return new Document("txid", change.getTransactionId())
+      .append("type", change.getType())
+      .append("path", change.getPath().toPathString())
+      .append("dstPath", (change.getDstPath() == null) ? null :
+        change.getDstPath().toPathString())
+      .append("timestamp", change.getTimestamp());
+  }
+
+  /** Long-poll change feed, waits up to timeout for changes after transaction */
+  @GET
+  @Path("namespaces/{namespace}/changes")
+  public void changes(
+      @Suspended AsyncResponse response,
+      @PathParam("namespace") String namespace,
+      @DefaultValue("-1") @QueryParam("from") final long from,
+      @QueryParam("prefix") String prefix,
+      @QueryParam("types") String types,
+      @DefaultValue("30000") @QueryParam("timeout") final long timeout,
+      @DefaultValue("1000") @QueryParam("limit") final int limit) {
+    final ChangeFeed feed = namespace(namespace).getChangeFeed();
+    final INodePath pathPrefix = prefix(prefix);
+    final Set<String> eventTypes = eventTypes(types);
+    subscribe(response, new Callable<Response>() {
+      @Override
+      public Response call() {
+        ChangeFeed.Slice slice;
+        try {
+          slice = feed.read(from, pathPrefix, eventTypes,
+            Math.max(1, Math.min(limit, FEED_MAX_LIMIT)),
+            Math.max(0L, Math.min(timeout, FEED_MAX_TIMEOUT_MS)));
+        } catch (ChangeFeed.GapException err) {
+          throw error(Response.Status.GONE, err.getMessage());
+        } catch (InterruptedException err) {
+          throw error(Response.Status.SERVICE_UNAVAILABLE,
+            "Interrupted while waiting for changes");
+        }
+        List<Document> changes = new ArrayList<Document>();
+        for (ChangeFeed.Change change : slice.getChanges()) {
+          changes.add(toDocument(change));
+        }
+        Document doc =
+          new Document("changes", changes).append("next", slice.getNextTransactionId());
+        return Response.ok(doc.toJson()).build();
+      }
+    });
+  }
+
+  /**
+   * Server-sent events stream of change feed. Event id is set once all changes of transaction
+   * are sent, so client reconnecting with Last-Event-ID never misses part of transaction. When
+   * filtered out changes advance the stream, id is sent without data to move client position.
+   */
+  @GET
+  @Path("namespaces/{namespace}/changes/stream")
+  @Produces("text/event-stream")
+  public void changeStream(
+      @Suspended AsyncResponse response,
+      @PathParam("namespace") String namespace,
+      @DefaultValue("-1") @QueryParam("from") long from,
+      @HeaderParam("Last-Event-ID") String lastEventId,
+      @QueryParam("prefix") String prefix,
+      @QueryParam("types") String types) {
+    final ChangeFeed feed = namespace(namespace).getChangeFeed();
+    final INodePath pathPrefix = prefix(prefix);
+    final Set<String> eventTypes = eventTypes(types);
+    long start = from;
+    if (lastEventId != null) {
+      try {
+        start = Long.parseLong(lastEventId.trim());
+      } catch (NumberFormatException err) {
+        throw error(Response.Status.BAD_REQUEST, "Invalid Last-Event-ID " + lastEventId);
+      }
+    }
+    final long startTransactionId = start;
+    StreamingOutput output = new StreamingOutput() {
+      @Override
+      public void write(OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        long next = startTransactionId;
+        try {
+          while (true) {
+            ChangeFeed.Slice slice =
+              feed.read(next, pathPrefix, eventTypes, FEED_MAX_LIMIT, FEED_HEARTBEAT_MS);
+            List<ChangeFeed.Change> changes = slice.getChanges();
+            for (int i = 0; i < changes.size(); i++) {
+              ChangeFeed.Change change = changes.get(i);
+              boolean last = i == changes.size() - 1 ||
+                changes.get(i + 1).getTransactionId() != change.getTransactionId();
+              writer.write("event: " + change.getType() + "\n");
+              if (last) {
+                writer.write("id: " + change.getTransactionId() + "\n");
+              }
+              writer.write("data: " + toDocument(change).toJson() + "\n\n");
+            }
+            long sent = changes.isEmpty() ? next :
+              changes.get(changes.size() - 1).getTransactionId();
+            if (slice.getNextTransactionId() > sent) {
+              writer.write("id: " + slice.getNextTransactionId() + "\n\n");
+            } else if (changes.isEmpty()) {
+              writer.write(": keep-alive\n\n");
+            }
+            writer.flush();
+            next = slice.getNextTransactionId();
+          }
+        } catch (ChangeFeed.GapException err) {
+          writer.write("event: gap\ndata: " +
+            new Document("message", err.getMessage()).toJson() + "\n\n");
+          writer.flush();
+        } catch (InterruptedException err) {
+          // server is shutting down, close stream
+        }
+      }
+    };
+    final Response stream = Response.ok(output).header("Cache-Control", "no-cache").build();
+    subscribe(response, new Callable<Response>() {
+      @Override
+      public Response call() {
+        return stream;
+      }
+    });
+  }
+
+  @GET
+  @Path("namespaces/{namespace}/growth")
+  public void growth(
+      @Suspended AsyncResponse response,
+      @PathParam("namespace") final String namespace,
+      @QueryParam("path") final String path,
+      @DefaultValue("hour") @QueryParam("tier") final String tierName,
+      @QueryParam("from") final Long from,
+      @QueryParam("to") final Long to) {
+    submit(response, new Callable<Response>() {
+      @Override
+      public Response call() {
+        return growth(namespace, path, tierName, from, to);
+      }
+    });
+  }
+
+  private Response growth(String namespace, String path, String tierName, Long from, Long to) {
+    HdfsManager hdfs = namespace(namespace);
+    if (path == null || !path.startsWith("/")) {
+      throw error(Response.Status.BAD_REQUEST, "Expected absolute path, found " + path);
+    }
+    GrowthTier tier;
+    try {
+      tier = GrowthTier.forName(tierName);
+    } catch (IllegalArgumentException err) {
+      throw error(Response.Status.BAD_REQUEST, err.getMessage());
+    }
+    long end = (to == null) ? System.currentTimeMillis() : to;
+    long start = (from == null) ? end - GROWTH_RANGE_MS : from;
+    List<Document> samples = new ArrayList<Document>();
+    try {
+      String subtree = new INodePath(path).toPathString();
+      for (GrowthSample sample : hdfs.getGrowth(subtree, tier, start, end)) {
+        samples.add(new Document("time", sample.getTime())
+          .append("files", sample.getUsage().getFiles())
+          .append("directories", sample.getUsage().getDirectories())
+          .append("bytes", sample.getUsage().getBytes())
+          .append("replicatedBytes", sample.getUsage().getReplicatedBytes()));
+      }
+    } catch (IOException ioe) {
+      throw error(Response.Status.SERVICE_UNAVAILABLE,
+        "Failed to load growth samples: " + ioe.getMessage());
+    }
+    Document doc = new Document("path", path)
+      .append("tier", tier.getName())
+      .append("from", start)
+      .append("to", end)
+      .append("samples", samples);
+    return Response.ok(doc.toJson()).build();
+  }
+
+  @POST
+  @Path("namespaces/{namespace}/resync")
+  public Response resync(
+      @PathParam("namespace") String namespace,
+      @QueryParam("path") String path) {
+    HdfsManager hdfs = namespace(namespace);
+    if (path == null || !path.startsWith("/")) {
+      throw error(Response.Status.BAD_REQUEST, "Expected absolute path, found " + path);
+    }
+    SubtreeResync.Job job;
+    try {
+      job = hdfs.getResync().submit(new INodePath(path));
+    } catch (IllegalArgumentException err) {
+      throw error(Response.Status.BAD_REQUEST, err.getMessage());
+    }
+    return Response.status(Response.Status.ACCEPTED).entity(toDocument(job).toJson()).build();
+  }
+
+  @GET
+  @Path("namespaces/{namespace}/resync")
+  public Response resyncJobs(@PathParam("namespace") String namespace) {
+    List<Document> jobs = new ArrayList<Document>();
+    for (SubtreeResync.Job job : namespace(namespace).getResync().getAll()) {
+      jobs.add(toDocument(job));
+    }
+    return Response.ok(new Document("jobs", jobs).toJson()).build();
+  }
+
+  @GET
+  @Path("namespaces/{namespace}/resync/{id}")
+  public Response resyncJob(
+      @PathParam("namespace") String namespace,
+      @PathParam("id") long id) {
+    SubtreeResync.Job job = namespace(namespace).getResync().get(id);
+    if (job == null) {
+      throw error(Response.Status.NOT_FOUND, "Resync job " + id + " does not exist");
+    }
+    return Response.ok(toDocument(job).toJson()).build();
+  }
+
+  @POST
+  @Path("namespaces/{namespace}/export")
+  public Response export(
+      @PathParam("namespace") String namespace,
+      @QueryParam("dir") String dir) {
+    HdfsManager hdfs = namespace(namespace);
+    if (dir == null || dir.trim().isEmpty()) {
+      throw error(Response.Status.BAD_REQUEST, "Expected output directory");
+    }
+    NamespaceExport.Job job;
+    try {
+      job = hdfs.getExport().submit(dir);
+    } catch (IllegalArgumentException err) {
+      throw error(Response.Status.BAD_REQUEST, err.getMessage());
+    } catch (IOException ioe) {
+      throw error(Response.Status.SERVICE_UNAVAILABLE,
+        "Failed to start export: " + ioe.getMessage());
+    }
+    return Response.status(Response.Status.ACCEPTED).entity(toDocument(job).toJson()).build();
+  }
+
+  @GET
+  @Path("namespaces/{namespace}/export")
+  public Response exportJobs(@PathParam("namespace") String namespace) {
+    List<Document> jobs = new ArrayList<Document>();
+    for (NamespaceExport.Job job : namespace(namespace).getExport().getAll()) {
+      jobs.add(toDocument(job));
+    }
+    return Response.ok(new Document("jobs", jobs).toJson()).build();
+  }
+
+  @GET
+  @Path("namespaces/{namespace}/export/{id}")
+  public Response exportJob(
+      @PathParam("namespace") String namespace,
+      @PathParam("id") long id) {
+    NamespaceExport.Job job = namespace(namespace).getExport().get(id);
+    if (job == null) {
+      throw error(Response.Status.NOT_FOUND, "Export job " + id + " does not exist");
+    }
+    return Response.ok(toDocument(job).toJson()).build();
+  }
+}
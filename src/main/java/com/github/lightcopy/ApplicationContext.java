@@ -29,6 +29,9 @@ public class ApplicationContext extends ResourceConfig {
     this.conf = conf;
     register(ContextProvider.class);
     property(ServerProperties.METAINF_SERVICES_LOOKUP_DISABLE, true);
+    // do not buffer entity to compute content length, otherwise event streams are not sent
+    // until buffer is full
+    property(ServerProperties.OUTBOUND_CONTENT_LENGTH_BUFFER, 0);
     property(AppConf.WORKING_DIRECTORY, conf.workingDirectory());
   }
 
@@ -1,6 +1,15 @@
 package com.github.lightcopy;
 
-import com.github.lightcopy.fs.HdfsManager;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.lightcopy.conf.AppConf;
+import com.github.lightcopy.fs.NamespaceManager;
 
 /**
  * Main entrypoint to launch dbfs web server. Provides basic application context for providers.
@@ -9,15 +18,19 @@ import com.github.lightcopy.fs.HdfsManager;
 public class DBFS extends Server {
   private static final int PING_INTERVAL = 2000;
 
-  private HdfsManager manager;
+  private NamespaceManager manager;
+  // executor for metadata queries, separate from server worker threads
+  private ExecutorService metadataExecutor;
+  // executor for change feed subscribers, which block while waiting for changes
+  private ExecutorService feedExecutor;
 
   /**
-   * Shutdown hook to HdfsManager.
+   * Shutdown hook to NamespaceManager.
    */
-  static class HdfsManagerShutdown implements Runnable {
-    private final HdfsManager manager;
+  static class NamespaceManagerShutdown implements Runnable {
+    private final NamespaceManager manager;
 
-    HdfsManagerShutdown(HdfsManager manager) {
+    NamespaceManagerShutdown(NamespaceManager manager) {
       this.manager = manager;
     }
 
@@ -30,14 +43,85 @@ public class DBFS extends Server {
 
     @Override
     public String toString() {
-      return "HdfsManagerShutdown" + this.manager;
+      return "NamespaceManagerShutdown" + this.manager;
+    }
+  }
+
+  /**
+   * Shutdown hook to stop metadata queries.
+   */
+  static class ExecutorShutdown implements Runnable {
+    private final ExecutorService executor;
+
+    ExecutorShutdown(ExecutorService executor) {
+      this.executor = executor;
+    }
+
+    @Override
+    public void run() {
+      this.executor.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+      return "ExecutorShutdown" + this.executor;
     }
   }
 
   public DBFS() {
     super();
-    this.manager = new HdfsManager(this.conf);
-    registerShutdownHook(new HdfsManagerShutdown(this.manager));
+    this.manager = new NamespaceManager(this.conf);
+    this.metadataExecutor = createMetadataExecutor(this.conf);
+    this.feedExecutor = createFeedExecutor(this.conf);
+    registerShutdownHook(new NamespaceManagerShutdown(this.manager));
+    registerShutdownHook(new ExecutorShutdown(this.metadataExecutor));
+    registerShutdownHook(new ExecutorShutdown(this.feedExecutor));
+  }
+
+  /** Create bounded executor for metadata queries, queries are rejected when queue is full */
+  private static ExecutorService createMetadataExecutor(AppConf conf) {
+    int numThreads = conf.httpMetadataThreads();
+    return new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+      new ArrayBlockingQueue<Runnable>(Math.max(conf.httpMetadataQueue(), 1)),
+      new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "MetadataQuery-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+  }
+
+  /**
+   * Create executor for change feed subscribers. Subscribers are not queued, since each one holds
+   * thread until it disconnects; threads are released when idle, subscribers are rejected when
+   * all threads are busy.
+   */
+  private static ExecutorService createFeedExecutor(AppConf conf) {
+    return new ThreadPoolExecutor(0, Math.max(conf.httpFeedThreads(), 1), 60L, TimeUnit.SECONDS,
+      new SynchronousQueue<Runnable>(),
+      new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "ChangeFeed-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+  }
+
+  @Override
+  protected ApplicationContext createApplicationContext(AppConf conf) {
+    ApplicationContext context = super.createApplicationContext(conf);
+    context.register(new ApiProvider(this.manager, this.metadataExecutor, this.feedExecutor,
+      conf.httpMetadataTimeoutMs()));
+    context.register(new AdminProvider(conf.tunables()));
+    return context;
   }
 
   @Override
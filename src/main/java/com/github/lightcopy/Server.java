@@ -3,11 +3,16 @@ package com.github.lightcopy;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Properties;
 
 import javax.ws.rs.core.UriBuilder;
 
+import org.glassfish.grizzly.http.CompressionConfig;
 import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
 
 import org.slf4j.Logger;
@@ -25,7 +30,7 @@ public abstract class Server {
   protected final String host;
   protected final int port;
   protected AppConf conf;
-  private final HttpServer server;
+  private HttpServer server;
   private ArrayList<Runnable> events;
 
   /**
@@ -59,9 +64,10 @@ public abstract class Server {
     this.scheme = this.conf.scheme();
     this.host = this.conf.httpHost();
     this.port = this.conf.httpPort();
-    // initialize events list and internal server
+    // initialize events list, internal server is created on launch, so subclasses can register
+    // providers that depend on their own state
     this.events = new ArrayList<Runnable>();
-    this.server = createHttpServer(this.conf);
+    this.server = null;
   }
 
   public Server() {
@@ -77,11 +83,50 @@ public abstract class Server {
       .build();
   }
 
-  /** Create http server from initialized properties */
+  /** Create application context with providers, subclasses can register additional providers */
+  protected ApplicationContext createApplicationContext(AppConf conf) {
+    return new ApplicationContext(conf);
+  }
+
+  /** Create http server from initialized properties, server is not started */
   protected HttpServer createHttpServer(AppConf conf) {
     URI endpoint = createEndpoint();
-    ApplicationContext context = new ApplicationContext(conf);
-    return GrizzlyHttpServerFactory.createHttpServer(endpoint, context);
+    ApplicationContext context = createApplicationContext(conf);
+    HttpServer server = GrizzlyHttpServerFactory.createHttpServer(endpoint, context, false);
+    for (NetworkListener listener : server.getListeners()) {
+      configureListener(listener, conf);
+    }
+    return server;
+  }
+
+  /** Apply thread pools, keep-alive and compression settings to listener before start */
+  protected void configureListener(NetworkListener listener, AppConf conf) {
+    TCPNIOTransport transport = listener.getTransport();
+    if (conf.httpSelectorThreads() > 0) {
+      transport.setSelectorRunnersCount(conf.httpSelectorThreads());
+    }
+    if (conf.httpWorkerThreads() > 0) {
+      transport.setWorkerThreadPoolConfig(ThreadPoolConfig.defaultConfig()
+        .setPoolName("http-worker-" + listener.getName())
+        .setCorePoolSize(conf.httpWorkerThreads())
+        .setMaxPoolSize(conf.httpWorkerThreads())
+        .setQueueLimit(conf.httpWorkerQueue()));
+    }
+    listener.getKeepAlive().setIdleTimeoutInSeconds(conf.httpKeepAliveTimeoutS());
+    listener.getKeepAlive().setMaxRequestsCount(conf.httpKeepAliveMaxRequests());
+    CompressionConfig.CompressionMode mode;
+    try {
+      mode = CompressionConfig.CompressionMode.valueOf(conf.httpCompression().toUpperCase());
+    } catch (IllegalArgumentException err) {
+      throw new IllegalArgumentException("Unsupported compression mode '" +
+        conf.httpCompression() + "', expected one of on, off, force");
+    }
+    CompressionConfig compression = listener.getCompressionConfig();
+    compression.setCompressionMode(mode);
+    compression.setCompressionMinSize(conf.httpCompressionMinBytes());
+    compression.setCompressableMimeTypes(new HashSet<String>(conf.httpCompressionMimeTypes()));
+    LOG.info("Configured listener {} with selector threads {}, worker threads {}, compression {}",
+      listener.getName(), conf.httpSelectorThreads(), conf.httpWorkerThreads(), mode);
   }
 
   /**
@@ -90,7 +135,9 @@ public abstract class Server {
    */
   protected void shutdown() {
     LOG.info("Stop server {}", this);
-    this.server.shutdown();
+    if (this.server != null) {
+      this.server.shutdown();
+    }
   }
 
   /** Get current host */
@@ -123,6 +170,7 @@ public abstract class Server {
       Runtime.getRuntime().addShutdownHook(new Thread(event));
     }
     LOG.info("Start server {}", this);
+    this.server = createHttpServer(this.conf);
     this.server.start();
     afterLaunch();
   }
@@ -2,10 +2,13 @@ package com.github.lightcopy.conf;
 
 import java.io.IOException;
 import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.net.URI;
 import java.net.URISyntaxException;
-
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -27,12 +30,166 @@ public class AppConf {
   public static final String HTTP_PORT_KEY = "http.port";
   public static final int HTTP_PORT_DEFAULT = 8080;
   public static final String HTTP_SCHEME = "http";
+  // Web server tuning: selector and worker threads (0 keeps server defaults), worker queue limit
+  // (-1 is unbounded), keep-alive idle timeout and maximum requests per connection, response
+  // compression mode (on, off, force), minimum size and comma separated mime types to compress
+  public static final String HTTP_SELECTOR_THREADS_KEY = "http.selector.threads";
+  public static final int HTTP_SELECTOR_THREADS_DEFAULT = 0;
+  public static final String HTTP_WORKER_THREADS_KEY = "http.worker.threads";
+  public static final int HTTP_WORKER_THREADS_DEFAULT = 0;
+  public static final String HTTP_WORKER_QUEUE_KEY = "http.worker.queue";
+  public static final int HTTP_WORKER_QUEUE_DEFAULT = -1;
+  public static final String HTTP_KEEPALIVE_TIMEOUT_S_KEY = "http.keepalive.timeout.s";
+  public static final int HTTP_KEEPALIVE_TIMEOUT_S_DEFAULT = 30;
+  public static final String HTTP_KEEPALIVE_MAX_REQUESTS_KEY = "http.keepalive.max.requests";
+  public static final int HTTP_KEEPALIVE_MAX_REQUESTS_DEFAULT = 256;
+  public static final String HTTP_COMPRESSION_KEY = "http.compression";
+  public static final String HTTP_COMPRESSION_DEFAULT = "on";
+  public static final String HTTP_COMPRESSION_MIN_BYTES_KEY = "http.compression.min.bytes";
+  public static final int HTTP_COMPRESSION_MIN_BYTES_DEFAULT = 1024;
+  public static final String HTTP_COMPRESSION_MIME_TYPES_KEY = "http.compression.mime.types";
+  public static final String HTTP_COMPRESSION_MIME_TYPES_DEFAULT =
+    "application/json,text/html,text/css,text/javascript,application/javascript";
+  // Dedicated executor for metadata endpoints: number of threads, maximum number of queued
+  // queries (rejected with 503 when full) and query timeout
+  public static final String HTTP_METADATA_THREADS_KEY = "http.metadata.threads";
+  public static final int HTTP_METADATA_THREADS_DEFAULT = 8;
+  public static final String HTTP_METADATA_QUEUE_KEY = "http.metadata.queue";
+  public static final int HTTP_METADATA_QUEUE_DEFAULT = 256;
+  public static final String HTTP_METADATA_TIMEOUT_MS_KEY = "http.metadata.timeout.ms";
+  public static final int HTTP_METADATA_TIMEOUT_MS_DEFAULT = 30000;
+  // Dedicated executor for change feed subscribers (long-poll and event streams), each
+  // subscriber holds a thread while waiting, subscribers are rejected with 503 when all are busy
+  public static final String HTTP_FEED_THREADS_KEY = "http.feed.threads";
+  public static final int HTTP_FEED_THREADS_DEFAULT = 64;
   // HDFS settings (connection string)
   public static final String HDFS_CONN_KEY = "hdfs.address";
   public static final String HDFS_CONN_DEFAULT = "hdfs://localhost:8020";
+  // List of namespaces to monitor as "name=uri,...", overrides hdfs address if set
+  public static final String HDFS_SOURCES_KEY = "hdfs.sources";
   // MongoDB settings (connection string)
   public static final String MONGO_CONN_KEY = "mongo.address";
   public static final String MONGO_CONN_DEFAULT = "mongodb://localhost:27017";
+  // Metadata store settings (backend to use: mongo, embedded)
+  public static final String METADATA_STORE_KEY = "metadata.store";
+  public static final String METADATA_STORE_MONGO = "mongo";
+  public static final String METADATA_STORE_MONGO_ASYNC = "mongo-async";
+  public static final String METADATA_STORE_EMBEDDED = "embedded";
+  public static final String METADATA_STORE_DEFAULT = METADATA_STORE_MONGO;
+  // Comma separated list of connection strings for file system shards, database can be part of
+  // connection string; and depth of path prefix used for routing
+  public static final String MONGO_SHARDS_KEY = "mongo.shards";
+  public static final String MONGO_SHARDS_DEPTH_KEY = "mongo.shards.depth";
+  public static final int MONGO_SHARDS_DEPTH_DEFAULT = 2;
+  // Inode document schema for Mongo stores (legacy, compact)
+  public static final String MONGO_SCHEMA_KEY = "mongo.schema";
+  public static final String MONGO_SCHEMA_DEFAULT = "legacy";
+  // Layout of file system collection: documents keyed by path, or keyed by inode id with parent
+  // pointers (only for synchronous Mongo store without shards); and ancestor cache settings
+  public static final String MONGO_LAYOUT_KEY = "mongo.layout";
+  public static final String MONGO_LAYOUT_PATH = "path";
+  public static final String MONGO_LAYOUT_INODE = "inode";
+  public static final String MONGO_LAYOUT_DEFAULT = MONGO_LAYOUT_PATH;
+  public static final String MONGO_INODE_CACHE_SIZE_KEY = "mongo.inode.cache.size";
+  public static final int MONGO_INODE_CACHE_SIZE_DEFAULT = 100000;
+  public static final String MONGO_INODE_CACHE_TTL_MS_KEY = "mongo.inode.cache.ttl.ms";
+  public static final int MONGO_INODE_CACHE_TTL_MS_DEFAULT = 5000;
+  // Read path for metadata queries of synchronous Mongo store: read preference (primary,
+  // primaryPreferred, secondary, secondaryPreferred, nearest), optional connection string of read
+  // client (defaults to mongo.address), maximum estimated replica lag (0 disables check) and
+  // whether or not queries can pin transaction to observe (read-your-writes)
+  public static final String MONGO_READ_PREFERENCE_KEY = "mongo.read.preference";
+  public static final String MONGO_READ_PREFERENCE_DEFAULT = "primary";
+  public static final String MONGO_READ_ADDRESS_KEY = "mongo.read.address";
+  public static final String MONGO_READ_MAX_STALENESS_MS_KEY = "mongo.read.max.staleness.ms";
+  public static final int MONGO_READ_MAX_STALENESS_MS_DEFAULT = 10000;
+  public static final String MONGO_READ_PIN_TXID_KEY = "mongo.read.pin.txid";
+  public static final boolean MONGO_READ_PIN_TXID_DEFAULT = true;
+  // Snapshot-consistent reads for path layout: keeps versions of modified nodes, so queries do not
+  // observe partially applied multi-document mutations, and removes versions no snapshot can
+  // observe with given interval (also maximum time snapshot can stay unused)
+  public static final String MONGO_SNAPSHOT_READS_KEY = "mongo.snapshot.reads";
+  public static final boolean MONGO_SNAPSHOT_READS_DEFAULT = false;
+  public static final String MONGO_SNAPSHOT_GC_INTERVAL_MS_KEY = "mongo.snapshot.gc.interval.ms";
+  public static final int MONGO_SNAPSHOT_GC_INTERVAL_MS_DEFAULT = 60000;
+  // Maximum number of in-flight writes for asynchronous Mongo store
+  public static final String MONGO_ASYNC_WINDOW_KEY = "mongo.async.window";
+  public static final int MONGO_ASYNC_WINDOW_DEFAULT = 128;
+  // Event polling settings (minimum and maximum poll timeout, end-to-end latency target)
+  public static final String EVENTS_POLL_MIN_MS_KEY = "events.poll.min.ms";
+  public static final int EVENTS_POLL_MIN_MS_DEFAULT = 5;
+  public static final String EVENTS_POLL_MAX_MS_KEY = "events.poll.max.ms";
+  public static final int EVENTS_POLL_MAX_MS_DEFAULT = 1000;
+  public static final String EVENTS_LATENCY_TARGET_MS_KEY = "events.latency.target.ms";
+  public static final int EVENTS_LATENCY_TARGET_MS_DEFAULT = 200;
+  // Bounds of backoff when applying event batch fails because of metadata store
+  public static final String EVENTS_RETRY_MIN_MS_KEY = "events.retry.min.ms";
+  public static final int EVENTS_RETRY_MIN_MS_DEFAULT = 100;
+  public static final String EVENTS_RETRY_MAX_MS_KEY = "events.retry.max.ms";
+  public static final int EVENTS_RETRY_MAX_MS_DEFAULT = 30000;
+  // Maximum number of nodes inserted in single batch when indexing directory
+  public static final String INDEX_INSERT_BATCH_KEY = "index.insert.batch";
+  public static final int INDEX_INSERT_BATCH_DEFAULT = 10000;
+  // High availability: when enabled, instances elect leader through lease in metadata store,
+  // only leader applies events and others stay in standby
+  public static final String HA_ENABLED_KEY = "ha.enabled";
+  public static final boolean HA_ENABLED_DEFAULT = false;
+  public static final String HA_LEASE_TTL_MS_KEY = "ha.lease.ttl.ms";
+  public static final int HA_LEASE_TTL_MS_DEFAULT = 10000;
+  // Unique id of instance, defaults to process name (pid@host)
+  public static final String HA_INSTANCE_ID_KEY = "ha.instance.id";
+  // Background consistency verifier between HDFS and metadata store, when enabled directory
+  // hashes are maintained on every modification
+  public static final String VERIFIER_ENABLED_KEY = "verifier.enabled";
+  public static final boolean VERIFIER_ENABLED_DEFAULT = false;
+  public static final String VERIFIER_INTERVAL_MS_KEY = "verifier.interval.ms";
+  public static final int VERIFIER_INTERVAL_MS_DEFAULT = 3600000;
+  // Maximum number of NameNode listing calls per second
+  public static final String VERIFIER_RPC_PER_SECOND_KEY = "verifier.rpc.per.second";
+  public static final int VERIFIER_RPC_PER_SECOND_DEFAULT = 20;
+  // Entries modified within this period are not repaired
+  public static final String VERIFIER_GRACE_MS_KEY = "verifier.grace.ms";
+  public static final int VERIFIER_GRACE_MS_DEFAULT = 60000;
+  // Number of threads to list directories during subtree resync
+  public static final String RESYNC_THREADS_KEY = "resync.threads";
+  public static final int RESYNC_THREADS_DEFAULT = 8;
+  // Number of event batches buffered in memory between inotify consumer and applier
+  public static final String INGEST_QUEUE_CAPACITY_KEY = "ingest.queue.capacity";
+  public static final int INGEST_QUEUE_CAPACITY_DEFAULT = 1024;
+  // Spill journal for batches that do not fit into memory, one subdirectory per namespace
+  public static final String INGEST_JOURNAL_DIR_KEY = "ingest.journal.dir";
+  public static final String INGEST_JOURNAL_SEGMENT_MB_KEY = "ingest.journal.segment.mb";
+  public static final int INGEST_JOURNAL_SEGMENT_MB_DEFAULT = 64;
+  public static final String INGEST_JOURNAL_MAX_MB_KEY = "ingest.journal.max.mb";
+  public static final int INGEST_JOURNAL_MAX_MB_DEFAULT = 4096;
+  // Per-owner and per-group usage rollups, flushed to rollup collection at interval
+  public static final String ROLLUPS_ENABLED_KEY = "rollups.enabled";
+  public static final boolean ROLLUPS_ENABLED_DEFAULT = false;
+  public static final String ROLLUPS_FLUSH_INTERVAL_MS_KEY = "rollups.flush.interval.ms";
+  public static final int ROLLUPS_FLUSH_INTERVAL_MS_DEFAULT = 30000;
+  // Comma separated subtrees to capture growth time series for, empty disables sampling
+  public static final String TIMESERIES_SUBTREES_KEY = "timeseries.subtrees";
+  public static final String TIMESERIES_INTERVAL_MS_KEY = "timeseries.interval.ms";
+  public static final int TIMESERIES_INTERVAL_MS_DEFAULT = 60000;
+  // Number of applied events kept in memory for change feed subscribers
+  public static final String FEED_CAPACITY_KEY = "feed.capacity";
+  public static final int FEED_CAPACITY_DEFAULT = 65536;
+  // Comma separated scope roots and exclusion globs applied to indexing and events, roots
+  // outside of namespace root are ignored, namespace root is used if no root applies
+  public static final String RULES_ROOTS_KEY = "rules.roots";
+  public static final String RULES_EXCLUDE_KEY = "rules.exclude";
+  // Namespace export settings: number of threads scanning partitions, desired number of
+  // partitions (one file per partition) and Parquet row group size buffered per thread
+  public static final String EXPORT_THREADS_KEY = "export.threads";
+  public static final int EXPORT_THREADS_DEFAULT = 4;
+  public static final String EXPORT_PARTITIONS_KEY = "export.partitions";
+  public static final int EXPORT_PARTITIONS_DEFAULT = 16;
+  public static final String EXPORT_ROW_GROUP_BYTES_KEY = "export.rowgroup.bytes";
+  public static final int EXPORT_ROW_GROUP_BYTES_DEFAULT = 64 * 1024 * 1024;
+  // Maximum number of directories with tracked modification, used for entity tags of metadata
+  // queries; all tags change once when capacity is exceeded
+  public static final String ETAG_CAPACITY_KEY = "etag.capacity";
+  public static final int ETAG_CAPACITY_DEFAULT = 1000000;
   // Working directory
   public static final String WORKING_DIRECTORY = "working.directory";
 
@@ -41,12 +198,69 @@ public class AppConf {
   static {
     REGISTERED_KEYS.add(HTTP_HOST_KEY);
     REGISTERED_KEYS.add(HTTP_PORT_KEY);
+    REGISTERED_KEYS.add(HTTP_SELECTOR_THREADS_KEY);
+    REGISTERED_KEYS.add(HTTP_WORKER_THREADS_KEY);
+    REGISTERED_KEYS.add(HTTP_WORKER_QUEUE_KEY);
+    REGISTERED_KEYS.add(HTTP_KEEPALIVE_TIMEOUT_S_KEY);
+    REGISTERED_KEYS.add(HTTP_KEEPALIVE_MAX_REQUESTS_KEY);
+    REGISTERED_KEYS.add(HTTP_COMPRESSION_KEY);
+    REGISTERED_KEYS.add(HTTP_COMPRESSION_MIN_BYTES_KEY);
+    REGISTERED_KEYS.add(HTTP_COMPRESSION_MIME_TYPES_KEY);
+    REGISTERED_KEYS.add(HTTP_METADATA_THREADS_KEY);
+    REGISTERED_KEYS.add(HTTP_METADATA_QUEUE_KEY);
+    REGISTERED_KEYS.add(HTTP_METADATA_TIMEOUT_MS_KEY);
+    REGISTERED_KEYS.add(HTTP_FEED_THREADS_KEY);
     REGISTERED_KEYS.add(HDFS_CONN_KEY);
+    REGISTERED_KEYS.add(HDFS_SOURCES_KEY);
     REGISTERED_KEYS.add(MONGO_CONN_KEY);
+    REGISTERED_KEYS.add(METADATA_STORE_KEY);
+    REGISTERED_KEYS.add(MONGO_ASYNC_WINDOW_KEY);
+    REGISTERED_KEYS.add(MONGO_READ_PREFERENCE_KEY);
+    REGISTERED_KEYS.add(MONGO_READ_ADDRESS_KEY);
+    REGISTERED_KEYS.add(MONGO_READ_MAX_STALENESS_MS_KEY);
+    REGISTERED_KEYS.add(MONGO_READ_PIN_TXID_KEY);
+    REGISTERED_KEYS.add(MONGO_SNAPSHOT_READS_KEY);
+    REGISTERED_KEYS.add(MONGO_SNAPSHOT_GC_INTERVAL_MS_KEY);
+    REGISTERED_KEYS.add(MONGO_SCHEMA_KEY);
+    REGISTERED_KEYS.add(MONGO_LAYOUT_KEY);
+    REGISTERED_KEYS.add(MONGO_INODE_CACHE_SIZE_KEY);
+    REGISTERED_KEYS.add(MONGO_INODE_CACHE_TTL_MS_KEY);
+    REGISTERED_KEYS.add(MONGO_SHARDS_KEY);
+    REGISTERED_KEYS.add(MONGO_SHARDS_DEPTH_KEY);
+    REGISTERED_KEYS.add(EVENTS_POLL_MIN_MS_KEY);
+    REGISTERED_KEYS.add(EVENTS_POLL_MAX_MS_KEY);
+    REGISTERED_KEYS.add(EVENTS_LATENCY_TARGET_MS_KEY);
+    REGISTERED_KEYS.add(EVENTS_RETRY_MIN_MS_KEY);
+    REGISTERED_KEYS.add(EVENTS_RETRY_MAX_MS_KEY);
+    REGISTERED_KEYS.add(INDEX_INSERT_BATCH_KEY);
+    REGISTERED_KEYS.add(HA_ENABLED_KEY);
+    REGISTERED_KEYS.add(HA_LEASE_TTL_MS_KEY);
+    REGISTERED_KEYS.add(HA_INSTANCE_ID_KEY);
+    REGISTERED_KEYS.add(VERIFIER_ENABLED_KEY);
+    REGISTERED_KEYS.add(VERIFIER_INTERVAL_MS_KEY);
+    REGISTERED_KEYS.add(VERIFIER_RPC_PER_SECOND_KEY);
+    REGISTERED_KEYS.add(VERIFIER_GRACE_MS_KEY);
+    REGISTERED_KEYS.add(RESYNC_THREADS_KEY);
+    REGISTERED_KEYS.add(INGEST_QUEUE_CAPACITY_KEY);
+    REGISTERED_KEYS.add(INGEST_JOURNAL_DIR_KEY);
+    REGISTERED_KEYS.add(INGEST_JOURNAL_SEGMENT_MB_KEY);
+    REGISTERED_KEYS.add(INGEST_JOURNAL_MAX_MB_KEY);
+    REGISTERED_KEYS.add(ROLLUPS_ENABLED_KEY);
+    REGISTERED_KEYS.add(ROLLUPS_FLUSH_INTERVAL_MS_KEY);
+    REGISTERED_KEYS.add(TIMESERIES_SUBTREES_KEY);
+    REGISTERED_KEYS.add(TIMESERIES_INTERVAL_MS_KEY);
+    REGISTERED_KEYS.add(FEED_CAPACITY_KEY);
+    REGISTERED_KEYS.add(RULES_ROOTS_KEY);
+    REGISTERED_KEYS.add(RULES_EXCLUDE_KEY);
+    REGISTERED_KEYS.add(EXPORT_THREADS_KEY);
+    REGISTERED_KEYS.add(EXPORT_PARTITIONS_KEY);
+    REGISTERED_KEYS.add(EXPORT_ROW_GROUP_BYTES_KEY);
+    REGISTERED_KEYS.add(ETAG_CAPACITY_KEY);
   }
 
   private ConcurrentHashMap<String, String> options;
   private String workingDirectory;
+  private final Tunables tunables;
 
   public AppConf(Properties props) {
     this.options = new ConcurrentHashMap<String, String>();
@@ -63,6 +277,7 @@ public class AppConf {
     } catch (IOException err) {
       throw new RuntimeException(err);
     }
+    this.tunables = new Tunables(this);
   }
 
   public AppConf() {
@@ -137,6 +352,17 @@ public class AppConf {
     }
   }
 
+  /** Get comma separated list of non-empty trimmed values, empty list if key is not set */
+  public List<String> getList(String key) {
+    List<String> values = new ArrayList<String>();
+    for (String value : get(key, "").split(",")) {
+      if (!value.trim().isEmpty()) {
+        values.add(value.trim());
+      }
+    }
+    return values;
+  }
+
   /** Get base-10 integer for key, use default if key does not exist, of parsing fails */
   public int getInt(String key, int defaultValue) {
     String orig = cleanupKey(key);
@@ -149,6 +375,13 @@ public class AppConf {
     }
   }
 
+  /** Get boolean for key, use default if key does not exist */
+  public boolean getBoolean(String key, boolean defaultValue) {
+    String orig = cleanupKey(key);
+    if (!containsKey(orig)) return defaultValue;
+    return Boolean.parseBoolean(this.options.get(orig));
+  }
+
   /** Configuration methods **/
 
   public String httpHost() {
@@ -159,6 +392,55 @@ public class AppConf {
     return getInt(HTTP_PORT_KEY, HTTP_PORT_DEFAULT);
   }
 
+  public int httpSelectorThreads() {
+    return getInt(HTTP_SELECTOR_THREADS_KEY, HTTP_SELECTOR_THREADS_DEFAULT);
+  }
+
+  public int httpWorkerThreads() {
+    return getInt(HTTP_WORKER_THREADS_KEY, HTTP_WORKER_THREADS_DEFAULT);
+  }
+
+  public int httpWorkerQueue() {
+    return getInt(HTTP_WORKER_QUEUE_KEY, HTTP_WORKER_QUEUE_DEFAULT);
+  }
+
+  public int httpKeepAliveTimeoutS() {
+    return getInt(HTTP_KEEPALIVE_TIMEOUT_S_KEY, HTTP_KEEPALIVE_TIMEOUT_S_DEFAULT);
+  }
+
+  public int httpKeepAliveMaxRequests() {
+    return getInt(HTTP_KEEPALIVE_MAX_REQUESTS_KEY, HTTP_KEEPALIVE_MAX_REQUESTS_DEFAULT);
+  }
+
+  public String httpCompression() {
+    return get(HTTP_COMPRESSION_KEY, HTTP_COMPRESSION_DEFAULT);
+  }
+
+  public int httpCompressionMinBytes() {
+    return getInt(HTTP_COMPRESSION_MIN_BYTES_KEY, HTTP_COMPRESSION_MIN_BYTES_DEFAULT);
+  }
+
+  public List<String> httpCompressionMimeTypes() {
+    List<String> types = getList(HTTP_COMPRESSION_MIME_TYPES_KEY);
+    return types.isEmpty() ? Arrays.asList(HTTP_COMPRESSION_MIME_TYPES_DEFAULT.split(",")) : types;
+  }
+
+  public int httpMetadataThreads() {
+    return getInt(HTTP_METADATA_THREADS_KEY, HTTP_METADATA_THREADS_DEFAULT);
+  }
+
+  public int httpMetadataQueue() {
+    return getInt(HTTP_METADATA_QUEUE_KEY, HTTP_METADATA_QUEUE_DEFAULT);
+  }
+
+  public int httpMetadataTimeoutMs() {
+    return getInt(HTTP_METADATA_TIMEOUT_MS_KEY, HTTP_METADATA_TIMEOUT_MS_DEFAULT);
+  }
+
+  public int httpFeedThreads() {
+    return getInt(HTTP_FEED_THREADS_KEY, HTTP_FEED_THREADS_DEFAULT);
+  }
+
   public String scheme() {
     return HTTP_SCHEME;
   }
@@ -176,10 +458,219 @@ public class AppConf {
     }
   }
 
+  /**
+   * List of hdfs sources to monitor. If no sources are configured, returns single default
+   * namespace for hdfs address with root directory "/".
+   */
+  public List<HdfsSource> hdfsSources() {
+    String sources = get(HDFS_SOURCES_KEY, null);
+    if (sources != null) {
+      return HdfsSource.parseList(sources);
+    }
+    List<HdfsSource> list = new ArrayList<HdfsSource>();
+    list.add(new HdfsSource(HdfsSource.DEFAULT_NAME, hdfsURI(), "/"));
+    return list;
+  }
+
   public String mongoConnectionString() {
     return get(MONGO_CONN_KEY, MONGO_CONN_DEFAULT);
   }
 
+  public String metadataStore() {
+    return get(METADATA_STORE_KEY, METADATA_STORE_DEFAULT);
+  }
+
+  /** List of shard connection strings, empty if sharding is disabled */
+  public List<String> mongoShards() {
+    List<String> shards = new ArrayList<String>();
+    for (String shard : get(MONGO_SHARDS_KEY, "").split(",")) {
+      if (!shard.trim().isEmpty()) {
+        shards.add(shard.trim());
+      }
+    }
+    return shards;
+  }
+
+  public int mongoShardsDepth() {
+    return getInt(MONGO_SHARDS_DEPTH_KEY, MONGO_SHARDS_DEPTH_DEFAULT);
+  }
+
+  public String mongoSchema() {
+    return get(MONGO_SCHEMA_KEY, MONGO_SCHEMA_DEFAULT);
+  }
+
+  public String mongoLayout() {
+    return get(MONGO_LAYOUT_KEY, MONGO_LAYOUT_DEFAULT);
+  }
+
+  public int mongoInodeCacheSize() {
+    return getInt(MONGO_INODE_CACHE_SIZE_KEY, MONGO_INODE_CACHE_SIZE_DEFAULT);
+  }
+
+  public int mongoInodeCacheTtlMs() {
+    return getInt(MONGO_INODE_CACHE_TTL_MS_KEY, MONGO_INODE_CACHE_TTL_MS_DEFAULT);
+  }
+
+  public String mongoReadPreference() {
+    return get(MONGO_READ_PREFERENCE_KEY, MONGO_READ_PREFERENCE_DEFAULT);
+  }
+
+  /** Connection string of read client, same as metadata connection if not set */
+  public String mongoReadConnectionString() {
+    return get(MONGO_READ_ADDRESS_KEY, mongoConnectionString());
+  }
+
+  public int mongoReadMaxStalenessMs() {
+    return getInt(MONGO_READ_MAX_STALENESS_MS_KEY, MONGO_READ_MAX_STALENESS_MS_DEFAULT);
+  }
+
+  public boolean mongoReadPinTxid() {
+    return getBoolean(MONGO_READ_PIN_TXID_KEY, MONGO_READ_PIN_TXID_DEFAULT);
+  }
+
+  public boolean mongoSnapshotReads() {
+    return getBoolean(MONGO_SNAPSHOT_READS_KEY, MONGO_SNAPSHOT_READS_DEFAULT);
+  }
+
+  public int mongoSnapshotGcIntervalMs() {
+    return getInt(MONGO_SNAPSHOT_GC_INTERVAL_MS_KEY, MONGO_SNAPSHOT_GC_INTERVAL_MS_DEFAULT);
+  }
+
+  public int mongoAsyncWindow() {
+    return getInt(MONGO_ASYNC_WINDOW_KEY, MONGO_ASYNC_WINDOW_DEFAULT);
+  }
+
+  public int eventsPollMinMs() {
+    return getInt(EVENTS_POLL_MIN_MS_KEY, EVENTS_POLL_MIN_MS_DEFAULT);
+  }
+
+  public int eventsPollMaxMs() {
+    return getInt(EVENTS_POLL_MAX_MS_KEY, EVENTS_POLL_MAX_MS_DEFAULT);
+  }
+
+  public int eventsLatencyTargetMs() {
+    return getInt(EVENTS_LATENCY_TARGET_MS_KEY, EVENTS_LATENCY_TARGET_MS_DEFAULT);
+  }
+
+  public int eventsRetryMinMs() {
+    return getInt(EVENTS_RETRY_MIN_MS_KEY, EVENTS_RETRY_MIN_MS_DEFAULT);
+  }
+
+  public int eventsRetryMaxMs() {
+    return getInt(EVENTS_RETRY_MAX_MS_KEY, EVENTS_RETRY_MAX_MS_DEFAULT);
+  }
+
+  public int indexInsertBatch() {
+    return getInt(INDEX_INSERT_BATCH_KEY, INDEX_INSERT_BATCH_DEFAULT);
+  }
+
+  public boolean haEnabled() {
+    return getBoolean(HA_ENABLED_KEY, HA_ENABLED_DEFAULT);
+  }
+
+  public int haLeaseTtlMs() {
+    return getInt(HA_LEASE_TTL_MS_KEY, HA_LEASE_TTL_MS_DEFAULT);
+  }
+
+  public String haInstanceId() {
+    return get(HA_INSTANCE_ID_KEY, ManagementFactory.getRuntimeMXBean().getName());
+  }
+
+  public boolean verifierEnabled() {
+    return getBoolean(VERIFIER_ENABLED_KEY, VERIFIER_ENABLED_DEFAULT);
+  }
+
+  public int verifierIntervalMs() {
+    return getInt(VERIFIER_INTERVAL_MS_KEY, VERIFIER_INTERVAL_MS_DEFAULT);
+  }
+
+  public int verifierRpcPerSecond() {
+    return getInt(VERIFIER_RPC_PER_SECOND_KEY, VERIFIER_RPC_PER_SECOND_DEFAULT);
+  }
+
+  public int verifierGraceMs() {
+    return getInt(VERIFIER_GRACE_MS_KEY, VERIFIER_GRACE_MS_DEFAULT);
+  }
+
+  public int resyncThreads() {
+    return getInt(RESYNC_THREADS_KEY, RESYNC_THREADS_DEFAULT);
+  }
+
+  public int ingestQueueCapacity() {
+    return getInt(INGEST_QUEUE_CAPACITY_KEY, INGEST_QUEUE_CAPACITY_DEFAULT);
+  }
+
+  public String ingestJournalDir() {
+    return get(INGEST_JOURNAL_DIR_KEY,
+      new File(System.getProperty("java.io.tmpdir"), "dbfs-journal").getPath());
+  }
+
+  public int ingestJournalSegmentMb() {
+    return getInt(INGEST_JOURNAL_SEGMENT_MB_KEY, INGEST_JOURNAL_SEGMENT_MB_DEFAULT);
+  }
+
+  public int ingestJournalMaxMb() {
+    return getInt(INGEST_JOURNAL_MAX_MB_KEY, INGEST_JOURNAL_MAX_MB_DEFAULT);
+  }
+
+  public boolean rollupsEnabled() {
+    return getBoolean(ROLLUPS_ENABLED_KEY, ROLLUPS_ENABLED_DEFAULT);
+  }
+
+  public int rollupsFlushIntervalMs() {
+    return getInt(ROLLUPS_FLUSH_INTERVAL_MS_KEY, ROLLUPS_FLUSH_INTERVAL_MS_DEFAULT);
+  }
+
+  /** List of subtree paths to sample, empty if growth time series is disabled */
+  public List<String> timeseriesSubtrees() {
+    List<String> subtrees = new ArrayList<String>();
+    for (String subtree : get(TIMESERIES_SUBTREES_KEY, "").split(",")) {
+      if (!subtree.trim().isEmpty()) {
+        subtrees.add(subtree.trim());
+      }
+    }
+    return subtrees;
+  }
+
+  public int timeseriesIntervalMs() {
+    return getInt(TIMESERIES_INTERVAL_MS_KEY, TIMESERIES_INTERVAL_MS_DEFAULT);
+  }
+
+  public int feedCapacity() {
+    return getInt(FEED_CAPACITY_KEY, FEED_CAPACITY_DEFAULT);
+  }
+
+  /** List of scope roots, empty if namespace root should be used */
+  public List<String> rulesRoots() {
+    return getList(RULES_ROOTS_KEY);
+  }
+
+  /** List of exclusion globs, e.g. "/tmp", "_temporary" */
+  public List<String> rulesExclude() {
+    return getList(RULES_EXCLUDE_KEY);
+  }
+
+  public int exportThreads() {
+    return getInt(EXPORT_THREADS_KEY, EXPORT_THREADS_DEFAULT);
+  }
+
+  public int exportPartitions() {
+    return getInt(EXPORT_PARTITIONS_KEY, EXPORT_PARTITIONS_DEFAULT);
+  }
+
+  public int exportRowGroupBytes() {
+    return getInt(EXPORT_ROW_GROUP_BYTES_KEY, EXPORT_ROW_GROUP_BYTES_DEFAULT);
+  }
+
+  public int etagCapacity() {
+    return getInt(ETAG_CAPACITY_KEY, ETAG_CAPACITY_DEFAULT);
+  }
+
+  /** Settings that can be changed at runtime, see [[Tunables]] */
+  public Tunables tunables() {
+    return this.tunables;
+  }
+
   public String workingDirectory() {
     return workingDirectory;
   }
@@ -0,0 +1,92 @@
+package com.github.lightcopy.conf;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * [[HdfsSource]] describes single namespace to monitor: unique name, cluster URI and root path
+ * within that cluster. Sources are parsed from comma separated list "name=uri", where path of
+ * the uri is used as root, e.g. "prod=hdfs://nn1:8020/,logs=hdfs://nn2:8020/data/logs".
+ */
+public class HdfsSource {
+  // name of namespace when single hdfs address is configured
+  public static final String DEFAULT_NAME = "default";
+  private static final Pattern NAME_PATTERN = Pattern.compile("^[A-Za-z0-9_-]+$");
+
+  private final String name;
+  private final URI uri;
+  private final String root;
+
+  public HdfsSource(String name, URI uri, String root) {
+    if (name == null || !NAME_PATTERN.matcher(name).matches()) {
+      throw new IllegalArgumentException("Invalid namespace name '" + name + "', expected " +
+        "alphanumeric characters, '-' or '_'");
+    }
+    this.name = name;
+    this.uri = uri;
+    this.root = (root == null || root.isEmpty()) ? "/" : root;
+  }
+
+  /** Parse source from string "name=uri" */
+  public static HdfsSource parse(String value) {
+    int index = value.indexOf('=');
+    if (index <= 0) {
+      throw new IllegalArgumentException("Invalid hdfs source '" + value + "', expected name=uri");
+    }
+    String name = value.substring(0, index).trim();
+    String conn = value.substring(index + 1).trim();
+    try {
+      URI full = new URI(conn);
+      URI cluster = new URI(full.getScheme(), full.getAuthority(), null, null, null);
+      return new HdfsSource(name, cluster, full.getPath());
+    } catch (URISyntaxException use) {
+      throw new IllegalArgumentException("Failed to parse URI for hdfs source '" + value + "'",
+        use);
+    }
+  }
+
+  /** Parse comma separated list of sources, names must be unique */
+  public static List<HdfsSource> parseList(String value) {
+    List<HdfsSource> sources = new ArrayList<HdfsSource>();
+    for (String part : value.split(",")) {
+      if (part.trim().isEmpty()) continue;
+      HdfsSource source = parse(part.trim());
+      for (HdfsSource other : sources) {
+        if (other.getName().equals(source.getName())) {
+          throw new IllegalArgumentException("Duplicate namespace name " + source.getName());
+        }
+      }
+      sources.add(source);
+    }
+    if (sources.isEmpty()) {
+      throw new IllegalArgumentException("Expected at least one hdfs source, found '" + value +
+        "'");
+    }
+    return sources;
+  }
+
+  /** Whether or not this is default namespace */
+  public boolean isDefault() {
+    return DEFAULT_NAME.equals(this.name);
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  public URI getURI() {
+    return this.uri;
+  }
+
+  public String getRoot() {
+    return this.root;
+  }
+
+  @Override
+  public String toString() {
+    return "HdfsSource(name=" + this.name + ", uri=" + this.uri + ", root=" + this.root + ")";
+  }
+}
@@ -0,0 +1,212 @@
+package com.github.lightcopy.conf;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of integer settings that can be changed while application is running. Each tunable
+ * has default value and inclusive range; new value is validated and written into [[AppConf]], so
+ * components that read configuration on every use pick it up directly. Components that size
+ * resources at startup, e.g. thread pools, register listener and are notified after update.
+ *
+ * Values are kept in memory only, restart resets them to the values in configuration file.
+ */
+public class Tunables {
+  private static final Logger LOG = LoggerFactory.getLogger(Tunables.class);
+
+  /** Definition of single tunable */
+  public static class Tunable {
+    private final String key;
+    private final int defaultValue;
+    private final int min;
+    private final int max;
+    private final String description;
+
+    Tunable(String key, int defaultValue, int min, int max, String description) {
+      this.key = key;
+      this.defaultValue = defaultValue;
+      this.min = min;
+      this.max = max;
+      this.description = description;
+    }
+
+    public String getKey() {
+      return this.key;
+    }
+
+    public int getDefault() {
+      return this.defaultValue;
+    }
+
+    /** Minimum allowed value, inclusive */
+    public int getMin() {
+      return this.min;
+    }
+
+    /** Maximum allowed value, inclusive */
+    public int getMax() {
+      return this.max;
+    }
+
+    public String getDescription() {
+      return this.description;
+    }
+
+    /** Parse and validate value, fails with IllegalArgumentException */
+    int parse(String value) {
+      int result;
+      try {
+        result = Integer.parseInt(value.trim());
+      } catch (NumberFormatException err) {
+        throw new IllegalArgumentException("Invalid value '" + value + "' for " + this.key +
+          ", integer is expected");
+      }
+      if (result < this.min || result > this.max) {
+        throw new IllegalArgumentException("Value " + result + " for " + this.key +
+          " is out of range [" + this.min + ", " + this.max + "]");
+      }
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return "Tunable(" + this.key + ", default=" + this.defaultValue + ", range=[" + this.min +
+        ", " + this.max + "])";
+    }
+  }
+
+  /** Listener notified after tunable is updated */
+  public static interface Listener {
+    public void changed(String key, int value);
+  }
+
+  private static final LinkedHashMap<String, Tunable> REGISTRY =
+    new LinkedHashMap<String, Tunable>();
+  static {
+    register(AppConf.EVENTS_POLL_MIN_MS_KEY, AppConf.EVENTS_POLL_MIN_MS_DEFAULT, 1, 60000,
+      "Minimum inotify poll timeout in milliseconds");
+    register(AppConf.EVENTS_POLL_MAX_MS_KEY, AppConf.EVENTS_POLL_MAX_MS_DEFAULT, 1, 60000,
+      "Maximum inotify poll timeout in milliseconds");
+    register(AppConf.EVENTS_LATENCY_TARGET_MS_KEY, AppConf.EVENTS_LATENCY_TARGET_MS_DEFAULT, 1,
+      3600000, "End-to-end event latency target in milliseconds, caps poll timeout");
+    register(AppConf.EVENTS_RETRY_MIN_MS_KEY, AppConf.EVENTS_RETRY_MIN_MS_DEFAULT, 1, 60000,
+      "Initial backoff in milliseconds when applying batch fails");
+    register(AppConf.EVENTS_RETRY_MAX_MS_KEY, AppConf.EVENTS_RETRY_MAX_MS_DEFAULT, 1, 3600000,
+      "Maximum backoff in milliseconds when applying batch fails");
+    register(AppConf.INDEX_INSERT_BATCH_KEY, AppConf.INDEX_INSERT_BATCH_DEFAULT, 1, 1000000,
+      "Maximum number of nodes inserted in single batch during indexing");
+    register(AppConf.MONGO_ASYNC_WINDOW_KEY, AppConf.MONGO_ASYNC_WINDOW_DEFAULT, 1, 65536,
+      "Maximum number of in-flight writes for asynchronous Mongo store");
+    register(AppConf.RESYNC_THREADS_KEY, AppConf.RESYNC_THREADS_DEFAULT, 1, 256,
+      "Number of threads listing directories during subtree resync");
+    register(AppConf.EXPORT_THREADS_KEY, AppConf.EXPORT_THREADS_DEFAULT, 1, 256,
+      "Number of threads writing export partitions");
+    register(AppConf.EXPORT_PARTITIONS_KEY, AppConf.EXPORT_PARTITIONS_DEFAULT, 1, 65536,
+      "Desired number of partitions for new exports");
+    register(AppConf.EXPORT_ROW_GROUP_BYTES_KEY, AppConf.EXPORT_ROW_GROUP_BYTES_DEFAULT,
+      1024 * 1024, 1024 * 1024 * 1024, "Parquet row group size in bytes for new exports");
+    register(AppConf.VERIFIER_INTERVAL_MS_KEY, AppConf.VERIFIER_INTERVAL_MS_DEFAULT, 1000,
+      Integer.MAX_VALUE, "Interval in milliseconds between verification passes");
+    register(AppConf.VERIFIER_RPC_PER_SECOND_KEY, AppConf.VERIFIER_RPC_PER_SECOND_DEFAULT, 1,
+      10000, "Maximum number of NameNode listing calls per second for verifier");
+    register(AppConf.VERIFIER_GRACE_MS_KEY, AppConf.VERIFIER_GRACE_MS_DEFAULT, 0,
+      Integer.MAX_VALUE, "Entries modified within this period are not repaired by verifier");
+    register(AppConf.ROLLUPS_FLUSH_INTERVAL_MS_KEY, AppConf.ROLLUPS_FLUSH_INTERVAL_MS_DEFAULT,
+      100, Integer.MAX_VALUE, "Interval in milliseconds to flush usage rollups");
+    register(AppConf.TIMESERIES_INTERVAL_MS_KEY, AppConf.TIMESERIES_INTERVAL_MS_DEFAULT, 1000,
+      Integer.MAX_VALUE, "Interval in milliseconds between growth samples");
+  }
+
+  private static void register(String key, int defaultValue, int min, int max, String desc) {
+    REGISTRY.put(key, new Tunable(key, defaultValue, min, max, desc));
+  }
+
+  /** Get all registered tunables in registration order */
+  public static Collection<Tunable> registry() {
+    return Collections.unmodifiableCollection(REGISTRY.values());
+  }
+
+  /** Get tunable definition, or null if key is not registered */
+  public static Tunable lookup(String key) {
+    return REGISTRY.get(key);
+  }
+
+  private final AppConf conf;
+  private final CopyOnWriteArrayList<Listener> listeners;
+
+  /** Create tunables for configuration, values set at startup must be within range */
+  Tunables(AppConf conf) {
+    this.conf = conf;
+    this.listeners = new CopyOnWriteArrayList<Listener>();
+    List<String> errors = new ArrayList<String>();
+    for (Tunable tunable : REGISTRY.values()) {
+      String value = conf.get(tunable.getKey(), null);
+      if (value == null) continue;
+      try {
+        tunable.parse(value);
+      } catch (IllegalArgumentException err) {
+        errors.add(err.getMessage());
+      }
+    }
+    if (!errors.isEmpty()) {
+      throw new IllegalArgumentException("Invalid configuration: " + errors);
+    }
+  }
+
+  /** Get current value of tunable, fails with IllegalArgumentException for unknown key */
+  public int get(String key) {
+    Tunable tunable = REGISTRY.get(key);
+    if (tunable == null) {
+      throw new IllegalArgumentException("Unknown tunable " + key);
+    }
+    return this.conf.getInt(key, tunable.getDefault());
+  }
+
+  /**
+   * Validate and set new value, listeners are notified in the calling thread. Fails with
+   * IllegalArgumentException for unknown key or invalid value, configuration is not modified.
+   * @return previous value
+   */
+  public synchronized int set(String key, String value) {
+    Tunable tunable = REGISTRY.get(key);
+    if (tunable == null) {
+      throw new IllegalArgumentException("Unknown tunable " + key);
+    }
+    if (value == null) {
+      throw new IllegalArgumentException("Value for " + key + " is not provided");
+    }
+    int result = tunable.parse(value);
+    int previous = get(key);
+    this.conf.set(key, result);
+    LOG.info("Set tunable {} to {} (was {})", key, result, previous);
+    for (Listener listener : this.listeners) {
+      try {
+        listener.changed(key, result);
+      } catch (RuntimeException err) {
+        LOG.error("Failed to apply tunable " + key + " in " + listener, err);
+      }
+    }
+    return previous;
+  }
+
+  /** Register listener for updates of any tunable */
+  public void addListener(Listener listener) {
+    this.listeners.add(listener);
+  }
+
+  public void removeListener(Listener listener) {
+    this.listeners.remove(listener);
+  }
+
+  @Override
+  public String toString() {
+    return "Tunables(registered=" + REGISTRY.size() + ", listeners=" + this.listeners.size() + ")";
+  }
+}
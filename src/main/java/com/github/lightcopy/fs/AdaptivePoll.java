@@ -0,0 +1,65 @@
+package com.github.lightcopy.fs;
+
+/**
+ * [[AdaptivePoll]] computes timeout for blocking inotify poll. Timeout is reset to minimum value
+ * when events are received, and doubled on every empty poll, so idle stream is polled less often.
+ * Timeout never exceeds maximum value, which keeps shutdown responsive, and latency target, since
+ * blocking poll returns within its timeout when new events become available.
+ */
+public class AdaptivePoll {
+  private volatile long minTimeoutMs;
+  private volatile long maxTimeoutMs;
+  private volatile long timeoutMs;
+
+  public AdaptivePoll(long minTimeoutMs, long maxTimeoutMs, long latencyTargetMs) {
+    reconfigure(minTimeoutMs, maxTimeoutMs, latencyTargetMs);
+    this.timeoutMs = minTimeoutMs;
+  }
+
+  /**
+   * Update bounds, can be called while poll is in use. Current timeout is clamped to new bounds,
+   * so change takes effect on the next poll.
+   */
+  public void reconfigure(long minTimeoutMs, long maxTimeoutMs, long latencyTargetMs) {
+    if (minTimeoutMs <= 0) {
+      throw new IllegalArgumentException("Expected positive min timeout, found " + minTimeoutMs);
+    }
+    if (maxTimeoutMs < minTimeoutMs) {
+      throw new IllegalArgumentException("Expected max timeout >= min timeout, found " +
+        maxTimeoutMs + " < " + minTimeoutMs);
+    }
+    if (latencyTargetMs <= 0) {
+      throw new IllegalArgumentException("Expected positive latency target, found " +
+        latencyTargetMs);
+    }
+    this.minTimeoutMs = minTimeoutMs;
+    this.maxTimeoutMs = Math.max(minTimeoutMs, Math.min(maxTimeoutMs, latencyTargetMs));
+    this.timeoutMs = Math.max(this.minTimeoutMs, Math.min(this.timeoutMs, this.maxTimeoutMs));
+  }
+
+  /** Current timeout in milliseconds */
+  public long timeout() {
+    return this.timeoutMs;
+  }
+
+  /** Maximum timeout in milliseconds that this poll can reach */
+  public long maxTimeout() {
+    return this.maxTimeoutMs;
+  }
+
+  /** Events were received, reset timeout to minimum */
+  public void reset() {
+    this.timeoutMs = this.minTimeoutMs;
+  }
+
+  /** Poll was empty, increase timeout exponentially up to maximum */
+  public void backoff() {
+    this.timeoutMs = Math.min(this.timeoutMs * 2, this.maxTimeoutMs);
+  }
+
+  @Override
+  public String toString() {
+    return "AdaptivePoll(min=" + this.minTimeoutMs + ", max=" + this.maxTimeoutMs +
+      ", current=" + this.timeoutMs + ")";
+  }
+}
@@ -0,0 +1,81 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+
+import com.mongodb.async.SingleResultCallback;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.result.UpdateResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of [[EventStore]] on asynchronous Mongo driver. Inserts share write window with
+ * file system, so checkpoint covers both events and file system modifications.
+ */
+public class AsyncMongoEventPool implements EventStore {
+  private static final Logger LOG = LoggerFactory.getLogger(AsyncMongoEventPool.class);
+
+  // window to bound in-flight operations
+  private final AsyncWriteWindow window;
+  /** Mongo event pool collection */
+  private final MongoCollection<EventContainer> pool;
+
+  public AsyncMongoEventPool(MongoCollection<?> collection, AsyncWriteWindow window) {
+    this.window = window;
+    CodecRegistry defaults = collection.getCodecRegistry();
+    CodecRegistry support = CodecRegistries.fromCodecs(new EventCodec());
+    this.pool = collection
+      .withCodecRegistry(CodecRegistries.fromRegistries(defaults, support))
+      .withDocumentClass(EventContainer.class);
+  }
+
+  @Override
+  public void insert(final EventContainer container) {
+    final long sequence;
+    try {
+      sequence = this.window.acquire(AsyncWriteWindow.NO_SCOPES);
+    } catch (IOException ioe) {
+      throw new RuntimeException("Failed to insert event " + container, ioe);
+    }
+    // replace by id, re-applied batch does not duplicate events of transaction
+    UpdateOptions options = new UpdateOptions().upsert(true);
+    this.pool.replaceOne(Filters.eq(EventContainer.FIELD_ID, EventCodec.id(container)), container,
+      options, new SingleResultCallback<UpdateResult>() {
+        @Override
+        public void onResult(UpdateResult result, Throwable error) {
+          if (error != null) {
+            LOG.error("Failed to add event " + container, error);
+          } else {
+            LOG.info("Added event {}", container);
+          }
+          window.release(sequence, error);
+        }
+      });
+  }
+
+  @Override
+  public List<EventContainer> scan(long fromTransactionId, int limit) {
+    BlockingCallback<List<EventContainer>> callback = new BlockingCallback<List<EventContainer>>();
+    this.pool
+      .find(Filters.gte(EventContainer.FIELD_TRANSACTION_ID, fromTransactionId))
+      .sort(Sorts.ascending(EventContainer.FIELD_TRANSACTION_ID))
+      .limit(limit)
+      .into(new ArrayList<EventContainer>(), callback);
+    try {
+      List<EventContainer> events = callback.get();
+      LOG.debug("Scanned {} events from transaction {}", events.size(), fromTransactionId);
+      return events;
+    } catch (IOException ioe) {
+      throw new RuntimeException("Failed to scan events from " + fromTransactionId, ioe);
+    }
+  }
+}
@@ -0,0 +1,212 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+
+import com.mongodb.async.SingleResultCallback;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of [[FileSystemStore]] on asynchronous Mongo driver. Modification operations
+ * are submitted into [[AsyncWriteWindow]] and return without waiting for acknowledgement, so many
+ * writes can be in flight at the same time. Operations that touch the same path are applied in
+ * submission order. Reads wait for conflicting in-flight writes, so they always observe previous
+ * modifications of the path.
+ */
+public class AsyncMongoFileSystem implements FileSystemStore {
+  private static final Logger LOG = LoggerFactory.getLogger(AsyncMongoFileSystem.class);
+
+  // window to bound in-flight operations
+  private final AsyncWriteWindow window;
+  // underlying collection that serves as file system
+  private final MongoCollection<INode> fs;
+  // codec and schema to encode nodes and filters
+  private final INodeCodec codec;
+  private final INodeSchema schema;
+
+  public AsyncMongoFileSystem(
+      MongoCollection<?> collection,
+      AsyncWriteWindow window,
+      INodeCodec codec) {
+    this.window = window;
+    this.codec = codec;
+    this.schema = codec.getSchema();
+    CodecRegistry defaults = collection.getCodecRegistry();
+    CodecRegistry support = CodecRegistries.fromCodecs(codec);
+    this.fs = collection
+      .withCodecRegistry(CodecRegistries.fromRegistries(defaults, support))
+      .withDocumentClass(INode.class);
+  }
+
+  /**
+   * Create indexes required by collection, e.g. after collection is dropped. Point lookups
+   * match by path hash, see [[FsFilters]]. Called by [[AsyncMongoMetadataStore]].
+   */
+  public void ensureIndexes() throws IOException {
+    BlockingCallback<String> callback = new BlockingCallback<String>();
+    this.fs.createIndex(Indexes.ascending(this.schema.pathHash()), callback);
+    callback.get();
+  }
+
+  /** Callback to release operation in window once it is acknowledged */
+  private <T> SingleResultCallback<T> release(final long sequence, final String operation) {
+    return new SingleResultCallback<T>() {
+      @Override
+      public void onResult(T result, Throwable error) {
+        if (error != null) {
+          LOG.error("Operation " + operation + " failed", error);
+        } else {
+          LOG.debug("Operation {} acknowledged", operation);
+        }
+        window.release(sequence, error);
+      }
+    };
+  }
+
+  @Override
+  public INode get(INodePath path) {
+    try {
+      long sequence = this.window.acquire(Arrays.asList(AsyncWriteWindow.Scope.node(path)));
+      BlockingCallback<INode> callback = new BlockingCallback<INode>();
+      try {
+        this.fs.find(FsFilters.path(this.schema, path)).first(callback);
+        return callback.get();
+      } finally {
+        this.window.release(sequence, null);
+      }
+    } catch (IOException ioe) {
+      throw new RuntimeException("Failed to get path " + path, ioe);
+    }
+  }
+
+  @Override
+  public List<INode> list(INodePath path, boolean recursive) throws IOException {
+    long sequence = this.window.acquire(Arrays.asList(AsyncWriteWindow.Scope.subtree(path)));
+    BlockingCallback<List<INode>> callback = new BlockingCallback<List<INode>>();
+    try {
+      this.fs.find(FsFilters.children(this.schema, path, recursive))
+        .into(new ArrayList<INode>(), callback);
+      return callback.get();
+    } finally {
+      this.window.release(sequence, null);
+    }
+  }
+
+  @Override
+  public void delete(INodePath path, long transactionId) throws IOException {
+    long sequence = this.window.acquire(Arrays.asList(AsyncWriteWindow.Scope.subtree(path)));
+    this.fs.deleteMany(
+      FsFilters.notNewer(this.schema, FsFilters.paths(this.schema, path), transactionId),
+      this.<DeleteResult>release(sequence, "delete " + path));
+  }
+
+  @Override
+  public void upsert(final INode node) throws IOException {
+    final INodePath path = node.getPath();
+    this.codec.register(node);
+    final long sequence = this.window.acquire(Arrays.asList(AsyncWriteWindow.Scope.node(path)));
+    final String operation = "upsert " + path;
+    if (node.getTransactionId() == INode.NO_TRANSACTION) {
+      UpdateOptions options = new UpdateOptions().upsert(true);
+      this.fs.replaceOne(FsFilters.path(this.schema, path), node, options,
+        this.<UpdateResult>release(sequence, operation));
+      return;
+    }
+    // conditional replace, insert only if path does not exist, see MongoFileSystem
+    this.fs.replaceOne(
+      FsFilters.notNewer(this.schema, FsFilters.path(this.schema, path), node.getTransactionId()),
+      node, new SingleResultCallback<UpdateResult>() {
+        @Override
+        public void onResult(UpdateResult result, Throwable error) {
+          if (error != null || result.getMatchedCount() > 0) {
+            AsyncMongoFileSystem.this.<Void>release(sequence, operation).onResult(null, error);
+            return;
+          }
+          fs.count(FsFilters.path(schema, path), new SingleResultCallback<Long>() {
+            @Override
+            public void onResult(Long count, Throwable error) {
+              if (error != null || count > 0) {
+                AsyncMongoFileSystem.this.<Void>release(sequence, operation)
+                  .onResult(null, error);
+              } else {
+                fs.insertOne(node, AsyncMongoFileSystem.this.<Void>release(sequence, operation));
+              }
+            }
+          });
+        }
+      });
+  }
+
+  @Override
+  public void insert(List<INode> nodes) throws IOException {
+    if (nodes.isEmpty()) return;
+    // copy list, since caller may reuse it while insert is in flight
+    List<INode> batch = new ArrayList<INode>(nodes);
+    for (INode node : batch) {
+      this.codec.register(node);
+    }
+    long sequence = this.window.acquire(Arrays.asList(AsyncWriteWindow.Scope.covering(batch)));
+    this.fs.insertMany(batch, this.<Void>release(sequence, "insert " + batch.size() + " nodes"));
+  }
+
+  @Override
+  public void rename(final INodePath srcPath, final INodePath dstPath, final long transactionId)
+      throws IOException {
+    final long sequence = this.window.acquire(Arrays.asList(
+      AsyncWriteWindow.Scope.subtree(srcPath), AsyncWriteWindow.Scope.subtree(dstPath)));
+    final String operation = "rename " + srcPath + " -> " + dstPath;
+    // fetch subtree first and then replace all nodes with single bulk write
+    this.fs.find(FsFilters.notNewer(this.schema, FsFilters.paths(this.schema, srcPath),
+      transactionId)).into(new ArrayList<INode>(),
+      new SingleResultCallback<ArrayList<INode>>() {
+        @Override
+        public void onResult(ArrayList<INode> nodes, Throwable error) {
+          if (error != null || nodes.isEmpty()) {
+            AsyncMongoFileSystem.this.<Void>release(sequence, operation).onResult(null, error);
+            return;
+          }
+          List<WriteModel<INode>> models = new ArrayList<WriteModel<INode>>();
+          for (INode node : nodes) {
+            INodePath path = node.getPath();
+            node.setPath(path.withUpdatedPrefix(srcPath, dstPath));
+            if (transactionId != INode.NO_TRANSACTION) {
+              node.setTransactionId(transactionId);
+            }
+            models.add(new ReplaceOneModel<INode>(FsFilters.path(schema, path), node));
+          }
+          fs.bulkWrite(models,
+            AsyncMongoFileSystem.this.<BulkWriteResult>release(sequence, operation));
+        }
+      });
+  }
+
+  @Override
+  public void update(INodePath path, INodeUpdate builder) throws IOException {
+    Bson update = builder.bson(this.codec);
+    if (update == null) {
+      LOG.warn("Update was ignored, because bson update is null for path {}", path);
+      return;
+    }
+    long sequence = this.window.acquire(Arrays.asList(AsyncWriteWindow.Scope.node(path)));
+    this.fs.updateOne(
+      FsFilters.notNewer(this.schema, FsFilters.path(this.schema, path),
+        builder.getTransactionId()), update,
+      this.<UpdateResult>release(sequence, "update " + path));
+  }
+}
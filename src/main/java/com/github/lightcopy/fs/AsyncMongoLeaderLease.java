@@ -0,0 +1,75 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+
+import org.bson.Document;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+
+/**
+ * [[LeaderLease]] for asynchronous Mongo driver, uses the same document layout as
+ * [[MongoLeaderLease]]. Lease operations are infrequent, so caller blocks until result.
+ */
+public class AsyncMongoLeaderLease implements LeaderLease {
+  private final MongoCollection<Document> collection;
+  private final String name;
+  private final String owner;
+  private final long ttlMs;
+
+  public AsyncMongoLeaderLease(
+      MongoCollection<Document> collection,
+      String name,
+      String owner,
+      long ttlMs) {
+    this.collection = collection;
+    this.name = name;
+    this.owner = owner;
+    this.ttlMs = ttlMs;
+  }
+
+  @Override
+  public boolean acquire() throws IOException {
+    long now = System.currentTimeMillis();
+    BlockingCallback<UpdateResult> callback = new BlockingCallback<UpdateResult>();
+    this.collection.updateOne(MongoLeaderLease.available(this.name, this.owner, now),
+      MongoLeaderLease.assign(this.owner, now + this.ttlMs), new UpdateOptions().upsert(true),
+      callback);
+    try {
+      callback.get();
+      return true;
+    } catch (IOException ioe) {
+      if (ioe.getCause() instanceof MongoWriteException &&
+          ((MongoWriteException) ioe.getCause()).getError().getCategory() ==
+            ErrorCategory.DUPLICATE_KEY) {
+        return false;
+      }
+      throw ioe;
+    }
+  }
+
+  @Override
+  public void release() throws IOException {
+    BlockingCallback<DeleteResult> callback = new BlockingCallback<DeleteResult>();
+    this.collection.deleteOne(Filters.and(
+      Filters.eq(MongoMetadataStore.FIELD_ID, this.name),
+      Filters.eq(MongoLeaderLease.FIELD_OWNER, this.owner)), callback);
+    callback.get();
+  }
+
+  @Override
+  public String getOwner() {
+    return this.owner;
+  }
+
+  @Override
+  public String toString() {
+    return "AsyncMongoLeaderLease(name=" + this.name + ", owner=" + this.owner +
+      ", ttl=" + this.ttlMs + " ms)";
+  }
+}
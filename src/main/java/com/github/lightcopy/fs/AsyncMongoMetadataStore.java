@@ -0,0 +1,264 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+
+import org.bson.Document;
+
+import com.mongodb.async.SingleResultCallback;
+import com.mongodb.async.client.MongoClient;
+import com.mongodb.async.client.MongoClients;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.async.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.result.UpdateResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.lightcopy.conf.HdfsSource;
+
+/**
+ * [[MetadataStore]] backed by MongoDB using asynchronous driver. Uses the same database layout as
+ * [[MongoMetadataStore]]. File system and event writes are pipelined through shared
+ * [[AsyncWriteWindow]], checkpoint is written only when all writes submitted before it are
+ * acknowledged. Each store has its own window, so namespaces sharing client do not block each
+ * other.
+ */
+public class AsyncMongoMetadataStore implements MetadataStore {
+  private static final Logger LOG = LoggerFactory.getLogger(AsyncMongoMetadataStore.class);
+  // maximum time in milliseconds query waits for writes of transaction to be acknowledged
+  public static final long READ_WAIT_MS = 1000L;
+
+  private MongoClient mongo;
+  private final boolean ownsClient;
+  private final String namespace;
+  private final AsyncWriteWindow window;
+  private final AsyncMongoFileSystem mongoFS;
+  private final AsyncMongoEventPool mongoEventPool;
+  private final AsyncMongoRollupStore rollups;
+  private final AsyncMongoTimeSeriesStore timeSeries;
+  private final MongoCollection<Document> checkpoints;
+  private volatile boolean closed;
+  // highest transaction with all writes acknowledged, guarded by `this`
+  private long acknowledged;
+
+  public AsyncMongoMetadataStore(String mongoConnection, int windowSize, INodeSchema schema) {
+    this(createClient(mongoConnection), true, HdfsSource.DEFAULT_NAME, windowSize, schema, null);
+  }
+
+  public AsyncMongoMetadataStore(
+      MongoClient mongo,
+      String namespace,
+      int windowSize,
+      INodeSchema schema,
+      NameDictionary dictionary) {
+    this(mongo, false, namespace, windowSize, schema, dictionary);
+  }
+
+  private AsyncMongoMetadataStore(
+      MongoClient mongo,
+      boolean ownsClient,
+      String namespace,
+      int windowSize,
+      INodeSchema schema,
+      NameDictionary dictionary) {
+    this.mongo = mongo;
+    this.ownsClient = ownsClient;
+    this.namespace = namespace;
+    this.window = new AsyncWriteWindow(windowSize);
+    this.acknowledged = -1L;
+    MongoDatabase database = this.mongo.getDatabase(MongoMetadataStore.MONGO_DATABASE);
+    if (dictionary == null) {
+      dictionary = new AsyncMongoNameDictionary(
+        database.getCollection(MongoMetadataStore.MONGO_COLLECTION_DICTIONARY));
+    }
+    LOG.info("Use inode schema {} for namespace {}, window {}", schema, namespace, windowSize);
+    this.mongoFS = new AsyncMongoFileSystem(database.getCollection(
+      MongoMetadataStore.collectionName(MongoMetadataStore.MONGO_COLLECTION_FILE_SYSTEM,
+        namespace)), this.window, new INodeCodec(schema, dictionary));
+    try {
+      this.mongoFS.ensureIndexes();
+    } catch (IOException ioe) {
+      throw new RuntimeException("Failed to create indexes for namespace " + namespace, ioe);
+    }
+    this.mongoEventPool = new AsyncMongoEventPool(database.getCollection(
+      MongoMetadataStore.collectionName(MongoMetadataStore.MONGO_COLLECTION_EVENT_POOL,
+        namespace)), this.window);
+    this.checkpoints = database.getCollection(
+      MongoMetadataStore.collectionName(MongoMetadataStore.MONGO_COLLECTION_CHECKPOINT,
+        namespace));
+    this.rollups = new AsyncMongoRollupStore(database.getCollection(
+      MongoMetadataStore.collectionName(MongoMetadataStore.MONGO_COLLECTION_ROLLUP, namespace)));
+    this.timeSeries = new AsyncMongoTimeSeriesStore(database.getCollection(
+      MongoMetadataStore.collectionName(MongoMetadataStore.MONGO_COLLECTION_TIME_SERIES,
+        namespace)));
+    this.closed = false;
+  }
+
+  /** Create new client for connection string */
+  private static MongoClient createClient(String mongoConnection) {
+    LOG.info("Initialize async mongo client for connection {}", mongoConnection);
+    return MongoClients.create(mongoConnection);
+  }
+
+  @Override
+  public FileSystemStore fileSystem() {
+    return this.mongoFS;
+  }
+
+  /**
+   * Queries are served by the same client. Query that must observe transaction waits up to
+   * READ_WAIT_MS for in-flight writes of that transaction to be acknowledged.
+   */
+  @Override
+  public FileSystemStore reader(long transactionId) {
+    if (transactionId > INode.NO_TRANSACTION) {
+      awaitAcknowledged(transactionId);
+    }
+    return this.mongoFS;
+  }
+
+  private synchronized void awaitAcknowledged(long transactionId) {
+    long deadline = System.currentTimeMillis() + READ_WAIT_MS;
+    try {
+      while (this.acknowledged < transactionId) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          LOG.debug("Transaction {} is not acknowledged within {} ms", transactionId, READ_WAIT_MS);
+          return;
+        }
+        wait(remaining);
+      }
+    } catch (InterruptedException err) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public synchronized long getAcknowledged() {
+    return this.acknowledged;
+  }
+
+  private synchronized void acknowledge(long transactionId) {
+    this.acknowledged = Math.max(this.acknowledged, transactionId);
+    notifyAll();
+  }
+
+  @Override
+  public EventStore eventPool() {
+    return this.mongoEventPool;
+  }
+
+  @Override
+  public RollupStore rollups() {
+    return this.rollups;
+  }
+
+  @Override
+  public TimeSeriesStore timeSeries() {
+    return this.timeSeries;
+  }
+
+  @Override
+  public void checkpoint(final long transactionId) throws IOException {
+    this.window.onComplete(new Runnable() {
+      @Override
+      public void run() {
+        acknowledge(transactionId);
+        // checkpoint only moves forward, so concurrent checkpoint writes are safe
+        checkpoints.updateOne(
+          Filters.eq(MongoMetadataStore.FIELD_ID, MongoMetadataStore.CHECKPOINT_ID),
+          Updates.combine(Updates.max(MongoMetadataStore.FIELD_TRANSACTION_ID, transactionId),
+            Updates.set(MongoMetadataStore.FIELD_CHECKPOINT_TIME, System.currentTimeMillis())),
+          new UpdateOptions().upsert(true),
+          new SingleResultCallback<UpdateResult>() {
+            @Override
+            public void onResult(UpdateResult result, Throwable error) {
+              if (error != null) {
+                LOG.error("Failed to update checkpoint " + transactionId, error);
+              } else {
+                LOG.debug("Checkpoint transaction {}", transactionId);
+              }
+            }
+          });
+      }
+    });
+  }
+
+  @Override
+  public long getCheckpoint() {
+    BlockingCallback<Document> callback = new BlockingCallback<Document>();
+    this.checkpoints
+      .find(Filters.eq(MongoMetadataStore.FIELD_ID, MongoMetadataStore.CHECKPOINT_ID))
+      .first(callback);
+    try {
+      Document doc = callback.get();
+      return (doc == null) ? -1L : doc.getLong(MongoMetadataStore.FIELD_TRANSACTION_ID);
+    } catch (IOException ioe) {
+      throw new RuntimeException("Failed to read checkpoint", ioe);
+    }
+  }
+
+  @Override
+  public LeaderLease lease(String owner, long ttlMs) {
+    return new AsyncMongoLeaderLease(this.mongo.getDatabase(MongoMetadataStore.MONGO_DATABASE)
+      .getCollection(MongoMetadataStore.MONGO_COLLECTION_LEASE), this.namespace, owner, ttlMs);
+  }
+
+  /** Drop collection and wait for result */
+  private void drop(String base) throws IOException {
+    BlockingCallback<Void> callback = new BlockingCallback<Void>();
+    this.mongo.getDatabase(MongoMetadataStore.MONGO_DATABASE)
+      .getCollection(MongoMetadataStore.collectionName(base, this.namespace))
+      .drop(callback);
+    callback.get();
+  }
+
+  @Override
+  public void cleanup() {
+    // delete collections of namespace, other namespaces and dictionary are not affected
+    LOG.info("Delete Mongo collections for namespace {}", this.namespace);
+    try {
+      this.window.await();
+      drop(MongoMetadataStore.MONGO_COLLECTION_FILE_SYSTEM);
+      drop(MongoMetadataStore.MONGO_COLLECTION_EVENT_POOL);
+      drop(MongoMetadataStore.MONGO_COLLECTION_CHECKPOINT);
+      drop(MongoMetadataStore.MONGO_COLLECTION_ROLLUP);
+      // dropping collection also drops its indexes
+      this.mongoFS.ensureIndexes();
+    } catch (IOException ioe) {
+      throw new RuntimeException("Failed to clean up namespace " + this.namespace, ioe);
+    }
+  }
+
+  /** Change maximum number of in-flight writes, see [[AsyncWriteWindow]] */
+  public void setWindowSize(int windowSize) {
+    this.window.setCapacity(windowSize);
+  }
+
+  @Override
+  public boolean isAlive() {
+    return !this.closed && !this.window.hasFailed();
+  }
+
+  @Override
+  public void close() {
+    this.closed = true;
+    try {
+      this.window.await();
+    } catch (IOException ioe) {
+      LOG.error("Failed to complete in-flight operations", ioe);
+    }
+    if (this.ownsClient) {
+      this.mongo.close();
+    }
+    this.mongo = null;
+  }
+
+  @Override
+  public String toString() {
+    return "AsyncMongoMetadataStore(namespace=" + this.namespace + ", " + this.window + ")";
+  }
+}
@@ -0,0 +1,105 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.result.UpdateResult;
+
+/**
+ * [[NameDictionary]] stored in Mongo collection using asynchronous driver, has the same layout
+ * and id allocation as [[MongoNameDictionary]]. Operations block, since dictionary is only
+ * written for new names.
+ */
+public class AsyncMongoNameDictionary extends NameDictionary {
+  private final MongoCollection<Document> collection;
+
+  public AsyncMongoNameDictionary(MongoCollection<Document> collection) {
+    this.collection = collection;
+    BlockingCallback<String> callback = new BlockingCallback<String>();
+    this.collection.createIndex(Indexes.ascending(MongoNameDictionary.FIELD_NAME),
+      new IndexOptions().unique(true), callback);
+    try {
+      callback.get();
+    } catch (IOException ioe) {
+      throw new RuntimeException("Failed to create dictionary index", ioe);
+    }
+    reload();
+  }
+
+  @Override
+  protected Map<Integer, String> loadAll() {
+    BlockingCallback<List<Document>> callback = new BlockingCallback<List<Document>>();
+    this.collection.find(Filters.exists(MongoNameDictionary.FIELD_NAME))
+      .into(new ArrayList<Document>(), callback);
+    Map<Integer, String> entries = new HashMap<Integer, String>();
+    try {
+      int maxId = -1;
+      for (Document doc : callback.get()) {
+        int id = doc.getInteger(MongoNameDictionary.FIELD_ID);
+        entries.put(id, doc.getString(MongoNameDictionary.FIELD_NAME));
+        maxId = Math.max(maxId, id);
+      }
+      // dictionaries written without counter continue after the highest id
+      BlockingCallback<UpdateResult> counter = new BlockingCallback<UpdateResult>();
+      this.collection.updateOne(
+        Filters.eq(MongoNameDictionary.FIELD_ID, MongoNameDictionary.COUNTER_ID),
+        Updates.max(MongoNameDictionary.FIELD_NEXT, maxId + 1),
+        new UpdateOptions().upsert(true), counter);
+      counter.get();
+    } catch (IOException ioe) {
+      throw new RuntimeException("Failed to load dictionary", ioe);
+    }
+    return entries;
+  }
+
+  @Override
+  protected int assign(String name) {
+    try {
+      while (true) {
+        BlockingCallback<Document> existing = new BlockingCallback<Document>();
+        this.collection.find(Filters.eq(MongoNameDictionary.FIELD_NAME, name)).first(existing);
+        Document doc = existing.get();
+        if (doc != null) return doc.getInteger(MongoNameDictionary.FIELD_ID);
+        BlockingCallback<Document> counter = new BlockingCallback<Document>();
+        this.collection.findOneAndUpdate(
+          Filters.eq(MongoNameDictionary.FIELD_ID, MongoNameDictionary.COUNTER_ID),
+          Updates.inc(MongoNameDictionary.FIELD_NEXT, 1),
+          new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER),
+          counter);
+        int id = counter.get().getInteger(MongoNameDictionary.FIELD_NEXT) - 1;
+        BlockingCallback<Void> insert = new BlockingCallback<Void>();
+        this.collection.insertOne(new Document(MongoNameDictionary.FIELD_ID, id)
+          .append(MongoNameDictionary.FIELD_NAME, name), insert);
+        try {
+          insert.get();
+          return id;
+        } catch (IOException ioe) {
+          if (!isDuplicateKey(ioe.getCause())) throw ioe;
+          // name was added by another writer, read its id on next iteration
+        }
+      }
+    } catch (IOException ioe) {
+      throw new RuntimeException("Failed to add dictionary entry " + name, ioe);
+    }
+  }
+
+  private static boolean isDuplicateKey(Throwable error) {
+    return error instanceof MongoWriteException &&
+      ((MongoWriteException) error).getError().getCategory() == ErrorCategory.DUPLICATE_KEY;
+  }
+}
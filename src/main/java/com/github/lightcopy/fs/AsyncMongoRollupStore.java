@@ -0,0 +1,48 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.WriteModel;
+
+/**
+ * [[RollupStore]] on asynchronous Mongo driver, uses the same layout as [[MongoRollupStore]].
+ * Flushes are infrequent and small, so operations block until acknowledged instead of going
+ * through write window.
+ */
+public class AsyncMongoRollupStore implements RollupStore {
+  private final MongoCollection<Document> rollups;
+
+  public AsyncMongoRollupStore(MongoCollection<Document> rollups) {
+    this.rollups = rollups;
+  }
+
+  @Override
+  public void save(String kind, Map<String, UsageRollup.Usage> usage) throws IOException {
+    List<WriteModel<Document>> writes = MongoRollupStore.writes(kind, usage);
+    if (writes.isEmpty()) return;
+    BlockingCallback<BulkWriteResult> callback = new BlockingCallback<BulkWriteResult>();
+    this.rollups.bulkWrite(writes, callback);
+    callback.get();
+  }
+
+  @Override
+  public Map<String, UsageRollup.Usage> load(String kind) throws IOException {
+    BlockingCallback<List<Document>> callback = new BlockingCallback<List<Document>>();
+    this.rollups.find(Filters.eq(MongoRollupStore.FIELD_KIND, kind))
+      .into(new ArrayList<Document>(), callback);
+    Map<String, UsageRollup.Usage> usage = new HashMap<String, UsageRollup.Usage>();
+    for (Document doc : callback.get()) {
+      MongoRollupStore.read(doc, usage);
+    }
+    return usage;
+  }
+}
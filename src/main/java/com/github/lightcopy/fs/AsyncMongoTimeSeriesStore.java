@@ -0,0 +1,55 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.Document;
+
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+
+/**
+ * [[TimeSeriesStore]] on asynchronous Mongo driver, uses the same layout as
+ * [[MongoTimeSeriesStore]]. Samples are written once per interval, so operations block until
+ * acknowledged.
+ */
+public class AsyncMongoTimeSeriesStore implements TimeSeriesStore {
+  private final MongoCollection<Document> samples;
+
+  public AsyncMongoTimeSeriesStore(MongoCollection<Document> samples) {
+    this.samples = samples;
+  }
+
+  @Override
+  public void record(GrowthSample sample) throws IOException {
+    BlockingCallback<UpdateResult> callback = new BlockingCallback<UpdateResult>();
+    this.samples.replaceOne(MongoTimeSeriesStore.filter(sample),
+      MongoTimeSeriesStore.toDocument(sample), new UpdateOptions().upsert(true), callback);
+    callback.get();
+  }
+
+  @Override
+  public List<GrowthSample> query(String subtree, GrowthTier tier, long from, long to)
+      throws IOException {
+    BlockingCallback<List<Document>> callback = new BlockingCallback<List<Document>>();
+    this.samples.find(MongoTimeSeriesStore.rangeFilter(subtree, tier, from, to))
+      .sort(Sorts.ascending(MongoMetadataStore.FIELD_ID))
+      .into(new ArrayList<Document>(), callback);
+    List<GrowthSample> result = new ArrayList<GrowthSample>();
+    for (Document doc : callback.get()) {
+      result.add(MongoTimeSeriesStore.fromDocument(doc));
+    }
+    return result;
+  }
+
+  @Override
+  public void expire(GrowthTier tier, long before) throws IOException {
+    BlockingCallback<DeleteResult> callback = new BlockingCallback<DeleteResult>();
+    this.samples.deleteMany(MongoTimeSeriesStore.expireFilter(tier, before), callback);
+    callback.get();
+  }
+}
@@ -0,0 +1,271 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * [[AsyncWriteWindow]] bounds number of in-flight asynchronous operations and keeps per-path
+ * ordering. Each operation declares scopes it touches; operation is admitted only when window has
+ * capacity and no in-flight operation overlaps any of its scopes, otherwise caller blocks. Since
+ * operations are submitted by single thread, operations on the same path are applied in
+ * submission order, while operations on unrelated paths are pipelined.
+ *
+ * Window also supports barriers: action registered with `onComplete` runs once all operations
+ * submitted before it are acknowledged. After any operation fails, pending barriers are discarded
+ * and the next call of `acquire`, `onComplete` or `await` throws failure. Failure is cleared once
+ * it is thrown, caller is expected to re-apply all operations after the last completed barrier,
+ * which is safe, since writes are conditional on transaction id.
+ */
+public class AsyncWriteWindow {
+  /** Path scope of operation, either single node or subtree (node and all its children) */
+  public static class Scope {
+    private final INodePath path;
+    private final boolean subtree;
+
+    private Scope(INodePath path, boolean subtree) {
+      this.path = path;
+      this.subtree = subtree;
+    }
+
+    /** Scope for single node */
+    public static Scope node(INodePath path) {
+      return new Scope(path, false);
+    }
+
+    /** Scope for node and all its children */
+    public static Scope subtree(INodePath path) {
+      return new Scope(path, true);
+    }
+
+    /** Scope that covers all nodes in the list, which is subtree of their common ancestor */
+    public static Scope covering(List<INode> nodes) {
+      if (nodes.size() == 1) return node(nodes.get(0).getPath());
+      INodePath prefix = null;
+      for (INode node : nodes) {
+        INodePath path = node.getPath();
+        if (prefix == null) {
+          prefix = path;
+        } else {
+          while (!path.hasPrefix(prefix)) {
+            prefix = prefix.getParent();
+          }
+        }
+      }
+      return subtree(prefix);
+    }
+
+    /** Whether or not two scopes share at least one node */
+    public boolean overlaps(Scope other) {
+      if (this.subtree && other.path.hasPrefix(this.path)) return true;
+      if (other.subtree && this.path.hasPrefix(other.path)) return true;
+      return this.path.equals(other.path);
+    }
+
+    @Override
+    public String toString() {
+      return (this.subtree ? "Subtree" : "Node") + "(" + this.path + ")";
+    }
+  }
+
+  // scopes for operations that do not touch file system, e.g. event inserts
+  public static final List<Scope> NO_SCOPES = Collections.<Scope>emptyList();
+
+  private int capacity;
+  private final ReentrantLock lock;
+  private final Condition changed;
+  // in-flight operations by sequence number
+  private final TreeMap<Long, List<Scope>> inflight;
+  // pending barriers by sequence number of the last operation they wait for
+  private final TreeMap<Long, List<Runnable>> barriers;
+  private long nextSequence;
+  private Throwable failure;
+
+  public AsyncWriteWindow(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Expected positive capacity, found " + capacity);
+    }
+    this.capacity = capacity;
+    this.lock = new ReentrantLock();
+    this.changed = this.lock.newCondition();
+    this.inflight = new TreeMap<Long, List<Scope>>();
+    this.barriers = new TreeMap<Long, List<Runnable>>();
+    this.nextSequence = 0L;
+    this.failure = null;
+  }
+
+  /**
+   * Change maximum number of in-flight operations. Operations already admitted are not affected,
+   * when capacity is reduced new operations wait until window drains below new capacity.
+   */
+  public void setCapacity(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Expected positive capacity, found " + capacity);
+    }
+    this.lock.lock();
+    try {
+      this.capacity = capacity;
+      this.changed.signalAll();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Throw exception if any of the previous operations failed, failure is cleared once observed,
+   * must be called under lock.
+   */
+  private void checkFailure() throws IOException {
+    if (this.failure != null) {
+      Throwable error = this.failure;
+      this.failure = null;
+      throw new IOException("Previous asynchronous operation failed", error);
+    }
+  }
+
+  /** Whether or not any in-flight operation overlaps scopes, must be called under lock */
+  private boolean conflicts(List<Scope> scopes) {
+    for (List<Scope> active : this.inflight.values()) {
+      for (Scope scope : scopes) {
+        for (Scope other : active) {
+          if (scope.overlaps(other)) return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /** Smallest sequence number that has not been acknowledged, must be called under lock */
+  private long lowestPending() {
+    return this.inflight.isEmpty() ? this.nextSequence : this.inflight.firstKey();
+  }
+
+  /**
+   * Admit operation into window, blocks until there is capacity and no in-flight operation
+   * overlaps provided scopes.
+   * @param scopes list of scopes operation touches
+   * @return sequence number of operation, must be passed to `release`
+   */
+  public long acquire(List<Scope> scopes) throws IOException {
+    this.lock.lock();
+    try {
+      checkFailure();
+      while (this.inflight.size() >= this.capacity || conflicts(scopes)) {
+        this.changed.await();
+        checkFailure();
+      }
+      long sequence = this.nextSequence++;
+      this.inflight.put(sequence, scopes);
+      return sequence;
+    } catch (InterruptedException err) {
+      throw new InterruptedIOException("Interrupted while waiting for write window");
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Release operation once it is acknowledged or failed.
+   * @param sequence sequence number returned by `acquire`
+   * @param error failure or null if operation succeeded
+   */
+  public void release(long sequence, Throwable error) {
+    List<Runnable> ready = new ArrayList<Runnable>();
+    this.lock.lock();
+    try {
+      this.inflight.remove(sequence);
+      if (error != null && this.failure == null) {
+        this.failure = error;
+      }
+      if (this.failure != null) {
+        // do not run barriers after failure, e.g. checkpoint must not move past failed write
+        this.barriers.clear();
+      } else {
+        long lowest = lowestPending();
+        while (!this.barriers.isEmpty() && this.barriers.firstKey() < lowest) {
+          ready.addAll(this.barriers.pollFirstEntry().getValue());
+        }
+      }
+      this.changed.signalAll();
+    } finally {
+      this.lock.unlock();
+    }
+    // run actions outside of the lock
+    for (Runnable action : ready) {
+      action.run();
+    }
+  }
+
+  /** Run action once all operations submitted before this call are acknowledged */
+  public void onComplete(Runnable action) throws IOException {
+    this.lock.lock();
+    try {
+      checkFailure();
+      long barrier = this.nextSequence - 1;
+      if (barrier >= lowestPending()) {
+        List<Runnable> actions = this.barriers.get(barrier);
+        if (actions == null) {
+          actions = new ArrayList<Runnable>();
+          this.barriers.put(barrier, actions);
+        }
+        actions.add(action);
+        return;
+      }
+    } finally {
+      this.lock.unlock();
+    }
+    action.run();
+  }
+
+  /** Block until all in-flight operations are acknowledged */
+  public void await() throws IOException {
+    this.lock.lock();
+    try {
+      while (!this.inflight.isEmpty()) {
+        this.changed.await();
+      }
+      checkFailure();
+    } catch (InterruptedException err) {
+      throw new InterruptedIOException("Interrupted while waiting for in-flight operations");
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /** Whether or not any of the operations has failed and failure has not been observed yet */
+  public boolean hasFailed() {
+    this.lock.lock();
+    try {
+      return this.failure != null;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /** Number of in-flight operations */
+  public int size() {
+    this.lock.lock();
+    try {
+      return this.inflight.size();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public String toString() {
+    this.lock.lock();
+    try {
+      return "AsyncWriteWindow(capacity=" + this.capacity + ", inflight=" +
+        this.inflight.size() + ")";
+    } finally {
+      this.lock.unlock();
+    }
+  }
+}
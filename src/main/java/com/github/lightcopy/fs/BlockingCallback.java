@@ -0,0 +1,37 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+
+import com.mongodb.async.SingleResultCallback;
+
+/**
+ * Callback for asynchronous Mongo operation that allows caller to block until result is
+ * available. Used for read operations that must return result to the caller.
+ */
+class BlockingCallback<T> implements SingleResultCallback<T> {
+  private final CountDownLatch latch = new CountDownLatch(1);
+  private volatile T result;
+  private volatile Throwable error;
+
+  @Override
+  public void onResult(T result, Throwable error) {
+    this.result = result;
+    this.error = error;
+    this.latch.countDown();
+  }
+
+  /** Wait for operation to complete and return result, rethrows failure as IOException */
+  public T get() throws IOException {
+    try {
+      this.latch.await();
+    } catch (InterruptedException err) {
+      throw new InterruptedIOException("Interrupted while waiting for result");
+    }
+    if (this.error != null) {
+      throw new IOException("Asynchronous operation failed", this.error);
+    }
+    return this.result;
+  }
+}
@@ -0,0 +1,243 @@
+package com.github.lightcopy.fs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.hdfs.inotify.Event;
+
+/**
+ * In-memory change feed of applied events. Events are kept in a fixed size ring buffer shared by
+ * all subscribers, so serving subscribers never queries metadata store. Subscribers resume from
+ * the last transaction id they have seen; events of the same transaction are always returned
+ * together. When subscriber falls behind the buffer, read fails with [[ChangeFeed.GapException]]
+ * and subscriber is expected to resync, e.g. using file system listing.
+ *
+ * Feed is populated by active instance only, standby instances return no events.
+ */
+public class ChangeFeed {
+  /** Applied event in a form suitable for subscribers */
+  public static class Change {
+    private final long transactionId;
+    private final String type;
+    private final INodePath path;
+    private final INodePath dstPath;
+    private final long timestamp;
+
+    public Change(long transactionId, String type, INodePath path, INodePath dstPath,
+        long timestamp) {
+      this.transactionId = transactionId;
+      this.type = type;
+      this.path = path;
+      this.dstPath = dstPath;
+      this.timestamp = timestamp;
+    }
+
+    /** Convert inotify event of transaction */
+    public static Change fromEvent(long transactionId, Event event) {
+      String type = event.getEventType().name();
+      long timestamp = EventProcess.eventTimestamp(event);
+      switch (event.getEventType()) {
+        case APPEND:
+          return new Change(transactionId, type,
+            new INodePath(((Event.AppendEvent) event).getPath()), null, timestamp);
+        case CLOSE:
+          return new Change(transactionId, type,
+            new INodePath(((Event.CloseEvent) event).getPath()), null, timestamp);
+        case CREATE:
+          return new Change(transactionId, type,
+            new INodePath(((Event.CreateEvent) event).getPath()), null, timestamp);
+        case METADATA:
+          return new Change(transactionId, type,
+            new INodePath(((Event.MetadataUpdateEvent) event).getPath()), null, timestamp);
+        case RENAME:
+          Event.RenameEvent rename = (Event.RenameEvent) event;
+          return new Change(transactionId, type, new INodePath(rename.getSrcPath()),
+            new INodePath(rename.getDstPath()), timestamp);
+        case UNLINK:
+          return new Change(transactionId, type,
+            new INodePath(((Event.UnlinkEvent) event).getPath()), null, timestamp);
+        default:
+          throw new UnsupportedOperationException("Unsupported event " + event);
+      }
+    }
+
+    public long getTransactionId() {
+      return this.transactionId;
+    }
+
+    /** Event type name, e.g. CREATE */
+    public String getType() {
+      return this.type;
+    }
+
+    public INodePath getPath() {
+      return this.path;
+    }
+
+    /** Destination path of rename, null for other events */
+    public INodePath getDstPath() {
+      return this.dstPath;
+    }
+
+    /** NameNode timestamp of the event, or 0 if event does not carry timestamp */
+    public long getTimestamp() {
+      return this.timestamp;
+    }
+
+    /** Whether or not change matches prefix and types, null values match everything */
+    public boolean matches(INodePath prefix, Set<String> types) {
+      if (types != null && !types.contains(this.type)) return false;
+      if (prefix == null) return true;
+      return this.path.hasPrefix(prefix) ||
+        (this.dstPath != null && this.dstPath.hasPrefix(prefix));
+    }
+
+    @Override
+    public String toString() {
+      return "Change(txid=" + this.transactionId + ", type=" + this.type + ", path=" +
+        this.path.toPathString() + ((this.dstPath == null) ? "" :
+        ", dst=" + this.dstPath.toPathString()) + ")";
+    }
+  }
+
+  /** Thrown when requested transaction is no longer available in buffer */
+  public static class GapException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public GapException(String message) {
+      super(message);
+    }
+  }
+
+  /** Result of a read: matching changes and transaction id to resume from */
+  public static class Slice {
+    private final List<Change> changes;
+    private final long nextTransactionId;
+
+    Slice(List<Change> changes, long nextTransactionId) {
+      this.changes = changes;
+      this.nextTransactionId = nextTransactionId;
+    }
+
+    public List<Change> getChanges() {
+      return this.changes;
+    }
+
+    /** Last transaction id covered by this read, pass it as `from` for the next read */
+    public long getNextTransactionId() {
+      return this.nextTransactionId;
+    }
+  }
+
+  private final Change[] buffer;
+  // sequence number of the next change, change with sequence n is stored at n % capacity
+  private long head;
+  // last published transaction id, batch retries are not published twice
+  private long lastTransactionId;
+  // transaction id of the last change evicted from buffer, or -1 if nothing was evicted
+  private long evictedTransactionId;
+
+  public ChangeFeed(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Expected positive capacity, found " + capacity);
+    }
+    this.buffer = new Change[capacity];
+    this.head = 0L;
+    this.lastTransactionId = -1L;
+    this.evictedTransactionId = -1L;
+  }
+
+  /** Publish events of applied transaction and wake up waiting subscribers */
+  public synchronized void publish(long transactionId, Event[] events) {
+    if (transactionId <= this.lastTransactionId) return;
+    for (Event event : events) {
+      int index = (int) (this.head % this.buffer.length);
+      if (this.buffer[index] != null) {
+        this.evictedTransactionId = this.buffer[index].getTransactionId();
+      }
+      this.buffer[index] = Change.fromEvent(transactionId, event);
+      this.head++;
+    }
+    this.lastTransactionId = transactionId;
+    notifyAll();
+  }
+
+  /** Sequence number of the oldest change in buffer */
+  private long tail() {
+    return Math.max(0L, this.head - this.buffer.length);
+  }
+
+  private Change at(long sequence) {
+    return this.buffer[(int) (sequence % this.buffer.length)];
+  }
+
+  /** Sequence of the first change with transaction id greater than provided, binary search */
+  private long firstAfter(long transactionId) {
+    long low = tail();
+    long high = this.head;
+    while (low < high) {
+      long mid = (low + high) >>> 1;
+      if (at(mid).getTransactionId() <= transactionId) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Read changes of transactions after provided transaction id, waiting up to timeout if no
+   * changes are available yet. Whole transactions are returned, so result can contain slightly
+   * more than limit changes.
+   * @param fromTransactionId last seen transaction id, or -1 to read from the oldest change
+   * @param prefix path prefix filter, or null
+   * @param types set of event type names, or null for all types
+   * @param limit maximum number of changes to scan
+   * @param timeoutMs time to wait for new changes
+   * @return slice of matching changes
+   * @throws GapException if changes after transaction have been evicted from buffer
+   */
+  public synchronized Slice read(long fromTransactionId, INodePath prefix, Set<String> types,
+      int limit, long timeoutMs) throws GapException, InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    long remaining = timeoutMs;
+    while (this.lastTransactionId <= fromTransactionId && remaining > 0) {
+      wait(remaining);
+      remaining = deadline - System.currentTimeMillis();
+    }
+    // transaction ids are not contiguous, gap exists if any unseen change was evicted
+    if (fromTransactionId >= 0 && fromTransactionId < this.evictedTransactionId) {
+      throw new GapException("Changes after transaction " + fromTransactionId +
+        " are no longer available, oldest transaction is " + at(tail()).getTransactionId());
+    }
+    List<Change> changes = new ArrayList<Change>();
+    long next = Math.max(fromTransactionId, -1L);
+    long sequence = firstAfter(fromTransactionId);
+    long scanned = 0;
+    while (sequence < this.head) {
+      Change change = at(sequence);
+      // stop only at transaction boundary
+      if (scanned >= limit && change.getTransactionId() != next) break;
+      if (change.matches(prefix, types)) {
+        changes.add(change);
+      }
+      next = change.getTransactionId();
+      sequence++;
+      scanned++;
+    }
+    return new Slice(changes, next);
+  }
+
+  /** Last published transaction id, or -1 if nothing has been published */
+  public synchronized long getLastTransactionId() {
+    return this.lastTransactionId;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "ChangeFeed(capacity=" + this.buffer.length + ", size=" + (this.head - tail()) +
+      ", lastTransactionId=" + this.lastTransactionId + ")";
+  }
+}
@@ -0,0 +1,299 @@
+package com.github.lightcopy.fs;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.lightcopy.conf.AppConf;
+
+/**
+ * Background verifier that detects and repairs drift between HDFS and metadata store. Verifier
+ * walks tree top-down and lists every directory in HDFS, hash of listed children is compared with
+ * directory hash maintained by [[DirectoryHashFileSystem]]; children of the store are only read
+ * and repaired for directories with mismatching hash. NameNode calls are rate limited, and pass
+ * runs only while manager is active.
+ *
+ * Entries modified within grace period are not repaired, since events for them might not have
+ * been applied yet; hash of such directory is left as is and is verified again on the next pass.
+ * Repairs are stamped with checkpoint at the start of the pass, so they never overwrite nodes
+ * modified by events applied after that.
+ */
+public class ConsistencyVerifier implements Runnable {
+  private static final Logger LOG = LoggerFactory.getLogger(ConsistencyVerifier.class);
+  // maximum number of repaired paths to keep in report
+  public static final int REPORT_MAX_PATHS = 100;
+
+  /** Summary of single verification pass */
+  public static class Report {
+    private final long startTime;
+    private long endTime;
+    private long directories;
+    private long mismatches;
+    private long inserted;
+    private long updated;
+    private long deleted;
+    private long hashes;
+    private long skipped;
+    private final List<String> paths;
+
+    Report(long startTime) {
+      this.startTime = startTime;
+      this.paths = new ArrayList<String>();
+    }
+
+    private void repaired(INodePath path) {
+      if (this.paths.size() < REPORT_MAX_PATHS) {
+        this.paths.add(path.toPathString());
+      }
+    }
+
+    public long getStartTime() {
+      return this.startTime;
+    }
+
+    public long getEndTime() {
+      return this.endTime;
+    }
+
+    /** Number of verified directories */
+    public long getDirectories() {
+      return this.directories;
+    }
+
+    /** Number of directories with mismatching hash */
+    public long getMismatches() {
+      return this.mismatches;
+    }
+
+    public long getInserted() {
+      return this.inserted;
+    }
+
+    public long getUpdated() {
+      return this.updated;
+    }
+
+    public long getDeleted() {
+      return this.deleted;
+    }
+
+    /** Number of directories where only stored hash was repaired */
+    public long getHashes() {
+      return this.hashes;
+    }
+
+    /** Number of entries skipped because of grace period */
+    public long getSkipped() {
+      return this.skipped;
+    }
+
+    /** First repaired paths, at most REPORT_MAX_PATHS */
+    public List<String> getPaths() {
+      return Collections.unmodifiableList(this.paths);
+    }
+
+    @Override
+    public String toString() {
+      return "Report(directories=" + this.directories + ", mismatches=" + this.mismatches +
+        ", inserted=" + this.inserted + ", updated=" + this.updated + ", deleted=" +
+        this.deleted + ", hashes=" + this.hashes + ", skipped=" + this.skipped + ", time=" +
+        (this.endTime - this.startTime) + " ms)";
+    }
+  }
+
+  private final HdfsManager manager;
+  private final DirectoryHashFileSystem store;
+  private final AppConf conf;
+  private final CountDownLatch termination;
+  private volatile boolean stopped;
+  private volatile Report lastReport;
+  private long nextCallTime;
+
+  public ConsistencyVerifier(HdfsManager manager, DirectoryHashFileSystem store, AppConf conf) {
+    this.manager = manager;
+    this.store = store;
+    this.conf = conf;
+    this.termination = new CountDownLatch(1);
+    this.stopped = false;
+    this.lastReport = null;
+    this.nextCallTime = 0L;
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (!this.stopped) {
+        // settings are read on every use, so they can be changed at runtime
+        this.termination.await(this.conf.verifierIntervalMs(), TimeUnit.MILLISECONDS);
+        if (!this.stopped && this.manager.isActive()) {
+          verify();
+        }
+      }
+    } catch (InterruptedException err) {
+      LOG.info("Verifier interrupted");
+    } catch (Exception err) {
+      LOG.error("Verifier failed", err);
+    } finally {
+      this.stopped = true;
+    }
+  }
+
+  /** Run single verification pass from root directory */
+  public Report verify() throws IOException, InterruptedException {
+    Report report = new Report(System.currentTimeMillis());
+    LOG.info("Start verification of {}", this.manager.getRoot());
+    FileSystem fs = this.manager.getFileSystem();
+    long transactionId = Math.max(this.manager.metadataStore().getCheckpoint(),
+      INode.NO_TRANSACTION);
+    Deque<Path> queue = new ArrayDeque<Path>();
+    for (INodePath root : this.manager.getRules().getRoots()) {
+      if (this.manager.getRules().accept(root)) {
+        queue.push(new Path(root.toPathString()));
+      }
+    }
+    while (!queue.isEmpty() && !this.stopped && this.manager.isActive()) {
+      Path directory = queue.pop();
+      FileStatus[] children;
+      throttle();
+      try {
+        children = this.manager.getRules().filter(fs.listStatus(directory));
+      } catch (FileNotFoundException err) {
+        // directory was removed after parent was listed
+        continue;
+      }
+      verifyDirectory(new INodePath(directory), children, transactionId, report);
+      for (FileStatus child : children) {
+        if (child.isDirectory()) {
+          queue.push(child.getPath());
+        }
+      }
+    }
+    report.endTime = System.currentTimeMillis();
+    this.lastReport = report;
+    LOG.info("Finished verification of {}: {}", this.manager.getRoot(), report);
+    return report;
+  }
+
+  /** Compare directory hash and repair children if hash does not match */
+  private void verifyDirectory(
+      INodePath path,
+      FileStatus[] children,
+      long transactionId,
+      Report report) throws IOException {
+    report.directories++;
+    INode directory = this.store.get(path);
+    if (directory == null) {
+      // parent repair or event process will insert directory
+      LOG.debug("Directory {} does not exist in store", path);
+      return;
+    }
+    long expected = 0L;
+    Map<String, INode> actual = new HashMap<String, INode>();
+    for (FileStatus child : children) {
+      INode node = new INode(child).setTransactionId(transactionId);
+      expected ^= node.entryHash();
+      actual.put(node.getName(), node);
+    }
+    if (directory.getChildHash() == expected) return;
+    report.mismatches++;
+    LOG.info("Directory hash mismatch for {}", path);
+    long now = System.currentTimeMillis();
+    boolean pending = false;
+    for (INode stored : this.store.list(path, false)) {
+      INode node = actual.remove(stored.getName());
+      if (node == null) {
+        if (isRecent(stored, now)) {
+          pending = true;
+        } else {
+          this.store.delete(stored.getPath(), transactionId);
+          report.deleted++;
+          report.repaired(stored.getPath());
+        }
+      } else if (stored.entryHash() != node.entryHash()) {
+        if (isRecent(node, now)) {
+          pending = true;
+        } else {
+          if (stored.isDirectory() != node.isDirectory()) {
+            this.store.delete(stored.getPath(), transactionId);
+          }
+          this.store.upsert(node);
+          report.updated++;
+          report.repaired(node.getPath());
+        }
+      }
+    }
+    for (INode node : actual.values()) {
+      if (isRecent(node, now)) {
+        pending = true;
+      } else {
+        this.store.upsert(node);
+        report.inserted++;
+        report.repaired(node.getPath());
+      }
+    }
+    if (pending) {
+      report.skipped++;
+      return;
+    }
+    // children match at this point, fix stored hash if it drifted on its own
+    directory = this.store.get(path);
+    if (directory != null && directory.getChildHash() != expected) {
+      this.store.setChildHash(path, expected);
+      report.hashes++;
+      report.repaired(path);
+    }
+  }
+
+  /** Whether or not node was modified within grace period */
+  private boolean isRecent(INode node, long now) {
+    return !node.isDirectory() && now - node.getModificationTime() < this.conf.verifierGraceMs();
+  }
+
+  /** Block until next NameNode call is allowed by rate limit */
+  private void throttle() throws InterruptedException {
+    long now = System.nanoTime();
+    if (this.nextCallTime > now) {
+      TimeUnit.NANOSECONDS.sleep(this.nextCallTime - now);
+      now = this.nextCallTime;
+    }
+    this.nextCallTime = now +
+      TimeUnit.SECONDS.toNanos(1) / Math.max(this.conf.verifierRpcPerSecond(), 1);
+  }
+
+  /** Get report of the last completed pass, or null if no pass has completed */
+  public Report getLastReport() {
+    return this.lastReport;
+  }
+
+  /** Whether or not verifier thread is stopped */
+  public boolean isStopped() {
+    return this.stopped;
+  }
+
+  /** Mark verifier thread as terminated */
+  public void terminate() {
+    this.stopped = true;
+    this.termination.countDown();
+  }
+
+  @Override
+  public String toString() {
+    return "ConsistencyVerifier(interval=" + this.conf.verifierIntervalMs() + " ms, grace=" +
+      this.conf.verifierGraceMs() + " ms)";
+  }
+}
@@ -0,0 +1,116 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [[FileSystemStore]] that maintains hash of direct children for every directory on top of
+ * another store, see `INode.getChildHash()`. Each modification reads previous state of the node
+ * and applies difference of entry hashes to parent directory, which costs one additional read
+ * and write per operation. Nodes inserted in bulk are expected to carry directory hashes already,
+ * e.g. computed during indexing by [[NodeTreeVisitor]].
+ *
+ * Modifications are serialized, so event processing and [[ConsistencyVerifier]] repairs do not
+ * interleave read-modify-write of the same parent.
+ */
+public class DirectoryHashFileSystem implements FileSystemStore {
+  private static final Logger LOG = LoggerFactory.getLogger(DirectoryHashFileSystem.class);
+
+  private final FileSystemStore store;
+
+  public DirectoryHashFileSystem(FileSystemStore store) {
+    this.store = store;
+  }
+
+  /** Entry hash of the node, or 0 if node does not exist */
+  private static long entryHash(INode node) {
+    return (node == null) ? 0L : node.entryHash();
+  }
+
+  /** Apply difference of entry hashes of the path to its parent directory */
+  private void updateParent(INodePath path, long delta) throws IOException {
+    INodePath parentPath = path.getParent();
+    if (delta == 0L || parentPath == null) return;
+    INode parent = this.store.get(parentPath);
+    if (parent == null) {
+      LOG.debug("Parent of {} does not exist, skip directory hash update", path);
+      return;
+    }
+    this.store.update(parentPath, new INodeUpdate().setChildHash(parent.getChildHash() ^ delta));
+  }
+
+  /** Overwrite directory hash, used to repair hash that does not match children */
+  public synchronized void setChildHash(INodePath path, long hash) throws IOException {
+    this.store.update(path, new INodeUpdate().setChildHash(hash));
+  }
+
+  @Override
+  public INode get(INodePath path) {
+    return this.store.get(path);
+  }
+
+  @Override
+  public List<INode> list(INodePath path, boolean recursive) throws IOException {
+    return this.store.list(path, recursive);
+  }
+
+  @Override
+  public synchronized void delete(INodePath path, long transactionId) throws IOException {
+    INode previous = this.store.get(path);
+    this.store.delete(path, transactionId);
+    // node newer than transaction is not deleted, parent does not change
+    if (previous != null && !previous.isNewerThan(transactionId)) {
+      updateParent(path, previous.entryHash());
+    }
+  }
+
+  @Override
+  public synchronized void upsert(INode node) throws IOException {
+    INode previous = this.store.get(node.getPath());
+    if (previous != null && previous.isNewerThan(node.getTransactionId())) {
+      this.store.upsert(node);
+      return;
+    }
+    // replacing directory keeps its children, so hash of children is preserved
+    if (previous != null && previous.isDirectory() && node.isDirectory()) {
+      node.setChildHash(previous.getChildHash());
+    }
+    this.store.upsert(node);
+    updateParent(node.getPath(), entryHash(previous) ^ node.entryHash());
+  }
+
+  @Override
+  public synchronized void insert(List<INode> nodes) throws IOException {
+    this.store.insert(nodes);
+  }
+
+  @Override
+  public synchronized void rename(INodePath srcPath, INodePath dstPath, long transactionId)
+      throws IOException {
+    INode previous = this.store.get(srcPath);
+    this.store.rename(srcPath, dstPath, transactionId);
+    if (previous != null && !previous.isNewerThan(transactionId)) {
+      updateParent(srcPath, previous.entryHash());
+      updateParent(dstPath, previous.copy().setPath(dstPath).entryHash());
+    }
+  }
+
+  @Override
+  public synchronized void update(INodePath path, INodeUpdate builder) throws IOException {
+    INode previous = this.store.get(path);
+    this.store.update(path, builder);
+    if (previous != null && !previous.isNewerThan(builder.getTransactionId())) {
+      INode current = previous.copy();
+      builder.apply(current);
+      updateParent(path, previous.entryHash() ^ current.entryHash());
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "DirectoryHashFileSystem(" + this.store + ")";
+  }
+}
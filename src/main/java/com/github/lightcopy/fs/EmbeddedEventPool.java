@@ -0,0 +1,98 @@
+package com.github.lightcopy.fs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-process implementation of [[EventStore]]. Keeps only the most recent events up to provided
+ * capacity, older events are discarded when capacity is exceeded. Events are keyed by transaction
+ * id and index in batch, so re-applied batch replaces its events.
+ */
+public class EmbeddedEventPool implements EventStore {
+  private static final Logger LOG = LoggerFactory.getLogger(EmbeddedEventPool.class);
+
+  // maximum number of events to keep
+  private final int capacity;
+  // number of events in pool, map size is not constant time operation
+  private final AtomicInteger size;
+  // events sorted by transaction and index in batch
+  private final ConcurrentSkipListMap<EventKey, EventContainer> pool;
+
+  /** Key to sort events by transaction id first and then by index in batch */
+  static class EventKey implements Comparable<EventKey> {
+    final long transactionId;
+    final int index;
+
+    EventKey(long transactionId, int index) {
+      this.transactionId = transactionId;
+      this.index = index;
+    }
+
+    @Override
+    public int compareTo(EventKey other) {
+      if (this.transactionId != other.transactionId) {
+        return this.transactionId < other.transactionId ? -1 : 1;
+      }
+      if (this.index != other.index) {
+        return this.index < other.index ? -1 : 1;
+      }
+      return 0;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof EventKey)) return false;
+      return compareTo((EventKey) obj) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (this.transactionId ^ (this.transactionId >>> 32)) * 31 + this.index;
+    }
+  }
+
+  public EmbeddedEventPool(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Expected positive capacity, found " + capacity);
+    }
+    this.capacity = capacity;
+    this.size = new AtomicInteger(0);
+    this.pool = new ConcurrentSkipListMap<EventKey, EventContainer>();
+  }
+
+  /** Remove all events from pool */
+  public void clear() {
+    this.pool.clear();
+    this.size.set(0);
+  }
+
+  @Override
+  public void insert(EventContainer container) {
+    EventKey key = new EventKey(container.getTransactionId(), container.getIndex());
+    if (this.pool.put(key, container) == null) {
+      this.size.incrementAndGet();
+    }
+    while (this.size.get() > this.capacity && this.pool.pollFirstEntry() != null) {
+      this.size.decrementAndGet();
+    }
+    LOG.info("Added event {}", container);
+  }
+
+  @Override
+  public List<EventContainer> scan(long fromTransactionId, int limit) {
+    List<EventContainer> events = new ArrayList<EventContainer>();
+    EventKey from = new EventKey(fromTransactionId, Integer.MIN_VALUE);
+    for (Map.Entry<EventKey, EventContainer> entry : this.pool.tailMap(from, true).entrySet()) {
+      if (events.size() >= limit) break;
+      events.add(entry.getValue());
+    }
+    LOG.debug("Scanned {} events from transaction {}", events.size(), fromTransactionId);
+    return events;
+  }
+}
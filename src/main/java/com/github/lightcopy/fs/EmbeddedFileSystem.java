@@ -0,0 +1,254 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-process implementation of [[FileSystemStore]] backed by sorted key-value map, keyed by
+ * encoded path. Path is encoded as "/" + element for each level, root is an empty string. Since
+ * path elements cannot contain "/", all children of a path are stored in contiguous key range
+ * [key + "/", key + "0"), which allows subtree operations as range scans.
+ *
+ * Store does not persist data, which is fine, because file system is reindexed on every start.
+ * Stored nodes are never modified in place, modifications replace them with updated copies, so
+ * readers iterating the map without lock never observe partially modified node.
+ */
+public class EmbeddedFileSystem implements FileSystemStore, ExportSource {
+  private static final Logger LOG = LoggerFactory.getLogger(EmbeddedFileSystem.class);
+  // separator and the next character after separator, used as exclusive upper bound of subtree
+  private static final char SEPARATOR = '/';
+  private static final char SEPARATOR_NEXT = (char) (SEPARATOR + 1);
+
+  // lock for modification operations
+  private final ReentrantLock modificationLock;
+  // sorted map that serves as file system
+  private final ConcurrentSkipListMap<String, INode> fs;
+
+  public EmbeddedFileSystem() {
+    this.modificationLock = new ReentrantLock();
+    this.fs = new ConcurrentSkipListMap<String, INode>();
+  }
+
+  /** Encode path into sorted key */
+  static String key(INodePath path) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < path.getDepth(); i++) {
+      sb.append(SEPARATOR).append(path.getElement(i));
+    }
+    return sb.toString();
+  }
+
+  /** Return all children of the path recursively, does not include path itself */
+  private ConcurrentNavigableMap<String, INode> children(INodePath path) {
+    String key = key(path);
+    return this.fs.subMap(key + SEPARATOR, true, key + SEPARATOR_NEXT, false);
+  }
+
+  /** Helper method to compute duration in milliseconds */
+  private double millis(long start, long end) {
+    return (end - start) / 1e6;
+  }
+
+  /** Number of nodes in file system */
+  public int size() {
+    return this.fs.size();
+  }
+
+  /** Remove all nodes from file system */
+  public void clear() {
+    this.fs.clear();
+  }
+
+  /** Partition of the store as key range, null bound means unbounded */
+  private NavigableMap<String, INode> range(String fromKey, String toKey) {
+    if (fromKey == null && toKey == null) return this.fs;
+    if (fromKey == null) return this.fs.headMap(toKey, false);
+    if (toKey == null) return this.fs.tailMap(fromKey, true);
+    return this.fs.subMap(fromKey, true, toKey, false);
+  }
+
+  @Override
+  public List<ExportSource.Partition> partitions(int count) {
+    // boundaries are sampled from current keys, nodes inserted later fall into one of the ranges
+    List<String> bounds = new ArrayList<String>();
+    long step = Math.max(1L, (long) this.fs.size() / Math.max(count, 1));
+    long index = 0L;
+    for (String key : this.fs.keySet()) {
+      if (index > 0 && index % step == 0 && bounds.size() < count - 1) {
+        bounds.add(key);
+      }
+      index++;
+    }
+    bounds.add(0, null);
+    bounds.add(null);
+    List<ExportSource.Partition> partitions = new ArrayList<ExportSource.Partition>();
+    for (int i = 0; i < bounds.size() - 1; i++) {
+      final String fromKey = bounds.get(i);
+      final String toKey = bounds.get(i + 1);
+      partitions.add(new ExportSource.Partition() {
+        @Override
+        public void scan(ExportSource.Sink sink) throws IOException {
+          for (INode node : range(fromKey, toKey).values()) {
+            sink.write(node.copy());
+          }
+        }
+      });
+    }
+    return partitions;
+  }
+
+  @Override
+  public long estimatedSize() {
+    return this.fs.size();
+  }
+
+  @Override
+  public INode get(INodePath path) {
+    INode node = this.fs.get(key(path));
+    // return copy, so modifications of the node are not reflected in store
+    return (node == null) ? null : node.copy();
+  }
+
+  @Override
+  public List<INode> list(INodePath path, boolean recursive) {
+    List<INode> nodes = new ArrayList<INode>();
+    int depth = path.getDepth() + 1;
+    for (INode node : children(path).values()) {
+      if (recursive || node.getPath().getDepth() == depth) {
+        nodes.add(node.copy());
+      }
+    }
+    return nodes;
+  }
+
+  @Override
+  public void delete(INodePath path, long transactionId) throws IOException {
+    this.modificationLock.lock();
+    long startTime = System.nanoTime();
+    try {
+      int count = 0;
+      Iterator<INode> iter = children(path).values().iterator();
+      while (iter.hasNext()) {
+        if (!iter.next().isNewerThan(transactionId)) {
+          iter.remove();
+          count++;
+        }
+      }
+      INode node = this.fs.get(key(path));
+      if (node != null && !node.isNewerThan(transactionId)) {
+        this.fs.remove(key(path));
+        count++;
+      }
+      LOG.info("Deleted {} nodes for path {}", count, path);
+    } finally {
+      this.modificationLock.unlock();
+      long endTime = System.nanoTime();
+      LOG.info("Delete operation took {} ms", millis(startTime, endTime));
+    }
+  }
+
+  @Override
+  public void upsert(INode node) throws IOException {
+    this.modificationLock.lock();
+    long startTime = System.nanoTime();
+    try {
+      INode existing = this.fs.get(key(node.getPath()));
+      if (existing != null && existing.isNewerThan(node.getTransactionId())) {
+        LOG.info("Upsert was ignored, node {} is newer than {}", existing, node);
+      } else {
+        this.fs.put(key(node.getPath()), node.copy());
+        LOG.info("Inserted node {}", node);
+      }
+    } finally {
+      this.modificationLock.unlock();
+      long endTime = System.nanoTime();
+      LOG.info("Upsert operation took {} ms", millis(startTime, endTime));
+    }
+  }
+
+  @Override
+  public void insert(List<INode> nodes) throws IOException {
+    this.modificationLock.lock();
+    long startTime = System.nanoTime();
+    try {
+      for (INode node : nodes) {
+        this.fs.put(key(node.getPath()), node.copy());
+      }
+      LOG.info("Inserted {} nodes", nodes.size());
+    } finally {
+      this.modificationLock.unlock();
+      long endTime = System.nanoTime();
+      LOG.info("Insert operation took {} ms", millis(startTime, endTime));
+    }
+  }
+
+  @Override
+  public void rename(INodePath srcPath, INodePath dstPath, long transactionId)
+      throws IOException {
+    this.modificationLock.lock();
+    long startTime = System.nanoTime();
+    try {
+      // collect subtree first, and only then reinsert, since destination might overlap source
+      List<INode> nodes = new ArrayList<INode>();
+      INode root = this.fs.get(key(srcPath));
+      if (root != null && !root.isNewerThan(transactionId)) {
+        this.fs.remove(key(srcPath));
+        nodes.add(root);
+      }
+      Iterator<INode> iter = children(srcPath).values().iterator();
+      while (iter.hasNext()) {
+        INode node = iter.next();
+        if (!node.isNewerThan(transactionId)) {
+          iter.remove();
+          nodes.add(node);
+        }
+      }
+      for (INode stored : nodes) {
+        INode node = stored.copy();
+        node.setPath(node.getPath().withUpdatedPrefix(srcPath, dstPath));
+        if (transactionId != INode.NO_TRANSACTION) {
+          node.setTransactionId(transactionId);
+        }
+        this.fs.put(key(node.getPath()), node);
+      }
+      LOG.info("Updated {} nodes from {} to {}", nodes.size(), srcPath, dstPath);
+    } finally {
+      this.modificationLock.unlock();
+      long endTime = System.nanoTime();
+      LOG.info("Rename operation took {} ms", millis(startTime, endTime));
+    }
+  }
+
+  @Override
+  public void update(INodePath path, INodeUpdate builder) throws IOException {
+    this.modificationLock.lock();
+    long startTime = System.nanoTime();
+    try {
+      INode stored = this.fs.get(key(path));
+      INode node = (stored == null) ? null : stored.copy();
+      if (node == null) {
+        LOG.warn("Update was ignored, because node does not exist for path {}", path);
+      } else if (node.isNewerThan(builder.getTransactionId())) {
+        LOG.info("Update was ignored, because node {} is newer than update", node);
+      } else if (builder.apply(node)) {
+        this.fs.put(key(path), node);
+        LOG.info("Modified path {}", path);
+      } else {
+        LOG.warn("Update was ignored, because update is empty for path {}", path);
+      }
+    } finally {
+      this.modificationLock.unlock();
+      long endTime = System.nanoTime();
+      LOG.info("Update operation took {} ms", millis(startTime, endTime));
+    }
+  }
+}
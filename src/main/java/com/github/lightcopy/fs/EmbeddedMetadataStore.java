@@ -0,0 +1,107 @@
+package com.github.lightcopy.fs;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [[MetadataStore]] that keeps file system and events in the process, does not require any
+ * external service. Suitable for small deployments and local development.
+ */
+public class EmbeddedMetadataStore implements MetadataStore {
+  private static final Logger LOG = LoggerFactory.getLogger(EmbeddedMetadataStore.class);
+
+  // maximum number of events to keep in event pool
+  public static final int EVENT_POOL_CAPACITY = 100000;
+
+  private final EmbeddedFileSystem fs;
+  private final EmbeddedEventPool eventPool;
+  private final EmbeddedRollupStore rollups;
+  private final EmbeddedTimeSeriesStore timeSeries;
+  private final AtomicLong checkpoint;
+  private volatile boolean closed;
+
+  public EmbeddedMetadataStore() {
+    this.fs = new EmbeddedFileSystem();
+    this.eventPool = new EmbeddedEventPool(EVENT_POOL_CAPACITY);
+    this.rollups = new EmbeddedRollupStore();
+    this.timeSeries = new EmbeddedTimeSeriesStore();
+    this.checkpoint = new AtomicLong(-1L);
+    this.closed = false;
+  }
+
+  @Override
+  public FileSystemStore fileSystem() {
+    return this.fs;
+  }
+
+  @Override
+  public FileSystemStore reader(long transactionId) {
+    return this.fs;
+  }
+
+  @Override
+  public EventStore eventPool() {
+    return this.eventPool;
+  }
+
+  @Override
+  public RollupStore rollups() {
+    return this.rollups;
+  }
+
+  @Override
+  public TimeSeriesStore timeSeries() {
+    return this.timeSeries;
+  }
+
+  @Override
+  public void checkpoint(long transactionId) {
+    long current = this.checkpoint.get();
+    while (current < transactionId && !this.checkpoint.compareAndSet(current, transactionId)) {
+      current = this.checkpoint.get();
+    }
+  }
+
+  @Override
+  public long getAcknowledged() {
+    return this.checkpoint.get();
+  }
+
+  @Override
+  public long getCheckpoint() {
+    return this.checkpoint.get();
+  }
+
+  @Override
+  public LeaderLease lease(String owner, long ttlMs) {
+    return new LocalLeaderLease(owner);
+  }
+
+  @Override
+  public void cleanup() {
+    LOG.info("Clear embedded file system and event pool");
+    this.fs.clear();
+    this.eventPool.clear();
+    this.rollups.clear();
+    this.checkpoint.set(-1L);
+  }
+
+  @Override
+  public boolean isAlive() {
+    return !this.closed;
+  }
+
+  @Override
+  public void close() {
+    this.closed = true;
+    cleanup();
+    this.timeSeries.clear();
+  }
+
+  @Override
+  public String toString() {
+    return "EmbeddedMetadataStore(closed=" + this.closed + ")";
+  }
+}
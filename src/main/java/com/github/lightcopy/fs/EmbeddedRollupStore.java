@@ -0,0 +1,50 @@
+package com.github.lightcopy.fs;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process implementation of [[RollupStore]], keeps copies of saved usage.
+ */
+public class EmbeddedRollupStore implements RollupStore {
+  // usage by kind and name
+  private final ConcurrentHashMap<String, Map<String, UsageRollup.Usage>> rollups;
+
+  public EmbeddedRollupStore() {
+    this.rollups = new ConcurrentHashMap<String, Map<String, UsageRollup.Usage>>();
+  }
+
+  @Override
+  public synchronized void save(String kind, Map<String, UsageRollup.Usage> usage) {
+    Map<String, UsageRollup.Usage> saved = this.rollups.get(kind);
+    if (saved == null) {
+      saved = new HashMap<String, UsageRollup.Usage>();
+      this.rollups.put(kind, saved);
+    }
+    for (Map.Entry<String, UsageRollup.Usage> entry : usage.entrySet()) {
+      if (entry.getValue().isEmpty()) {
+        saved.remove(entry.getKey());
+      } else {
+        saved.put(entry.getKey(), entry.getValue().copy());
+      }
+    }
+  }
+
+  @Override
+  public synchronized Map<String, UsageRollup.Usage> load(String kind) {
+    Map<String, UsageRollup.Usage> copy = new HashMap<String, UsageRollup.Usage>();
+    Map<String, UsageRollup.Usage> saved = this.rollups.get(kind);
+    if (saved != null) {
+      for (Map.Entry<String, UsageRollup.Usage> entry : saved.entrySet()) {
+        copy.put(entry.getKey(), entry.getValue().copy());
+      }
+    }
+    return copy;
+  }
+
+  /** Remove all saved usage */
+  public void clear() {
+    this.rollups.clear();
+  }
+}
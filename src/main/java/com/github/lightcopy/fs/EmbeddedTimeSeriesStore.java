@@ -0,0 +1,57 @@
+package com.github.lightcopy.fs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-process implementation of [[TimeSeriesStore]], each series is kept in map sorted by time.
+ */
+public class EmbeddedTimeSeriesStore implements TimeSeriesStore {
+  // series keyed by tier and subtree
+  private final ConcurrentHashMap<String, ConcurrentSkipListMap<Long, GrowthSample>> series;
+
+  public EmbeddedTimeSeriesStore() {
+    this.series = new ConcurrentHashMap<String, ConcurrentSkipListMap<Long, GrowthSample>>();
+  }
+
+  private static String key(String subtree, GrowthTier tier) {
+    return tier.getName() + "|" + subtree;
+  }
+
+  @Override
+  public void record(GrowthSample sample) {
+    String key = key(sample.getSubtree(), sample.getTier());
+    ConcurrentSkipListMap<Long, GrowthSample> samples = this.series.get(key);
+    if (samples == null) {
+      ConcurrentSkipListMap<Long, GrowthSample> created =
+        new ConcurrentSkipListMap<Long, GrowthSample>();
+      samples = this.series.putIfAbsent(key, created);
+      if (samples == null) samples = created;
+    }
+    samples.put(sample.getTime(), sample);
+  }
+
+  @Override
+  public List<GrowthSample> query(String subtree, GrowthTier tier, long from, long to) {
+    ConcurrentSkipListMap<Long, GrowthSample> samples = this.series.get(key(subtree, tier));
+    if (samples == null || from >= to) return new ArrayList<GrowthSample>();
+    return new ArrayList<GrowthSample>(samples.subMap(from, to).values());
+  }
+
+  @Override
+  public void expire(GrowthTier tier, long before) {
+    String prefix = tier.getName() + "|";
+    for (String key : this.series.keySet()) {
+      if (key.startsWith(prefix)) {
+        this.series.get(key).headMap(before).clear();
+      }
+    }
+  }
+
+  /** Remove all samples */
+  public void clear() {
+    this.series.clear();
+  }
+}
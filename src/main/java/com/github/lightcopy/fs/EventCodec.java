@@ -9,9 +9,16 @@ import org.apache.hadoop.hdfs.inotify.Event.RenameEvent;
 import org.apache.hadoop.hdfs.inotify.Event.UnlinkEvent;
 import org.apache.hadoop.hdfs.inotify.Event.EventType;
 
+import org.apache.hadoop.fs.permission.FsPermission;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
 import org.bson.BsonReader;
 import org.bson.BsonType;
+import org.bson.BsonValue;
 import org.bson.BsonWriter;
+import org.bson.codecs.BsonDocumentCodec;
 import org.bson.codecs.DecoderContext;
 import org.bson.codecs.EncoderContext;
 
@@ -19,12 +26,138 @@ import org.bson.codecs.EncoderContext;
  * Custom EventContainer (HDFS event) conversion codec for Mongo.
  */
 public class EventCodec extends AbstractCodec<EventContainer> {
-  public EventCodec() { }
+  // codec to read event document, event type is not known until document is fully read
+  private final BsonDocumentCodec documentCodec;
+
+  public EventCodec() {
+    this.documentCodec = new BsonDocumentCodec();
+  }
 
   @Override
   public EventContainer decode(BsonReader reader, DecoderContext decoderContext) {
-    // TODO: implement decoding of events
-    throw new UnsupportedOperationException("Decoding of events in unsupported");
+    long transaction = -1L;
+    int index = 0;
+    String eventType = null;
+    BsonDocument doc = null;
+    reader.readStartDocument();
+    while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+      switch (reader.readName()) {
+        case EventContainer.FIELD_TRANSACTION_ID:
+          transaction = reader.readInt64();
+          break;
+        case EventContainer.FIELD_EVENT_INDEX:
+          index = reader.readInt32();
+          break;
+        case EventContainer.FIELD_EVENT_TYPE:
+          eventType = reader.readString();
+          break;
+        case EventContainer.FIELD_EVENT:
+          doc = this.documentCodec.decode(reader, decoderContext);
+          break;
+        default:
+          // ignore any other fields, e.g. object id
+          reader.skipValue();
+          break;
+      }
+    }
+    reader.readEndDocument();
+    if (eventType == null || doc == null) {
+      throw new IllegalStateException("Incomplete event document for transaction " + transaction);
+    }
+    return new EventContainer(transaction, index, decode(EventType.valueOf(eventType), doc));
+  }
+
+  /** Document id of event container, built from transaction id and index of event */
+  public static BsonDocument id(EventContainer container) {
+    return new BsonDocument()
+      .append(EventContainer.FIELD_TRANSACTION_ID, new BsonInt64(container.getTransactionId()))
+      .append(EventContainer.FIELD_EVENT_INDEX, new BsonInt32(container.getIndex()));
+  }
+
+  /** Reconstruct HDFS event of provided type from event document */
+  private Event decode(EventType eventType, BsonDocument doc) {
+    switch (eventType) {
+      case APPEND:
+        return new AppendEvent.Builder()
+          .path(readString(doc, EventContainer.FIELD_PATH))
+          .newBlock(readBoolean(doc, EventContainer.FIELD_NEW_BLOCK))
+          .build();
+      case CLOSE:
+        return new CloseEvent(
+          readString(doc, EventContainer.FIELD_PATH),
+          readLong(doc, EventContainer.FIELD_FILESIZE),
+          readLong(doc, EventContainer.FIELD_TIMESTAMP));
+      case CREATE:
+        return new CreateEvent.Builder()
+          .ctime(readLong(doc, EventContainer.FIELD_CREATION_TIME))
+          .groupName(readString(doc, EventContainer.FIELD_GROUP))
+          .iNodeType(CreateEvent.INodeType.valueOf(
+            readString(doc, EventContainer.FIELD_INODETYPE)))
+          .overwrite(readBoolean(doc, EventContainer.FIELD_OVERWRITE))
+          .ownerName(readString(doc, EventContainer.FIELD_OWNER))
+          .path(readString(doc, EventContainer.FIELD_PATH))
+          .perms(readPerm(doc, EventContainer.FIELD_PERMISSION))
+          .replication(readInt(doc, EventContainer.FIELD_REPLICATION))
+          .symlinkTarget(readString(doc, EventContainer.FIELD_SYMLINK_TARGET))
+          .defaultBlockSize(readLong(doc, EventContainer.FIELD_DEFAULT_BLOCK_SIZE))
+          .build();
+      case METADATA:
+        return new MetadataUpdateEvent.Builder()
+          .atime(readLong(doc, EventContainer.FIELD_ACCESS_TIME))
+          .groupName(readString(doc, EventContainer.FIELD_GROUP))
+          .metadataType(MetadataUpdateEvent.MetadataType.valueOf(
+            readString(doc, EventContainer.FIELD_METADATA_TYPE)))
+          .mtime(readLong(doc, EventContainer.FIELD_MODIFICATION_TIME))
+          .ownerName(readString(doc, EventContainer.FIELD_OWNER))
+          .path(readString(doc, EventContainer.FIELD_PATH))
+          .perms(readPerm(doc, EventContainer.FIELD_PERMISSION))
+          .replication(readInt(doc, EventContainer.FIELD_REPLICATION))
+          .build();
+      case RENAME:
+        return new RenameEvent.Builder()
+          .srcPath(readString(doc, EventContainer.FIELD_SRC_PATH))
+          .dstPath(readString(doc, EventContainer.FIELD_DST_PATH))
+          .timestamp(readLong(doc, EventContainer.FIELD_TIMESTAMP))
+          .build();
+      case UNLINK:
+        return new UnlinkEvent.Builder()
+          .path(readString(doc, EventContainer.FIELD_PATH))
+          .timestamp(readLong(doc, EventContainer.FIELD_TIMESTAMP))
+          .build();
+      default:
+        throw new UnsupportedOperationException("Unrecognized event type " + eventType);
+    }
+  }
+
+  /** Read string value, returns null if field is missing or null */
+  private static String readString(BsonDocument doc, String name) {
+    BsonValue value = doc.get(name);
+    return (value == null || value.isNull()) ? null : value.asString().getValue();
+  }
+
+  /** Read long value, returns 0 if field is missing */
+  private static long readLong(BsonDocument doc, String name) {
+    BsonValue value = doc.get(name);
+    return (value == null || value.isNull()) ? 0L : value.asInt64().getValue();
+  }
+
+  /** Read int value, returns 0 if field is missing */
+  private static int readInt(BsonDocument doc, String name) {
+    BsonValue value = doc.get(name);
+    return (value == null || value.isNull()) ? 0 : value.asInt32().getValue();
+  }
+
+  /** Read boolean value, returns false if field is missing */
+  private static boolean readBoolean(BsonDocument doc, String name) {
+    BsonValue value = doc.get(name);
+    return (value == null || value.isNull()) ? false : value.asBoolean().getValue();
+  }
+
+  /** Read permission string written by `safeWritePermString`, returns null if missing */
+  private static FsPermission readPerm(BsonDocument doc, String name) {
+    String perm = readString(doc, name);
+    // symbolic permission is stored without file type, which is required for parsing
+    return (perm == null) ? null : FsPermission.valueOf("-" + perm);
   }
 
   @Override
@@ -38,7 +171,10 @@ public class EventCodec extends AbstractCodec<EventContainer> {
     Event event = value.getEvent();
 
     writer.writeStartDocument();
+    writer.writeName(EventContainer.FIELD_ID);
+    this.documentCodec.encode(writer, id(value), encoderContext);
     writer.writeInt64(EventContainer.FIELD_TRANSACTION_ID, transaction);
+    writer.writeInt32(EventContainer.FIELD_EVENT_INDEX, value.getIndex());
     safeWriteString(writer, EventContainer.FIELD_EVENT_TYPE, event.getEventType().name());
     // == event ==
     writer.writeName(EventContainer.FIELD_EVENT);
@@ -75,6 +211,7 @@ public class EventCodec extends AbstractCodec<EventContainer> {
   private void encode(BsonWriter writer, AppendEvent event) {
     writer.writeStartDocument();
     safeWriteString(writer, EventContainer.FIELD_PATH, event.getPath());
+    writer.writeBoolean(EventContainer.FIELD_NEW_BLOCK, event.toNewBlock());
     writer.writeEndDocument();
   }
 
@@ -105,6 +242,7 @@ public class EventCodec extends AbstractCodec<EventContainer> {
     safeWritePermString(writer, EventContainer.FIELD_PERMISSION, event.getPerms());
     writer.writeInt32(EventContainer.FIELD_REPLICATION, event.getReplication());
     safeWriteString(writer, EventContainer.FIELD_SYMLINK_TARGET, event.getSymlinkTarget());
+    writer.writeInt64(EventContainer.FIELD_DEFAULT_BLOCK_SIZE, event.getDefaultBlockSize());
     writer.writeEndDocument();
   }
 
@@ -4,7 +4,9 @@ import org.apache.hadoop.hdfs.inotify.Event;
 
 /** [[EventContainer]] class is a container for HDFS event and transaction */
 public class EventContainer {
+  public static final String FIELD_ID = "_id";
   public static final String FIELD_TRANSACTION_ID = "transactionId";
+  public static final String FIELD_EVENT_INDEX = "eventIndex";
   public static final String FIELD_EVENT_TYPE = "eventType";
   public static final String FIELD_EVENT = "event";
   public static final String FIELD_PATH = "path";
@@ -23,13 +25,25 @@ public class EventContainer {
   public static final String FIELD_ACCESS_TIME = "accessTime";
   public static final String FIELD_MODIFICATION_TIME = "modificationTime";
   public static final String FIELD_METADATA_TYPE = "metadataType";
+  public static final String FIELD_DEFAULT_BLOCK_SIZE = "defaultBlockSize";
+  public static final String FIELD_NEW_BLOCK = "newBlock";
 
   private final Event event;
   private final long transactionId;
+  private final int index;
 
   public EventContainer(long transactionId, Event event) {
+    this(transactionId, 0, event);
+  }
+
+  /**
+   * Create container for event at index in transaction batch, transaction id and index identify
+   * event, so the same event stored again on replay replaces previous copy.
+   */
+  public EventContainer(long transactionId, int index, Event event) {
     this.event = event;
     this.transactionId = transactionId;
+    this.index = index;
   }
 
   /** Get underlying event */
@@ -42,8 +56,13 @@ public class EventContainer {
     return this.transactionId;
   }
 
+  /** Get index of event in transaction batch */
+  public int getIndex() {
+    return this.index;
+  }
+
   @Override
   public String toString() {
-    return "TX[" + getTransactionId() + "]" + getEvent();
+    return "TX[" + getTransactionId() + ":" + getIndex() + "]" + getEvent();
   }
 }
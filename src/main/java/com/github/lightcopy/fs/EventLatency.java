@@ -0,0 +1,74 @@
+package com.github.lightcopy.fs;
+
+/**
+ * [[EventLatency]] collects end-to-end latency of applied events, which is measured as difference
+ * between time event is applied and timestamp of the event on NameNode. Latency is approximate,
+ * since it depends on clock synchronization between hosts. Statistics are accumulated for current
+ * interval and can be reset with `snapshot()`.
+ */
+public class EventLatency {
+  private volatile long targetMs;
+  // statistics for current interval
+  private long count;
+  private long sumMs;
+  private long maxMs;
+  private long missed;
+  // total number of measured events
+  private long total;
+
+  public EventLatency(long targetMs) {
+    this.targetMs = targetMs;
+    this.total = 0L;
+    reset();
+  }
+
+  private void reset() {
+    this.count = 0L;
+    this.sumMs = 0L;
+    this.maxMs = 0L;
+    this.missed = 0L;
+  }
+
+  /** Latency target in milliseconds */
+  public long target() {
+    return this.targetMs;
+  }
+
+  /** Update latency target, applies to events recorded after this call */
+  public void setTarget(long targetMs) {
+    this.targetMs = targetMs;
+  }
+
+  /** Record latency for single event */
+  public synchronized void record(long latencyMs) {
+    // negative latency is possible due to clock skew
+    long value = Math.max(latencyMs, 0L);
+    this.count++;
+    this.total++;
+    this.sumMs += value;
+    this.maxMs = Math.max(this.maxMs, value);
+    if (value > this.targetMs) {
+      this.missed++;
+    }
+  }
+
+  /** Whether or not there are measurements for current interval */
+  public synchronized boolean isEmpty() {
+    return this.count == 0;
+  }
+
+  /** Return string summary for current interval and start new interval */
+  public synchronized String snapshot() {
+    String summary = toString();
+    reset();
+    return summary;
+  }
+
+  @Override
+  public synchronized String toString() {
+    double avg = (this.count == 0) ? 0.0 : (double) this.sumMs / this.count;
+    return "EventLatency(target=" + this.targetMs + " ms, count=" + this.count +
+      ", avg=" + avg + " ms, max=" + this.maxMs + " ms, missed=" + this.missed +
+      ", total=" + this.total + ")";
+  }
+}
@@ -1,54 +1,143 @@
 package com.github.lightcopy.fs;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.Random;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.inotify.Event;
 import org.apache.hadoop.hdfs.inotify.EventBatch;
+import org.apache.hadoop.hdfs.inotify.MissingEventsException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mongodb.MongoException;
+
+import com.github.lightcopy.conf.AppConf;
+
 /**
  * Event processing thread to capture HDFS events.
+ * Stream is drained without waiting while events are available, otherwise thread blocks on poll
+ * with adaptive timeout, see [[AdaptivePoll]]. Polled batches are handed over to applier thread
+ * through [[IngestQueue]], so slow or unavailable metadata store does not block consumer until
+ * both memory queue and spill journal are full. Applier keeps batches until store acknowledges
+ * their writes, and on store failure re-applies all of them with backoff, since failure of
+ * asynchronous write can be reported while applying one of the later batches. If
+ * events are missing from the stream, e.g. edit log was purged, stream is reopened at the current
+ * transaction and scope roots are resynced in the background, see [[SubtreeResync]]. Events
+ * outside of [[IngestRules]] are dropped before they are written to event pool or file system
+ * store.
  */
 public class EventProcess implements Runnable {
   private static final Logger LOG = LoggerFactory.getLogger(EventProcess.class);
-  // polling interval in milliseconds = 0.25 sec + random interval
-  public static final int POLLING_INTERVAL_MS = 250;
+  // interval in milliseconds to report latency statistics
+  public static final int LATENCY_REPORT_INTERVAL_MS = 60000;
+  // timeout in milliseconds to wait for batch in applier, so termination is noticed
+  private static final int APPLY_POLL_MS = 100;
 
   private final HdfsManager manager;
+  private final AppConf conf;
   private volatile boolean stopped;
-  private final Random rand;
+  private final AdaptivePoll poll;
+  private final EventLatency latency;
+  private final IngestQueue queue;
+  // applied batches that are not acknowledged by store yet, accessed by applier thread only
+  private final ArrayDeque<EventBatch> unacknowledged;
+  private long lastReportTime;
+  private long lastDrained;
 
-  public EventProcess(HdfsManager manager) {
+  public EventProcess(HdfsManager manager, AppConf conf) {
     this.manager = manager;
+    this.conf = conf;
     this.stopped = false;
-    this.rand = new Random();
+    this.poll = new AdaptivePoll(conf.eventsPollMinMs(), conf.eventsPollMaxMs(),
+      conf.eventsLatencyTargetMs());
+    this.latency = new EventLatency(conf.eventsLatencyTargetMs());
+    this.lastReportTime = System.currentTimeMillis();
+    this.lastDrained = 0L;
+    this.unacknowledged = new ArrayDeque<EventBatch>();
+    try {
+      File journalDir = new File(conf.ingestJournalDir(), manager.getNamespace());
+      SpillJournal journal =
+        new SpillJournal(journalDir, ((long) conf.ingestJournalSegmentMb()) << 20);
+      this.queue = new IngestQueue(conf.ingestQueueCapacity(), journal,
+        ((long) conf.ingestJournalMaxMb()) << 20);
+    } catch (IOException ioe) {
+      throw new RuntimeException("Failed to initialize spill journal", ioe);
+    }
+    LOG.info("Initialized event process with {}, {}", this.poll, this.queue);
   }
 
   @Override
   public void run() {
+    Thread applier = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        applyBatches();
+      }
+    }, Thread.currentThread().getName() + "-apply");
+    applier.start();
+    try {
+      pollBatches();
+    } finally {
+      this.stopped = true;
+      try {
+        applier.join();
+      } catch (InterruptedException err) {
+        LOG.warn("Interrupted while waiting for applier thread");
+      }
+      this.queue.close();
+    }
+  }
+
+  /** Consume inotify stream and enqueue batches */
+  private void pollBatches() {
     EventBatch batch = null;
     while (!this.stopped) {
       try {
-        while ((batch = this.manager.getEventStream().poll()) != null) {
-          long transaction = batch.getTxid();
-          LOG.debug("Processing batch transaction {}", transaction);
-          for (Event event : batch.getEvents()) {
-            long startTime = System.nanoTime();
-            processEvent(event, transaction);
-            long endTime = System.nanoTime();
-            LOG.info("Processed event in {} ms", (endTime - startTime) / 1e6);
+        FlightEvents.EventPoll flight = new FlightEvents.EventPoll();
+        flight.begin();
+        long timeout = this.poll.timeout();
+        int batches = 0;
+        long lastTxid = -1L;
+        batch = this.manager.getEventStream().poll(timeout, TimeUnit.MILLISECONDS);
+        if (batch == null) {
+          this.poll.backoff();
+          LOG.trace("No events, next poll {}", this.poll);
+        } else {
+          this.poll.reset();
+          // drain stream without waiting while events are available
+          do {
+            this.queue.put(batch);
+            batches++;
+            lastTxid = batch.getTxid();
+          } while (!this.stopped && (batch = this.manager.getEventStream().poll()) != null);
+        }
+        if (flight.shouldCommit()) {
+          flight.namespace = this.manager.getNamespace();
+          flight.timeout = timeout;
+          flight.batches = batches;
+          flight.transactionId = lastTxid;
+          flight.commit();
+        }
+      } catch (MissingEventsException err) {
+        LOG.warn("Events are missing from stream, resync root", err);
+        try {
+          // reopen stream first, so changes made during resync are delivered as events
+          this.manager.reopenEventStream();
+          for (INodePath root : this.manager.getRules().getRoots()) {
+            this.manager.getResync().submit(root);
           }
+        } catch (Exception cause) {
+          LOG.error("Failed to recover from missing events", cause);
+          this.stopped = true;
         }
-        long interval = POLLING_INTERVAL_MS + rand.nextInt(POLLING_INTERVAL_MS);
-        LOG.trace("Waiting to poll, interval={}", interval);
-        Thread.sleep(interval);
       } catch (Exception err) {
         LOG.error("Thread interrupted", err);
         this.stopped = true;
@@ -56,11 +145,215 @@ public class EventProcess implements Runnable {
     }
   }
 
+  /** Apply batches from queue in order, batch is retried with backoff if store fails */
+  private void applyBatches() {
+    try {
+      while (!this.stopped) {
+        EventBatch batch = this.queue.poll(APPLY_POLL_MS, TimeUnit.MILLISECONDS);
+        if (batch != null) {
+          applyWithRetry(batch);
+        }
+        reportLatency();
+        this.manager.flushRollups(false);
+      }
+    } catch (Exception err) {
+      LOG.error("Applier interrupted", err);
+      this.stopped = true;
+    }
+  }
+
+  /**
+   * Apply batch, retry while failure is caused by metadata store. On retry all batches that are
+   * not acknowledged by store are re-applied before the batch, writes are conditional on
+   * transaction id, so re-applying acknowledged writes is a no-op.
+   */
+  private void applyWithRetry(EventBatch batch) throws Exception {
+    long backoff = this.conf.eventsRetryMinMs();
+    boolean retry = false;
+    while (!this.stopped) {
+      try {
+        if (retry) {
+          long acknowledged = this.manager.metadataStore().getAcknowledged();
+          for (EventBatch previous : this.unacknowledged) {
+            if (previous.getTxid() > acknowledged) {
+              LOG.info("Re-apply batch {}, store acknowledged {}", previous.getTxid(),
+                acknowledged);
+              processBatch(previous, false);
+            }
+          }
+        }
+        processBatch(batch, !retry);
+        this.unacknowledged.addLast(batch);
+        long acknowledged = this.manager.metadataStore().getAcknowledged();
+        while (!this.unacknowledged.isEmpty() &&
+            this.unacknowledged.peekFirst().getTxid() <= acknowledged) {
+          this.unacknowledged.pollFirst();
+        }
+        return;
+      } catch (IOException | MongoException err) {
+        LOG.warn("Failed to apply batch " + batch.getTxid() + ", retry in " + backoff + " ms, " +
+          this.unacknowledged.size() + " unacknowledged batches, " + this.queue, err);
+        Thread.sleep(backoff);
+        backoff = Math.min(backoff * 2, this.conf.eventsRetryMaxMs());
+        retry = true;
+      }
+    }
+  }
+
+  /** Process all events in batch and optionally record end-to-end latency */
+  private void processBatch(EventBatch batch, boolean recordLatency) throws Exception {
+    long transaction = batch.getTxid();
+    LOG.debug("Processing batch transaction {}", transaction);
+    Event[] batchEvents = batch.getEvents();
+    List<Event> events = new ArrayList<Event>();
+    // index of event in batch, stable when batch is re-applied, identifies event in event store
+    List<Integer> indexes = new ArrayList<Integer>();
+    for (int i = 0; i < batchEvents.length; i++) {
+      if (accepted(batchEvents[i])) {
+        events.add(batchEvents[i]);
+        indexes.add(i);
+      } else {
+        LOG.debug("Skip event {} excluded by ingest rules", batchEvents[i]);
+      }
+    }
+    for (int i = 0; i < events.size(); i++) {
+      Event event = events.get(i);
+      FlightEvents.EventApply flight = new FlightEvents.EventApply();
+      flight.begin();
+      long startTime = System.nanoTime();
+      processEvent(event, transaction, indexes.get(i));
+      long endTime = System.nanoTime();
+      if (flight.shouldCommit()) {
+        INodePath path = eventPath(event);
+        flight.namespace = this.manager.getNamespace();
+        flight.eventType = event.getEventType().name();
+        flight.path = (path == null) ? null : path.toPathString();
+        flight.depth = (path == null) ? 0 : path.getDepth();
+        flight.transactionId = transaction;
+        flight.commit();
+      }
+      LOG.info("Processed event in {} ms", (endTime - startTime) / 1e6);
+      long timestamp = eventTimestamp(event);
+      if (recordLatency && timestamp > 0) {
+        this.latency.record(System.currentTimeMillis() - timestamp);
+      }
+    }
+    this.manager.getChangeFeed().publish(transaction, events.toArray(new Event[events.size()]));
+    // all events of transaction are submitted, store persists checkpoint once they are applied
+    this.manager.metadataStore().checkpoint(transaction);
+  }
+
+  /**
+   * Apply current polling settings from configuration, called when settings are changed at
+   * runtime. Invalid combination, e.g. max timeout below min timeout, is logged and ignored.
+   */
+  public void reconfigure() {
+    try {
+      this.poll.reconfigure(this.conf.eventsPollMinMs(), this.conf.eventsPollMaxMs(),
+        this.conf.eventsLatencyTargetMs());
+      this.latency.setTarget(this.conf.eventsLatencyTargetMs());
+      LOG.info("Reconfigured event process with {}", this.poll);
+    } catch (IllegalArgumentException err) {
+      LOG.warn("Keep current polling settings {}, {}", this.poll, err.getMessage());
+    }
+  }
+
+  /** Log latency statistics for the last interval, if interval has elapsed */
+  private void reportLatency() {
+    long now = System.currentTimeMillis();
+    if (now - this.lastReportTime >= LATENCY_REPORT_INTERVAL_MS) {
+      this.lastReportTime = now;
+      if (!this.latency.isEmpty()) {
+        LOG.info("Latency for the last {} ms: {}", LATENCY_REPORT_INTERVAL_MS,
+          this.latency.snapshot());
+      }
+      long drained = this.queue.drainedBatches();
+      if (drained > this.lastDrained || this.queue.journalRecords() > 0) {
+        LOG.info("Journal size {} bytes ({} batches), drain rate {} batches/s",
+          this.queue.journalBytes(), this.queue.journalRecords(),
+          (drained - this.lastDrained) * 1000.0 / LATENCY_REPORT_INTERVAL_MS);
+      }
+      this.lastDrained = drained;
+    }
+  }
+
+  /** Whether or not event touches path accepted by ingest rules, rename checks both paths */
+  private boolean accepted(Event event) {
+    IngestRules rules = this.manager.getRules();
+    switch (event.getEventType()) {
+      case APPEND:
+        return rules.accept(new INodePath(((Event.AppendEvent) event).getPath()));
+      case CLOSE:
+        return rules.accept(new INodePath(((Event.CloseEvent) event).getPath()));
+      case CREATE:
+        return rules.accept(new INodePath(((Event.CreateEvent) event).getPath()));
+      case METADATA:
+        return rules.accept(new INodePath(((Event.MetadataUpdateEvent) event).getPath()));
+      case RENAME:
+        Event.RenameEvent rename = (Event.RenameEvent) event;
+        return rules.accept(new INodePath(rename.getSrcPath())) ||
+          rules.accept(new INodePath(rename.getDstPath()));
+      case UNLINK:
+        return rules.accept(new INodePath(((Event.UnlinkEvent) event).getPath()));
+      default:
+        return true;
+    }
+  }
+
+  /** Return path of the event, source path for rename, or null if event does not carry path */
+  static INodePath eventPath(Event event) {
+    switch (event.getEventType()) {
+      case APPEND:
+        return new INodePath(((Event.AppendEvent) event).getPath());
+      case CLOSE:
+        return new INodePath(((Event.CloseEvent) event).getPath());
+      case CREATE:
+        return new INodePath(((Event.CreateEvent) event).getPath());
+      case METADATA:
+        return new INodePath(((Event.MetadataUpdateEvent) event).getPath());
+      case RENAME:
+        return new INodePath(((Event.RenameEvent) event).getSrcPath());
+      case UNLINK:
+        return new INodePath(((Event.UnlinkEvent) event).getPath());
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Return NameNode timestamp of the event, or 0 if event does not carry timestamp. Times of
+   * metadata update are set by client (e.g. `setTimes` of distcp) and are not used.
+   */
+  static long eventTimestamp(Event event) {
+    switch (event.getEventType()) {
+      case CLOSE:
+        return ((Event.CloseEvent) event).getTimestamp();
+      case CREATE:
+        return ((Event.CreateEvent) event).getCtime();
+      case RENAME:
+        return ((Event.RenameEvent) event).getTimestamp();
+      case UNLINK:
+        return ((Event.UnlinkEvent) event).getTimestamp();
+      default:
+        return 0L;
+    }
+  }
+
   /** Whether or not event process is stopped */
   public boolean isStopped() {
     return this.stopped;
   }
 
+  /** Get ingest queue between consumer and applier */
+  public IngestQueue getQueue() {
+    return this.queue;
+  }
+
+  /** Get end-to-end latency statistics */
+  public EventLatency getLatency() {
+    return this.latency;
+  }
+
   /** Mark event process thread as terminated */
   public void terminate() {
     this.stopped = true;
@@ -69,13 +362,14 @@ public class EventProcess implements Runnable {
   /**
    * Invoke one of the methods to process specific event, works as dispatcher.
    * Throws exception if event is unsupported or null.
+   * @param index index of event in transaction batch
    */
-  protected void processEvent(Event event, long transactionId) throws Exception {
+  protected void processEvent(Event event, long transactionId, int index) throws Exception {
     if (event == null) {
       throw new NullPointerException("Event null for transaction " + transactionId);
     }
-    // always save event before moving to file system
-    this.manager.mongoEventPool().insert(new EventContainer(transactionId, event));
+    // always save event before moving to file system, replaces event saved by previous attempt
+    this.manager.eventStore().insert(new EventContainer(transactionId, index, event));
     switch (event.getEventType()) {
       case APPEND:
         doAppend((Event.AppendEvent) event, transactionId);
@@ -112,8 +406,9 @@ public class EventProcess implements Runnable {
     INodePath path = new INodePath(event.getPath());
     INodeUpdate update = new INodeUpdate()
       .setFileSize(event.getFileSize())
-      .setMtime(event.getTimestamp());
-    this.manager.mongoFileSystem().update(path, update);
+      .setMtime(event.getTimestamp())
+      .setTransactionId(transactionId);
+    this.manager.fileSystemStore().update(path, update);
   }
 
   protected void doCreate(Event.CreateEvent event, long transactionId) throws IOException {
@@ -123,11 +418,11 @@ public class EventProcess implements Runnable {
     // need to update file size. For files, close event will be called after creation, which would
     // update file size on this path.
     // when copying files from local to hdfs, chain of events is triggered create -> close -> rename
-    // in this case we execute them in exact same order, relying on lock for mongo fs.
+    // in this case we execute them in exact same order, relying on lock for file system store.
     if (event.getOverwrite()) {
       // delete previous file
       INodePath path = new INodePath(event.getPath());
-      this.manager.mongoFileSystem().delete(path);
+      this.manager.fileSystemStore().delete(path, transactionId);
       LOG.info("Delete previous file {}, event overwrites file", event.getPath());
     }
 
@@ -144,8 +439,8 @@ public class EventProcess implements Runnable {
     FileStatus status = new FileStatus(defaultSize, isDirectory, replication, defaultBlockSize,
       modificationTime, accessTime, permission, event.getOwnerName(), event.getGroupName(),
       symlinkPath, path);
-    INode node = new INode(status);
-    this.manager.mongoFileSystem().upsert(node);
+    INode node = new INode(status).setTransactionId(transactionId);
+    this.manager.fileSystemStore().upsert(node);
   }
 
   protected void doMetadataUpdate(
@@ -161,8 +456,9 @@ public class EventProcess implements Runnable {
       .setMtime(event.getMtime())
       .setOwner(event.getOwnerName())
       .setPermission(event.getPerms())
-      .setReplication(event.getReplication());
-    this.manager.mongoFileSystem().update(path, update);
+      .setReplication(event.getReplication())
+      .setTransactionId(transactionId);
+    this.manager.fileSystemStore().update(path, update);
   }
 
   protected void doRename(Event.RenameEvent event, long transactionId) throws IOException {
@@ -170,12 +466,33 @@ public class EventProcess implements Runnable {
       event.getTimestamp(), event.getSrcPath(), event.getDstPath());
     INodePath srcPath = new INodePath(event.getSrcPath());
     INodePath dstPath = new INodePath(event.getDstPath());
-    this.manager.mongoFileSystem().rename(srcPath, dstPath);
+    IngestRules rules = this.manager.getRules();
+    if (!rules.accept(dstPath)) {
+      // subtree leaves ingest scope
+      LOG.info("Rename moves {} out of ingest scope, delete subtree", event.getSrcPath());
+      this.manager.fileSystemStore().delete(srcPath, transactionId);
+    } else if (!rules.accept(srcPath)) {
+      // subtree enters ingest scope, it was never stored, so it is listed from file system;
+      // wait for resync, so following events in the subtree apply to stored nodes; dedicated
+      // job is started, so applier does not wait for resync of covering tree, e.g. whole root
+      LOG.info("Rename moves {} into ingest scope, resync subtree", event.getDstPath());
+      SubtreeResync.Job job = this.manager.getResync().submitExclusive(dstPath);
+      try {
+        job.await();
+      } catch (InterruptedException err) {
+        throw new IOException("Interrupted while waiting for " + job, err);
+      }
+      if (job.getState() == SubtreeResync.State.FAILED) {
+        throw new IOException("Failed to resync " + job + ": " + job.getError());
+      }
+    } else {
+      this.manager.fileSystemStore().rename(srcPath, dstPath, transactionId);
+    }
   }
 
   protected void doUnlink(Event.UnlinkEvent event, long transactionId) throws IOException {
     LOG.info("UNLINK(ts={}, path={})", event.getTimestamp(), event.getPath());
     INodePath path = new INodePath(event.getPath());
-    this.manager.mongoFileSystem().delete(path);
+    this.manager.fileSystemStore().delete(path, transactionId);
   }
 }
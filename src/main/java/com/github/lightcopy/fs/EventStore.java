@@ -0,0 +1,21 @@
+package com.github.lightcopy.fs;
+
+import java.util.List;
+
+/**
+ * [[EventStore]] is a storage interface for HDFS events captured by [[EventProcess]]. Events are
+ * appended in transaction order and can be scanned starting from a transaction id. Event is
+ * identified by transaction id and index in batch, batches are re-applied after failure.
+ */
+public interface EventStore {
+  /** Append single event container, replaces stored event with the same transaction and index */
+  public void insert(EventContainer container);
+
+  /**
+   * Scan events in transaction order.
+   * @param fromTransactionId first transaction id to return (inclusive)
+   * @param limit maximum number of events to return
+   * @return list of event containers, empty if no events found
+   */
+  public List<EventContainer> scan(long fromTransactionId, int limit);
+}
@@ -0,0 +1,32 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * [[ExportSource]] is implemented by file system stores that can be scanned as independent
+ * partitions, see [[NamespaceExport]]. Partitions together cover every stored node exactly once
+ * and can be scanned concurrently. Nodes are streamed, partition is never materialized in memory.
+ */
+public interface ExportSource {
+  /** Consumer of scanned nodes */
+  public static interface Sink {
+    public void write(INode node) throws IOException;
+  }
+
+  /** Range of the store that can be scanned independently */
+  public static interface Partition {
+    /** Stream all nodes of the partition into sink */
+    public void scan(Sink sink) throws IOException;
+  }
+
+  /**
+   * Split store into partitions of roughly equal size.
+   * @param count desired number of partitions, store can return fewer partitions
+   * @return list of partitions, at least one
+   */
+  public List<Partition> partitions(int count) throws IOException;
+
+  /** Approximate number of stored nodes, used to report progress */
+  public long estimatedSize() throws IOException;
+}
@@ -0,0 +1,69 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * [[FileSystemStore]] is a storage interface for file system metadata. Implementations keep inodes
+ * keyed by [[INodePath]] and must support subtree operations (delete, rename) for a path, where
+ * subtree includes path itself and all its children recursively.
+ *
+ * Mutations are stamped with transaction id of the event, and node is only modified if it is not
+ * newer than incoming transaction, so replayed or retried events never overwrite newer state and
+ * can be delivered at least once. Mutations with `INode.NO_TRANSACTION` are unconditional.
+ */
+public interface FileSystemStore {
+  /**
+   * Get node for path, method is readonly.
+   * @param path path to retrieve
+   * @return INode instance for that path or null if none found
+   */
+  public INode get(INodePath path);
+
+  /**
+   * List children of the path, path itself is not included. Result is fully materialized, so
+   * recursive listing should only be used for subtrees that fit in memory.
+   * @param path parent path
+   * @param recursive if true, return all descendants, otherwise only direct children
+   * @return list of nodes, empty if path has no children
+   */
+  public List<INode> list(INodePath path, boolean recursive) throws IOException;
+
+  /**
+   * Delete path recursively, including all children that are not newer than transaction.
+   * @param path path to delete
+   * @param transactionId transaction id of the deletion
+   */
+  public void delete(INodePath path, long transactionId) throws IOException;
+
+  /**
+   * Insert node if one does not exist for the path, otherwise replace existing node with provided,
+   * unless existing node is newer than transaction id of provided node.
+   * @param node node to insert or replace with
+   */
+  public void upsert(INode node) throws IOException;
+
+  /**
+   * Insert list of nodes into file system. Nodes are not validated by path, therefore list should
+   * contain only distinct elements.
+   * @param nodes list of nodes to insert
+   */
+  public void insert(List<INode> nodes) throws IOException;
+
+  /**
+   * Rename path from srcPath to dstPath recursively, nodes newer than transaction are not moved.
+   * Moved nodes are stamped with transaction id.
+   * @param srcPath path to replace
+   * @param dstPath path to use as a replacement
+   * @param transactionId transaction id of the rename
+   */
+  public void rename(INodePath srcPath, INodePath dstPath, long transactionId) throws IOException;
+
+  /**
+   * Update individual node for provided path with update batch. If update batch does not contain
+   * any modification, or node is newer than transaction of the update, operation is ignored.
+   * @param path path for node to update
+   * @param builder node update builder
+   */
+  public void update(INodePath path, INodeUpdate builder) throws IOException;
+}
@@ -0,0 +1,133 @@
+package com.github.lightcopy.fs;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events for ingest, traversal and Mongo operations, so that GC pauses and
+ * lock stalls in a recording can be correlated with namespace operations. Settings are provided
+ * in "dbfs.jfc" and can be combined with JDK profile, e.g.
+ * `-XX:StartFlightRecording=settings=default,settings=dbfs.jfc`.
+ *
+ * Call sites follow `begin()` / `shouldCommit()` / `commit()` pattern and only populate fields
+ * when event is going to be recorded, so instrumentation has near-zero cost when recording is
+ * off. Stack traces are disabled, events are emitted on hot paths.
+ */
+public final class FlightEvents {
+  private FlightEvents() { }
+
+  /** Poll of inotify stream, includes draining of available batches into ingest queue */
+  @Name("dbfs.EventPoll")
+  @Label("Event Poll")
+  @Category({"DBFS", "Ingest"})
+  @Description("Poll of HDFS inotify stream and enqueue of returned batches")
+  @StackTrace(false)
+  public static class EventPoll extends Event {
+    @Label("Namespace")
+    public String namespace;
+
+    @Label("Poll Timeout")
+    @Timespan(Timespan.MILLISECONDS)
+    public long timeout;
+
+    @Label("Batches")
+    @Description("Number of batches returned by poll and drain")
+    public int batches;
+
+    @Label("Transaction Id")
+    @Description("Transaction id of the last polled batch, -1 if poll timed out")
+    public long transactionId;
+  }
+
+  /** Apply of single inotify event to metadata store */
+  @Name("dbfs.EventApply")
+  @Label("Event Apply")
+  @Category({"DBFS", "Ingest"})
+  @Description("Apply of single inotify event to metadata store")
+  @StackTrace(false)
+  public static class EventApply extends Event {
+    @Label("Namespace")
+    public String namespace;
+
+    @Label("Event Type")
+    public String eventType;
+
+    @Label("Path")
+    @Description("Path of the event, source path for rename")
+    public String path;
+
+    @Label("Path Depth")
+    public int depth;
+
+    @Label("Transaction Id")
+    public long transactionId;
+  }
+
+  /** Listing of single directory while walking file system tree */
+  @Name("dbfs.DirectoryListing")
+  @Label("Directory Listing")
+  @Category({"DBFS", "Traversal"})
+  @Description("NameNode listing of directory during indexing")
+  @StackTrace(false)
+  public static class DirectoryListing extends Event {
+    @Label("Namespace")
+    public String namespace;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Path Depth")
+    public int depth;
+
+    @Label("Entries")
+    @Description("Number of children accepted by ingest rules")
+    public int entries;
+  }
+
+  /** Insert of buffered nodes by tree visitor */
+  @Name("dbfs.IndexFlush")
+  @Label("Index Flush")
+  @Category({"DBFS", "Traversal"})
+  @Description("Batch insert of nodes buffered by tree visitor")
+  @StackTrace(false)
+  public static class IndexFlush extends Event {
+    @Label("Directory")
+    public String path;
+
+    @Label("Path Depth")
+    public int depth;
+
+    @Label("Batch Size")
+    public int batchSize;
+  }
+
+  /** Single operation of Mongo file system store, duration includes wait for modification lock */
+  @Name("dbfs.MongoOperation")
+  @Label("Mongo Operation")
+  @Category({"DBFS", "Mongo"})
+  @Description("File system operation on Mongo collection, including modification lock wait")
+  @StackTrace(false)
+  public static class MongoOperation extends Event {
+    @Label("Operation")
+    public String operation;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Path Depth")
+    public int depth;
+
+    @Label("Batch Size")
+    @Description("Number of nodes in insert, 1 for single node operations")
+    public int batchSize;
+
+    @Label("Transaction Id")
+    @Description("Transaction id of modification, -1 if operation does not carry one")
+    public long transactionId;
+  }
+}
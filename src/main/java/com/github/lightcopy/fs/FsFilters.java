@@ -16,26 +16,22 @@ import com.mongodb.client.model.Filters;
 
 /**
  * Filters class provides static methods to generate filters for inode path.
+ * All filters are generated for provided [[INodeSchema]], methods without schema use legacy one.
  */
 public class FsFilters {
   private FsFilters() { }
 
-  /** Return dot separated key, currently is only supported for inode path */
-  private static String pathKey(String field) {
-    return INode.FIELD_PATH + "." + field;
-  }
-
   /** Generate filter to find all paths with depth of provided path */
-  private static Bson depth(INodePath path) {
-    return Filters.eq(pathKey(INodePath.FIELD_DEPTH), path.getDepth());
+  private static Bson depth(INodeSchema schema, INodePath path) {
+    return Filters.eq(schema.pathKey(schema.depth()), path.getDepth());
   }
 
   /** Generate filter to combine all elements of the path */
-  private static ArrayList<Bson> pathElements(INodePath path) {
+  private static ArrayList<Bson> pathElements(INodeSchema schema, INodePath path) {
     ArrayList<Bson> filters = new ArrayList<Bson>();
     Map<String, String> map = path.getElements();
     for (Map.Entry<String, String> entry : map.entrySet()) {
-      Bson elem = Filters.eq(pathKey(entry.getKey()), entry.getValue());
+      Bson elem = Filters.eq(schema.pathKey(entry.getKey()), entry.getValue());
       filters.add(elem);
     }
     return filters;
@@ -46,49 +42,99 @@ public class FsFilters {
    * placeholder instead of returning null for situations when deleting root directory or renaming
    * root directory.
    */
-  private static Bson all() {
-    return Filters.exists(INode.FIELD_PATH);
+  private static Bson all(INodeSchema schema) {
+    return Filters.exists(schema.path());
   }
 
   /**
    * Filter to indicate that we do not need to return any nodes in file system. It is only used as
    * placeholder instead of returning null for operations with root directory.
    */
-  private static Bson none() {
-    return Filters.not(all());
+  private static Bson none(INodeSchema schema) {
+    return Filters.not(all(schema));
   }
 
   /** Generate filter to find particular path */
-  public static Bson path(INodePath path) {
-    ArrayList<Bson> filters = pathElements(path);
-    filters.add(depth(path));
+  public static Bson path(INodeSchema schema, INodePath path) {
+    ArrayList<Bson> filters = pathElements(schema, path);
+    filters.add(depth(schema, path));
     return Filters.and(filters);
   }
 
+  /**
+   * Generate filter to find particular path by hash of the full path, see [[PathHash]]. Hash is
+   * selective enough to be served by single-field index, path elements are kept in filter to
+   * verify stored path, so hash collision never matches another node.
+   */
+  public static Bson hashedPath(INodeSchema schema, INodePath path) {
+    return Filters.and(Filters.eq(schema.pathHash(), PathHash.hash(path)), path(schema, path));
+  }
+
+  /** Generate filter to find particular path using legacy schema */
+  public static Bson path(INodePath path) {
+    return path(INodeSchema.LEGACY, path);
+  }
+
   /**
    * Generate filter to find all paths that contain the same elements as provided path. Used to
    * search for itself and all its children recursively.
    */
-  public static Bson paths(INodePath path) {
-    ArrayList<Bson> filters = pathElements(path);
+  public static Bson paths(INodeSchema schema, INodePath path) {
+    ArrayList<Bson> filters = pathElements(schema, path);
     // empty filter list indicates root directory, and all dhild nodes should be selected
-    if (filters.isEmpty()) return all();
+    if (filters.isEmpty()) return all(schema);
+    return Filters.and(filters);
+  }
+
+  /**
+   * Generate filter to find children of the path, either all descendants (recursive) or only
+   * direct children. Does not return path itself.
+   */
+  public static Bson children(INodeSchema schema, INodePath path, boolean recursive) {
+    ArrayList<Bson> filters = pathElements(schema, path);
+    String depthKey = schema.pathKey(schema.depth());
+    if (recursive) {
+      filters.add(Filters.gt(depthKey, path.getDepth()));
+    } else {
+      filters.add(Filters.eq(depthKey, path.getDepth() + 1));
+    }
     return Filters.and(filters);
   }
 
+  /**
+   * Add condition that node is not newer than transaction, nodes without transaction stamp are
+   * always older. Filter is returned as is for NO_TRANSACTION.
+   */
+  public static Bson notNewer(INodeSchema schema, Bson filter, long transactionId) {
+    if (transactionId == INode.NO_TRANSACTION) return filter;
+    return Filters.and(filter, Filters.or(
+      Filters.lte(schema.transactionId(), transactionId),
+      Filters.exists(schema.transactionId(), false)));
+  }
+
+  /** Generate filter to find path and its children using legacy schema */
+  public static Bson paths(INodePath path) {
+    return paths(INodeSchema.LEGACY, path);
+  }
+
   /** Generate filters to fetch parent nodes for this path. Does not return itself */
-  public static Bson parentPaths(INodePath path) {
+  public static Bson parentPaths(INodeSchema schema, INodePath path) {
     ArrayList<Bson> filters = new ArrayList<Bson>();
     INodePath parent = path.getParent();
     while (parent != null) {
-      filters.add(path(parent));
+      filters.add(path(schema, parent));
       parent = parent.getParent();
     }
     // empty list indicates root directory that does not have any parent nodes
-    if (filters.isEmpty()) return none();
+    if (filters.isEmpty()) return none(schema);
     return Filters.or(filters);
   }
 
+  /** Generate filters to fetch parent nodes for this path using legacy schema */
+  public static Bson parentPaths(INodePath path) {
+    return parentPaths(INodeSchema.LEGACY, path);
+  }
+
   /** Print filter as json */
   public static String prettyString(Bson filter) {
     CodecRegistry registry = CodecRegistries.fromCodecs(new BsonDocumentCodec(),
@@ -0,0 +1,41 @@
+package com.github.lightcopy.fs;
+
+/**
+ * Single sample of namespace growth time series: usage of subtree at the start of bucket.
+ */
+public class GrowthSample {
+  private final String subtree;
+  private final GrowthTier tier;
+  private final long time;
+  private final UsageRollup.Usage usage;
+
+  public GrowthSample(String subtree, GrowthTier tier, long time, UsageRollup.Usage usage) {
+    this.subtree = subtree;
+    this.tier = tier;
+    this.time = time;
+    this.usage = usage;
+  }
+
+  public String getSubtree() {
+    return this.subtree;
+  }
+
+  public GrowthTier getTier() {
+    return this.tier;
+  }
+
+  /** Start of the bucket in milliseconds since epoch */
+  public long getTime() {
+    return this.time;
+  }
+
+  public UsageRollup.Usage getUsage() {
+    return this.usage;
+  }
+
+  @Override
+  public String toString() {
+    return "GrowthSample(subtree=" + this.subtree + ", tier=" + this.tier.getName() + ", time=" +
+      this.time + ", " + this.usage + ")";
+  }
+}
@@ -0,0 +1,105 @@
+package com.github.lightcopy.fs;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically captures usage of subtrees tracked by [[UsageRollup]] into [[TimeSeriesStore]].
+ * Every sample is written into each [[GrowthTier]], replacing the sample of the current bucket,
+ * so coarser tiers keep the latest sample of their bucket. Samples are taken from in-memory
+ * accumulators and never scan file system store. Only active instance captures samples.
+ */
+public class GrowthSampler implements Runnable {
+  private static final Logger LOG = LoggerFactory.getLogger(GrowthSampler.class);
+  // interval in milliseconds to remove expired samples
+  public static final long EXPIRE_INTERVAL_MS = 3600000L;
+
+  private final HdfsManager manager;
+  private final UsageRollup rollup;
+  private final TimeSeriesStore store;
+  private volatile long intervalMs;
+  // released on termination to wake up thread between samples
+  private final CountDownLatch termination;
+  private volatile boolean stopped;
+  private long lastExpireTime;
+
+  public GrowthSampler(HdfsManager manager, UsageRollup rollup, TimeSeriesStore store,
+      long intervalMs) {
+    this.manager = manager;
+    this.rollup = rollup;
+    this.store = store;
+    this.intervalMs = intervalMs;
+    this.termination = new CountDownLatch(1);
+    this.stopped = false;
+    this.lastExpireTime = 0L;
+  }
+
+  /** Change sampling interval, applies after the current wait */
+  public void setIntervalMs(long intervalMs) {
+    this.intervalMs = intervalMs;
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (!this.stopped) {
+        this.termination.await(this.intervalMs, TimeUnit.MILLISECONDS);
+        if (!this.stopped && this.manager.isActive()) {
+          try {
+            sample(System.currentTimeMillis());
+          } catch (Exception err) {
+            LOG.warn("Failed to capture growth samples, retry in " + this.intervalMs + " ms", err);
+          }
+        }
+      }
+    } catch (InterruptedException err) {
+      LOG.info("Growth sampler interrupted");
+    } finally {
+      this.stopped = true;
+    }
+  }
+
+  /** Capture usage of all tracked subtrees at time and expire old samples */
+  void sample(long time) throws Exception {
+    Map<String, UsageRollup.Usage> usage = this.rollup.get(UsageRollup.KIND_SUBTREE);
+    for (INodePath path : this.rollup.getSubtrees()) {
+      String subtree = path.toPathString();
+      UsageRollup.Usage value = usage.get(subtree);
+      if (value == null) {
+        value = new UsageRollup.Usage();
+      }
+      for (GrowthTier tier : GrowthTier.values()) {
+        this.store.record(new GrowthSample(subtree, tier, tier.bucket(time), value));
+      }
+    }
+    LOG.debug("Captured growth samples of {} subtrees", this.rollup.getSubtrees().size());
+    if (time - this.lastExpireTime >= EXPIRE_INTERVAL_MS) {
+      this.lastExpireTime = time;
+      for (GrowthTier tier : GrowthTier.values()) {
+        if (tier.getRetentionMs() != Long.MAX_VALUE) {
+          this.store.expire(tier, time - tier.getRetentionMs());
+        }
+      }
+    }
+  }
+
+  public boolean isStopped() {
+    return this.stopped;
+  }
+
+  /** Mark sampler thread as terminated */
+  public void terminate() {
+    this.stopped = true;
+    this.termination.countDown();
+  }
+
+  @Override
+  public String toString() {
+    return "GrowthSampler(subtrees=" + this.rollup.getSubtrees().size() + ", interval=" +
+      this.intervalMs + " ms)";
+  }
+}
@@ -0,0 +1,47 @@
+package com.github.lightcopy.fs;
+
+/**
+ * Downsampling tiers of namespace growth time series. Each tier keeps one sample per bucket,
+ * the latest sample captured within bucket, and expires samples older than retention.
+ */
+public enum GrowthTier {
+  MINUTE("minute", 60000L, 2L * 24 * 3600000L),
+  HOUR("hour", 3600000L, 90L * 24 * 3600000L),
+  DAY("day", 24L * 3600000L, Long.MAX_VALUE);
+
+  private final String name;
+  private final long intervalMs;
+  private final long retentionMs;
+
+  GrowthTier(String name, long intervalMs, long retentionMs) {
+    this.name = name;
+    this.intervalMs = intervalMs;
+    this.retentionMs = retentionMs;
+  }
+
+  /** Find tier by name, e.g. "hour" */
+  public static GrowthTier forName(String name) {
+    for (GrowthTier tier : values()) {
+      if (tier.getName().equals(name)) return tier;
+    }
+    throw new IllegalArgumentException("Unknown tier '" + name + "'");
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  public long getIntervalMs() {
+    return this.intervalMs;
+  }
+
+  /** Time in milliseconds to keep samples, Long.MAX_VALUE if samples never expire */
+  public long getRetentionMs() {
+    return this.retentionMs;
+  }
+
+  /** Start of the bucket that contains time, buckets are aligned to epoch */
+  public long bucket(long time) {
+    return time - time % this.intervalMs;
+  }
+}
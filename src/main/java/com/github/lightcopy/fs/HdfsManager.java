@@ -2,64 +2,143 @@ package com.github.lightcopy.fs;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSClient;
 import org.apache.hadoop.hdfs.DFSInotifyEventInputStream;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hdfs.client.HdfsAdmin;
+import org.apache.hadoop.hdfs.protocol.DirectoryListing;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.ipc.RemoteException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.mongodb.MongoClient;
-import com.mongodb.MongoClientURI;
-
 import com.github.lightcopy.conf.AppConf;
+import com.github.lightcopy.conf.HdfsSource;
+import com.github.lightcopy.conf.Tunables;
 
 public class HdfsManager {
   private static final Logger LOG = LoggerFactory.getLogger(HdfsManager.class);
 
-  public static final String MONGO_DATABASE = "dbfs";
-  public static final String MONGO_COLLECTION_FILE_SYSTEM = "filesystem";
-  public static final String MONGO_COLLECTION_EVENT_POOL = "eventpool";
-
+  private final AppConf conf;
+  private final String namespace;
   private HdfsAdmin admin;
   private FileSystem fs;
-  private MongoClient mongo;
-  private MongoFileSystem mongoFS;
-  private MongoEventPool mongoEventPool;
+  private MetadataStore store;
+  private FileSystemStore fileSystem;
   private Path root;
-  private DFSInotifyEventInputStream eventStream;
-  private EventProcess eventProcess;
+  private volatile DFSInotifyEventInputStream eventStream;
+  private volatile EventProcess eventProcess;
   private Thread eventProcessThread;
+  private LeaderElection election;
+  private Thread electionThread;
+  // reindex of promotion without checkpoint, runs off election thread so lease is renewed
+  private volatile Thread promotionThread;
+  private volatile boolean promotionAborted;
+  private ConsistencyVerifier verifier;
+  private Thread verifierThread;
+  private SubtreeResync resync;
+  private NamespaceExport export;
+  private UsageRollup rollup;
+  private long lastRollupFlush;
+  private final ChangeFeed changeFeed;
+  private IngestRules rules;
+  private GrowthSampler sampler;
+  private ModificationTracker modifications;
+  private Thread samplerThread;
+  // last applied transaction id observed in checkpoint, updated by leader election
+  private volatile long appliedTxid;
+  // applies settings changed at runtime to components that cache them
+  private final Tunables.Listener tunablesListener;
 
-  public HdfsManager(AppConf conf) {
-    this(conf.hdfsURI(), new Path("/"), conf.mongoConnectionString());
+  public HdfsManager(URI hdfsURI, Path root, String mongoConnection) {
+    this(new AppConf(), HdfsSource.DEFAULT_NAME, hdfsURI, root,
+      new MongoMetadataStore(mongoConnection));
   }
 
-  public HdfsManager(URI hdfsURI, Path root, String mongoConnection) {
+  public HdfsManager(
+      AppConf conf,
+      String namespace,
+      URI hdfsURI,
+      Path root,
+      MetadataStore store) {
+    this.conf = conf;
+    this.namespace = namespace;
+    this.appliedTxid = -1L;
+    this.changeFeed = new ChangeFeed(conf.feedCapacity());
     try {
-      LOG.info("Initialize hdfs manager with uri {}", hdfsURI);
+      LOG.info("Initialize hdfs manager for namespace {} with uri {}", namespace, hdfsURI);
       Configuration hadoopConfiguration = new Configuration(false);
       this.admin = new HdfsAdmin(hdfsURI, hadoopConfiguration);
       this.eventStream = this.admin.getInotifyEventStream();
       LOG.info("Initialize file system for uri {}", hdfsURI);
       this.fs = FileSystem.get(hdfsURI, hadoopConfiguration);
-      LOG.info("Initialize mongo client for connection {}", mongoConnection);
-      this.mongo = new MongoClient(new MongoClientURI(mongoConnection));
+      LOG.info("Use metadata store {}", store);
+      this.store = store;
+      // modifications are recorded below other decorators, so verifier repairs are tracked too
+      this.modifications = new ModificationTracker(conf.etagCapacity());
+      this.fileSystem = new ModificationFileSystem(store.fileSystem(), this.modifications);
+      List<INodePath> subtrees = new ArrayList<INodePath>();
+      for (String subtree : conf.timeseriesSubtrees()) {
+        subtrees.add(new INodePath(subtree));
+      }
+      if (conf.rollupsEnabled() || !subtrees.isEmpty()) {
+        // usage is maintained below directory hashes, so verifier repairs are accounted for
+        this.rollup = new UsageRollup(subtrees);
+        this.fileSystem = new UsageFileSystem(this.fileSystem, this.rollup);
+      }
+      if (!subtrees.isEmpty()) {
+        this.sampler = new GrowthSampler(this, this.rollup, store.timeSeries(),
+          conf.timeseriesIntervalMs());
+      }
+      if (conf.verifierEnabled()) {
+        this.fileSystem = new DirectoryHashFileSystem(this.fileSystem);
+        this.verifier = new ConsistencyVerifier(this,
+          (DirectoryHashFileSystem) this.fileSystem, conf);
+      }
       LOG.info("Set root path as {}", root);
       this.root = root;
-      // Mongo will create database if one does not exist already, the same applies to collections,
-      // they are only created when inserting document. Calling cleanup state after initializing
-      // properties is okay - database and collections will be recreated
-      this.mongoFS = new MongoFileSystem(
-        this.mongo.getDatabase(MONGO_DATABASE).getCollection(MONGO_COLLECTION_FILE_SYSTEM));
-      this.mongoEventPool = new MongoEventPool(
-        this.mongo.getDatabase(MONGO_DATABASE).getCollection(MONGO_COLLECTION_EVENT_POOL));
+      INodePath rootPath = new INodePath(root);
+      List<INodePath> scope = new ArrayList<INodePath>();
+      for (String path : conf.rulesRoots()) {
+        INodePath scopeRoot = new INodePath(path);
+        if (scopeRoot.hasPrefix(rootPath)) {
+          scope.add(scopeRoot);
+        }
+      }
+      if (scope.isEmpty()) {
+        scope.add(rootPath);
+      }
+      this.rules = new IngestRules(scope, conf.rulesExclude());
+      LOG.info("Use {}", this.rules);
+      this.resync = new SubtreeResync(this, conf.resyncThreads());
+      this.export = new NamespaceExport(this, conf);
+      this.tunablesListener = new Tunables.Listener() {
+        @Override
+        public void changed(String key, int value) {
+          tunableChanged(key, value);
+        }
+
+        @Override
+        public String toString() {
+          return "TunablesListener(" + HdfsManager.this.namespace + ")";
+        }
+      };
+      conf.tunables().addListener(this.tunablesListener);
     } catch (IOException ioe) {
       String msg = "Failed to initialize hdfs manager";
       LOG.error(msg, ioe);
@@ -67,15 +146,54 @@ public class HdfsManager {
     }
   }
 
+  /**
+   * Apply tunable to components that read setting only once. Settings read on every use, e.g.
+   * verifier, retry backoff or indexing batch size, do not need any action.
+   */
+  private void tunableChanged(String key, int value) {
+    if (AppConf.EVENTS_POLL_MIN_MS_KEY.equals(key) || AppConf.EVENTS_POLL_MAX_MS_KEY.equals(key) ||
+        AppConf.EVENTS_LATENCY_TARGET_MS_KEY.equals(key)) {
+      EventProcess process = this.eventProcess;
+      if (process != null) {
+        process.reconfigure();
+      }
+    } else if (AppConf.RESYNC_THREADS_KEY.equals(key)) {
+      this.resync.setThreads(value);
+    } else if (AppConf.EXPORT_THREADS_KEY.equals(key)) {
+      this.export.setThreads(value);
+    } else if (AppConf.MONGO_ASYNC_WINDOW_KEY.equals(key)) {
+      if (this.store instanceof AsyncMongoMetadataStore) {
+        ((AsyncMongoMetadataStore) this.store).setWindowSize(value);
+      }
+    } else if (AppConf.TIMESERIES_INTERVAL_MS_KEY.equals(key)) {
+      if (this.sampler != null) {
+        this.sampler.setIntervalMs(value);
+      }
+    }
+  }
+
+  /** Resize fixed thread pool, core size must not exceed maximum size at any point */
+  static void resize(ThreadPoolExecutor executor, int numThreads) {
+    if (numThreads > executor.getMaximumPoolSize()) {
+      executor.setMaximumPoolSize(numThreads);
+      executor.setCorePoolSize(numThreads);
+    } else {
+      executor.setCorePoolSize(numThreads);
+      executor.setMaximumPoolSize(numThreads);
+    }
+  }
+
   private void cleanupState() {
-    // delete database if exists
-    LOG.info("Delete Mongo database {}", MONGO_DATABASE);
-    this.mongo.getDatabase(MONGO_DATABASE).drop();
+    this.store.cleanup();
+    this.modifications.invalidate();
+    if (this.rollup != null) {
+      this.rollup.clear();
+    }
   }
 
   private void startEventProcessing() {
-    this.eventProcess = new EventProcess(this);
-    this.eventProcessThread = new Thread(this.eventProcess);
+    this.eventProcess = new EventProcess(this, this.conf);
+    this.eventProcessThread = new Thread(this.eventProcess, "EventProcess-" + this.namespace);
     LOG.info("Start event processing ({})", this.eventProcessThread);
     this.eventProcessThread.start();
   }
@@ -95,8 +213,245 @@ public class HdfsManager {
     }
   }
 
+  private void startLeaderElection() {
+    LeaderLease lease = this.store.lease(this.conf.haInstanceId(), this.conf.haLeaseTtlMs());
+    this.election = new LeaderElection(this, lease, this.conf.haLeaseTtlMs());
+    this.electionThread = new Thread(this.election, "LeaderElection-" + this.namespace);
+    LOG.info("Start leader election ({}) as standby", this.electionThread);
+    this.electionThread.start();
+  }
+
+  private void stopLeaderElection() {
+    if (this.electionThread != null) {
+      LOG.info("Stop leader election ({})", this.electionThread);
+      try {
+        this.election.terminate();
+        this.electionThread.join();
+        this.electionThread = null;
+      } catch (InterruptedException err) {
+        throw new RuntimeException("Intrerrupted thread " + this.electionThread, err);
+      }
+    }
+  }
+
+  private void startVerifier() {
+    if (this.verifier != null) {
+      this.verifierThread = new Thread(this.verifier, "ConsistencyVerifier-" + this.namespace);
+      this.verifierThread.setDaemon(true);
+      this.verifierThread.setPriority(Thread.MIN_PRIORITY);
+      LOG.info("Start consistency verifier ({})", this.verifier);
+      this.verifierThread.start();
+    }
+  }
+
+  private void stopVerifier() {
+    if (this.verifierThread != null) {
+      LOG.info("Stop consistency verifier ({})", this.verifierThread);
+      try {
+        this.verifier.terminate();
+        this.verifierThread.join();
+        this.verifierThread = null;
+      } catch (InterruptedException err) {
+        throw new RuntimeException("Intrerrupted thread " + this.verifierThread, err);
+      }
+    }
+  }
+
+  private void startSampler() {
+    if (this.sampler != null) {
+      this.samplerThread = new Thread(this.sampler, "GrowthSampler-" + this.namespace);
+      this.samplerThread.setDaemon(true);
+      LOG.info("Start growth sampler ({})", this.sampler);
+      this.samplerThread.start();
+    }
+  }
+
+  private void stopSampler() {
+    if (this.samplerThread != null) {
+      LOG.info("Stop growth sampler ({})", this.samplerThread);
+      try {
+        this.sampler.terminate();
+        this.samplerThread.join();
+        this.samplerThread = null;
+      } catch (InterruptedException err) {
+        throw new RuntimeException("Intrerrupted thread " + this.samplerThread, err);
+      }
+    }
+  }
+
+  /**
+   * Switch manager to active mode. If checkpoint exists, event stream is resumed from the last
+   * applied transaction without reindexing, otherwise state is rebuilt from scratch. Either way
+   * promotion runs on separate thread, so election thread keeps renewing lease while file system
+   * is indexed or usage of subtrees is recomputed; promotion is aborted by `demote()` once lease
+   * is lost.
+   */
+  synchronized void promote() {
+    // namespace might have been modified by another instance while this one was standby
+    this.modifications.invalidate();
+    this.promotionAborted = false;
+    final long checkpoint = this.store.getCheckpoint();
+    this.promotionThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        activate(checkpoint);
+      }
+    }, "Promotion-" + this.namespace);
+    this.promotionThread.start();
+  }
+
+  /**
+   * Resume from checkpoint or rebuild state of namespace if there is no checkpoint, and start
+   * event processing, runs on promotion thread. Failure stops leader election, so lease is
+   * released and instance reports failed status.
+   */
+  private void activate(long checkpoint) {
+    long startTime = System.nanoTime();
+    try {
+      if (checkpoint < 0) {
+        LOG.info("No checkpoint for namespace {}, reindex file system", this.namespace);
+        cleanupState();
+        this.eventStream = this.admin.getInotifyEventStream();
+        indexFileSystem();
+      } else {
+        LOG.info("Resume namespace {} from transaction {}", this.namespace, checkpoint);
+        this.eventStream = this.admin.getInotifyEventStream(checkpoint);
+        if (this.rollup != null) {
+          // changes applied after the last flush of previous leader are not accounted for
+          for (INodePath subtree : this.rollup.load(this.store.rollups())) {
+            recomputeSubtree(subtree);
+          }
+        }
+      }
+      synchronized (this) {
+        checkPromotion();
+        startEventProcessing();
+      }
+      long endTime = System.nanoTime();
+      LOG.info("Promoted to active in {} ms", (endTime - startTime) / 1e6);
+    } catch (InterruptedIOException err) {
+      LOG.warn("Promotion of namespace {} aborted: {}", this.namespace, err.getMessage());
+    } catch (Exception err) {
+      LOG.error("Failed to promote hdfs manager for namespace " + this.namespace, err);
+      if (this.election != null) {
+        this.election.terminate();
+      }
+    }
+  }
+
+  /**
+   * Compute usage of tracked subtree that has no persisted usage, e.g. added to configuration
+   * after namespace was indexed; otherwise deletes in subtree make its usage negative. Subtree is
+   * read one directory at a time before event processing starts. Recompute is aborted if lease is
+   * lost.
+   */
+  private void recomputeSubtree(INodePath subtree) throws IOException {
+    long startTime = System.nanoTime();
+    UsageRollup.Usage usage = new UsageRollup.Usage();
+    INode root = fileSystemStore().get(subtree);
+    if (root != null) {
+      usage.add(root, 1);
+      ArrayDeque<INodePath> directories = new ArrayDeque<INodePath>();
+      if (root.isDirectory()) {
+        directories.push(subtree);
+      }
+      while (!directories.isEmpty()) {
+        checkPromotion();
+        for (INode child : fileSystemStore().list(directories.pop(), false)) {
+          usage.add(child, 1);
+          if (child.isDirectory()) {
+            directories.push(child.getPath());
+          }
+        }
+      }
+    }
+    this.rollup.setSubtree(subtree, usage);
+    LOG.info("Recomputed usage {} of subtree {} in {} ms", usage, subtree,
+      (System.nanoTime() - startTime) / 1e6);
+  }
+
+  /** Throw exception if promotion in progress has been aborted, e.g. lease is lost */
+  private void checkPromotion() throws InterruptedIOException {
+    if (this.promotionAborted) {
+      throw new InterruptedIOException("Lease is lost, stop promotion of namespace " +
+        this.namespace);
+    }
+  }
+
   /**
-   * Traverse root directory and propagate visitor for indexing.
+   * Switch manager to standby mode, promotion in progress is aborted and event processing is
+   * stopped before method returns, so this instance does not write after lease is lost.
+   */
+  void demote() {
+    this.promotionAborted = true;
+    Thread promotion = this.promotionThread;
+    if (promotion != null) {
+      LOG.info("Abort promotion ({})", promotion);
+      try {
+        // indexing and recompute check abort flag before every directory
+        promotion.join();
+      } catch (InterruptedException err) {
+        throw new RuntimeException("Intrerrupted thread " + promotion, err);
+      }
+      this.promotionThread = null;
+    }
+    synchronized (this) {
+      stopEventProcessing();
+    }
+  }
+
+  /** Whether or not event processing thread is running */
+  boolean isProcessingEvents() {
+    EventProcess process = this.eventProcess;
+    return process != null && !process.isStopped();
+  }
+
+  /** Whether or not promotion is in progress, i.e. namespace is being resumed or rebuilt */
+  boolean isPromoting() {
+    Thread promotion = this.promotionThread;
+    return promotion != null && promotion.isAlive();
+  }
+
+  /**
+   * Flush usage rollups to metadata store if flush interval has elapsed or flush is forced.
+   * Called by event processing, failures are logged and flush is retried next time.
+   */
+  void flushRollups(boolean force) {
+    if (this.rollup == null) return;
+    long now = System.currentTimeMillis();
+    if (!force && now - this.lastRollupFlush < this.conf.rollupsFlushIntervalMs()) return;
+    this.lastRollupFlush = now;
+    try {
+      this.rollup.flush(this.store.rollups());
+    } catch (Exception err) {
+      LOG.warn("Failed to flush usage rollups for namespace " + this.namespace, err);
+    }
+  }
+
+  /**
+   * Get usage by owner or group, see [[UsageRollup]]. Active instance returns current
+   * accumulators, standby returns usage last flushed by active instance.
+   * @param kind either "owner" or "group"
+   * @return usage by name, or null if rollups are disabled
+   */
+  public Map<String, UsageRollup.Usage> getUsage(String kind) throws IOException {
+    if (this.rollup == null) return null;
+    if (isActive()) return this.rollup.get(kind);
+    return new TreeMap<String, UsageRollup.Usage>(this.store.rollups().load(kind));
+  }
+
+  /** Refresh last applied transaction id from checkpoint */
+  void tailCheckpoint() {
+    long checkpoint = this.store.getCheckpoint();
+    if (checkpoint != this.appliedTxid) {
+      LOG.debug("Namespace {} applied transaction {}", this.namespace, checkpoint);
+    }
+    this.appliedTxid = checkpoint;
+  }
+
+  /**
+   * Traverse scope roots of ingest rules and propagate visitor for indexing. Namespace root must
+   * be a directory, scope roots that do not exist or are excluded are skipped.
    */
   private void indexFileSystem() throws IOException {
     FileSystem fs = getFileSystem();
@@ -105,20 +460,45 @@ public class HdfsManager {
     if (!rootStatus.isDirectory()) {
       throw new IllegalArgumentException("Expected root path as directory, got " + rootStatus);
     }
-    TreeVisitor visitor = prepareTreeVisitor();
-    walkTree(fs, rootStatus, visitor);
+    for (INodePath scopeRoot : this.rules.getRoots()) {
+      if (this.rules.isExcluded(scopeRoot)) continue;
+      FileStatus status;
+      try {
+        status = fs.getFileStatus(new Path(scopeRoot.toPathString()));
+      } catch (FileNotFoundException err) {
+        LOG.warn("Scope root {} does not exist, skip indexing", scopeRoot.toPathString());
+        continue;
+      }
+      status = withInodeId(fs, status);
+      if (status.isDirectory()) {
+        walkTree(fs, status, prepareTreeVisitor());
+      } else {
+        fileSystemStore().insert(Collections.singletonList(new INode(status)));
+      }
+    }
   }
 
   /**
    * Walk file system tree starting with root directory. Root must be a valid directory, otherwise
    * traversal is ignored, each file or symlink (non-directory) node is processed as child of
-   * current tree traversal.
+   * current tree traversal. Children rejected by ingest rules are not visited.
    */
   private void walkTree(FileSystem fs, FileStatus root, TreeVisitor visitor)
       throws FileNotFoundException, IOException {
     if (root.isDirectory()) {
+      checkPromotion();
       visitor.visitBefore(root);
-      FileStatus[] children = fs.listStatus(root.getPath());
+      FlightEvents.DirectoryListing flight = new FlightEvents.DirectoryListing();
+      flight.begin();
+      FileStatus[] children = this.rules.filter(listWithInodeIds(fs, root));
+      if (flight.shouldCommit()) {
+        INodePath path = new INodePath(root.getPath());
+        flight.namespace = this.namespace;
+        flight.path = path.toPathString();
+        flight.depth = path.getDepth();
+        flight.entries = (children == null) ? 0 : children.length;
+        flight.commit();
+      }
       if (children != null && children.length > 0) {
         for (FileStatus child : children) {
           if (child.isDirectory()) {
@@ -134,17 +514,157 @@ public class HdfsManager {
     }
   }
 
+  /** Attach inode id to status of scope root, scope root is stored without parent id */
+  private static FileStatus withInodeId(FileSystem fs, FileStatus status) throws IOException {
+    long fileId = INodeStatus.syntheticId();
+    if (fs instanceof DistributedFileSystem) {
+      HdfsFileStatus info = ((DistributedFileSystem) fs).getClient()
+        .getFileInfo(status.getPath().toUri().getPath());
+      if (info != null) {
+        fileId = info.getFileId();
+      }
+    }
+    return new INodeStatus(status, fileId, INode.NO_ID);
+  }
+
+  /**
+   * List directory, returned statuses carry inode ids of children and inode id of directory as
+   * parent id. HDFS is listed with DFSClient directly, since `listStatus` drops inode ids; other
+   * file systems get synthetic ids.
+   */
+  private static FileStatus[] listWithInodeIds(FileSystem fs, FileStatus directory)
+      throws IOException {
+    long parentId = (directory instanceof INodeStatus) ?
+      ((INodeStatus) directory).getFileId() : INode.NO_ID;
+    List<FileStatus> result = new ArrayList<FileStatus>();
+    if (fs instanceof DistributedFileSystem) {
+      DFSClient client = ((DistributedFileSystem) fs).getClient();
+      String src = directory.getPath().toUri().getPath();
+      byte[] lastName = HdfsFileStatus.EMPTY_NAME;
+      DirectoryListing listing;
+      do {
+        listing = client.listPaths(src, lastName);
+        if (listing == null) {
+          throw new FileNotFoundException("File " + src + " does not exist");
+        }
+        for (HdfsFileStatus status : listing.getPartialListing()) {
+          result.add(new INodeStatus(status.makeQualified(fs.getUri(), directory.getPath()),
+            status.getFileId(), parentId));
+        }
+        lastName = listing.getLastName();
+      } while (listing.hasMore());
+    } else {
+      for (FileStatus status : fs.listStatus(directory.getPath())) {
+        result.add(new INodeStatus(status, INodeStatus.syntheticId(), parentId));
+      }
+    }
+    return result.toArray(new FileStatus[result.size()]);
+  }
+
+  /** Get namespace name for this manager */
+  public String getNamespace() {
+    return this.namespace;
+  }
+
+  /** Get application configuration for this manager */
+  public AppConf getConf() {
+    return this.conf;
+  }
+
+  /**
+   * Whether or not this manager applies events. Always true when high availability is disabled,
+   * otherwise only when instance holds lease.
+   */
+  public boolean isActive() {
+    return (this.election == null) || this.election.isLeader();
+  }
+
+  /**
+   * Last applied transaction id known to this manager, or -1 if unknown. For standby this is
+   * transaction id checkpointed by active instance.
+   */
+  public long getAppliedTxid() {
+    return this.appliedTxid;
+  }
+
   protected DFSInotifyEventInputStream getEventStream() {
     return this.eventStream;
   }
 
+  /** Replace event stream with stream that starts at the current transaction */
+  protected void reopenEventStream() throws IOException {
+    LOG.info("Reopen event stream for namespace {}", this.namespace);
+    this.eventStream = this.admin.getInotifyEventStream();
+  }
+
+  /**
+   * Get growth samples of subtree within time range, see [[TimeSeriesStore]]. Samples are
+   * available on both active and standby instances.
+   */
+  public List<GrowthSample> getGrowth(String subtree, GrowthTier tier, long from, long to)
+      throws IOException {
+    return this.store.timeSeries().query(subtree, tier, from, to);
+  }
+
+  /**
+   * Get node for path from read path of metadata store, see [[MetadataStore]].
+   * @param path path to look up
+   * @param transactionId transaction that query must observe, or -1 for any
+   * @return node or null if path does not exist
+   */
+  public INode getNode(INodePath path, long transactionId) {
+    return this.store.reader(transactionId).get(path);
+  }
+
+  /**
+   * List direct children of path from read path of metadata store, see [[MetadataStore]].
+   * @param path parent path
+   * @param transactionId transaction that query must observe, or -1 for any
+   */
+  public List<INode> listNodes(INodePath path, long transactionId) throws IOException {
+    return this.store.reader(transactionId).list(path, false);
+  }
+
+  /**
+   * Get version of path for conditional metadata queries, version changes whenever path, its
+   * direct children or its ancestors as subtree are modified. Standby does not apply events, its
+   * version changes with every checkpoint of active instance.
+   */
+  public ModificationTracker.Version getVersion(INodePath path) {
+    if (!isActive()) {
+      long txid = this.appliedTxid;
+      return new ModificationTracker.Version(txid, "standby." + txid);
+    }
+    return this.modifications.version(path);
+  }
+
+  /** Get ingest rules, events and indexing only apply to accepted paths */
+  public IngestRules getRules() {
+    return this.rules;
+  }
+
+  /** Get change feed of events applied by this manager */
+  public ChangeFeed getChangeFeed() {
+    return this.changeFeed;
+  }
+
+  /** Get export engine for this namespace */
+  public NamespaceExport getExport() {
+    return this.export;
+  }
+
+  /** Get resync engine for this namespace */
+  public SubtreeResync getResync() {
+    return this.resync;
+  }
+
   /**
    * Prepare tree visitor for a directory. All initialization code should go into this method,
    * including allocating buffers for child leaves, etc. This method is invoked before walking
    * part of the tree.
    */
   public TreeVisitor prepareTreeVisitor() {
-    return new NodeTreeVisitor(mongoFileSystem());
+    return new NodeTreeVisitor(fileSystemStore(), this.conf.indexInsertBatch());
   }
 
   /**
@@ -164,23 +684,40 @@ public class HdfsManager {
     return this.root;
   }
 
-  /** Get mongo file system to manage metadata */
-  protected MongoFileSystem mongoFileSystem() {
-    return this.mongoFS;
+  /** Get file system store to manage metadata */
+  protected FileSystemStore fileSystemStore() {
+    return this.fileSystem;
+  }
+
+  /** Get consistency verifier, or null if verifier is disabled */
+  public ConsistencyVerifier getVerifier() {
+    return this.verifier;
+  }
+
+  /** Get metadata store, used to checkpoint applied transactions */
+  protected MetadataStore metadataStore() {
+    return this.store;
   }
 
-  /** Get mongo event pool to store hdfs events */
-  protected MongoEventPool mongoEventPool() {
-    return this.mongoEventPool;
+  /** Get event store to store hdfs events */
+  protected EventStore eventStore() {
+    return this.store.eventPool();
   }
 
   /**
    * Initialize manager, this should include buffering streams, creating connections, and file
-   * system. Method is called only once.
+   * system. Method is called only once. When high availability is enabled, manager starts as
+   * standby and is promoted once it acquires lease.
    */
   public void start() {
     long startTime = System.nanoTime();
-    LOG.info("Start hdfs manager");
+    LOG.info("Start hdfs manager for namespace {}", this.namespace);
+    if (this.conf.haEnabled()) {
+      startLeaderElection();
+      startVerifier();
+      startSampler();
+      return;
+    }
     try {
       // cleanup state
       LOG.info("Clean up current state");
@@ -191,6 +728,8 @@ public class HdfsManager {
       // start thread to process events
       LOG.info("Start processing thread");
       startEventProcessing();
+      startVerifier();
+      startSampler();
     } catch (IOException ioe) {
       String msg = "Failed to start hdfs manager";
       LOG.error(msg, ioe);
@@ -203,16 +742,15 @@ public class HdfsManager {
   /**
    * Method to return status as true/false, on whether or not all systems for hdfs manager are
    * running. This can also print necessary status details on overall performance. Return `true`,
-   * if event process thread is running correctly and other threads are okay.
+   * if event process thread is running correctly and other threads are okay. Standby is running
+   * as long as leader election and metadata store are available.
    */
   public boolean status() {
-    boolean isAlive = !this.eventProcess.isStopped();
-    try {
-      isAlive = isAlive && this.mongo.getServerAddressList() != null;
-    } catch (Exception err) {
-      isAlive = false;
+    if (this.election != null) {
+      if (this.election.isStopped() || !this.store.isAlive()) return false;
+      return !this.election.isLeader() || isPromoting() || isProcessingEvents();
     }
-    return isAlive;
+    return !this.eventProcess.isStopped() && this.store.isAlive();
   }
 
   /**
@@ -221,15 +759,25 @@ public class HdfsManager {
    */
   public void stop() {
     long startTime = System.nanoTime();
-    LOG.info("Stop hdfs manager");
+    LOG.info("Stop hdfs manager for namespace {}", this.namespace);
+    this.conf.tunables().removeListener(this.tunablesListener);
+    stopVerifier();
+    stopSampler();
+    this.resync.stop();
+    this.export.stop();
+    // release lease first, so standby can take over while this instance shuts down
+    stopLeaderElection();
     stopEventProcessing();
+    if (isActive()) {
+      flushRollups(true);
+    }
     // it does not seem like you can close event stream
     this.eventStream = null;
     // reset hdfs admin
     this.admin = null;
-    // close mongodb
-    this.mongo.close();
-    this.mongo = null;
+    // close metadata store
+    this.store.close();
+    this.store = null;
     long endTime = System.nanoTime();
     LOG.info("Stopped in {} ms", (endTime - startTime) / 1e6);
   }
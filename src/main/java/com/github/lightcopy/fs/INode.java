@@ -29,6 +29,15 @@ public class INode {
   public static final String FIELD_PARENT = "parent";
   public static final String FIELD_TYPE = "type";
   public static final String FIELD_PATH = "path";
+  public static final String FIELD_PATH_HASH = "pathHash";
+  public static final String FIELD_CHILD_HASH = "childHash";
+  public static final String FIELD_TRANSACTION_ID = "transactionId";
+  public static final String FIELD_FILE_ID = "_id";
+  // transaction id of nodes that are not stamped, e.g. created during indexing; mutation with this
+  // transaction id is applied unconditionally
+  public static final long NO_TRANSACTION = 0L;
+  // file id of nodes that do not have id assigned yet, also parent id of topmost stored nodes
+  public static final long NO_ID = 0L;
 
   // access time and modification time
   private long accessTime;
@@ -49,12 +58,23 @@ public class INode {
   private INodeType nodeType;
   // inode fs path
   private INodePath path;
+  // combined entry hashes of direct children, only maintained for directories
+  private long childHash;
+  // transaction id of the last applied mutation
+  private long transactionId;
+  // HDFS inode id and inode id of parent directory, only used by inode-keyed store
+  private long fileId;
+  private long parentId;
 
   public INode(FileStatus status) {
     this(status.getAccessTime(), status.getModificationTime(), status.getLen(),
       status.getBlockSize(), status.getReplication(), status.getGroup(), status.getOwner(),
       permissionString(status.getPermission()), status.getPath().getName(),
       new INodePath(status.getPath()), statusType(status));
+    if (status instanceof INodeStatus) {
+      this.fileId = ((INodeStatus) status).getFileId();
+      this.parentId = ((INodeStatus) status).getParentId();
+    }
   }
 
   public INode(long accessTime, long modificationTime, long size, long blockSize,
@@ -86,6 +106,14 @@ public class INode {
   /** Empty constructor for builder pattern */
   protected INode() { }
 
+  /** Return shallow copy of this node, path is shared since it is not modified in place */
+  protected INode copy() {
+    return new INode(this.accessTime, this.modificationTime, this.sizeBytes, this.blockSizeBytes,
+      this.replicationFactor, this.group, this.owner, this.permission, this.name, this.path,
+      this.nodeType).setChildHash(this.childHash).setTransactionId(this.transactionId)
+      .setFileId(this.fileId).setParentId(this.parentId);
+  }
+
   /** Convert file status path into inode path */
   private static INodePath statusPath(FileStatus status) {
     return new INodePath(status.getPath());
@@ -164,6 +192,26 @@ public class INode {
     return this;
   }
 
+  protected INode setChildHash(long value) {
+    this.childHash = value;
+    return this;
+  }
+
+  protected INode setTransactionId(long value) {
+    this.transactionId = value;
+    return this;
+  }
+
+  protected INode setFileId(long value) {
+    this.fileId = value;
+    return this;
+  }
+
+  protected INode setParentId(long value) {
+    this.parentId = value;
+    return this;
+  }
+
   public long getAccessTime() {
     return this.accessTime;
   }
@@ -215,6 +263,56 @@ public class INode {
     return this.path;
   }
 
+  /** Transaction id of the last mutation applied to this node, or NO_TRANSACTION */
+  public long getTransactionId() {
+    return this.transactionId;
+  }
+
+  /** HDFS inode id of this node, or NO_ID if unknown, e.g. node was created from event */
+  public long getFileId() {
+    return this.fileId;
+  }
+
+  /** Inode id of parent directory, or NO_ID if unknown */
+  public long getParentId() {
+    return this.parentId;
+  }
+
+  /**
+   * Whether or not node was modified by transaction newer than provided one, in which case
+   * mutation with provided transaction id must be skipped.
+   */
+  public boolean isNewerThan(long transactionId) {
+    return transactionId != NO_TRANSACTION && this.transactionId > transactionId;
+  }
+
+  public boolean isDirectory() {
+    return this.nodeType == INodeType.DIRECTORY;
+  }
+
+  /**
+   * Combined entry hashes of direct children for directory, see `entryHash()`. Children are
+   * combined with XOR, so hash does not depend on order and can be updated incrementally.
+   */
+  public long getChildHash() {
+    return this.childHash;
+  }
+
+  /**
+   * Hash of this node as an entry of parent directory: name, size, modification time and type.
+   * Size and modification time are not included for directories, since HDFS changes directory
+   * modification time when children change without emitting events for directory.
+   */
+  public long entryHash() {
+    long hash = PathHash.hash(this.name);
+    hash = PathHash.mix(hash, getTypeName());
+    if (!isDirectory()) {
+      hash = PathHash.mix(hash, this.sizeBytes);
+      hash = PathHash.mix(hash, this.modificationTime);
+    }
+    return hash;
+  }
+
   @Override
   public String toString() {
     return this.getTypeName() +
@@ -227,6 +325,7 @@ public class INode {
       ", replicationFactor=" + this.replicationFactor +
       ", group=" + this.group +
       ", owner=" + this.owner +
-      ", permission=" + this.permission + ")";
+      ", permission=" + this.permission +
+      ", transactionId=" + this.transactionId + ")";
   }
 }
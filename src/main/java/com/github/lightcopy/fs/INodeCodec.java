@@ -1,18 +1,160 @@
 package com.github.lightcopy.fs;
 
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.hadoop.fs.permission.FsPermission;
+
+import org.bson.BsonBinaryWriter;
 import org.bson.BsonReader;
 import org.bson.BsonType;
 import org.bson.BsonWriter;
 import org.bson.codecs.DecoderContext;
 import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Custom INode conversion codec for Mongo.
+ * Codec encodes documents using provided [[INodeSchema]], decoding supports both legacy and
+ * compact fields, so documents written in either schema are read transparently. Compact schema
+ * requires [[NameDictionary]] to map owner and group names into ids.
+ *
+ * When codec is keyed by inode id, document id is the inode id of the node and document stores
+ * parent inode id instead of path; path is only written for nodes without stored parent, e.g.
+ * indexed scope roots, see [[MongoInodeFileSystem]]. Otherwise path is followed by hash of the
+ * full path, see [[PathHash]]; hash is not decoded, it is derived from path.
  */
 public class INodeCodec extends AbstractCodec<INode> {
-  public INodeCodec() { }
+  private static final Logger LOG = LoggerFactory.getLogger(INodeCodec.class);
+  // compare encoded size of every n-th document with legacy schema
+  public static final int SIZE_SAMPLE_RATE = 1000;
+  // log size reduction every n sampled documents
+  public static final int SIZE_REPORT_RATE = 100;
+
+  // type codes for compact schema
+  private static final int TYPE_DIRECTORY = 0;
+  private static final int TYPE_FILE = 1;
+  private static final int TYPE_SYMLINK = 2;
+
+  private final INodeSchema schema;
+  private final NameDictionary dictionary;
+  // whether or not documents are keyed by inode id with parent pointers
+  private final boolean inodeKeyed;
+  // size statistics for compact schema
+  private final AtomicLong encoded;
+  private final AtomicLong sampled;
+  private final AtomicLong sampledLegacyBytes;
+  private final AtomicLong sampledCompactBytes;
+
+  public INodeCodec() {
+    this(INodeSchema.LEGACY, null);
+  }
+
+  public INodeCodec(INodeSchema schema, NameDictionary dictionary) {
+    this(schema, dictionary, false);
+  }
+
+  public INodeCodec(INodeSchema schema, NameDictionary dictionary, boolean inodeKeyed) {
+    if (schema.isCompact() && dictionary == null) {
+      throw new IllegalArgumentException("Compact schema requires name dictionary");
+    }
+    this.schema = schema;
+    this.dictionary = dictionary;
+    this.inodeKeyed = inodeKeyed;
+    this.encoded = new AtomicLong(0L);
+    this.sampled = new AtomicLong(0L);
+    this.sampledLegacyBytes = new AtomicLong(0L);
+    this.sampledCompactBytes = new AtomicLong(0L);
+  }
+
+  /** Schema used to encode documents */
+  public INodeSchema getSchema() {
+    return this.schema;
+  }
+
+  /** Whether or not documents are keyed by inode id */
+  public boolean isInodeKeyed() {
+    return this.inodeKeyed;
+  }
+
+  /**
+   * Register owner and group of the node in dictionary, if schema is compact. Should be called
+   * before node is submitted to Mongo, so encoding does not need to write dictionary entries.
+   */
+  public void register(INode node) {
+    if (this.schema.isCompact()) {
+      ownerValue(node.getOwner());
+      groupValue(node.getGroup());
+    }
+  }
+
+  /** Value of owner field for this schema, either name or dictionary id; null is preserved */
+  public Object ownerValue(String owner) {
+    if (owner == null || !this.schema.isCompact()) return owner;
+    return this.dictionary.getId(owner);
+  }
+
+  /** Value of group field for this schema, either name or dictionary id; null is preserved */
+  public Object groupValue(String group) {
+    if (group == null || !this.schema.isCompact()) return group;
+    return this.dictionary.getId(group);
+  }
+
+  /** Value of permission field for this schema, either symbolic string or 16-bit integer */
+  public Object permissionValue(String permission) {
+    if (permission == null || !this.schema.isCompact()) return permission;
+    return (int) FsPermission.valueOf("-" + permission).toShort();
+  }
+
+  /** Convert type name into compact type code */
+  private static int typeCode(String typeName) {
+    switch (INode.INodeType.valueOf(typeName)) {
+      case DIRECTORY:
+        return TYPE_DIRECTORY;
+      case FILE:
+        return TYPE_FILE;
+      default:
+        return TYPE_SYMLINK;
+    }
+  }
+
+  /** Convert compact type code into type name */
+  private static String typeName(int code) {
+    switch (code) {
+      case TYPE_DIRECTORY:
+        return INode.INodeType.DIRECTORY.name();
+      case TYPE_FILE:
+        return INode.INodeType.FILE.name();
+      case TYPE_SYMLINK:
+        return INode.INodeType.SYMLINK.name();
+      default:
+        throw new IllegalArgumentException("Unknown type code " + code);
+    }
+  }
+
+  /** Read nullable dictionary name */
+  private String readName(BsonReader reader) {
+    if (reader.getCurrentBsonType() == BsonType.NULL) {
+      reader.readNull();
+      return null;
+    }
+    if (this.dictionary == null) {
+      throw new IllegalStateException("Cannot decode compact document without name dictionary");
+    }
+    return this.dictionary.getName(reader.readInt32());
+  }
+
+  /** Read nullable string */
+  private static String readNullableString(BsonReader reader) {
+    if (reader.getCurrentBsonType() == BsonType.NULL) {
+      reader.readNull();
+      return null;
+    }
+    return reader.readString();
+  }
 
   @Override
   public INode decode(BsonReader reader, DecoderContext decoderContext) {
@@ -21,37 +163,59 @@ public class INodeCodec extends AbstractCodec<INode> {
     while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
       switch (reader.readName()) {
         case INode.FIELD_ACCESS_TIME:
+        case INodeSchema.COMPACT_ACCESS_TIME:
           node.setAccessTime(reader.readInt64());
           break;
         case INode.FIELD_MODIFICATION_TIME:
+        case INodeSchema.COMPACT_MODIFICATION_TIME:
           node.setModificationTime(reader.readInt64());
           break;
         case INode.FIELD_SIZE_BYTES:
+        case INodeSchema.COMPACT_SIZE_BYTES:
           node.setSize(reader.readInt64());
           break;
         case INode.FIELD_BLOCK_SIZE_BYTES:
+        case INodeSchema.COMPACT_BLOCK_SIZE_BYTES:
           node.setBlockSize(reader.readInt64());
           break;
         case INode.FIELD_REPLICATION_FACTOR:
+        case INodeSchema.COMPACT_REPLICATION_FACTOR:
           node.setReplicationFactor(reader.readInt32());
           break;
         case INode.FIELD_GROUP:
-          node.setGroup(reader.readString());
+          node.setGroup(readNullableString(reader));
+          break;
+        case INodeSchema.COMPACT_GROUP:
+          node.setGroup(readName(reader));
           break;
         case INode.FIELD_OWNER:
-          node.setOwner(reader.readString());
+          node.setOwner(readNullableString(reader));
+          break;
+        case INodeSchema.COMPACT_OWNER:
+          node.setOwner(readName(reader));
           break;
         case INode.FIELD_PERMISSION:
-          node.setPermission(reader.readString());
+          node.setPermission(readNullableString(reader));
+          break;
+        case INodeSchema.COMPACT_PERMISSION:
+          if (reader.getCurrentBsonType() == BsonType.NULL) {
+            reader.readNull();
+          } else {
+            node.setPermission(new FsPermission((short) reader.readInt32()).toString());
+          }
           break;
         case INode.FIELD_NAME:
-          node.setName(reader.readString());
+        case INodeSchema.COMPACT_NAME:
+          node.setName(readNullableString(reader));
           break;
         case INode.FIELD_PATH:
+        case INodeSchema.COMPACT_PATH:
           // == path ==
-          // structure and order of the fields is forced
+          // structure and order of the fields is forced, depth is always the first field
           reader.readStartDocument();
-          int depth = reader.readInt32(INodePath.FIELD_DEPTH);
+          reader.readBsonType();
+          reader.skipName();
+          int depth = reader.readInt32();
           String[] elements = new String[depth];
           for (int i = 0; i < depth; i++) {
             elements[i] = reader.readString(INodePath.FIELD_NAME(i));
@@ -62,6 +226,29 @@ public class INodeCodec extends AbstractCodec<INode> {
         case INode.FIELD_TYPE:
           node.setTypeName(reader.readString());
           break;
+        case INode.FIELD_CHILD_HASH:
+        case INodeSchema.COMPACT_CHILD_HASH:
+          node.setChildHash(reader.readInt64());
+          break;
+        case INode.FIELD_TRANSACTION_ID:
+        case INodeSchema.COMPACT_TRANSACTION_ID:
+          node.setTransactionId(reader.readInt64());
+          break;
+        case INodeSchema.COMPACT_TYPE:
+          node.setTypeName(typeName(reader.readInt32()));
+          break;
+        case INode.FIELD_FILE_ID:
+          // path-keyed documents use object id, only inode-keyed documents carry inode id
+          if (reader.getCurrentBsonType() == BsonType.INT64) {
+            node.setFileId(reader.readInt64());
+          } else {
+            reader.skipValue();
+          }
+          break;
+        case INode.FIELD_PARENT:
+        case INodeSchema.COMPACT_PARENT:
+          node.setParentId(reader.readInt64());
+          break;
         default:
           // ignore any other fields, e.g. object id
           reader.skipValue();
@@ -80,7 +267,20 @@ public class INodeCodec extends AbstractCodec<INode> {
 
   @Override
   public void encode(BsonWriter writer, INode value, EncoderContext encoderContext) {
+    if (this.schema.isCompact()) {
+      encodeCompact(writer, value);
+      if (this.encoded.incrementAndGet() % SIZE_SAMPLE_RATE == 0) {
+        sampleSize(value);
+      }
+    } else {
+      encodeLegacy(writer, value);
+    }
+  }
+
+  /** Write document using legacy schema */
+  private void encodeLegacy(BsonWriter writer, INode value) {
     writer.writeStartDocument();
+    writeInodeKey(writer, INode.FIELD_PARENT, value);
     writer.writeInt64(INode.FIELD_ACCESS_TIME, value.getAccessTime());
     writer.writeInt64(INode.FIELD_MODIFICATION_TIME, value.getModificationTime());
     writer.writeInt64(INode.FIELD_SIZE_BYTES, value.getSize());
@@ -90,18 +290,107 @@ public class INodeCodec extends AbstractCodec<INode> {
     safeWriteString(writer, INode.FIELD_OWNER, value.getOwner());
     safeWriteString(writer, INode.FIELD_PERMISSION, value.getPermission());
     safeWriteString(writer, INode.FIELD_NAME, value.getName());
+    if (!this.inodeKeyed || value.getParentId() == INode.NO_ID) {
+      writePath(writer, INode.FIELD_PATH, INodePath.FIELD_DEPTH, value.getPath());
+    }
+    writePathHash(writer, INode.FIELD_PATH_HASH, value);
+    safeWriteString(writer, INode.FIELD_TYPE, value.getTypeName());
+    if (value.isDirectory()) {
+      writer.writeInt64(INode.FIELD_CHILD_HASH, value.getChildHash());
+    }
+    writer.writeInt64(INode.FIELD_TRANSACTION_ID, value.getTransactionId());
+    writer.writeEndDocument();
+  }
+
+  /** Write document using compact schema */
+  private void encodeCompact(BsonWriter writer, INode value) {
+    writer.writeStartDocument();
+    writeInodeKey(writer, INodeSchema.COMPACT_PARENT, value);
+    writer.writeInt64(INodeSchema.COMPACT_ACCESS_TIME, value.getAccessTime());
+    writer.writeInt64(INodeSchema.COMPACT_MODIFICATION_TIME, value.getModificationTime());
+    writer.writeInt64(INodeSchema.COMPACT_SIZE_BYTES, value.getSize());
+    writer.writeInt64(INodeSchema.COMPACT_BLOCK_SIZE_BYTES, value.getBlockSize());
+    writer.writeInt32(INodeSchema.COMPACT_REPLICATION_FACTOR, value.getReplicationFactor());
+    safeWriteInt(writer, INodeSchema.COMPACT_GROUP, (Integer) groupValue(value.getGroup()));
+    safeWriteInt(writer, INodeSchema.COMPACT_OWNER, (Integer) ownerValue(value.getOwner()));
+    safeWriteInt(writer, INodeSchema.COMPACT_PERMISSION,
+      (Integer) permissionValue(value.getPermission()));
+    safeWriteString(writer, INodeSchema.COMPACT_NAME, value.getName());
+    if (!this.inodeKeyed || value.getParentId() == INode.NO_ID) {
+      writePath(writer, INodeSchema.COMPACT_PATH, INodeSchema.COMPACT_DEPTH, value.getPath());
+    }
+    writePathHash(writer, INodeSchema.COMPACT_PATH_HASH, value);
+    writer.writeInt32(INodeSchema.COMPACT_TYPE, typeCode(value.getTypeName()));
+    if (value.isDirectory()) {
+      writer.writeInt64(INodeSchema.COMPACT_CHILD_HASH, value.getChildHash());
+    }
+    writer.writeInt64(INodeSchema.COMPACT_TRANSACTION_ID, value.getTransactionId());
+    writer.writeEndDocument();
+  }
+
+  /** Write inode id as document id and parent id, if codec is keyed by inode id */
+  private void writeInodeKey(BsonWriter writer, String parentField, INode value) {
+    if (this.inodeKeyed) {
+      writer.writeInt64(INode.FIELD_FILE_ID, value.getFileId());
+      writer.writeInt64(parentField, value.getParentId());
+    }
+  }
+
+  /** Write path document, depth is always written first */
+  private void writePath(BsonWriter writer, String field, String depthField, INodePath path) {
     // == path ==
-    writer.writeName(INode.FIELD_PATH);
+    writer.writeName(field);
     writer.writeStartDocument();
-    INodePath path = value.getPath();
-    writer.writeInt32(INodePath.FIELD_DEPTH, path.getDepth());
+    writer.writeInt32(depthField, path.getDepth());
     Map<String, String> map = path.getElements();
     for (Map.Entry<String, String> entry : map.entrySet()) {
       safeWriteString(writer, entry.getKey(), entry.getValue());
     }
     writer.writeEndDocument();
     // == path ==
-    safeWriteString(writer, INode.FIELD_TYPE, value.getTypeName());
-    writer.writeEndDocument();
+  }
+
+  /** Write hash of the full path, only for path layout */
+  private void writePathHash(BsonWriter writer, String field, INode value) {
+    if (!this.inodeKeyed) {
+      writer.writeInt64(field, PathHash.hash(value.getPath()));
+    }
+  }
+
+  /** Write nullable integer */
+  private static void safeWriteInt(BsonWriter writer, String name, Integer value) {
+    if (value == null) {
+      writer.writeNull(name);
+    } else {
+      writer.writeInt32(name, value);
+    }
+  }
+
+  /** Return size of the document in bytes, when encoded with either legacy or compact schema */
+  private int encodedSize(INode value, boolean compact) {
+    BasicOutputBuffer buffer = new BasicOutputBuffer();
+    BsonBinaryWriter writer = new BsonBinaryWriter(buffer);
+    try {
+      if (compact) {
+        encodeCompact(writer, value);
+      } else {
+        encodeLegacy(writer, value);
+      }
+      return buffer.getSize();
+    } finally {
+      writer.close();
+    }
+  }
+
+  /** Compare document size in both schemas and periodically report size reduction */
+  private void sampleSize(INode value) {
+    long legacy = this.sampledLegacyBytes.addAndGet(encodedSize(value, false));
+    long compact = this.sampledCompactBytes.addAndGet(encodedSize(value, true));
+    long count = this.sampled.incrementAndGet();
+    if (count % SIZE_REPORT_RATE == 0) {
+      LOG.info("Compact schema: sampled {} of {} documents, avg legacy size {} bytes, avg " +
+        "compact size {} bytes, size reduction {}%", count, this.encoded.get(),
+        legacy / count, compact / count, 100 - (100 * compact / legacy));
+    }
   }
 }
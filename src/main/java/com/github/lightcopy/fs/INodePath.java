@@ -88,6 +88,16 @@ public class INodePath {
     return this.elements[this.depth - 1];
   }
 
+  /** Return absolute path string without scheme and authority, root is "/" */
+  public String toPathString() {
+    if (this.depth == 0) return "/";
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < this.depth; i++) {
+      sb.append('/').append(this.elements[i]);
+    }
+    return sb.toString();
+  }
+
   /** Check if current path starts with prefix */
   public boolean hasPrefix(INodePath prefix) {
     if (this.depth < prefix.getDepth()) return false;
@@ -112,6 +122,18 @@ public class INodePath {
     return new INodePath(total, elems);
   }
 
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof INodePath)) return false;
+    INodePath other = (INodePath) obj;
+    return this.depth == other.getDepth() && Arrays.equals(this.elements, other.array());
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(this.elements);
+  }
+
   @Override
   public String toString() {
     return "Path" + Arrays.toString(this.elements) + "(" + this.depth + ")";
@@ -0,0 +1,176 @@
+package com.github.lightcopy.fs;
+
+/**
+ * [[INodeSchema]] describes field names of inode document. Legacy schema uses descriptive names
+ * and stores all values as strings, compact schema uses single letter names and stores owner and
+ * group as dictionary ids, permission as 16-bit integer and type as small integer, see
+ * [[INodeCodec]] for encoding of values. Path elements use the same names in both schemas.
+ * Inode id is always stored as document id, parent id field is only written by inode-keyed
+ * layout, see [[MongoInodeFileSystem]]. Path hash is written next to path by path layout, see
+ * [[PathHash]], and is used as single-field key for point lookups.
+ */
+public class INodeSchema {
+  // Fields of compact schema, must all be unique and must not clash with legacy fields
+  public static final String COMPACT_ACCESS_TIME = "a";
+  public static final String COMPACT_MODIFICATION_TIME = "m";
+  public static final String COMPACT_SIZE_BYTES = "s";
+  public static final String COMPACT_BLOCK_SIZE_BYTES = "b";
+  public static final String COMPACT_REPLICATION_FACTOR = "r";
+  public static final String COMPACT_GROUP = "g";
+  public static final String COMPACT_OWNER = "o";
+  public static final String COMPACT_PERMISSION = "x";
+  public static final String COMPACT_NAME = "n";
+  public static final String COMPACT_TYPE = "t";
+  public static final String COMPACT_PATH = "p";
+  public static final String COMPACT_DEPTH = "d";
+  public static final String COMPACT_CHILD_HASH = "h";
+  public static final String COMPACT_TRANSACTION_ID = "v";
+  public static final String COMPACT_PARENT = "q";
+  public static final String COMPACT_PATH_HASH = "k";
+
+  public static final INodeSchema LEGACY = new INodeSchema("legacy", false,
+    INode.FIELD_ACCESS_TIME, INode.FIELD_MODIFICATION_TIME, INode.FIELD_SIZE_BYTES,
+    INode.FIELD_BLOCK_SIZE_BYTES, INode.FIELD_REPLICATION_FACTOR, INode.FIELD_GROUP,
+    INode.FIELD_OWNER, INode.FIELD_PERMISSION, INode.FIELD_NAME, INode.FIELD_TYPE,
+    INode.FIELD_PATH, INodePath.FIELD_DEPTH, INode.FIELD_CHILD_HASH,
+    INode.FIELD_TRANSACTION_ID, INode.FIELD_PARENT, INode.FIELD_PATH_HASH);
+
+  public static final INodeSchema COMPACT = new INodeSchema("compact", true,
+    COMPACT_ACCESS_TIME, COMPACT_MODIFICATION_TIME, COMPACT_SIZE_BYTES,
+    COMPACT_BLOCK_SIZE_BYTES, COMPACT_REPLICATION_FACTOR, COMPACT_GROUP,
+    COMPACT_OWNER, COMPACT_PERMISSION, COMPACT_NAME, COMPACT_TYPE,
+    COMPACT_PATH, COMPACT_DEPTH, COMPACT_CHILD_HASH, COMPACT_TRANSACTION_ID, COMPACT_PARENT,
+    COMPACT_PATH_HASH);
+
+  private final String name;
+  private final boolean compact;
+  private final String accessTime;
+  private final String modificationTime;
+  private final String size;
+  private final String blockSize;
+  private final String replication;
+  private final String group;
+  private final String owner;
+  private final String permission;
+  private final String nodeName;
+  private final String type;
+  private final String path;
+  private final String depth;
+  private final String childHash;
+  private final String transactionId;
+  private final String parent;
+  private final String pathHash;
+
+  private INodeSchema(String name, boolean compact, String accessTime, String modificationTime,
+      String size, String blockSize, String replication, String group, String owner,
+      String permission, String nodeName, String type, String path, String depth,
+      String childHash, String transactionId, String parent, String pathHash) {
+    this.name = name;
+    this.compact = compact;
+    this.accessTime = accessTime;
+    this.modificationTime = modificationTime;
+    this.size = size;
+    this.blockSize = blockSize;
+    this.replication = replication;
+    this.group = group;
+    this.owner = owner;
+    this.permission = permission;
+    this.nodeName = nodeName;
+    this.type = type;
+    this.path = path;
+    this.depth = depth;
+    this.childHash = childHash;
+    this.transactionId = transactionId;
+    this.parent = parent;
+    this.pathHash = pathHash;
+  }
+
+  /** Find schema by name, either "legacy" or "compact" */
+  public static INodeSchema forName(String name) {
+    if (LEGACY.getName().equals(name)) return LEGACY;
+    if (COMPACT.getName().equals(name)) return COMPACT;
+    throw new IllegalArgumentException("Unknown inode schema '" + name + "'");
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  public boolean isCompact() {
+    return this.compact;
+  }
+
+  public String accessTime() {
+    return this.accessTime;
+  }
+
+  public String modificationTime() {
+    return this.modificationTime;
+  }
+
+  public String size() {
+    return this.size;
+  }
+
+  public String blockSize() {
+    return this.blockSize;
+  }
+
+  public String replication() {
+    return this.replication;
+  }
+
+  public String group() {
+    return this.group;
+  }
+
+  public String owner() {
+    return this.owner;
+  }
+
+  public String permission() {
+    return this.permission;
+  }
+
+  public String name() {
+    return this.nodeName;
+  }
+
+  public String type() {
+    return this.type;
+  }
+
+  public String path() {
+    return this.path;
+  }
+
+  public String depth() {
+    return this.depth;
+  }
+
+  public String childHash() {
+    return this.childHash;
+  }
+
+  public String transactionId() {
+    return this.transactionId;
+  }
+
+  public String parent() {
+    return this.parent;
+  }
+
+  public String pathHash() {
+    return this.pathHash;
+  }
+
+  /** Return dot separated key for field of the path document */
+  public String pathKey(String field) {
+    return this.path + "." + field;
+  }
+
+  @Override
+  public String toString() {
+    return "INodeSchema(" + this.name + ")";
+  }
+}
@@ -0,0 +1,52 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.fs.FileStatus;
+
+/**
+ * [[FileStatus]] that also carries HDFS inode id of the entry and of its parent directory, as
+ * returned by `HdfsFileStatus.getFileId()`. Used during traversal, so inode-keyed store can link
+ * nodes to parents without resolving paths, see [[MongoInodeFileSystem]].
+ *
+ * File systems that do not expose inode ids, and nodes created from events, use synthetic ids.
+ * Synthetic ids are negative, so they never clash with HDFS ids, and are seeded from current time,
+ * so ids allocated after restart do not clash with ids allocated before.
+ */
+public class INodeStatus extends FileStatus {
+  private static final AtomicLong SYNTHETIC_IDS =
+    new AtomicLong(System.currentTimeMillis() << 16);
+
+  private final long fileId;
+  private final long parentId;
+
+  public INodeStatus(FileStatus status, long fileId, long parentId) throws IOException {
+    super(status);
+    this.fileId = fileId;
+    this.parentId = parentId;
+  }
+
+  /** Allocate new synthetic inode id */
+  public static long syntheticId() {
+    return -SYNTHETIC_IDS.incrementAndGet();
+  }
+
+  public long getFileId() {
+    return this.fileId;
+  }
+
+  public long getParentId() {
+    return this.parentId;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return super.equals(obj);
+  }
+
+  @Override
+  public int hashCode() {
+    return super.hashCode();
+  }
+}
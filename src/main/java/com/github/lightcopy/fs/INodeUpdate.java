@@ -26,6 +26,11 @@ public class INodeUpdate {
   private String permission;
   // inode file size in bytes, must be > 0 to update
   private long sizeBytes;
+  // combined hash of directory children, any value is valid, so presence is tracked separately
+  private long childHash;
+  private boolean hasChildHash;
+  // transaction id of the update, node is stamped with it, see `INode.getTransactionId()`
+  private long transactionId = INode.NO_TRANSACTION;
 
   public INodeUpdate() { }
 
@@ -67,39 +72,134 @@ public class INodeUpdate {
     return this;
   }
 
-  /** Return Bson object with updates */
+  /** This is used to maintain directory hash, see [[DirectoryHashFileSystem]] */
+  public INodeUpdate setChildHash(long hash) {
+    this.childHash = hash;
+    this.hasChildHash = true;
+    return this;
+  }
+
+  /** Stamp update with transaction, node is only updated if it is not newer than transaction */
+  public INodeUpdate setTransactionId(long transactionId) {
+    this.transactionId = transactionId;
+    return this;
+  }
+
+  public long getTransactionId() {
+    return this.transactionId;
+  }
+
+  /** Whether or not update can change usage of the node, see [[UsageRollup]] */
+  public boolean affectsUsage() {
+    return this.owner != null || this.group != null || this.replicationFactor > 0 ||
+      this.sizeBytes > 0;
+  }
+
+  /** Whether or not update changes node attributes other than directory hash */
+  public boolean affectsAttributes() {
+    return this.accessTime > 0 || this.modificationTime > 0 || this.permission != null ||
+      affectsUsage();
+  }
+
+  /**
+   * Apply updates to provided node in place, uses the same rules as `bson()` method.
+   * Returns true if node was modified, false otherwise.
+   */
+  public boolean apply(INode node) {
+    boolean modified = false;
+    if (this.accessTime > 0) {
+      node.setAccessTime(this.accessTime);
+      modified = true;
+    }
+
+    if (this.modificationTime > 0) {
+      node.setModificationTime(this.modificationTime);
+      modified = true;
+    }
+
+    if (this.replicationFactor > 0) {
+      node.setReplicationFactor(this.replicationFactor);
+      modified = true;
+    }
+
+    if (this.group != null) {
+      node.setGroup(this.group);
+      modified = true;
+    }
+
+    if (this.owner != null) {
+      node.setOwner(this.owner);
+      modified = true;
+    }
+
+    if (this.permission != null) {
+      node.setPermission(this.permission);
+      modified = true;
+    }
+
+    if (this.sizeBytes > 0) {
+      node.setSize(this.sizeBytes);
+      modified = true;
+    }
+
+    if (this.hasChildHash) {
+      node.setChildHash(this.childHash);
+      modified = true;
+    }
+
+    // stamp is not a modification on its own
+    if (modified && this.transactionId != INode.NO_TRANSACTION) {
+      node.setTransactionId(this.transactionId);
+    }
+    return modified;
+  }
+
+  /** Return Bson object with updates for legacy schema */
   public Bson bson() {
+    return bson(new INodeCodec());
+  }
+
+  /** Return Bson object with updates, field names and values are encoded by codec schema */
+  public Bson bson(INodeCodec codec) {
+    INodeSchema schema = codec.getSchema();
     ArrayList<Bson> batch = new ArrayList<Bson>();
     if (this.accessTime > 0) {
-      batch.add(Updates.set(INode.FIELD_ACCESS_TIME, this.accessTime));
+      batch.add(Updates.set(schema.accessTime(), this.accessTime));
     }
 
     if (this.modificationTime > 0) {
-      batch.add(Updates.set(INode.FIELD_MODIFICATION_TIME, this.modificationTime));
+      batch.add(Updates.set(schema.modificationTime(), this.modificationTime));
     }
 
     if (this.replicationFactor > 0) {
-      batch.add(Updates.set(INode.FIELD_REPLICATION_FACTOR, this.replicationFactor));
+      batch.add(Updates.set(schema.replication(), this.replicationFactor));
     }
 
     if (this.group != null) {
-      batch.add(Updates.set(INode.FIELD_GROUP, this.group));
+      batch.add(Updates.set(schema.group(), codec.groupValue(this.group)));
     }
 
     if (this.owner != null) {
-      batch.add(Updates.set(INode.FIELD_OWNER, this.owner));
+      batch.add(Updates.set(schema.owner(), codec.ownerValue(this.owner)));
     }
 
     if (this.permission != null) {
-      batch.add(Updates.set(INode.FIELD_PERMISSION, this.permission));
+      batch.add(Updates.set(schema.permission(), codec.permissionValue(this.permission)));
     }
 
     if (this.sizeBytes > 0) {
-      batch.add(Updates.set(INode.FIELD_SIZE_BYTES, this.sizeBytes));
+      batch.add(Updates.set(schema.size(), this.sizeBytes));
+    }
+
+    if (this.hasChildHash) {
+      batch.add(Updates.set(schema.childHash(), this.childHash));
     }
     // if batch does not contain any updates return null, indicating that update should be ignored
     // upstream
     if (batch.size() == 0) return null;
+    if (this.transactionId != INode.NO_TRANSACTION) {
+      batch.add(Updates.set(schema.transactionId(), this.transactionId));
+    }
     return Updates.combine(batch);
   }
 }
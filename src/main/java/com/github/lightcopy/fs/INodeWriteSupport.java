@@ -0,0 +1,114 @@
+package com.github.lightcopy.fs;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+
+/**
+ * Parquet write support for [[INode]]. Path is written as parent directory and name, so parent
+ * column, as well as owner and group columns, are dictionary encoded, since they repeat across
+ * rows; full path is parent + "/" + name.
+ */
+public class INodeWriteSupport extends WriteSupport<INode> {
+  public static final MessageType SCHEMA = MessageTypeParser.parseMessageType(
+    "message inode {\n" +
+    "  required binary parent (UTF8);\n" +
+    "  required binary name (UTF8);\n" +
+    "  required int32 depth;\n" +
+    "  required binary type (UTF8);\n" +
+    "  optional binary owner (UTF8);\n" +
+    "  optional binary group (UTF8);\n" +
+    "  optional binary permission (UTF8);\n" +
+    "  required int64 size;\n" +
+    "  required int64 block_size;\n" +
+    "  required int32 replication;\n" +
+    "  required int64 access_time;\n" +
+    "  required int64 modification_time;\n" +
+    "}");
+
+  /** Builder of Parquet writer for nodes with file metadata */
+  public static class Builder extends ParquetWriter.Builder<INode, Builder> {
+    private final Map<String, String> metadata;
+
+    public Builder(Path file, Map<String, String> metadata) {
+      super(file);
+      this.metadata = metadata;
+    }
+
+    @Override
+    protected Builder self() {
+      return this;
+    }
+
+    @Override
+    protected WriteSupport<INode> getWriteSupport(Configuration conf) {
+      return new INodeWriteSupport(this.metadata);
+    }
+  }
+
+  private final Map<String, String> metadata;
+  private RecordConsumer consumer;
+
+  public INodeWriteSupport(Map<String, String> metadata) {
+    this.metadata = new HashMap<String, String>(metadata);
+  }
+
+  @Override
+  public WriteContext init(Configuration conf) {
+    return new WriteContext(SCHEMA, this.metadata);
+  }
+
+  @Override
+  public void prepareForWrite(RecordConsumer recordConsumer) {
+    this.consumer = recordConsumer;
+  }
+
+  @Override
+  public void write(INode node) {
+    INodePath path = node.getPath();
+    INodePath parent = path.getParent();
+    this.consumer.startMessage();
+    writeString(0, "parent", (parent == null) ? "" : parent.toPathString());
+    writeString(1, "name", path.getName());
+    writeInt(2, "depth", path.getDepth());
+    writeString(3, "type", node.getTypeName());
+    writeString(4, "owner", node.getOwner());
+    writeString(5, "group", node.getGroup());
+    writeString(6, "permission", node.getPermission());
+    writeLong(7, "size", node.getSize());
+    writeLong(8, "block_size", node.getBlockSize());
+    writeInt(9, "replication", node.getReplicationFactor());
+    writeLong(10, "access_time", node.getAccessTime());
+    writeLong(11, "modification_time", node.getModificationTime());
+    this.consumer.endMessage();
+  }
+
+  /** Write string field, null value leaves optional field empty */
+  private void writeString(int index, String field, String value) {
+    if (value == null) return;
+    this.consumer.startField(field, index);
+    this.consumer.addBinary(Binary.fromString(value));
+    this.consumer.endField(field, index);
+  }
+
+  private void writeInt(int index, String field, int value) {
+    this.consumer.startField(field, index);
+    this.consumer.addInteger(value);
+    this.consumer.endField(field, index);
+  }
+
+  private void writeLong(int index, String field, long value) {
+    this.consumer.startField(field, index);
+    this.consumer.addLong(value);
+    this.consumer.endField(field, index);
+  }
+}
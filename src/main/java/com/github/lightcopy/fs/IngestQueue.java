@@ -0,0 +1,160 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.hadoop.hdfs.inotify.EventBatch;
+
+/**
+ * Bounded queue between inotify consumer and applier of events. Batches are kept in memory up to
+ * capacity, once memory is full batches spill to [[SpillJournal]] and continue to spill until
+ * journal is drained, so order of batches is always preserved. When journal reaches maximum size,
+ * `put` blocks, which applies backpressure to inotify consumer.
+ *
+ * Queue is not durable, batches are not applied and not acknowledged while they are queued, so
+ * they are read again from checkpoint after restart, see [[SpillJournal]].
+ */
+public class IngestQueue {
+  private final int capacity;
+  private final long maxJournalBytes;
+  private final ArrayDeque<EventBatch> memory;
+  private final SpillJournal journal;
+  private final ReentrantLock lock;
+  private final Condition notEmpty;
+  private final Condition notFull;
+  // statistics of batches drained from journal
+  private long drained;
+  private long spilled;
+
+  public IngestQueue(int capacity, SpillJournal journal, long maxJournalBytes) {
+    this.capacity = capacity;
+    this.maxJournalBytes = maxJournalBytes;
+    this.memory = new ArrayDeque<EventBatch>(capacity);
+    this.journal = journal;
+    this.lock = new ReentrantLock();
+    this.notEmpty = this.lock.newCondition();
+    this.notFull = this.lock.newCondition();
+    this.drained = 0L;
+    this.spilled = 0L;
+  }
+
+  /** Add batch to the queue, blocks only if both memory and journal are full */
+  public void put(EventBatch batch) throws IOException {
+    this.lock.lock();
+    try {
+      while (this.memory.size() >= this.capacity &&
+          this.journal.getSizeBytes() >= this.maxJournalBytes) {
+        this.notFull.await();
+      }
+      if (this.memory.size() < this.capacity && this.journal.isEmpty()) {
+        this.memory.addLast(batch);
+      } else {
+        this.journal.append(batch);
+        this.spilled++;
+      }
+      this.notEmpty.signal();
+    } catch (InterruptedException err) {
+      throw new InterruptedIOException("Interrupted while waiting for space in queue");
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Remove the oldest batch, waiting up to timeout if queue is empty.
+   * @return batch or null if timeout elapsed
+   */
+  public EventBatch poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    this.lock.lock();
+    try {
+      while (this.memory.isEmpty() && this.journal.isEmpty()) {
+        if (nanos <= 0) return null;
+        nanos = this.notEmpty.awaitNanos(nanos);
+      }
+      EventBatch batch = this.memory.pollFirst();
+      if (batch == null) {
+        batch = this.journal.poll();
+        this.drained++;
+      } else if (!this.journal.isEmpty()) {
+        // memory has space again, move the oldest spilled batch behind memory batches
+        this.memory.addLast(this.journal.poll());
+        this.drained++;
+      }
+      this.notFull.signal();
+      return batch;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /** Number of batches in memory */
+  public int memorySize() {
+    this.lock.lock();
+    try {
+      return this.memory.size();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /** Size of journal in bytes */
+  public long journalBytes() {
+    this.lock.lock();
+    try {
+      return this.journal.getSizeBytes();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /** Number of batches in journal */
+  public long journalRecords() {
+    this.lock.lock();
+    try {
+      return this.journal.getNumRecords();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /** Total number of batches spilled to journal */
+  public long spilledBatches() {
+    this.lock.lock();
+    try {
+      return this.spilled;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /** Total number of batches drained from journal */
+  public long drainedBatches() {
+    this.lock.lock();
+    try {
+      return this.drained;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /** Release journal, queued batches are discarded and read again from checkpoint */
+  public void close() {
+    this.lock.lock();
+    try {
+      this.memory.clear();
+      this.journal.close();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "IngestQueue(memory=" + memorySize() + "/" + this.capacity + ", " + this.journal + ")";
+  }
+}
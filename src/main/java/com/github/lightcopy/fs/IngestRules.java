@@ -0,0 +1,184 @@
+package com.github.lightcopy.fs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.fs.FileStatus;
+
+/**
+ * Compiled rules that decide which paths are ingested. Path is accepted if it is within one of
+ * the scope roots, stored as prefix trie of path elements, and does not match any exclusion.
+ * Exclusions are globs over path elements: `*` and `?` match within single element, `**` matches
+ * any number of elements. Glob that does not start with "/" can match at any depth, e.g.
+ * "_temporary" or "*.tmp". Path is excluded when glob matches path or any of its ancestors, so
+ * excluding directory excludes its subtree.
+ */
+public class IngestRules {
+  /** Trie node of path elements, terminal node is scope root */
+  static class TrieNode {
+    final Map<String, TrieNode> children = new HashMap<String, TrieNode>();
+    boolean terminal;
+  }
+
+  /** Compiled exclusion glob, null element stands for `**` */
+  static class Glob {
+    private final String glob;
+    private final Pattern[] elements;
+
+    Glob(String glob) {
+      this.glob = glob;
+      String normalized = glob.startsWith("/") ? glob.substring(1) : "**/" + glob;
+      List<Pattern> parts = new ArrayList<Pattern>();
+      for (String part : normalized.split("/")) {
+        if (part.isEmpty()) continue;
+        parts.add("**".equals(part) ? null : compile(part));
+      }
+      this.elements = parts.toArray(new Pattern[parts.size()]);
+    }
+
+    /** Compile glob of single element into regular expression */
+    private static Pattern compile(String part) {
+      StringBuilder regex = new StringBuilder();
+      StringBuilder literal = new StringBuilder();
+      for (char ch : part.toCharArray()) {
+        if (ch == '*' || ch == '?') {
+          if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+            literal.setLength(0);
+          }
+          regex.append(ch == '*' ? ".*" : ".");
+        } else {
+          literal.append(ch);
+        }
+      }
+      if (literal.length() > 0) {
+        regex.append(Pattern.quote(literal.toString()));
+      }
+      return Pattern.compile(regex.toString());
+    }
+
+    /** Whether or not glob matches path or any of its ancestors */
+    boolean matches(INodePath path) {
+      return matchPrefix(0, path.array(), 0, path.getDepth());
+    }
+
+    private boolean matchPrefix(int index, String[] names, int position, int depth) {
+      if (index == this.elements.length) return true;
+      Pattern element = this.elements[index];
+      if (element == null) {
+        for (int next = position; next <= depth; next++) {
+          if (matchPrefix(index + 1, names, next, depth)) return true;
+        }
+        return false;
+      }
+      return position < depth && element.matcher(names[position]).matches() &&
+        matchPrefix(index + 1, names, position + 1, depth);
+    }
+
+    @Override
+    public String toString() {
+      return this.glob;
+    }
+  }
+
+  private final TrieNode trie;
+  private final List<INodePath> roots;
+  private final List<Glob> exclusions;
+
+  public IngestRules(List<INodePath> roots, List<String> exclusions) {
+    if (roots.isEmpty()) {
+      throw new IllegalArgumentException("Expected at least one scope root");
+    }
+    this.trie = new TrieNode();
+    for (INodePath root : roots) {
+      addRoot(root);
+    }
+    this.roots = new ArrayList<INodePath>();
+    collectRoots(this.trie, new ArrayList<String>());
+    this.exclusions = new ArrayList<Glob>();
+    for (String exclusion : exclusions) {
+      this.exclusions.add(new Glob(exclusion));
+    }
+  }
+
+  /** Add root to trie, roots nested in other roots are redundant and are not kept */
+  private void addRoot(INodePath root) {
+    TrieNode node = this.trie;
+    for (String name : root.array()) {
+      if (node.terminal) return;
+      TrieNode child = node.children.get(name);
+      if (child == null) {
+        child = new TrieNode();
+        node.children.put(name, child);
+      }
+      node = child;
+    }
+    node.terminal = true;
+    node.children.clear();
+  }
+
+  private void collectRoots(TrieNode node, List<String> names) {
+    if (node.terminal) {
+      this.roots.add(new INodePath(names.size(), names.toArray(new String[names.size()])));
+      return;
+    }
+    for (Map.Entry<String, TrieNode> entry : node.children.entrySet()) {
+      names.add(entry.getKey());
+      collectRoots(entry.getValue(), names);
+      names.remove(names.size() - 1);
+    }
+  }
+
+  /** Whether or not path is within one of the scope roots */
+  public boolean inScope(INodePath path) {
+    TrieNode node = this.trie;
+    for (int i = 0; i < path.getDepth() && !node.terminal; i++) {
+      node = node.children.get(path.getElement(i));
+      if (node == null) return false;
+    }
+    return node.terminal;
+  }
+
+  /** Whether or not path or any of its ancestors matches exclusion */
+  public boolean isExcluded(INodePath path) {
+    for (Glob glob : this.exclusions) {
+      if (glob.matches(path)) return true;
+    }
+    return false;
+  }
+
+  /** Whether or not path should be ingested */
+  public boolean accept(INodePath path) {
+    return inScope(path) && !isExcluded(path);
+  }
+
+  /** Keep only accepted statuses of directory listing */
+  public FileStatus[] filter(FileStatus[] statuses) {
+    if (statuses == null) return null;
+    List<FileStatus> accepted = new ArrayList<FileStatus>(statuses.length);
+    for (FileStatus status : statuses) {
+      if (accept(new INodePath(status.getPath()))) {
+        accepted.add(status);
+      }
+    }
+    return (accepted.size() == statuses.length) ? statuses :
+      accepted.toArray(new FileStatus[accepted.size()]);
+  }
+
+  /** Scope roots without nested roots, indexing and verification start from these paths */
+  public List<INodePath> getRoots() {
+    return this.roots;
+  }
+
+  @Override
+  public String toString() {
+    List<String> paths = new ArrayList<String>();
+    for (INodePath root : this.roots) {
+      paths.add(root.toPathString());
+    }
+    return "IngestRules(roots=" + paths + ", exclusions=" + this.exclusions + ")";
+  }
+}
@@ -0,0 +1,128 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Leader election thread for namespace. Periodically acquires or renews [[LeaderLease]]; when
+ * lease is obtained, manager is promoted and starts applying events from the last checkpoint,
+ * when lease is lost or cannot be renewed before it expires, manager is demoted to standby.
+ * Standby tracks applied transaction id of the leader through checkpoint.
+ *
+ * Promotion resumes or rebuilds namespace in the background, see `HdfsManager.promote()`, so
+ * lease keeps being renewed. If renewal fails, manager is demoted as soon as lease could
+ * expire before the next renewal attempt, i.e. before another instance can acquire it.
+ */
+public class LeaderElection implements Runnable {
+  private static final Logger LOG = LoggerFactory.getLogger(LeaderElection.class);
+
+  private final HdfsManager manager;
+  private final LeaderLease lease;
+  private final long ttlMs;
+  private final long renewIntervalMs;
+  // released on termination to wake up thread between renewals
+  private final CountDownLatch termination;
+  private volatile boolean stopped;
+  private volatile boolean leader;
+  private long lastRenewTime;
+
+  public LeaderElection(HdfsManager manager, LeaderLease lease, long ttlMs) {
+    this.manager = manager;
+    this.lease = lease;
+    this.ttlMs = ttlMs;
+    // renew several times within ttl, so single failed renewal does not lose lease
+    this.renewIntervalMs = Math.max(ttlMs / 3, 1L);
+    this.termination = new CountDownLatch(1);
+    this.stopped = false;
+    this.leader = false;
+    this.lastRenewTime = 0L;
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (!this.stopped) {
+        elect();
+        this.manager.tailCheckpoint();
+        this.termination.await(this.renewIntervalMs, TimeUnit.MILLISECONDS);
+      }
+    } catch (InterruptedException err) {
+      LOG.info("Leader election interrupted");
+    } catch (Exception err) {
+      LOG.error("Leader election failed", err);
+    } finally {
+      this.stopped = true;
+      stepDown();
+    }
+  }
+
+  /** Acquire or renew lease and switch role of manager if necessary */
+  private void elect() {
+    boolean acquired = false;
+    long now = System.currentTimeMillis();
+    try {
+      acquired = this.lease.acquire();
+    } catch (IOException ioe) {
+      LOG.warn("Failed to renew lease " + this.lease, ioe);
+      // lease is still valid until ttl elapses since last renewal, step down while it is held
+      if (this.leader && now - this.lastRenewTime + this.renewIntervalMs < this.ttlMs) {
+        return;
+      }
+    }
+    if (acquired) {
+      this.lastRenewTime = now;
+      if (!this.leader) {
+        LOG.info("Acquired lease {}, switch to active", this.lease);
+        // mark as leader first, so lease is released if promotion fails
+        this.leader = true;
+        this.manager.promote();
+      }
+    } else if (this.leader) {
+      LOG.warn("Lost lease {}, switch to standby", this.lease);
+      this.leader = false;
+      this.manager.demote();
+    }
+  }
+
+  /** Demote manager and release lease, so standby instance can take over without waiting */
+  private void stepDown() {
+    if (this.leader) {
+      this.leader = false;
+      this.manager.demote();
+      // lease is still held, so usage can be safely flushed for the next leader
+      this.manager.flushRollups(true);
+      try {
+        this.lease.release();
+        LOG.info("Released lease {}", this.lease);
+      } catch (IOException ioe) {
+        LOG.warn("Failed to release lease " + this.lease + ", it will expire in " + this.ttlMs +
+          " ms", ioe);
+      }
+    }
+  }
+
+  /** Whether or not this instance currently holds lease */
+  public boolean isLeader() {
+    return this.leader;
+  }
+
+  /** Whether or not election thread is stopped */
+  public boolean isStopped() {
+    return this.stopped;
+  }
+
+  /** Mark election thread as terminated */
+  public void terminate() {
+    this.stopped = true;
+    this.termination.countDown();
+  }
+
+  @Override
+  public String toString() {
+    return "LeaderElection(lease=" + this.lease + ", leader=" + this.leader + ")";
+  }
+}
@@ -0,0 +1,23 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+
+/**
+ * [[LeaderLease]] is a time-bound lock on namespace that elects single instance to apply HDFS
+ * events. Lease expires unless it is renewed by owner, so another instance can take over when
+ * owner dies. Expiration is based on wall clock of instances, clocks are expected to be
+ * synchronized within a fraction of lease ttl.
+ */
+public interface LeaderLease {
+  /**
+   * Acquire lease if it is free or expired, or renew lease if it is already held by this owner.
+   * @return true if this owner holds lease after the call, false otherwise
+   */
+  public boolean acquire() throws IOException;
+
+  /** Release lease if it is held by this owner, so other instances can take over immediately */
+  public void release() throws IOException;
+
+  /** Owner id of this lease instance */
+  public String getOwner();
+}
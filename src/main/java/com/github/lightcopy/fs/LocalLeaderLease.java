@@ -0,0 +1,33 @@
+package com.github.lightcopy.fs;
+
+/**
+ * [[LeaderLease]] for metadata store that is not shared between processes, owner always holds
+ * lease.
+ */
+public class LocalLeaderLease implements LeaderLease {
+  private final String owner;
+
+  public LocalLeaderLease(String owner) {
+    this.owner = owner;
+  }
+
+  @Override
+  public boolean acquire() {
+    return true;
+  }
+
+  @Override
+  public void release() {
+    // no-op, lease is not visible outside of process
+  }
+
+  @Override
+  public String getOwner() {
+    return this.owner;
+  }
+
+  @Override
+  public String toString() {
+    return "LocalLeaderLease(owner=" + this.owner + ")";
+  }
+}
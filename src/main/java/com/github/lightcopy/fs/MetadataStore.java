@@ -0,0 +1,67 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+
+/**
+ * [[MetadataStore]] is a service provider interface for backend that stores file system metadata
+ * and events. [[HdfsManager]] only works with store, and does not depend on particular backend.
+ */
+public interface MetadataStore {
+  /** Get file system store, should return the same instance when called multiple times */
+  public FileSystemStore fileSystem();
+
+  /**
+   * Get file system store for queries, store can route reads to replicas. Returned store must be
+   * used for reads only, and observes all events up to and including transaction if transaction
+   * id is non-negative.
+   * @param transactionId transaction that query must observe, or -1 for any
+   */
+  public FileSystemStore reader(long transactionId);
+
+  /** Get event store, should return the same instance when called multiple times */
+  public EventStore eventPool();
+
+  /** Get store for usage rollups, should return the same instance when called multiple times */
+  public RollupStore rollups();
+
+  /**
+   * Get store for namespace growth time series, should return the same instance when called
+   * multiple times. Time series is not removed by `cleanup()`, so history survives reindex.
+   */
+  public TimeSeriesStore timeSeries();
+
+  /**
+   * Record that all events up to and including transaction id have been applied. Store may
+   * persist checkpoint asynchronously, but only after all writes issued before this call are
+   * acknowledged. Checkpoint never moves backwards.
+   * @param transactionId last applied transaction id
+   */
+  public void checkpoint(long transactionId) throws IOException;
+
+  /**
+   * Get the highest transaction with all writes acknowledged by store, or -1 if none. Caller must
+   * keep batches after this transaction and re-apply them if store reports failure; synchronous
+   * stores acknowledge transaction when it is checkpointed.
+   */
+  public long getAcknowledged();
+
+  /** Get last persisted checkpoint, or -1 if no checkpoint exists */
+  public long getCheckpoint();
+
+  /**
+   * Create leader lease for namespace of this store, used to elect single instance that applies
+   * events when several instances share metadata.
+   * @param owner unique id of instance
+   * @param ttlMs time in milliseconds after which lease expires unless renewed
+   */
+  public LeaderLease lease(String owner, long ttlMs);
+
+  /** Remove all metadata and events, store is expected to be usable after this operation */
+  public void cleanup();
+
+  /** Whether or not store is available for reads and writes */
+  public boolean isAlive();
+
+  /** Release resources associated with store, method is called only once */
+  public void close();
+}
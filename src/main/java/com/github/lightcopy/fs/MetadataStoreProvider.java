@@ -0,0 +1,192 @@
+package com.github.lightcopy.fs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientURI;
+import com.mongodb.ReadPreference;
+import com.mongodb.async.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.lightcopy.conf.AppConf;
+
+/**
+ * [[MetadataStoreProvider]] creates metadata store per namespace for backend configured in
+ * application settings. Mongo backends share single client (and its connection pool) and name
+ * dictionary between namespaces, provider owns client and closes it. If shards are configured
+ * for synchronous Mongo backend, provider also owns one client per shard. Inode-keyed layout is
+ * only supported by synchronous Mongo backend without shards. Embedded backend rejects all Mongo
+ * specific options, rather than silently ignoring them.
+ *
+ * When read preference other than "primary" is configured, metadata queries of synchronous Mongo
+ * backend are served by separate read client, so read traffic does not compete with ingest for
+ * connections of primary client, see [[ReplicaReadPath]]. Each shard gets its own read client
+ * for the same reason.
+ */
+public class MetadataStoreProvider {
+  private static final Logger LOG = LoggerFactory.getLogger(MetadataStoreProvider.class);
+
+  private final AppConf conf;
+  private final String backend;
+  private MongoClient mongo;
+  private ReadPreference readPreference;
+  private MongoClient readMongo;
+  private NameDictionary dictionary;
+  private List<MongoClient> shardClients;
+  private List<MongoDatabase> shards;
+  private List<MongoClient> readShardClients;
+  private List<MongoDatabase> readShards;
+  private com.mongodb.async.client.MongoClient asyncMongo;
+
+  public MetadataStoreProvider(AppConf conf) {
+    this.conf = conf;
+    this.backend = conf.metadataStore();
+    try {
+      this.readPreference = ReadPreference.valueOf(conf.mongoReadPreference());
+    } catch (IllegalArgumentException err) {
+      throw new IllegalArgumentException("Unsupported read preference '" +
+        conf.mongoReadPreference() + "'", err);
+    }
+    if (conf.mongoReadMaxStalenessMs() < 0) {
+      throw new IllegalArgumentException("Expected non-negative max staleness, found " +
+        conf.mongoReadMaxStalenessMs());
+    }
+    boolean readPath = !ReadPreference.primary().equals(this.readPreference);
+    if (AppConf.METADATA_STORE_MONGO.equals(this.backend)) {
+      if (!AppConf.MONGO_LAYOUT_PATH.equals(conf.mongoLayout()) &&
+          !AppConf.MONGO_LAYOUT_INODE.equals(conf.mongoLayout())) {
+        throw new IllegalArgumentException("Unsupported layout '" + conf.mongoLayout() + "'");
+      }
+      if (AppConf.MONGO_LAYOUT_INODE.equals(conf.mongoLayout()) &&
+          !conf.mongoShards().isEmpty()) {
+        throw new IllegalArgumentException("Layout '" + AppConf.MONGO_LAYOUT_INODE +
+          "' is not supported with shards");
+      }
+      if (conf.mongoSnapshotReads() &&
+          (!AppConf.MONGO_LAYOUT_PATH.equals(conf.mongoLayout()) ||
+            !conf.mongoShards().isEmpty() || readPath)) {
+        throw new IllegalArgumentException("Snapshot reads are only supported by layout '" +
+          AppConf.MONGO_LAYOUT_PATH + "' without shards and with primary read preference");
+      }
+      LOG.info("Initialize mongo client for connection {}", conf.mongoConnectionString());
+      this.mongo = new MongoClient(new MongoClientURI(conf.mongoConnectionString()));
+      this.dictionary = new MongoNameDictionary(this.mongo
+        .getDatabase(MongoMetadataStore.MONGO_DATABASE)
+        .getCollection(MongoMetadataStore.MONGO_COLLECTION_DICTIONARY));
+      this.shardClients = new ArrayList<MongoClient>();
+      this.shards = new ArrayList<MongoDatabase>();
+      this.readShardClients = new ArrayList<MongoClient>();
+      this.readShards = new ArrayList<MongoDatabase>();
+      for (String shard : conf.mongoShards()) {
+        LOG.info("Initialize mongo client for shard {}", shard);
+        MongoClientURI uri = new MongoClientURI(shard);
+        MongoClient client = new MongoClient(uri);
+        String database = (uri.getDatabase() == null) ?
+          MongoMetadataStore.MONGO_DATABASE : uri.getDatabase();
+        this.shardClients.add(client);
+        this.shards.add(client.getDatabase(database));
+        if (readPath) {
+          LOG.info("Initialize mongo read client for shard {}", shard);
+          MongoClient readClient = new MongoClient(uri);
+          this.readShardClients.add(readClient);
+          this.readShards.add(readClient.getDatabase(database));
+        }
+      }
+      if (readPath) {
+        LOG.info("Initialize mongo read client for connection {} with read preference {}",
+          conf.mongoReadConnectionString(), this.readPreference);
+        this.readMongo = new MongoClient(new MongoClientURI(conf.mongoReadConnectionString()));
+      }
+    } else if (AppConf.METADATA_STORE_MONGO_ASYNC.equals(this.backend)) {
+      if (!AppConf.MONGO_LAYOUT_PATH.equals(conf.mongoLayout())) {
+        throw new IllegalArgumentException("Layout '" + conf.mongoLayout() +
+          "' is not supported for metadata store '" + this.backend + "'");
+      }
+      if (!conf.mongoShards().isEmpty()) {
+        throw new IllegalArgumentException("Shards are only supported for metadata store '" +
+          AppConf.METADATA_STORE_MONGO + "'");
+      }
+      if (readPath) {
+        throw new IllegalArgumentException("Read preference is only supported for metadata " +
+          "store '" + AppConf.METADATA_STORE_MONGO + "'");
+      }
+      if (conf.mongoSnapshotReads()) {
+        throw new IllegalArgumentException("Snapshot reads are only supported for metadata " +
+          "store '" + AppConf.METADATA_STORE_MONGO + "'");
+      }
+      LOG.info("Initialize async mongo client for connection {}", conf.mongoConnectionString());
+      this.asyncMongo = MongoClients.create(conf.mongoConnectionString());
+      this.dictionary = new AsyncMongoNameDictionary(this.asyncMongo
+        .getDatabase(MongoMetadataStore.MONGO_DATABASE)
+        .getCollection(MongoMetadataStore.MONGO_COLLECTION_DICTIONARY));
+    } else if (AppConf.METADATA_STORE_EMBEDDED.equals(this.backend)) {
+      if (!AppConf.MONGO_LAYOUT_PATH.equals(conf.mongoLayout()) ||
+          !conf.mongoShards().isEmpty() || readPath || conf.mongoSnapshotReads()) {
+        throw new IllegalArgumentException("Layout, shards, read preference and snapshot " +
+          "reads are only supported for metadata store '" + AppConf.METADATA_STORE_MONGO + "'");
+      }
+    } else {
+      throw new IllegalArgumentException("Unsupported metadata store '" + this.backend + "'");
+    }
+  }
+
+  /** Create metadata store for namespace */
+  public MetadataStore create(String namespace) {
+    INodeSchema schema = INodeSchema.forName(this.conf.mongoSchema());
+    if (this.mongo != null) {
+      MongoMetadataStore store;
+      if (AppConf.MONGO_LAYOUT_INODE.equals(this.conf.mongoLayout())) {
+        store = new MongoMetadataStore(this.mongo, namespace, schema, this.dictionary,
+          this.conf.mongoInodeCacheSize(), this.conf.mongoInodeCacheTtlMs());
+      } else {
+        store = new MongoMetadataStore(this.mongo, namespace, schema, this.dictionary,
+          this.shards, this.conf.mongoShardsDepth());
+      }
+      if (this.readMongo != null) {
+        store.withReadPath(this.readMongo.getDatabase(MongoMetadataStore.MONGO_DATABASE),
+          this.readShards, this.readPreference, this.conf.mongoReadMaxStalenessMs(),
+          this.conf.mongoReadPinTxid());
+      }
+      if (this.conf.mongoSnapshotReads()) {
+        store.withSnapshotReads(this.conf.mongoSnapshotGcIntervalMs());
+      }
+      return store;
+    } else if (this.asyncMongo != null) {
+      return new AsyncMongoMetadataStore(this.asyncMongo, namespace, this.conf.mongoAsyncWindow(),
+        schema, this.dictionary);
+    } else {
+      return new EmbeddedMetadataStore();
+    }
+  }
+
+  /** Close shared resources, must be called after all stores are closed */
+  public void close() {
+    if (this.mongo != null) {
+      this.mongo.close();
+      this.mongo = null;
+      for (MongoClient client : this.shardClients) {
+        client.close();
+      }
+      for (MongoClient client : this.readShardClients) {
+        client.close();
+      }
+      if (this.readMongo != null) {
+        this.readMongo.close();
+        this.readMongo = null;
+      }
+    }
+    if (this.asyncMongo != null) {
+      this.asyncMongo.close();
+      this.asyncMongo = null;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "MetadataStoreProvider(backend=" + this.backend + ")";
+  }
+}
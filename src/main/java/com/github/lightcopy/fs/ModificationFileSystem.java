@@ -0,0 +1,70 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * [[FileSystemStore]] that records modifications of another store in [[ModificationTracker]].
+ * Modification is recorded after store call returns, so query that observes recorded version
+ * never returns state older than the version. Bulk inserts invalidate all versions instead of
+ * recording every node, and updates of directory hash only are not recorded, since they are not
+ * visible in query results.
+ */
+public class ModificationFileSystem implements FileSystemStore {
+  private final FileSystemStore store;
+  private final ModificationTracker tracker;
+
+  public ModificationFileSystem(FileSystemStore store, ModificationTracker tracker) {
+    this.store = store;
+    this.tracker = tracker;
+  }
+
+  @Override
+  public INode get(INodePath path) {
+    return this.store.get(path);
+  }
+
+  @Override
+  public List<INode> list(INodePath path, boolean recursive) throws IOException {
+    return this.store.list(path, recursive);
+  }
+
+  @Override
+  public void delete(INodePath path, long transactionId) throws IOException {
+    this.store.delete(path, transactionId);
+    this.tracker.modifiedSubtree(path, transactionId);
+  }
+
+  @Override
+  public void upsert(INode node) throws IOException {
+    this.store.upsert(node);
+    this.tracker.modified(node.getPath(), node.getTransactionId());
+  }
+
+  @Override
+  public void insert(List<INode> nodes) throws IOException {
+    this.store.insert(nodes);
+    this.tracker.invalidate();
+  }
+
+  @Override
+  public void rename(INodePath srcPath, INodePath dstPath, long transactionId)
+      throws IOException {
+    this.store.rename(srcPath, dstPath, transactionId);
+    this.tracker.modifiedSubtree(srcPath, transactionId);
+    this.tracker.modifiedSubtree(dstPath, transactionId);
+  }
+
+  @Override
+  public void update(INodePath path, INodeUpdate builder) throws IOException {
+    this.store.update(path, builder);
+    if (builder.affectsAttributes()) {
+      this.tracker.modified(path, builder.getTransactionId());
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ModificationFileSystem(" + this.store + ")";
+  }
+}
@@ -0,0 +1,143 @@
+package com.github.lightcopy.fs;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * [[ModificationTracker]] keeps the latest modification per directory in memory, so entity tags
+ * of metadata queries are derived without reading metadata store. Directory entry records the
+ * latest modification of directory itself or any of its direct children; delete and rename also
+ * record subtree entry that applies to path and all its descendants.
+ *
+ * Each modification carries transaction id and local sequence number. Tag changes on every
+ * modification, including repairs stamped with older transaction, and transaction id is used to
+ * pin reads, so replica serving query has applied modification. Memory is bounded by capacity:
+ * once exceeded, entries are dropped and replaced by single floor modification, which changes
+ * every tag once.
+ */
+public class ModificationTracker {
+  /** Modification of path, tag is unique per tracker instance */
+  public static class Version {
+    private final long transactionId;
+    private final String tag;
+
+    Version(long transactionId, String tag) {
+      this.transactionId = transactionId;
+      this.tag = tag;
+    }
+
+    /** Transaction id of modification, reads must observe it to match tag */
+    public long getTransactionId() {
+      return this.transactionId;
+    }
+
+    /** Opaque entity tag value */
+    public String getTag() {
+      return this.tag;
+    }
+
+    @Override
+    public String toString() {
+      return "Version(txid=" + this.transactionId + ", tag=" + this.tag + ")";
+    }
+  }
+
+  /** Single modification, sequence number orders modifications of this tracker */
+  private static class Modification {
+    private final long transactionId;
+    private final long sequence;
+
+    Modification(long transactionId, long sequence) {
+      this.transactionId = transactionId;
+      this.sequence = sequence;
+    }
+  }
+
+  private final int capacity;
+  // distinguishes tags of tracker instances, sequence restarts with every instance
+  private final String epoch;
+  private final ConcurrentHashMap<INodePath, Modification> directories;
+  private final ConcurrentHashMap<INodePath, Modification> subtrees;
+  private long sequence;
+  private long lastTransactionId;
+  private volatile Modification floor;
+
+  public ModificationTracker(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Expected positive capacity, found " + capacity);
+    }
+    this.capacity = capacity;
+    this.epoch = Long.toString(System.currentTimeMillis(), 36);
+    this.directories = new ConcurrentHashMap<INodePath, Modification>();
+    this.subtrees = new ConcurrentHashMap<INodePath, Modification>();
+    this.sequence = 0L;
+    this.lastTransactionId = INode.NO_TRANSACTION;
+    this.floor = new Modification(INode.NO_TRANSACTION, 0L);
+  }
+
+  /** Create next modification, must be called under lock */
+  private Modification next(long transactionId) {
+    this.lastTransactionId = Math.max(this.lastTransactionId, transactionId);
+    return new Modification(transactionId, ++this.sequence);
+  }
+
+  /** Record modification for directory */
+  private void put(INodePath directory, Modification modification) {
+    if (directory != null) {
+      this.directories.put(directory, modification);
+    }
+  }
+
+  /** Drop entries if capacity is exceeded, must be called under lock */
+  private void evict() {
+    if (this.directories.size() + this.subtrees.size() > this.capacity) {
+      invalidate();
+    }
+  }
+
+  /** Record modification of node, which affects node and listing of its parent */
+  public synchronized void modified(INodePath path, long transactionId) {
+    Modification modification = next(transactionId);
+    put(path, modification);
+    put(path.getParent(), modification);
+    evict();
+  }
+
+  /** Record modification of node and all its descendants, e.g. delete or rename */
+  public synchronized void modifiedSubtree(INodePath path, long transactionId) {
+    Modification modification = next(transactionId);
+    this.subtrees.put(path, modification);
+    put(path.getParent(), modification);
+    evict();
+  }
+
+  /** Change all tags, used for bulk modifications, e.g. indexing or cleanup */
+  public synchronized void invalidate() {
+    Modification modification = next(this.lastTransactionId);
+    this.floor = modification;
+    this.directories.clear();
+    this.subtrees.clear();
+  }
+
+  private static Modification newer(Modification current, Modification other) {
+    return (other != null && other.sequence > current.sequence) ? other : current;
+  }
+
+  /**
+   * Get version of path that changes whenever path, its direct children or any of its ancestors
+   * as subtree are modified. Method does not block writers.
+   */
+  public Version version(INodePath path) {
+    Modification result = newer(this.floor, this.directories.get(path));
+    for (INodePath current = path; current != null; current = current.getParent()) {
+      result = newer(result, this.subtrees.get(current));
+    }
+    return new Version(result.transactionId,
+      this.epoch + "." + result.transactionId + "." + result.sequence);
+  }
+
+  @Override
+  public String toString() {
+    return "ModificationTracker(capacity=" + this.capacity + ", directories=" +
+      this.directories.size() + ", subtrees=" + this.subtrees.size() + ")";
+  }
+}
@@ -1,8 +1,14 @@
 package com.github.lightcopy.fs;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.bson.codecs.configuration.CodecRegistries;
 import org.bson.codecs.configuration.CodecRegistry;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,7 +16,7 @@ import org.slf4j.LoggerFactory;
 /**
  * Mongo event pool to store all hdfs events that are captured by [[EventProcess]].
  */
-public class MongoEventPool {
+public class MongoEventPool implements EventStore {
   private static final Logger LOG = LoggerFactory.getLogger(MongoEventPool.class);
 
   /** Mongo event pool collection */
@@ -24,9 +30,23 @@ public class MongoEventPool {
       .withDocumentClass(EventContainer.class);
   }
 
-  /** Insert single event container */
+  /** Insert single event container, replaces event stored by previous attempt of transaction */
+  @Override
   public void insert(EventContainer container) {
-    this.pool.insertOne(container);
+    this.pool.replaceOne(Filters.eq(EventContainer.FIELD_ID, EventCodec.id(container)), container,
+      new UpdateOptions().upsert(true));
     LOG.info("Added event {}", container);
   }
+
+  @Override
+  public List<EventContainer> scan(long fromTransactionId, int limit) {
+    List<EventContainer> events = new ArrayList<EventContainer>();
+    this.pool
+      .find(Filters.gte(EventContainer.FIELD_TRANSACTION_ID, fromTransactionId))
+      .sort(Sorts.ascending(EventContainer.FIELD_TRANSACTION_ID))
+      .limit(limit)
+      .into(events);
+    LOG.debug("Scanned {} events from transaction {}", events.size(), fromTransactionId);
+    return events;
+  }
 }
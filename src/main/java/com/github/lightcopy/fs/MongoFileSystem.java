@@ -1,17 +1,37 @@
 package com.github.lightcopy.fs;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonInt64;
+import org.bson.BsonValue;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
 import org.bson.codecs.configuration.CodecRegistries;
 import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.conversions.Bson;
 
 import com.mongodb.Block;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
 import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 
@@ -21,22 +41,119 @@ import org.slf4j.LoggerFactory;
 /**
  * Wrapper on MongoCollection for INode.
  * Provides some basic methods to traverse collection in file system manner.
+ *
+ * When versioned, every document is a version of inode valid for transactions in range
+ * [FIELD_VALID_FROM, FIELD_VALID_TO), live version has FIELD_VALID_TO = Long.MAX_VALUE. Stamped
+ * mutations never modify document that is visible to earlier transactions: they insert new
+ * version and close previous one, so multi-document rename and delete are never observed half
+ * applied by snapshot reads, see `snapshot(long)`. Writer publishes transaction once all its
+ * mutations are applied, readers query snapshot of the published transaction without locks.
+ * Mutations within the same transaction and unstamped mutations (indexing) modify version in
+ * place. Closed versions are removed by `collectVersions()` once no snapshot can observe them.
+ *
+ * Point lookups (get, upsert, update) match indexed hash of the full path, see
+ * `FsFilters.hashedPath()`, instead of one equality per path element.
  */
-public class MongoFileSystem {
+public class MongoFileSystem implements FileSystemStore, ExportSource {
   private static final Logger LOG = LoggerFactory.getLogger(MongoFileSystem.class);
+  private static final String FIELD_ID = "_id";
+  // version range of document in versioned collection
+  public static final String FIELD_VALID_FROM = "vf";
+  public static final String FIELD_VALID_TO = "vt";
+  public static final long LIVE = Long.MAX_VALUE;
+  // number of documents fetched per round trip when scanning partition
+  public static final int EXPORT_BATCH_SIZE = 1000;
+  // number of sampled ids per partition, used to find partition boundaries
+  private static final int PARTITION_SAMPLES = 100;
 
   // lock for modification operations
   private final ReentrantLock modificationLock;
   // underlying collection that serves as file system
   private final MongoCollection<INode> fs;
+  // codec and schema to encode nodes and filters
+  private final INodeCodec codec;
+  private final INodeSchema schema;
+  // versioned collection and raw view of it to access version fields
+  private final boolean versioned;
+  private final MongoCollection<BsonDocument> versions;
+  // last published transaction, snapshot reads observe it
+  private long published;
+  // snapshots read recently, mapped to the last time they were used
+  private final ConcurrentHashMap<Long, Long> snapshots;
+  // versions closed at or before this transaction are removed by the next collection
+  private long collectHorizon;
+  private long lastCollectTime;
 
   public MongoFileSystem(MongoCollection<?> collection) {
+    this(collection, new INodeCodec());
+  }
+
+  public MongoFileSystem(MongoCollection<?> collection, INodeCodec codec) {
+    this(collection, codec, false);
+  }
+
+  public MongoFileSystem(MongoCollection<?> collection, INodeCodec codec, boolean versioned) {
     this.modificationLock = new ReentrantLock();
+    this.codec = codec;
+    this.schema = codec.getSchema();
     CodecRegistry defaults = collection.getCodecRegistry();
-    CodecRegistry support = CodecRegistries.fromCodecs(new INodeCodec());
+    CodecRegistry support = CodecRegistries.fromCodecs(codec);
     this.fs = collection
       .withCodecRegistry(CodecRegistries.fromRegistries(defaults, support))
       .withDocumentClass(INode.class);
+    this.versioned = versioned;
+    this.versions = collection.withDocumentClass(BsonDocument.class);
+    this.published = INode.NO_TRANSACTION;
+    this.snapshots = new ConcurrentHashMap<Long, Long>();
+    this.collectHorizon = INode.NO_TRANSACTION;
+    this.lastCollectTime = System.currentTimeMillis();
+  }
+
+  /**
+   * Create indexes required by collection, e.g. after collection is dropped. Path hash index is
+   * not unique, since versioned collection keeps several versions of path and hashes can collide.
+   * Called by [[MongoMetadataStore]] on ingest client, constructor does not access collection.
+   */
+  public void ensureIndexes() {
+    // missing hash is indexed as null, so backfill does not scan collection once it is done
+    this.versions.createIndex(Indexes.ascending(this.schema.pathHash()));
+    if (this.versioned) {
+      // live versions and garbage are both selected by end of range
+      this.versions.createIndex(Indexes.ascending(FIELD_VALID_TO));
+    }
+  }
+
+  /**
+   * Write path hash for documents written before path hash was introduced, point lookups only
+   * match by hash. Expects path hash index, see `ensureIndexes()`.
+   */
+  public void backfillPathHashes() {
+    List<WriteModel<BsonDocument>> updates = new ArrayList<WriteModel<BsonDocument>>();
+    long count = 0L;
+    MongoCursor<BsonDocument> cursor = this.versions
+      .find(Filters.exists(this.schema.pathHash(), false))
+      .projection(Projections.include(FIELD_ID, this.schema.path()))
+      .batchSize(EXPORT_BATCH_SIZE)
+      .iterator();
+    try {
+      while (cursor.hasNext()) {
+        BsonDocument doc = cursor.next();
+        updates.add(new UpdateOneModel<BsonDocument>(Filters.eq(FIELD_ID, doc.get(FIELD_ID)),
+          Updates.set(this.schema.pathHash(), PathHash.hash(decode(doc).getPath()))));
+        if (updates.size() == EXPORT_BATCH_SIZE) {
+          count += this.versions.bulkWrite(updates).getModifiedCount();
+          updates.clear();
+        }
+      }
+    } finally {
+      cursor.close();
+    }
+    if (!updates.isEmpty()) {
+      count += this.versions.bulkWrite(updates).getModifiedCount();
+    }
+    if (count > 0) {
+      LOG.info("Added path hash to {} documents", count);
+    }
   }
 
   /** Helper method to compute duration in milliseconds */
@@ -44,25 +161,233 @@ public class MongoFileSystem {
     return (end - start) / 1e6;
   }
 
+  /** Record flight event for operation, fields are only computed if event is recorded */
+  private static void record(
+      FlightEvents.MongoOperation flight,
+      String operation,
+      INodePath path,
+      int batchSize,
+      long transactionId) {
+    if (flight.shouldCommit()) {
+      flight.operation = operation;
+      flight.path = (path == null) ? null : path.toPathString();
+      flight.depth = (path == null) ? 0 : path.getDepth();
+      flight.batchSize = batchSize;
+      flight.transactionId = transactionId;
+      flight.commit();
+    }
+  }
+
+  //////////////////////////////////////////////////////////////
+  // Versions
+  //////////////////////////////////////////////////////////////
+
+  /**
+   * Restrict filter to live versions, filter is returned as is for unversioned collection.
+   * Documents written before collection was versioned do not have range and are always live.
+   */
+  private Bson live(Bson filter) {
+    if (!this.versioned) return filter;
+    return Filters.and(filter, Filters.not(Filters.lt(FIELD_VALID_TO, LIVE)));
+  }
+
+  /** Restrict filter to versions visible in snapshot of transaction */
+  private static Bson visibleAt(Bson filter, long transactionId) {
+    return Filters.and(filter, Filters.not(Filters.gt(FIELD_VALID_FROM, transactionId)),
+      Filters.not(Filters.lte(FIELD_VALID_TO, transactionId)));
+  }
+
+  /** Encode node as live version that is valid from transaction */
+  private BsonDocument version(INode node, long validFrom) {
+    BsonDocument doc = new BsonDocument();
+    this.codec.encode(new BsonDocumentWriter(doc), node, EncoderContext.builder().build());
+    doc.append(FIELD_VALID_FROM, new BsonInt64(validFrom));
+    doc.append(FIELD_VALID_TO, new BsonInt64(LIVE));
+    return doc;
+  }
+
+  private INode decode(BsonDocument doc) {
+    return this.codec.decode(new BsonDocumentReader(doc), DecoderContext.builder().build());
+  }
+
+  private static long validFrom(BsonDocument doc) {
+    BsonValue value = doc.get(FIELD_VALID_FROM);
+    return (value == null) ? INode.NO_TRANSACTION : value.asNumber().longValue();
+  }
+
+  /**
+   * Whether or not version can be modified in place by mutation of transaction: unstamped
+   * mutations and mutations of the transaction that created version are not visible to any
+   * published snapshot that does not observe them already.
+   */
+  private static boolean inPlace(BsonDocument doc, long transactionId) {
+    return transactionId == INode.NO_TRANSACTION || validFrom(doc) >= transactionId;
+  }
+
+  /** Replace live version with node, keeps version range */
+  private void replaceVersion(BsonDocument doc, INode node) throws IOException {
+    UpdateResult result = this.versions.replaceOne(Filters.eq(FIELD_ID, doc.get(FIELD_ID)),
+      version(node, validFrom(doc)));
+    if (!result.wasAcknowledged()) {
+      throw new IOException("Failed to replace version of " + node.getPath());
+    }
+  }
+
+  /**
+   * Supersede live version with node at transaction: new version is inserted first, so that
+   * path always has live version for writer, then previous version is closed.
+   */
+  private void supersede(BsonDocument doc, INode node, long transactionId) throws IOException {
+    this.versions.insertOne(version(node, transactionId));
+    UpdateResult result = this.versions.updateOne(Filters.eq(FIELD_ID, doc.get(FIELD_ID)),
+      Updates.set(FIELD_VALID_TO, transactionId));
+    if (!result.wasAcknowledged()) {
+      throw new IOException("Failed to close version of " + node.getPath());
+    }
+  }
+
+  /**
+   * Publish transaction, all its mutations must be applied. Snapshot reads observe published
+   * transaction, transaction never moves backwards.
+   */
+  public synchronized void publish(long transactionId) {
+    if (transactionId > this.published) {
+      this.published = transactionId;
+      notifyAll();
+    }
+  }
+
+  /** Last published transaction */
+  public synchronized long getPublished() {
+    return this.published;
+  }
+
+  /**
+   * Wait until transaction is published or timeout elapses.
+   * @return last published transaction
+   */
+  public synchronized long awaitPublished(long transactionId, long timeoutMs)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    long remaining = timeoutMs;
+    while (this.published < transactionId && remaining > 0) {
+      wait(remaining);
+      remaining = deadline - System.currentTimeMillis();
+    }
+    return this.published;
+  }
+
+  /**
+   * Read-only view of collection at transaction. Snapshot of published transaction is
+   * consistent: it observes all mutations of transactions up to and including it, and none of
+   * the later ones. Versions observed by snapshot are retained for at least one collection
+   * interval after the last use of snapshot.
+   */
+  public Snapshot snapshot(long transactionId) {
+    if (!this.versioned) {
+      throw new UnsupportedOperationException("Snapshot reads require versioned collection");
+    }
+    Snapshot snapshot = new Snapshot(transactionId);
+    snapshot.touch();
+    return snapshot;
+  }
+
+  /**
+   * Remove versions that no snapshot can observe: versions closed at or before the oldest of
+   * published transaction at the previous call and snapshots used since the previous call.
+   * Reader that takes published snapshot between calls is protected by the previous horizon, so
+   * snapshot is safe as long as it is used at least once per interval. Method is expected to be
+   * called periodically from single thread.
+   * @return number of removed versions
+   */
+  public long collectVersions() {
+    if (!this.versioned) return 0L;
+    long now = System.currentTimeMillis();
+    long oldest = getPublished();
+    Iterator<Map.Entry<Long, Long>> iter = this.snapshots.entrySet().iterator();
+    while (iter.hasNext()) {
+      Map.Entry<Long, Long> entry = iter.next();
+      if (entry.getValue() < this.lastCollectTime) {
+        iter.remove();
+      } else {
+        oldest = Math.min(oldest, entry.getKey());
+      }
+    }
+    long horizon = Math.min(this.collectHorizon, oldest);
+    DeleteResult result = this.versions.deleteMany(Filters.lte(FIELD_VALID_TO, horizon));
+    this.collectHorizon = oldest;
+    this.lastCollectTime = now;
+    LOG.debug("Removed {} versions closed at or before transaction {}",
+      result.getDeletedCount(), horizon);
+    return result.getDeletedCount();
+  }
+
   /** Get inode from file system, returns null if none found */
   private INode doGet(INodePath path) {
-    return this.fs.find(FsFilters.path(path)).first();
+    return this.fs.find(live(FsFilters.hashedPath(this.schema, path))).first();
+  }
+
+  /** List children of the path */
+  private List<INode> doList(INodePath path, boolean recursive) {
+    List<INode> nodes = new ArrayList<INode>();
+    this.fs.find(live(FsFilters.children(this.schema, path, recursive))).into(nodes);
+    return nodes;
   }
 
   /** Delete inode from file system; deletion is always recursive */
-  private void doDelete(INodePath path) throws IOException {
-    DeleteResult result = this.fs.deleteMany(FsFilters.paths(path));
+  private void doDelete(INodePath path, long transactionId) throws IOException {
+    Bson filter = live(
+      FsFilters.notNewer(this.schema, FsFilters.paths(this.schema, path), transactionId));
+    if (this.versioned && transactionId != INode.NO_TRANSACTION) {
+      // versions created by this transaction are not visible to any snapshot yet
+      DeleteResult deleted = this.versions.deleteMany(
+        Filters.and(filter, Filters.gte(FIELD_VALID_FROM, transactionId)));
+      UpdateResult closed = this.versions.updateMany(filter,
+        Updates.set(FIELD_VALID_TO, transactionId));
+      if (!deleted.wasAcknowledged() || !closed.wasAcknowledged()) {
+        throw new IOException("Failed to delete path " + path + ", result was not acknowledged");
+      }
+      LOG.info("Deleted {} and closed {} versions for path {}", deleted.getDeletedCount(),
+        closed.getModifiedCount(), path);
+      return;
+    }
+    DeleteResult result = this.fs.deleteMany(filter);
     if (!result.wasAcknowledged()) {
       throw new IOException("Failed to delete path " + path + ", result was not acknowledged");
     }
     LOG.info("Deleted {} nodes for path {}", result.getDeletedCount(), path);
   }
 
-  /** Insert new node into file system, if another node exists for the path, will replace it */
+  /**
+   * Insert new node into file system, if another node exists for the path, will replace it.
+   * Stamped node is replaced conditionally, and only inserted if path does not exist, since
+   * upsert would insert duplicate when existing node is newer.
+   */
   private void doUpsert(INode node) throws IOException {
     INodePath path = node.getPath();
-    UpdateOptions options = new UpdateOptions().upsert(true);
-    UpdateResult result = this.fs.replaceOne(FsFilters.path(path), node, options);
+    this.codec.register(node);
+    long transactionId = node.getTransactionId();
+    if (this.versioned) {
+      doUpsertVersion(node);
+      return;
+    }
+    UpdateResult result;
+    if (transactionId == INode.NO_TRANSACTION) {
+      UpdateOptions options = new UpdateOptions().upsert(true);
+      result = this.fs.replaceOne(FsFilters.hashedPath(this.schema, path), node, options);
+    } else {
+      result = this.fs.replaceOne(
+        FsFilters.notNewer(this.schema, FsFilters.hashedPath(this.schema, path), transactionId),
+        node);
+      if (result.wasAcknowledged() && result.getMatchedCount() == 0) {
+        if (this.fs.count(FsFilters.hashedPath(this.schema, path)) == 0) {
+          this.fs.insertOne(node);
+        } else {
+          LOG.info("Upsert was ignored, node for path {} is newer than transaction {}", path,
+            transactionId);
+        }
+      }
+    }
     if (!result.wasAcknowledged()) {
       throw new IOException("Failed to insert path " + path + ", result was not acknowledged");
     }
@@ -70,23 +395,65 @@ public class MongoFileSystem {
       result.getModifiedCount());
   }
 
+  /** Upsert for versioned collection, live version is replaced or superseded */
+  private void doUpsertVersion(INode node) throws IOException {
+    INodePath path = node.getPath();
+    long transactionId = node.getTransactionId();
+    BsonDocument current =
+      this.versions.find(live(FsFilters.hashedPath(this.schema, path))).first();
+    if (current == null) {
+      this.versions.insertOne(version(node, transactionId));
+    } else if (transactionId != INode.NO_TRANSACTION &&
+        decode(current).getTransactionId() > transactionId) {
+      LOG.info("Upsert was ignored, node for path {} is newer than transaction {}", path,
+        transactionId);
+      return;
+    } else if (inPlace(current, transactionId)) {
+      replaceVersion(current, node);
+    } else {
+      supersede(current, node, transactionId);
+    }
+    LOG.info("Inserted version of node {}", node);
+  }
+
   /** Insert group of nodes directly, without validating on existence */
   private void doInsert(List<INode> nodes) throws IOException {
     if (!nodes.isEmpty()) {
-      this.fs.insertMany(nodes);
+      for (INode node : nodes) {
+        this.codec.register(node);
+      }
+      if (this.versioned) {
+        List<BsonDocument> docs = new ArrayList<BsonDocument>(nodes.size());
+        for (INode node : nodes) {
+          docs.add(version(node, node.getTransactionId()));
+        }
+        this.versions.insertMany(docs);
+      } else {
+        this.fs.insertMany(nodes);
+      }
     }
     LOG.info("Inserted {} nodes", nodes.size());
   }
 
   /** Rename src path into dst path */
-  private void doRename(final INodePath srcPath, final INodePath dstPath) throws IOException {
+  private void doRename(
+      final INodePath srcPath,
+      final INodePath dstPath,
+      final long transactionId) throws IOException {
+    if (this.versioned) {
+      doRenameVersions(srcPath, dstPath, transactionId);
+      return;
+    }
     Block<INode> renameBlock = new Block<INode>() {
       @Override
       public void apply(INode node) {
         INodePath path = node.getPath();
         // modify existing node to have updated path and replace in collection
         node.setPath(path.withUpdatedPrefix(srcPath, dstPath));
-        UpdateResult result = fs.replaceOne(FsFilters.path(path), node);
+        if (transactionId != INode.NO_TRANSACTION) {
+          node.setTransactionId(transactionId);
+        }
+        UpdateResult result = fs.replaceOne(FsFilters.hashedPath(schema, path), node);
         if (!result.wasAcknowledged()) {
           throw new RuntimeException("Failed to update node " + node +
             ", result was not acknowledged");
@@ -94,22 +461,134 @@ public class MongoFileSystem {
         LOG.info("Updated node {}, modified count {} = 1", node, result.getModifiedCount());
       }
     };
-    this.fs.find(FsFilters.paths(srcPath)).forEach(renameBlock);
+    this.fs.find(FsFilters.notNewer(this.schema, FsFilters.paths(this.schema, srcPath),
+      transactionId)).forEach(renameBlock);
     LOG.info("Updated nodes from {} to {}", srcPath, dstPath);
   }
 
+  /**
+   * Rename for versioned collection, each moved node gets new version at destination path.
+   * Documents are collected before modification, so cursor never observes inserted versions.
+   */
+  private void doRenameVersions(INodePath srcPath, INodePath dstPath, long transactionId)
+      throws IOException {
+    List<BsonDocument> docs = new ArrayList<BsonDocument>();
+    this.versions.find(live(FsFilters.notNewer(this.schema,
+      FsFilters.paths(this.schema, srcPath), transactionId))).into(docs);
+    for (BsonDocument doc : docs) {
+      INode node = decode(doc);
+      node.setPath(node.getPath().withUpdatedPrefix(srcPath, dstPath));
+      if (transactionId != INode.NO_TRANSACTION) {
+        node.setTransactionId(transactionId);
+      }
+      if (inPlace(doc, transactionId)) {
+        replaceVersion(doc, node);
+      } else {
+        supersede(doc, node, transactionId);
+      }
+    }
+    LOG.info("Moved {} versions from {} to {}", docs.size(), srcPath, dstPath);
+  }
+
   /** Update node for path using provided batch of updates */
   private void doUpdate(INodePath path, INodeUpdate builder) throws IOException {
-    Bson update = builder.bson();
-    if (update != null) {
-      UpdateResult result = this.fs.updateOne(FsFilters.path(path), update);
-      if (!result.wasAcknowledged()) {
-        throw new IOException("Failed to update path " + path + " with update " + update);
-      }
-      LOG.info("Modified path {}, modified count {} = 1", path, result.getModifiedCount());
-    } else {
+    Bson update = builder.bson(this.codec);
+    if (update == null) {
       LOG.warn("Update was ignored, because bson update is null for path {}", path);
+      return;
     }
+    long transactionId = builder.getTransactionId();
+    Bson filter = live(
+      FsFilters.notNewer(this.schema, FsFilters.hashedPath(this.schema, path), transactionId));
+    if (this.versioned) {
+      BsonDocument current = this.versions.find(filter).first();
+      if (current == null) {
+        LOG.info("Update was ignored, no version of path {} for transaction {}", path,
+          transactionId);
+        return;
+      }
+      if (!inPlace(current, transactionId)) {
+        INode node = decode(current);
+        builder.apply(node);
+        this.codec.register(node);
+        supersede(current, node, transactionId);
+        LOG.info("Superseded version of path {} at transaction {}", path, transactionId);
+        return;
+      }
+      filter = Filters.eq(FIELD_ID, current.get(FIELD_ID));
+    }
+    UpdateResult result = this.fs.updateOne(filter, update);
+    if (!result.wasAcknowledged()) {
+      throw new IOException("Failed to update path " + path + " with update " + update);
+    }
+    LOG.info("Modified path {}, modified count {} = 1", path, result.getModifiedCount());
+  }
+
+  /** Filter for documents with id in range [fromId, toId), null bound means unbounded */
+  private static Bson idRange(BsonValue fromId, BsonValue toId) {
+    List<Bson> filters = new ArrayList<Bson>();
+    if (fromId != null) filters.add(Filters.gte(FIELD_ID, fromId));
+    if (toId != null) filters.add(Filters.lt(FIELD_ID, toId));
+    return filters.isEmpty() ? new BsonDocument() : Filters.and(filters);
+  }
+
+  /**
+   * Split collection into `_id` ranges of roughly equal number of documents. Boundaries are
+   * quantiles of random sample of `_id` values, taken with `$sample` which does not scan
+   * collection; documents inserted later fall into one of the ranges.
+   */
+  @Override
+  public List<ExportSource.Partition> partitions(int count) {
+    return partitions(count, live(new BsonDocument()));
+  }
+
+  /** Split collection into partitions that only scan documents matching visibility filter */
+  private List<ExportSource.Partition> partitions(int count, Bson visibility) {
+    long total = this.fs.count();
+    List<BsonValue> sample = new ArrayList<BsonValue>();
+    if (count > 1 && total > 0) {
+      // sorted by server, so bounds follow the same order as `_id` range filters
+      for (BsonDocument doc : this.fs.withDocumentClass(BsonDocument.class).aggregate(Arrays.asList(
+          Aggregates.sample(count * PARTITION_SAMPLES),
+          Aggregates.project(Projections.include(FIELD_ID)),
+          Aggregates.sort(Sorts.ascending(FIELD_ID))))) {
+        sample.add(doc.get(FIELD_ID));
+      }
+    }
+    List<BsonValue> bounds = new ArrayList<BsonValue>();
+    bounds.add(null);
+    for (int i = 1; i < count && !sample.isEmpty(); i++) {
+      BsonValue bound = sample.get(i * sample.size() / count);
+      if (!bound.equals(bounds.get(bounds.size() - 1))) {
+        bounds.add(bound);
+      }
+    }
+    bounds.add(null);
+    List<ExportSource.Partition> partitions = new ArrayList<ExportSource.Partition>();
+    for (int i = 0; i < bounds.size() - 1; i++) {
+      final Bson filter = Filters.and(idRange(bounds.get(i), bounds.get(i + 1)), visibility);
+      partitions.add(new ExportSource.Partition() {
+        @Override
+        public void scan(ExportSource.Sink sink) throws IOException {
+          MongoCursor<INode> cursor =
+            fs.find(filter).batchSize(EXPORT_BATCH_SIZE).iterator();
+          try {
+            while (cursor.hasNext()) {
+              sink.write(cursor.next());
+            }
+          } finally {
+            cursor.close();
+          }
+        }
+      });
+    }
+    LOG.info("Split collection of {} documents into {} partitions", total, partitions.size());
+    return partitions;
+  }
+
+  @Override
+  public long estimatedSize() {
+    return this.fs.count();
   }
 
   //////////////////////////////////////////////////////////////
@@ -121,29 +600,58 @@ public class MongoFileSystem {
    * @param path path to retrieve
    * @return INode instance for that path
    */
+  @Override
   public INode get(INodePath path) {
+    FlightEvents.MongoOperation flight = new FlightEvents.MongoOperation();
+    flight.begin();
     long startTime = System.nanoTime();
     try {
       return doGet(path);
     } finally {
       long endTime = System.nanoTime();
       LOG.info("Get operation took {} ms", millis(startTime, endTime));
+      record(flight, "get", path, 1, -1L);
+    }
+  }
+
+  /**
+   * List children of the path, method is readonly.
+   * @param path parent path
+   * @param recursive whether or not to return all descendants
+   * @return list of child nodes
+   */
+  @Override
+  public List<INode> list(INodePath path, boolean recursive) {
+    FlightEvents.MongoOperation flight = new FlightEvents.MongoOperation();
+    flight.begin();
+    long startTime = System.nanoTime();
+    try {
+      return doList(path, recursive);
+    } finally {
+      long endTime = System.nanoTime();
+      LOG.info("List operation took {} ms", millis(startTime, endTime));
+      record(flight, "list", path, 1, -1L);
     }
   }
 
   /**
    * Delete path recursively with lock. Note that this operation is not atomic.
    * @param path path to delete
+   * @param transactionId transaction id of deletion
    */
-  public void delete(INodePath path) throws IOException {
+  @Override
+  public void delete(INodePath path, long transactionId) throws IOException {
+    FlightEvents.MongoOperation flight = new FlightEvents.MongoOperation();
+    flight.begin();
     this.modificationLock.lock();
     long startTime = System.nanoTime();
     try {
-      doDelete(path);
+      doDelete(path, transactionId);
     } finally {
       this.modificationLock.unlock();
       long endTime = System.nanoTime();
       LOG.info("Delete operation took {} ms", millis(startTime, endTime));
+      record(flight, "delete", path, 1, transactionId);
     }
   }
 
@@ -152,7 +660,10 @@ public class MongoFileSystem {
    * Operation is atomic.
    * @param node node to insert or replace with
    */
+  @Override
   public void upsert(INode node) throws IOException {
+    FlightEvents.MongoOperation flight = new FlightEvents.MongoOperation();
+    flight.begin();
     this.modificationLock.lock();
     long startTime = System.nanoTime();
     try {
@@ -161,6 +672,7 @@ public class MongoFileSystem {
       this.modificationLock.unlock();
       long endTime = System.nanoTime();
       LOG.info("Upsert operation took {} ms", millis(startTime, endTime));
+      record(flight, "upsert", node.getPath(), 1, node.getTransactionId());
     }
   }
 
@@ -169,7 +681,10 @@ public class MongoFileSystem {
    * contain only distinct elements.
    * @param nodes list of nodes to insert
    */
+  @Override
   public void insert(List<INode> nodes) throws IOException {
+    FlightEvents.MongoOperation flight = new FlightEvents.MongoOperation();
+    flight.begin();
     this.modificationLock.lock();
     long startTime = System.nanoTime();
     try {
@@ -178,6 +693,7 @@ public class MongoFileSystem {
       this.modificationLock.unlock();
       long endTime = System.nanoTime();
       LOG.info("Insert operation took {} ms", millis(startTime, endTime));
+      record(flight, "insert", null, nodes.size(), -1L);
     }
   }
 
@@ -185,16 +701,22 @@ public class MongoFileSystem {
    * Rename path from srcPath to dstPath recursively. Operation is not atomic.
    * @param srcPath path to replace
    * @param dstPath path to use as a replacement
+   * @param transactionId transaction id of rename
    */
-  public void rename(INodePath srcPath, INodePath dstPath) throws IOException {
+  @Override
+  public void rename(INodePath srcPath, INodePath dstPath, long transactionId)
+      throws IOException {
+    FlightEvents.MongoOperation flight = new FlightEvents.MongoOperation();
+    flight.begin();
     this.modificationLock.lock();
     long startTime = System.nanoTime();
     try {
-      doRename(srcPath, dstPath);
+      doRename(srcPath, dstPath, transactionId);
     } finally {
       this.modificationLock.unlock();
       long endTime = System.nanoTime();
       LOG.info("Rename operation took {} ms", millis(startTime, endTime));
+      record(flight, "rename", srcPath, 1, transactionId);
     }
   }
 
@@ -204,7 +726,10 @@ public class MongoFileSystem {
    * @param path path for node to update
    * @param builder node update builder
    */
+  @Override
   public void update(INodePath path, INodeUpdate builder) throws IOException {
+    FlightEvents.MongoOperation flight = new FlightEvents.MongoOperation();
+    flight.begin();
     this.modificationLock.lock();
     long startTime = System.nanoTime();
     try {
@@ -213,6 +738,106 @@ public class MongoFileSystem {
       this.modificationLock.unlock();
       long endTime = System.nanoTime();
       LOG.info("Update operation took {} ms", millis(startTime, endTime));
+      record(flight, "update", path, 1, builder.getTransactionId());
+    }
+  }
+
+  /**
+   * Read-only view of versioned collection at transaction, see `snapshot(long)`. Every read marks
+   * snapshot as used, so its versions are retained by collection.
+   */
+  public class Snapshot implements FileSystemStore, ExportSource {
+    private final long transactionId;
+
+    Snapshot(long transactionId) {
+      this.transactionId = transactionId;
+    }
+
+    /** Transaction observed by this snapshot */
+    public long getTransactionId() {
+      return this.transactionId;
+    }
+
+    /** Mark snapshot as used */
+    void touch() {
+      snapshots.put(this.transactionId, System.currentTimeMillis());
+    }
+
+    @Override
+    public INode get(INodePath path) {
+      touch();
+      return fs.find(visibleAt(FsFilters.hashedPath(schema, path), this.transactionId)).first();
+    }
+
+    @Override
+    public List<INode> list(INodePath path, boolean recursive) {
+      touch();
+      List<INode> nodes = new ArrayList<INode>();
+      fs.find(visibleAt(FsFilters.children(schema, path, recursive), this.transactionId))
+        .into(nodes);
+      return nodes;
+    }
+
+    @Override
+    public List<ExportSource.Partition> partitions(int count) {
+      touch();
+      List<ExportSource.Partition> partitions = new ArrayList<ExportSource.Partition>();
+      for (final ExportSource.Partition partition :
+          MongoFileSystem.this.partitions(count, visibleAt(new BsonDocument(), transactionId))) {
+        partitions.add(new ExportSource.Partition() {
+          @Override
+          public void scan(final ExportSource.Sink sink) throws IOException {
+            // scan can outlive collection interval, snapshot is marked once per batch
+            partition.scan(new ExportSource.Sink() {
+              private long written = 0L;
+
+              @Override
+              public void write(INode node) throws IOException {
+                if (this.written++ % EXPORT_BATCH_SIZE == 0) {
+                  touch();
+                }
+                sink.write(node);
+              }
+            });
+          }
+        });
+      }
+      return partitions;
+    }
+
+    @Override
+    public long estimatedSize() {
+      return MongoFileSystem.this.estimatedSize();
+    }
+
+    @Override
+    public void delete(INodePath path, long transactionId) {
+      throw new UnsupportedOperationException("Snapshot is read-only");
+    }
+
+    @Override
+    public void upsert(INode node) {
+      throw new UnsupportedOperationException("Snapshot is read-only");
+    }
+
+    @Override
+    public void insert(List<INode> nodes) {
+      throw new UnsupportedOperationException("Snapshot is read-only");
+    }
+
+    @Override
+    public void rename(INodePath srcPath, INodePath dstPath, long transactionId) {
+      throw new UnsupportedOperationException("Snapshot is read-only");
+    }
+
+    @Override
+    public void update(INodePath path, INodeUpdate builder) {
+      throw new UnsupportedOperationException("Snapshot is read-only");
+    }
+
+    @Override
+    public String toString() {
+      return "Snapshot(transactionId=" + this.transactionId + ")";
     }
   }
 }
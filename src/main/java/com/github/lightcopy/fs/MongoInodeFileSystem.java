@@ -0,0 +1,464 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [[FileSystemStore]] on MongoCollection where documents are keyed by inode id and store parent
+ * inode id and name instead of full path, so rename or move of directory updates exactly one
+ * document regardless of subtree size. Nodes without stored parent, e.g. indexed scope roots,
+ * keep full path and serve as entry points for path resolution.
+ *
+ * Path is resolved top-down with (parent, name) lookups, resolved ids of ancestors are kept in
+ * LRU cache, so resolving path in recently accessed directory takes single lookup. Cache is
+ * invalidated for subtree on rename and delete through this store; entries also expire after
+ * ttl, which bounds staleness for instances that only read, e.g. standby.
+ *
+ * Inode ids are taken from `HdfsFileStatus.getFileId()` during indexing, see [[INodeStatus]].
+ * Inotify events do not carry inode ids, nodes created from events get synthetic ids.
+ */
+public class MongoInodeFileSystem implements FileSystemStore {
+  private static final Logger LOG = LoggerFactory.getLogger(MongoInodeFileSystem.class);
+  // maximum number of ids in single $in filter
+  public static final int MAX_IN_IDS = 1000;
+
+  /** Resolved inode id of the path */
+  private static class CacheEntry {
+    final long fileId;
+    final long expires;
+
+    CacheEntry(long fileId, long expires) {
+      this.fileId = fileId;
+      this.expires = expires;
+    }
+  }
+
+  // lock for modification operations
+  private final ReentrantLock modificationLock;
+  private final MongoCollection<INode> fs;
+  private final INodeCodec codec;
+  private final INodeSchema schema;
+  private final LinkedHashMap<INodePath, CacheEntry> cache;
+  private final long cacheTtlMs;
+
+  public MongoInodeFileSystem(
+      MongoCollection<?> collection,
+      INodeCodec codec,
+      final int cacheSize,
+      long cacheTtlMs) {
+    if (!codec.isInodeKeyed()) {
+      throw new IllegalArgumentException("Expected codec keyed by inode id");
+    }
+    this.modificationLock = new ReentrantLock();
+    this.codec = codec;
+    this.schema = codec.getSchema();
+    CodecRegistry defaults = collection.getCodecRegistry();
+    CodecRegistry support = CodecRegistries.fromCodecs(codec);
+    this.fs = collection
+      .withCodecRegistry(CodecRegistries.fromRegistries(defaults, support))
+      .withDocumentClass(INode.class);
+    this.cache = new LinkedHashMap<INodePath, CacheEntry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<INodePath, CacheEntry> eldest) {
+        return size() > cacheSize;
+      }
+    };
+    this.cacheTtlMs = cacheTtlMs;
+  }
+
+  /**
+   * Create indexes required by collection, e.g. after collection is dropped. Called by
+   * [[MongoMetadataStore]], constructor does not access collection.
+   */
+  public void ensureIndexes() {
+    // children are resolved by parent id and name
+    this.fs.createIndex(Indexes.ascending(this.schema.parent(), this.schema.name()));
+  }
+
+  //////////////////////////////////////////////////////////////
+  // Ancestor cache
+  //////////////////////////////////////////////////////////////
+
+  private synchronized Long cachedId(INodePath path) {
+    CacheEntry entry = this.cache.get(path);
+    if (entry == null) return null;
+    if (entry.expires < System.currentTimeMillis()) {
+      this.cache.remove(path);
+      return null;
+    }
+    return entry.fileId;
+  }
+
+  private synchronized void cache(INodePath path, long fileId) {
+    this.cache.put(path, new CacheEntry(fileId, System.currentTimeMillis() + this.cacheTtlMs));
+  }
+
+  /** Invalidate path, and all cached descendants if path is a directory */
+  private synchronized void invalidate(INodePath path, boolean subtree) {
+    if (!subtree) {
+      this.cache.remove(path);
+      return;
+    }
+    Iterator<INodePath> iter = this.cache.keySet().iterator();
+    while (iter.hasNext()) {
+      if (iter.next().hasPrefix(path)) {
+        iter.remove();
+      }
+    }
+  }
+
+  //////////////////////////////////////////////////////////////
+  // Path resolution
+  //////////////////////////////////////////////////////////////
+
+  private static INodePath prefix(INodePath path, int depth) {
+    return new INodePath(depth, Arrays.copyOf(path.array(), depth));
+  }
+
+  private static INodePath child(INodePath parent, String name) {
+    String[] elements = Arrays.copyOf(parent.array(), parent.getDepth() + 1);
+    elements[parent.getDepth()] = name;
+    return new INodePath(elements.length, elements);
+  }
+
+  private Bson byId(long fileId) {
+    return Filters.eq(INode.FIELD_FILE_ID, fileId);
+  }
+
+  /** Filter for nodes without stored parent */
+  private Bson topLevel() {
+    return Filters.eq(this.schema.parent(), INode.NO_ID);
+  }
+
+  /** Find deepest node without stored parent that is path or its ancestor */
+  private INode findTopLevel(INodePath path) {
+    List<Bson> paths = new ArrayList<Bson>();
+    for (int depth = 0; depth <= path.getDepth(); depth++) {
+      paths.add(FsFilters.path(this.schema, prefix(path, depth)));
+    }
+    INode deepest = null;
+    for (INode node : this.fs.find(Filters.and(topLevel(), Filters.or(paths)))) {
+      if (deepest == null || node.getPath().getDepth() > deepest.getPath().getDepth()) {
+        deepest = node;
+      }
+    }
+    return deepest;
+  }
+
+  /** Resolve node for path starting from deepest cached ancestor, returns null if not found */
+  private INode resolve(INodePath path) {
+    int depth = path.getDepth();
+    int start = -1;
+    long parentId = INode.NO_ID;
+    for (int i = depth; i >= 0 && start < 0; i--) {
+      Long id = cachedId(prefix(path, i));
+      if (id != null) {
+        start = i;
+        parentId = id;
+      }
+    }
+    INode node = null;
+    if (start == depth) {
+      node = this.fs.find(byId(parentId)).first();
+      if (node != null && node.getName() != null && node.getName().equals(path.getName())) {
+        node.setPath(path);
+        return node;
+      }
+      // stale entry, resolve path from the top
+      invalidate(path, false);
+      start = -1;
+    }
+    if (start < 0) {
+      node = findTopLevel(path);
+      if (node == null) return null;
+      start = node.getPath().getDepth();
+      parentId = node.getFileId();
+      cache(node.getPath(), parentId);
+    }
+    for (int i = start; i < depth; i++) {
+      node = this.fs.find(Filters.and(Filters.eq(this.schema.parent(), parentId),
+        Filters.eq(this.schema.name(), path.getElement(i)))).first();
+      if (node == null) return null;
+      parentId = node.getFileId();
+      cache(prefix(path, i + 1), parentId);
+    }
+    node.setPath(path);
+    return node;
+  }
+
+  /** Resolve parent id for path, NO_ID if parent is not stored */
+  private long resolveParentId(INodePath path) {
+    INodePath parentPath = path.getParent();
+    INode parent = (parentPath == null) ? null : resolve(parentPath);
+    return (parent == null) ? INode.NO_ID : parent.getFileId();
+  }
+
+  /**
+   * Collect descendants of path breadth-first with $in lookups on parent ids, including nodes
+   * without stored parent that are located under path.
+   */
+  private List<INode> doList(INodePath path, INode directory, boolean recursive) {
+    List<INode> nodes = new ArrayList<INode>();
+    Set<Long> visited = new HashSet<Long>();
+    Map<Long, INodePath> frontier = new HashMap<Long, INodePath>();
+    if (directory != null && directory.isDirectory()) {
+      frontier.put(directory.getFileId(), path);
+      visited.add(directory.getFileId());
+    }
+    Bson unlinked = Filters.and(topLevel(), FsFilters.children(this.schema, path, recursive));
+    for (INode node : this.fs.find(unlinked)) {
+      if (visited.add(node.getFileId())) {
+        nodes.add(node);
+        if (recursive && node.isDirectory()) {
+          frontier.put(node.getFileId(), node.getPath());
+        }
+      }
+    }
+    while (!frontier.isEmpty()) {
+      Map<Long, INodePath> next = new HashMap<Long, INodePath>();
+      List<Long> parents = new ArrayList<Long>(frontier.keySet());
+      for (int i = 0; i < parents.size(); i += MAX_IN_IDS) {
+        List<Long> chunk = parents.subList(i, Math.min(i + MAX_IN_IDS, parents.size()));
+        for (INode node : this.fs.find(Filters.in(this.schema.parent(), chunk))) {
+          if (!visited.add(node.getFileId())) continue;
+          node.setPath(child(frontier.get(node.getParentId()), node.getName()));
+          nodes.add(node);
+          if (recursive && node.isDirectory()) {
+            next.put(node.getFileId(), node.getPath());
+          }
+        }
+      }
+      frontier = next;
+    }
+    return nodes;
+  }
+
+  /** Delete node for path and its subtree, nodes newer than transaction are kept */
+  private void doDelete(INodePath path, long transactionId) throws IOException {
+    INode node = resolve(path);
+    List<Long> ids = new ArrayList<Long>();
+    if (node != null) {
+      ids.add(node.getFileId());
+    }
+    if (node == null || node.isDirectory()) {
+      for (INode child : doList(path, node, true)) {
+        ids.add(child.getFileId());
+      }
+    }
+    long deleted = 0L;
+    for (int i = 0; i < ids.size(); i += MAX_IN_IDS) {
+      List<Long> chunk = ids.subList(i, Math.min(i + MAX_IN_IDS, ids.size()));
+      DeleteResult result = this.fs.deleteMany(FsFilters.notNewer(this.schema,
+        Filters.in(INode.FIELD_FILE_ID, chunk), transactionId));
+      if (!result.wasAcknowledged()) {
+        throw new IOException("Failed to delete path " + path + ", result was not acknowledged");
+      }
+      deleted += result.getDeletedCount();
+    }
+    invalidate(path, node == null || node.isDirectory());
+    LOG.info("Deleted {} nodes for path {}", deleted, path);
+  }
+
+  /**
+   * Replace node with the same path, or insert new node linked to parent. Existing node keeps its
+   * inode id, new node uses inode id of provided node or synthetic id.
+   */
+  private void doUpsert(INode node) throws IOException {
+    INodePath path = node.getPath();
+    INode stored = resolve(path);
+    if (stored != null && stored.isNewerThan(node.getTransactionId())) {
+      LOG.info("Upsert was ignored, node for path {} is newer than transaction {}", path,
+        node.getTransactionId());
+      return;
+    }
+    INode value = node.copy();
+    if (stored != null) {
+      value.setFileId(stored.getFileId()).setParentId(stored.getParentId());
+    } else {
+      value.setParentId(resolveParentId(path));
+      if (value.getFileId() == INode.NO_ID) {
+        value.setFileId(INodeStatus.syntheticId());
+      }
+    }
+    this.codec.register(value);
+    UpdateResult result = this.fs.replaceOne(byId(value.getFileId()), value,
+      new UpdateOptions().upsert(true));
+    if (!result.wasAcknowledged()) {
+      throw new IOException("Failed to insert path " + path + ", result was not acknowledged");
+    }
+    if (stored != null && stored.isDirectory() && !value.isDirectory()) {
+      invalidate(path, true);
+    }
+    cache(path, value.getFileId());
+    LOG.info("Inserted node {} with id {}, modified count {}", value, value.getFileId(),
+      result.getModifiedCount());
+  }
+
+  /** Insert nodes as is, nodes without inode id are assigned synthetic id */
+  private void doInsert(List<INode> nodes) throws IOException {
+    for (INode node : nodes) {
+      if (node.getFileId() == INode.NO_ID) {
+        node.setFileId(INodeStatus.syntheticId());
+      }
+      this.codec.register(node);
+    }
+    if (!nodes.isEmpty()) {
+      this.fs.insertMany(nodes);
+    }
+    LOG.info("Inserted {} nodes", nodes.size());
+  }
+
+  /** Relink source node to destination parent and name, overwritten destination is deleted */
+  private void doRename(INodePath srcPath, INodePath dstPath, long transactionId)
+      throws IOException {
+    INode node = resolve(srcPath);
+    if (node == null) {
+      LOG.info("Rename was ignored, path {} does not exist", srcPath);
+      return;
+    }
+    if (node.isNewerThan(transactionId)) {
+      LOG.info("Rename was ignored, node for path {} is newer than transaction {}", srcPath,
+        transactionId);
+      return;
+    }
+    INode existing = resolve(dstPath);
+    if (existing != null && existing.getFileId() != node.getFileId()) {
+      doDelete(dstPath, transactionId);
+    }
+    INode moved = node.copy().setPath(dstPath).setParentId(resolveParentId(dstPath));
+    if (transactionId != INode.NO_TRANSACTION) {
+      moved.setTransactionId(transactionId);
+    }
+    UpdateResult result = this.fs.replaceOne(byId(moved.getFileId()), moved);
+    if (!result.wasAcknowledged()) {
+      throw new IOException("Failed to rename " + srcPath + " to " + dstPath +
+        ", result was not acknowledged");
+    }
+    invalidate(srcPath, node.isDirectory());
+    invalidate(dstPath, true);
+    cache(dstPath, moved.getFileId());
+    LOG.info("Updated node from {} to {}, modified count {} = 1", srcPath, dstPath,
+      result.getModifiedCount());
+  }
+
+  /** Update node for path using provided batch of updates */
+  private void doUpdate(INodePath path, INodeUpdate builder) throws IOException {
+    Bson update = builder.bson(this.codec);
+    if (update == null) {
+      LOG.warn("Update was ignored, because bson update is null for path {}", path);
+      return;
+    }
+    INode node = resolve(path);
+    if (node == null) {
+      LOG.warn("Update was ignored, path {} does not exist", path);
+      return;
+    }
+    UpdateResult result = this.fs.updateOne(FsFilters.notNewer(this.schema,
+      byId(node.getFileId()), builder.getTransactionId()), update);
+    if (!result.wasAcknowledged()) {
+      throw new IOException("Failed to update path " + path + " with update " + update);
+    }
+    LOG.info("Modified path {}, modified count {} = 1", path, result.getModifiedCount());
+  }
+
+  //////////////////////////////////////////////////////////////
+  // Public operators
+  //////////////////////////////////////////////////////////////
+
+  @Override
+  public INode get(INodePath path) {
+    return resolve(path);
+  }
+
+  @Override
+  public List<INode> list(INodePath path, boolean recursive) {
+    return doList(path, resolve(path), recursive);
+  }
+
+  @Override
+  public void delete(INodePath path, long transactionId) throws IOException {
+    this.modificationLock.lock();
+    try {
+      doDelete(path, transactionId);
+    } finally {
+      this.modificationLock.unlock();
+    }
+  }
+
+  @Override
+  public void upsert(INode node) throws IOException {
+    this.modificationLock.lock();
+    try {
+      doUpsert(node);
+    } finally {
+      this.modificationLock.unlock();
+    }
+  }
+
+  /**
+   * Insert list of nodes, nodes must carry parent id assigned during traversal, nodes without
+   * parent id are stored with full path.
+   */
+  @Override
+  public void insert(List<INode> nodes) throws IOException {
+    this.modificationLock.lock();
+    try {
+      doInsert(nodes);
+    } finally {
+      this.modificationLock.unlock();
+    }
+  }
+
+  /**
+   * Rename updates single document of the source node, descendants are linked by parent id and
+   * are neither modified nor stamped with transaction id.
+   */
+  @Override
+  public void rename(INodePath srcPath, INodePath dstPath, long transactionId)
+      throws IOException {
+    this.modificationLock.lock();
+    try {
+      doRename(srcPath, dstPath, transactionId);
+    } finally {
+      this.modificationLock.unlock();
+    }
+  }
+
+  @Override
+  public void update(INodePath path, INodeUpdate builder) throws IOException {
+    this.modificationLock.lock();
+    try {
+      doUpdate(path, builder);
+    } finally {
+      this.modificationLock.unlock();
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "MongoInodeFileSystem(cached=" + this.cache.size() + ")";
+  }
+}
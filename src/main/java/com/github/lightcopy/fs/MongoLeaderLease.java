@@ -0,0 +1,89 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+
+/**
+ * [[LeaderLease]] stored as single document per namespace in Mongo collection. Lease is acquired
+ * with conditional upsert that only matches document if it is held by the same owner or has
+ * expired; if another owner holds valid lease, upsert fails with duplicate key error.
+ */
+public class MongoLeaderLease implements LeaderLease {
+  public static final String FIELD_OWNER = "owner";
+  public static final String FIELD_EXPIRES = "expires";
+
+  private final MongoCollection<Document> collection;
+  private final String name;
+  private final String owner;
+  private final long ttlMs;
+
+  public MongoLeaderLease(
+      MongoCollection<Document> collection,
+      String name,
+      String owner,
+      long ttlMs) {
+    this.collection = collection;
+    this.name = name;
+    this.owner = owner;
+    this.ttlMs = ttlMs;
+  }
+
+  /** Filter that matches lease document if it can be taken by owner */
+  static Bson available(String name, String owner, long now) {
+    return Filters.and(
+      Filters.eq(MongoMetadataStore.FIELD_ID, name),
+      Filters.or(Filters.eq(FIELD_OWNER, owner), Filters.lt(FIELD_EXPIRES, now)));
+  }
+
+  /** Update that assigns lease to owner until expiration time */
+  static Bson assign(String owner, long expires) {
+    return Updates.combine(Updates.set(FIELD_OWNER, owner), Updates.set(FIELD_EXPIRES, expires));
+  }
+
+  @Override
+  public boolean acquire() throws IOException {
+    long now = System.currentTimeMillis();
+    try {
+      this.collection.updateOne(available(this.name, this.owner, now),
+        assign(this.owner, now + this.ttlMs), new UpdateOptions().upsert(true));
+      return true;
+    } catch (MongoWriteException err) {
+      if (err.getError().getCategory() == ErrorCategory.DUPLICATE_KEY) {
+        return false;
+      }
+      throw new IOException("Failed to acquire lease " + this.name, err);
+    } catch (RuntimeException err) {
+      throw new IOException("Failed to acquire lease " + this.name, err);
+    }
+  }
+
+  @Override
+  public void release() throws IOException {
+    try {
+      this.collection.deleteOne(Filters.and(
+        Filters.eq(MongoMetadataStore.FIELD_ID, this.name), Filters.eq(FIELD_OWNER, this.owner)));
+    } catch (RuntimeException err) {
+      throw new IOException("Failed to release lease " + this.name, err);
+    }
+  }
+
+  @Override
+  public String getOwner() {
+    return this.owner;
+  }
+
+  @Override
+  public String toString() {
+    return "MongoLeaderLease(name=" + this.name + ", owner=" + this.owner +
+      ", ttl=" + this.ttlMs + " ms)";
+  }
+}
@@ -0,0 +1,428 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.bson.Document;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientURI;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.result.UpdateResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.lightcopy.conf.HdfsSource;
+
+/**
+ * [[MetadataStore]] backed by MongoDB, file system and events are stored in separate collections
+ * of the same database. Each namespace has its own set of collections, collections of default
+ * namespace do not have suffix. Client can be shared between stores of different namespaces, in
+ * this case store does not close client.
+ *
+ * When shard databases are provided, file system collection is split across shards using
+ * [[ShardedFileSystem]], events, checkpoint and dictionary are kept in the main database.
+ * File system collection can also be keyed by inode id, see [[MongoInodeFileSystem]]; this
+ * layout is not supported with shards, since routing is based on path prefix.
+ *
+ * Queries can be routed to replica set members through separate read client, see
+ * [[ReplicaReadPath]]; without read path all queries are served by primary connection.
+ *
+ * Path layout without shards can keep versions of nodes, see `withSnapshotReads()`. Checkpoint
+ * publishes transaction and queries read snapshot of the last published transaction, so they do
+ * not observe partially applied multi-document mutations, e.g. rename or delete of directory.
+ */
+public class MongoMetadataStore implements MetadataStore {
+  private static final Logger LOG = LoggerFactory.getLogger(MongoMetadataStore.class);
+
+  public static final String MONGO_DATABASE = "dbfs";
+  public static final String MONGO_COLLECTION_FILE_SYSTEM = "filesystem";
+  public static final String MONGO_COLLECTION_EVENT_POOL = "eventpool";
+  public static final String MONGO_COLLECTION_CHECKPOINT = "checkpoint";
+  public static final String MONGO_COLLECTION_DICTIONARY = "dictionary";
+  // leases of all namespaces are stored in the same collection keyed by namespace
+  public static final String MONGO_COLLECTION_LEASE = "lease";
+  public static final String MONGO_COLLECTION_ROLLUP = "rollup";
+  public static final String MONGO_COLLECTION_TIME_SERIES = "timeseries";
+  // checkpoint is stored as single document with fixed id
+  public static final String CHECKPOINT_ID = "txid";
+  public static final String FIELD_ID = "_id";
+  public static final String FIELD_TRANSACTION_ID = "transactionId";
+  // wall clock time of the last checkpoint, used to estimate replication lag
+  public static final String FIELD_CHECKPOINT_TIME = "time";
+  // maximum time to wait for transaction to be published for snapshot reads
+  public static final long READ_WAIT_MS = 1000L;
+
+  private MongoClient mongo;
+  private final boolean ownsClient;
+  private final String namespace;
+  private FileSystemStore mongoFS;
+  private final List<MongoDatabase> shards;
+  private final MongoEventPool mongoEventPool;
+  private final MongoRollupStore rollups;
+  private final MongoTimeSeriesStore timeSeries;
+  private final MongoCollection<Document> checkpoints;
+  // settings to create file system store for read path
+  private final INodeCodec codec;
+  private final int shardDepth;
+  private final boolean inodeKeyed;
+  private final int inodeCacheSize;
+  private final long inodeCacheTtlMs;
+  private ReplicaReadPath readPath;
+  // the last checkpoint of this instance, writes are synchronous and acknowledged on return
+  private volatile long acknowledged;
+  // versioned file system collection for snapshot reads, null if disabled
+  private MongoFileSystem versions;
+  private VersionCollector collector;
+  private Thread collectorThread;
+
+  public MongoMetadataStore(String mongoConnection) {
+    this(mongoConnection, INodeSchema.LEGACY);
+  }
+
+  public MongoMetadataStore(String mongoConnection, INodeSchema schema) {
+    this(createClient(mongoConnection), true, HdfsSource.DEFAULT_NAME, schema, null,
+      Collections.<MongoDatabase>emptyList(), 0, false, 0, 0L);
+  }
+
+  public MongoMetadataStore(
+      MongoClient mongo,
+      String namespace,
+      INodeSchema schema,
+      NameDictionary dictionary) {
+    this(mongo, false, namespace, schema, dictionary, Collections.<MongoDatabase>emptyList(), 0,
+      false, 0, 0L);
+  }
+
+  /** Create store with file system collection keyed by inode id */
+  public MongoMetadataStore(
+      MongoClient mongo,
+      String namespace,
+      INodeSchema schema,
+      NameDictionary dictionary,
+      int inodeCacheSize,
+      long inodeCacheTtlMs) {
+    this(mongo, false, namespace, schema, dictionary, Collections.<MongoDatabase>emptyList(), 0,
+      true, inodeCacheSize, inodeCacheTtlMs);
+  }
+
+  public MongoMetadataStore(
+      MongoClient mongo,
+      String namespace,
+      INodeSchema schema,
+      NameDictionary dictionary,
+      List<MongoDatabase> shards,
+      int shardDepth) {
+    this(mongo, false, namespace, schema, dictionary, shards, shardDepth, false, 0, 0L);
+  }
+
+  private MongoMetadataStore(
+      MongoClient mongo,
+      boolean ownsClient,
+      String namespace,
+      INodeSchema schema,
+      NameDictionary dictionary,
+      List<MongoDatabase> shards,
+      int shardDepth,
+      boolean inodeKeyed,
+      int inodeCacheSize,
+      long inodeCacheTtlMs) {
+    if (inodeKeyed && !shards.isEmpty()) {
+      throw new IllegalArgumentException("Inode-keyed layout does not support shards");
+    }
+    this.mongo = mongo;
+    this.ownsClient = ownsClient;
+    this.namespace = namespace;
+    this.shards = shards;
+    // Mongo will create database if one does not exist already, the same applies to collections,
+    // they are only created when inserting document. Calling cleanup state after initializing
+    // properties is okay - database and collections will be recreated
+    MongoDatabase database = this.mongo.getDatabase(MONGO_DATABASE);
+    if (dictionary == null) {
+      dictionary = new MongoNameDictionary(database.getCollection(MONGO_COLLECTION_DICTIONARY));
+    }
+    LOG.info("Use inode schema {} for namespace {}", schema, namespace);
+    this.codec = new INodeCodec(schema, dictionary, inodeKeyed);
+    this.shardDepth = shardDepth;
+    this.inodeKeyed = inodeKeyed;
+    this.inodeCacheSize = inodeCacheSize;
+    this.inodeCacheTtlMs = inodeCacheTtlMs;
+    this.mongoFS = createFileSystem(database, shards);
+    LOG.info("Use {} for namespace {}", this.mongoFS, namespace);
+    ensureIndexes();
+    this.readPath = null;
+    this.acknowledged = -1L;
+    this.versions = null;
+    this.collector = null;
+    this.collectorThread = null;
+    this.mongoEventPool = new MongoEventPool(
+      database.getCollection(collectionName(MONGO_COLLECTION_EVENT_POOL, namespace)));
+    this.checkpoints =
+      database.getCollection(collectionName(MONGO_COLLECTION_CHECKPOINT, namespace));
+    this.rollups = new MongoRollupStore(
+      database.getCollection(collectionName(MONGO_COLLECTION_ROLLUP, namespace)));
+    this.timeSeries = new MongoTimeSeriesStore(
+      database.getCollection(collectionName(MONGO_COLLECTION_TIME_SERIES, namespace)));
+  }
+
+  /** Create file system store for layout of this store on database or shard databases */
+  private FileSystemStore createFileSystem(MongoDatabase database, List<MongoDatabase> shards) {
+    String fsCollection = collectionName(MONGO_COLLECTION_FILE_SYSTEM, this.namespace);
+    if (this.inodeKeyed) {
+      return new MongoInodeFileSystem(database.getCollection(fsCollection), this.codec,
+        this.inodeCacheSize, this.inodeCacheTtlMs);
+    } else if (shards.isEmpty()) {
+      return new MongoFileSystem(database.getCollection(fsCollection), this.codec);
+    } else {
+      List<FileSystemStore> stores = new ArrayList<FileSystemStore>();
+      for (MongoDatabase shard : shards) {
+        stores.add(new MongoFileSystem(shard.getCollection(fsCollection), this.codec));
+      }
+      return new ShardedFileSystem(stores, this.shardDepth);
+    }
+  }
+
+  /**
+   * Route queries through read path, see [[ReplicaReadPath]]. Shards are read with the same read
+   * preference through read clients, separate from clients used for ingest.
+   * @param readDatabase main database of the read client
+   * @param readShards shard databases of read clients, in the same order as shards of the store
+   * @param preference read preference for queries
+   * @param maxStalenessMs maximum estimated lag of replica, 0 to disable check
+   * @param pinTransactions whether or not queries can require transaction to be observed
+   * @return this store
+   */
+  public MongoMetadataStore withReadPath(
+      MongoDatabase readDatabase,
+      List<MongoDatabase> readShards,
+      ReadPreference preference,
+      long maxStalenessMs,
+      boolean pinTransactions) {
+    if (readShards.size() != this.shards.size()) {
+      throw new IllegalArgumentException("Expected " + this.shards.size() +
+        " read shards, found " + readShards.size());
+    }
+    MongoDatabase database = readDatabase.withReadPreference(preference);
+    List<MongoDatabase> shards = new ArrayList<MongoDatabase>();
+    for (MongoDatabase shard : readShards) {
+      shards.add(shard.withReadPreference(preference));
+    }
+    this.readPath = new ReplicaReadPath(this.mongoFS, createFileSystem(database, shards),
+      this.checkpoints, database.getCollection(
+        collectionName(MONGO_COLLECTION_CHECKPOINT, this.namespace)),
+      maxStalenessMs, pinTransactions);
+    LOG.info("Use {} with read preference {} for namespace {}", this.readPath, preference,
+      this.namespace);
+    return this;
+  }
+
+  /**
+   * Keep versions of nodes in file system collection and serve queries from snapshot of the last
+   * checkpoint, see [[MongoFileSystem]]. Only path layout without shards is supported, versions
+   * are removed by background [[VersionCollector]].
+   * @param gcIntervalMs interval of version collection
+   * @return this store
+   */
+  public MongoMetadataStore withSnapshotReads(long gcIntervalMs) {
+    if (this.inodeKeyed || !this.shards.isEmpty()) {
+      throw new IllegalArgumentException(
+        "Snapshot reads are only supported by path layout without shards");
+    }
+    if (this.readPath != null) {
+      throw new IllegalArgumentException("Snapshot reads do not support replica read path");
+    }
+    MongoDatabase database = this.mongo.getDatabase(MONGO_DATABASE);
+    this.versions = new MongoFileSystem(database.getCollection(
+      collectionName(MONGO_COLLECTION_FILE_SYSTEM, this.namespace)), this.codec, true);
+    this.mongoFS = this.versions;
+    // path hashes are backfilled when store is created, versioned view only adds range index
+    this.versions.ensureIndexes();
+    // everything up to existing checkpoint is applied
+    this.versions.publish(Math.max(getCheckpoint(), INode.NO_TRANSACTION));
+    this.collector = new VersionCollector(this.versions, gcIntervalMs);
+    this.collectorThread = new Thread(this.collector, "VersionCollector-" + this.namespace);
+    this.collectorThread.setDaemon(true);
+    this.collectorThread.start();
+    LOG.info("Use snapshot reads with {} for namespace {}", this.collector, this.namespace);
+    return this;
+  }
+
+  /** Create new client for connection string */
+  private static MongoClient createClient(String mongoConnection) {
+    LOG.info("Initialize mongo client for connection {}", mongoConnection);
+    return new MongoClient(new MongoClientURI(mongoConnection));
+  }
+
+  /** Collection name for namespace, default namespace uses base name */
+  public static String collectionName(String base, String namespace) {
+    return HdfsSource.DEFAULT_NAME.equals(namespace) ? base : base + "_" + namespace;
+  }
+
+  @Override
+  public FileSystemStore fileSystem() {
+    return this.mongoFS;
+  }
+
+  /**
+   * With snapshot reads, returns snapshot of the last published transaction; if transaction is
+   * provided, waits up to READ_WAIT_MS for it to be published first.
+   */
+  @Override
+  public FileSystemStore reader(long transactionId) {
+    if (this.versions != null) {
+      try {
+        if (this.versions.awaitPublished(transactionId, READ_WAIT_MS) < transactionId) {
+          LOG.debug("Transaction {} is not published within {} ms", transactionId, READ_WAIT_MS);
+        }
+      } catch (InterruptedException err) {
+        Thread.currentThread().interrupt();
+      }
+      return this.versions.snapshot(this.versions.getPublished());
+    }
+    return (this.readPath == null) ? this.mongoFS : this.readPath.route(transactionId);
+  }
+
+  @Override
+  public EventStore eventPool() {
+    return this.mongoEventPool;
+  }
+
+  @Override
+  public RollupStore rollups() {
+    return this.rollups;
+  }
+
+  @Override
+  public TimeSeriesStore timeSeries() {
+    return this.timeSeries;
+  }
+
+  @Override
+  public void checkpoint(long transactionId) throws IOException {
+    // writes are synchronous, all previous writes are already acknowledged
+    UpdateResult result = this.checkpoints.updateOne(Filters.eq(FIELD_ID, CHECKPOINT_ID),
+      Updates.combine(Updates.max(FIELD_TRANSACTION_ID, transactionId),
+        Updates.set(FIELD_CHECKPOINT_TIME, System.currentTimeMillis())),
+      new UpdateOptions().upsert(true));
+    if (!result.wasAcknowledged()) {
+      throw new IOException("Failed to update checkpoint " + transactionId +
+        ", result was not acknowledged");
+    }
+    this.acknowledged = Math.max(this.acknowledged, transactionId);
+    if (this.versions != null) {
+      this.versions.publish(transactionId);
+    }
+    LOG.debug("Checkpoint transaction {}", transactionId);
+  }
+
+  @Override
+  public long getAcknowledged() {
+    return this.acknowledged;
+  }
+
+  @Override
+  public long getCheckpoint() {
+    Document doc = this.checkpoints.find(Filters.eq(FIELD_ID, CHECKPOINT_ID)).first();
+    long transactionId = (doc == null) ? -1L : doc.getLong(FIELD_TRANSACTION_ID);
+    if (this.versions != null) {
+      // standby follows checkpoint of active instance
+      this.versions.publish(transactionId);
+    }
+    return transactionId;
+  }
+
+  @Override
+  public LeaderLease lease(String owner, long ttlMs) {
+    return new MongoLeaderLease(
+      this.mongo.getDatabase(MONGO_DATABASE).getCollection(MONGO_COLLECTION_LEASE),
+      this.namespace, owner, ttlMs);
+  }
+
+  @Override
+  public void cleanup() {
+    // delete collections of namespace, other namespaces and dictionary are not affected
+    LOG.info("Delete Mongo collections for namespace {}", this.namespace);
+    MongoDatabase database = this.mongo.getDatabase(MONGO_DATABASE);
+    String fsCollection = collectionName(MONGO_COLLECTION_FILE_SYSTEM, this.namespace);
+    if (this.shards.isEmpty()) {
+      database.getCollection(fsCollection).drop();
+    } else {
+      for (MongoDatabase shard : this.shards) {
+        shard.getCollection(fsCollection).drop();
+      }
+    }
+    database.getCollection(collectionName(MONGO_COLLECTION_EVENT_POOL, this.namespace)).drop();
+    database.getCollection(collectionName(MONGO_COLLECTION_ROLLUP, this.namespace)).drop();
+    this.checkpoints.drop();
+    ensureIndexes();
+  }
+
+  /**
+   * Create indexes of file system collections of every layout, including all shards, and
+   * backfill path hashes once per store on ingest client; dropping collection also drops its
+   * indexes. File systems of read path are never set up, they may read from secondaries.
+   */
+  private void ensureIndexes() {
+    if (this.mongoFS instanceof MongoInodeFileSystem) {
+      ((MongoInodeFileSystem) this.mongoFS).ensureIndexes();
+    } else if (this.mongoFS instanceof MongoFileSystem) {
+      ensureIndexes((MongoFileSystem) this.mongoFS);
+    } else if (this.mongoFS instanceof ShardedFileSystem) {
+      for (FileSystemStore shard : ((ShardedFileSystem) this.mongoFS).getShards()) {
+        ensureIndexes((MongoFileSystem) shard);
+      }
+    }
+  }
+
+  /** Create indexes of path layout collection and backfill path hashes */
+  private static void ensureIndexes(MongoFileSystem fs) {
+    fs.ensureIndexes();
+    fs.backfillPathHashes();
+  }
+
+  @Override
+  public boolean isAlive() {
+    try {
+      return this.mongo.getServerAddressList() != null;
+    } catch (Exception err) {
+      return false;
+    }
+  }
+
+  @Override
+  public void close() {
+    if (this.collectorThread != null) {
+      LOG.info("Stop version collector ({})", this.collector);
+      this.collector.terminate();
+      try {
+        this.collectorThread.join();
+        this.collectorThread = null;
+      } catch (InterruptedException err) {
+        throw new RuntimeException("Interrupted thread " + this.collectorThread, err);
+      }
+    }
+    if (this.mongoFS instanceof ShardedFileSystem) {
+      ((ShardedFileSystem) this.mongoFS).close();
+    }
+    if (this.readPath != null && this.readPath.replica() instanceof ShardedFileSystem) {
+      ((ShardedFileSystem) this.readPath.replica()).close();
+    }
+    if (this.ownsClient) {
+      this.mongo.close();
+    }
+    this.mongo = null;
+  }
+
+  @Override
+  public String toString() {
+    return "MongoMetadataStore(namespace=" + this.namespace + ")";
+  }
+}
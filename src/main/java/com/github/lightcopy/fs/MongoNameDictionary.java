@@ -0,0 +1,78 @@
+package com.github.lightcopy.fs;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bson.Document;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+
+/**
+ * [[NameDictionary]] stored in Mongo collection as documents {_id: id, name: name}. Ids are
+ * allocated from counter document {_id: "counter", next: id} with atomic increment, and names
+ * have unique index, so concurrent writers that add the same name agree on the id: writer that
+ * loses insert reads id of the winner.
+ */
+public class MongoNameDictionary extends NameDictionary {
+  public static final String FIELD_ID = "_id";
+  public static final String FIELD_NAME = "name";
+  // counter document, next id to allocate
+  public static final String COUNTER_ID = "counter";
+  public static final String FIELD_NEXT = "next";
+
+  private final MongoCollection<Document> collection;
+
+  public MongoNameDictionary(MongoCollection<Document> collection) {
+    this.collection = collection;
+    this.collection.createIndex(Indexes.ascending(FIELD_NAME), new IndexOptions().unique(true));
+    reload();
+  }
+
+  @Override
+  protected Map<Integer, String> loadAll() {
+    Map<Integer, String> entries = new HashMap<Integer, String>();
+    int maxId = -1;
+    for (Document doc : this.collection.find(Filters.exists(FIELD_NAME))) {
+      entries.put(doc.getInteger(FIELD_ID), doc.getString(FIELD_NAME));
+      maxId = Math.max(maxId, doc.getInteger(FIELD_ID));
+    }
+    // dictionaries written without counter continue after the highest id
+    this.collection.updateOne(Filters.eq(FIELD_ID, COUNTER_ID),
+      Updates.max(FIELD_NEXT, maxId + 1), new UpdateOptions().upsert(true));
+    return entries;
+  }
+
+  /** Find id of name in storage, null if name does not exist */
+  private Integer find(String name) {
+    Document doc = this.collection.find(Filters.eq(FIELD_NAME, name)).first();
+    return (doc == null) ? null : doc.getInteger(FIELD_ID);
+  }
+
+  @Override
+  protected int assign(String name) {
+    while (true) {
+      Integer existing = find(name);
+      if (existing != null) return existing;
+      Document counter = this.collection.findOneAndUpdate(Filters.eq(FIELD_ID, COUNTER_ID),
+        Updates.inc(FIELD_NEXT, 1),
+        new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER));
+      int id = counter.getInteger(FIELD_NEXT) - 1;
+      try {
+        this.collection.insertOne(new Document(FIELD_ID, id).append(FIELD_NAME, name));
+        return id;
+      } catch (MongoWriteException err) {
+        if (err.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) throw err;
+        // name was added by another writer, read its id on next iteration
+      }
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+
+/**
+ * [[RollupStore]] backed by Mongo collection, each owner or group is stored as separate document
+ * with id "kind:name", so single flush is one bulk write.
+ */
+public class MongoRollupStore implements RollupStore {
+  public static final String FIELD_KIND = "kind";
+  public static final String FIELD_NAME = "name";
+  public static final String FIELD_FILES = "files";
+  public static final String FIELD_DIRECTORIES = "directories";
+  public static final String FIELD_BYTES = "bytes";
+  public static final String FIELD_REPLICATED_BYTES = "replicatedBytes";
+  public static final String FIELD_UPDATED = "updated";
+
+  private final MongoCollection<Document> rollups;
+
+  public MongoRollupStore(MongoCollection<Document> rollups) {
+    this.rollups = rollups;
+  }
+
+  /** Convert usage into bulk write models, shared with asynchronous store */
+  static List<WriteModel<Document>> writes(String kind, Map<String, UsageRollup.Usage> usage) {
+    List<WriteModel<Document>> writes = new ArrayList<WriteModel<Document>>();
+    long now = System.currentTimeMillis();
+    for (Map.Entry<String, UsageRollup.Usage> entry : usage.entrySet()) {
+      String id = kind + ":" + entry.getKey();
+      UsageRollup.Usage value = entry.getValue();
+      if (value.isEmpty()) {
+        writes.add(new DeleteOneModel<Document>(Filters.eq(MongoMetadataStore.FIELD_ID, id)));
+      } else {
+        Document doc = new Document(MongoMetadataStore.FIELD_ID, id)
+          .append(FIELD_KIND, kind)
+          .append(FIELD_NAME, entry.getKey())
+          .append(FIELD_FILES, value.getFiles())
+          .append(FIELD_DIRECTORIES, value.getDirectories())
+          .append(FIELD_BYTES, value.getBytes())
+          .append(FIELD_REPLICATED_BYTES, value.getReplicatedBytes())
+          .append(FIELD_UPDATED, now);
+        writes.add(new ReplaceOneModel<Document>(Filters.eq(MongoMetadataStore.FIELD_ID, id),
+          doc, new UpdateOptions().upsert(true)));
+      }
+    }
+    return writes;
+  }
+
+  /** Add usage document to map */
+  static void read(Document doc, Map<String, UsageRollup.Usage> usage) {
+    usage.put(doc.getString(FIELD_NAME), new UsageRollup.Usage(doc.getLong(FIELD_FILES),
+      doc.getLong(FIELD_DIRECTORIES), doc.getLong(FIELD_BYTES),
+      doc.getLong(FIELD_REPLICATED_BYTES)));
+  }
+
+  @Override
+  public void save(String kind, Map<String, UsageRollup.Usage> usage) throws IOException {
+    List<WriteModel<Document>> writes = writes(kind, usage);
+    if (writes.isEmpty()) return;
+    if (!this.rollups.bulkWrite(writes).wasAcknowledged()) {
+      throw new IOException("Failed to save " + kind + " usage, write was not acknowledged");
+    }
+  }
+
+  @Override
+  public Map<String, UsageRollup.Usage> load(String kind) {
+    Map<String, UsageRollup.Usage> usage = new HashMap<String, UsageRollup.Usage>();
+    for (Document doc : this.rollups.find(Filters.eq(FIELD_KIND, kind))) {
+      read(doc, usage);
+    }
+    return usage;
+  }
+}
@@ -0,0 +1,101 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+
+/**
+ * [[TimeSeriesStore]] backed by Mongo collection. Samples use short field names and id
+ * "tier|subtree|time" with zero-padded time, so range query of a single series is served by id
+ * index and does not require additional indexes.
+ */
+public class MongoTimeSeriesStore implements TimeSeriesStore {
+  public static final String FIELD_SUBTREE = "p";
+  public static final String FIELD_TIER = "t";
+  public static final String FIELD_TIME = "ts";
+  public static final String FIELD_FILES = "f";
+  public static final String FIELD_DIRECTORIES = "d";
+  public static final String FIELD_BYTES = "b";
+  public static final String FIELD_REPLICATED_BYTES = "r";
+
+  private final MongoCollection<Document> samples;
+
+  public MongoTimeSeriesStore(MongoCollection<Document> samples) {
+    this.samples = samples;
+  }
+
+  /** Id of sample document, ids of the same series sort by time */
+  static String id(String subtree, GrowthTier tier, long time) {
+    return String.format("%s|%s|%020d", tier.getName(), subtree, time);
+  }
+
+  static Bson filter(GrowthSample sample) {
+    return Filters.eq(MongoMetadataStore.FIELD_ID,
+      id(sample.getSubtree(), sample.getTier(), sample.getTime()));
+  }
+
+  static Document toDocument(GrowthSample sample) {
+    UsageRollup.Usage usage = sample.getUsage();
+    return new Document(MongoMetadataStore.FIELD_ID,
+        id(sample.getSubtree(), sample.getTier(), sample.getTime()))
+      .append(FIELD_SUBTREE, sample.getSubtree())
+      .append(FIELD_TIER, sample.getTier().getName())
+      .append(FIELD_TIME, sample.getTime())
+      .append(FIELD_FILES, usage.getFiles())
+      .append(FIELD_DIRECTORIES, usage.getDirectories())
+      .append(FIELD_BYTES, usage.getBytes())
+      .append(FIELD_REPLICATED_BYTES, usage.getReplicatedBytes());
+  }
+
+  static GrowthSample fromDocument(Document doc) {
+    UsageRollup.Usage usage = new UsageRollup.Usage(doc.getLong(FIELD_FILES),
+      doc.getLong(FIELD_DIRECTORIES), doc.getLong(FIELD_BYTES),
+      doc.getLong(FIELD_REPLICATED_BYTES));
+    return new GrowthSample(doc.getString(FIELD_SUBTREE),
+      GrowthTier.forName(doc.getString(FIELD_TIER)), doc.getLong(FIELD_TIME), usage);
+  }
+
+  /** Filter for samples of series within time range */
+  static Bson rangeFilter(String subtree, GrowthTier tier, long from, long to) {
+    return Filters.and(
+      Filters.gte(MongoMetadataStore.FIELD_ID, id(subtree, tier, Math.max(from, 0L))),
+      Filters.lt(MongoMetadataStore.FIELD_ID, id(subtree, tier, Math.max(to, 0L))),
+      // guard against subtree names that contain separator
+      Filters.eq(FIELD_SUBTREE, subtree));
+  }
+
+  static Bson expireFilter(GrowthTier tier, long before) {
+    return Filters.and(Filters.eq(FIELD_TIER, tier.getName()), Filters.lt(FIELD_TIME, before));
+  }
+
+  @Override
+  public void record(GrowthSample sample) throws IOException {
+    if (!this.samples.replaceOne(filter(sample), toDocument(sample),
+        new UpdateOptions().upsert(true)).wasAcknowledged()) {
+      throw new IOException("Failed to record " + sample + ", write was not acknowledged");
+    }
+  }
+
+  @Override
+  public List<GrowthSample> query(String subtree, GrowthTier tier, long from, long to) {
+    List<GrowthSample> result = new ArrayList<GrowthSample>();
+    for (Document doc : this.samples.find(rangeFilter(subtree, tier, from, to))
+        .sort(Sorts.ascending(MongoMetadataStore.FIELD_ID))) {
+      result.add(fromDocument(doc));
+    }
+    return result;
+  }
+
+  @Override
+  public void expire(GrowthTier tier, long before) {
+    this.samples.deleteMany(expireFilter(tier, before));
+  }
+}
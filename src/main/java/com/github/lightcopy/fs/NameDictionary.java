@@ -0,0 +1,74 @@
+package com.github.lightcopy.fs;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [[NameDictionary]] maps owner and group names to integer ids for compact inode schema. All
+ * entries are cached in memory, only new names are written to the underlying storage. Subclasses
+ * provide loading of entries and atomic assignment of ids in storage, so dictionary can be shared
+ * by several writer processes, e.g. namespaces led by different instances: every process
+ * observes the same id for a name, cache is only a copy of storage.
+ */
+public abstract class NameDictionary {
+  private static final Logger LOG = LoggerFactory.getLogger(NameDictionary.class);
+
+  private final ConcurrentHashMap<String, Integer> ids;
+  private final ConcurrentHashMap<Integer, String> names;
+
+  protected NameDictionary() {
+    this.ids = new ConcurrentHashMap<String, Integer>();
+    this.names = new ConcurrentHashMap<Integer, String>();
+  }
+
+  /** Load all entries from storage as id -> name map */
+  protected abstract Map<Integer, String> loadAll();
+
+  /**
+   * Assign id to name in storage atomically and return it. If another writer has already assigned
+   * id to the name, its id must be returned. Should throw runtime exception if write fails.
+   */
+  protected abstract int assign(String name);
+
+  /** Reload cache from storage, should be called after storage is cleared */
+  public synchronized void reload() {
+    this.ids.clear();
+    this.names.clear();
+    for (Map.Entry<Integer, String> entry : loadAll().entrySet()) {
+      this.ids.put(entry.getValue(), entry.getKey());
+      this.names.put(entry.getKey(), entry.getValue());
+    }
+    LOG.info("Loaded {} dictionary entries", this.names.size());
+  }
+
+  /** Get id for name, assigns new id in storage if name is not in dictionary */
+  public int getId(String name) {
+    Integer id = this.ids.get(name);
+    if (id != null) return id;
+    synchronized (this) {
+      id = this.ids.get(name);
+      if (id != null) return id;
+      int newId = assign(name);
+      this.names.put(newId, name);
+      this.ids.put(name, newId);
+      LOG.debug("Added dictionary entry {} -> {}", newId, name);
+      return newId;
+    }
+  }
+
+  /** Get name for id, reloads dictionary once if id is unknown */
+  public String getName(int id) {
+    String name = this.names.get(id);
+    if (name == null) {
+      reload();
+      name = this.names.get(id);
+    }
+    if (name == null) {
+      throw new IllegalStateException("Unknown dictionary id " + id);
+    }
+    return name;
+  }
+}
@@ -0,0 +1,350 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.lightcopy.conf.AppConf;
+
+/**
+ * Export of namespace into directory of Parquet files, see [[INodeWriteSupport]] for columns.
+ * File system store is split into partitions, see [[ExportSource]], partitions are scanned in
+ * parallel and each partition is streamed into its own file. Memory is bounded by number of
+ * threads multiplied by row group size. Directory can be local or on HDFS, paths without scheme
+ * are resolved against file system of the namespace; "_SUCCESS" marker is written when all
+ * partitions have been exported.
+ *
+ * Export scans live store while events are applied, so it is not a point-in-time snapshot; each
+ * node reflects transaction not older than checkpoint recorded in file metadata.
+ */
+public class NamespaceExport {
+  private static final Logger LOG = LoggerFactory.getLogger(NamespaceExport.class);
+  // maximum number of finished jobs to keep for reporting
+  public static final int MAX_FINISHED_JOBS = 100;
+  public static final String SUCCESS_MARKER = "_SUCCESS";
+  // key-value metadata written into every file
+  public static final String METADATA_NAMESPACE = "dbfs.namespace";
+  public static final String METADATA_TRANSACTION_ID = "dbfs.transactionId";
+
+  /** State of export job */
+  public static enum State {
+    RUNNING, SUCCEEDED, FAILED
+  }
+
+  /** Export of namespace into single directory */
+  public static class Job {
+    private final long id;
+    private final Path directory;
+    private final FileSystem fs;
+    private final long transactionId;
+    private final long estimatedRows;
+    private final int partitions;
+    private final long startTime;
+    private volatile long endTime;
+    private volatile State state;
+    private volatile String error;
+    private final AtomicInteger pending;
+    private final AtomicInteger completed;
+    private final AtomicLong rows;
+    private final CountDownLatch done;
+
+    Job(long id, Path directory, FileSystem fs, long transactionId, long estimatedRows,
+        int partitions) {
+      this.id = id;
+      this.directory = directory;
+      this.fs = fs;
+      this.transactionId = transactionId;
+      this.estimatedRows = estimatedRows;
+      this.partitions = partitions;
+      this.startTime = System.currentTimeMillis();
+      this.endTime = -1L;
+      this.state = State.RUNNING;
+      this.error = null;
+      this.pending = new AtomicInteger(partitions);
+      this.completed = new AtomicInteger(0);
+      this.rows = new AtomicLong(0L);
+      this.done = new CountDownLatch(1);
+    }
+
+    private synchronized void fail(Throwable err) {
+      if (this.error == null) {
+        this.error = String.valueOf(err);
+      }
+    }
+
+    private void taskFinished() {
+      if (this.pending.decrementAndGet() == 0) {
+        if (this.error == null) {
+          try {
+            this.fs.create(new Path(this.directory, SUCCESS_MARKER), true).close();
+          } catch (IOException ioe) {
+            fail(ioe);
+          }
+        }
+        this.state = (this.error == null) ? State.SUCCEEDED : State.FAILED;
+        this.endTime = System.currentTimeMillis();
+        this.done.countDown();
+        LOG.info("Finished {}", this);
+      }
+    }
+
+    public long getId() {
+      return this.id;
+    }
+
+    /** Fully qualified output directory */
+    public String getDirectory() {
+      return this.directory.toString();
+    }
+
+    /** Checkpoint at the start of export */
+    public long getTransactionId() {
+      return this.transactionId;
+    }
+
+    public long getStartTime() {
+      return this.startTime;
+    }
+
+    /** End time of the job, or -1 if job is running */
+    public long getEndTime() {
+      return this.endTime;
+    }
+
+    public State getState() {
+      return this.state;
+    }
+
+    /** First error occurred during export, or null */
+    public String getError() {
+      return this.error;
+    }
+
+    public int getPartitions() {
+      return this.partitions;
+    }
+
+    /** Number of partitions that have been fully written */
+    public int getCompletedPartitions() {
+      return this.completed.get();
+    }
+
+    public long getRows() {
+      return this.rows.get();
+    }
+
+    /** Number of stored nodes at the start of export */
+    public long getEstimatedRows() {
+      return this.estimatedRows;
+    }
+
+    /** Fraction of exported rows in [0, 1], estimate can be exceeded while events are applied */
+    public double getProgress() {
+      if (this.state == State.SUCCEEDED) return 1.0;
+      if (this.estimatedRows <= 0) return 0.0;
+      return Math.min(1.0, (double) this.rows.get() / this.estimatedRows);
+    }
+
+    /** Wait for job to finish */
+    public void await() throws InterruptedException {
+      this.done.await();
+    }
+
+    @Override
+    public String toString() {
+      return "ExportJob(id=" + this.id + ", directory=" + this.directory + ", state=" +
+        this.state + ", partitions=" + getCompletedPartitions() + "/" + this.partitions +
+        ", rows=" + getRows() + ", error=" + this.error + ")";
+    }
+  }
+
+  private final HdfsManager manager;
+  private final ThreadPoolExecutor executor;
+  private final AppConf conf;
+  private final AtomicLong nextId;
+  private final LinkedHashMap<Long, Job> jobs;
+
+  public NamespaceExport(HdfsManager manager, AppConf conf) {
+    this.manager = manager;
+    final String name = "NamespaceExport-" + manager.getNamespace() + "-";
+    int numThreads = conf.exportThreads();
+    this.executor = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+      new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger(0);
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, name + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    this.conf = conf;
+    this.nextId = new AtomicLong(0L);
+    this.jobs = new LinkedHashMap<Long, Job>();
+  }
+
+  /**
+   * Start export into directory, directory must not exist. Fails with IllegalArgumentException if
+   * metadata store does not support export or directory exists.
+   */
+  public synchronized Job submit(String directory) throws IOException {
+    // export is heavy read traffic, scan is served by read path pinned to the current checkpoint
+    long transactionId = this.manager.metadataStore().getCheckpoint();
+    FileSystemStore store = this.manager.metadataStore().reader(transactionId);
+    if (!(store instanceof ExportSource)) {
+      throw new IllegalArgumentException("File system store " + store + " does not support export");
+    }
+    ExportSource source = (ExportSource) store;
+    Configuration hadoopConf = this.manager.getFileSystem().getConf();
+    Path path = new Path(directory);
+    FileSystem fs = path.getFileSystem(hadoopConf);
+    path = fs.makeQualified(path);
+    if (fs.exists(path)) {
+      throw new IllegalArgumentException("Output directory " + path + " already exists");
+    }
+    if (!fs.mkdirs(path)) {
+      throw new IOException("Failed to create output directory " + path);
+    }
+    long estimatedRows = source.estimatedSize();
+    // partitioning and row group size are read per job, so they can be changed at runtime
+    final int rowGroupBytes = this.conf.exportRowGroupBytes();
+    List<ExportSource.Partition> partitions = source.partitions(this.conf.exportPartitions());
+    Job job = new Job(this.nextId.incrementAndGet(), path, fs, transactionId, estimatedRows,
+      partitions.size());
+    this.jobs.put(job.getId(), job);
+    evictFinishedJobs();
+    LOG.info("Start {}", job);
+    Map<String, String> metadata = new HashMap<String, String>();
+    metadata.put(METADATA_NAMESPACE, this.manager.getNamespace());
+    metadata.put(METADATA_TRANSACTION_ID, String.valueOf(transactionId));
+    for (int i = 0; i < partitions.size(); i++) {
+      submitTask(job, partitions.get(i), new Path(path, String.format("part-%05d.parquet", i)),
+        hadoopConf, metadata, rowGroupBytes);
+    }
+    return job;
+  }
+
+  /** Get job by id, or null if job does not exist or was evicted */
+  public synchronized Job get(long id) {
+    return this.jobs.get(id);
+  }
+
+  /** Get all tracked jobs in submission order */
+  public synchronized List<Job> getAll() {
+    return new ArrayList<Job>(this.jobs.values());
+  }
+
+  /** Resize thread pool, running partitions finish on their threads */
+  public void setThreads(int numThreads) {
+    HdfsManager.resize(this.executor, numThreads);
+  }
+
+  /** Stop all running jobs, method is called only once */
+  public void stop() {
+    this.executor.shutdownNow();
+  }
+
+  private void evictFinishedJobs() {
+    int finished = 0;
+    for (Job job : this.jobs.values()) {
+      if (job.getState() != State.RUNNING) finished++;
+    }
+    Iterator<Job> iter = this.jobs.values().iterator();
+    while (finished > MAX_FINISHED_JOBS && iter.hasNext()) {
+      if (iter.next().getState() != State.RUNNING) {
+        iter.remove();
+        finished--;
+      }
+    }
+  }
+
+  private void submitTask(
+      final Job job,
+      final ExportSource.Partition partition,
+      final Path file,
+      final Configuration hadoopConf,
+      final Map<String, String> metadata,
+      final int rowGroupBytes) {
+    this.executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          exportPartition(job, partition, file, hadoopConf, metadata, rowGroupBytes);
+          job.completed.incrementAndGet();
+        } catch (Exception err) {
+          LOG.error("Failed to export " + file + " for job " + job.getId(), err);
+          job.fail(err);
+        } finally {
+          job.taskFinished();
+        }
+      }
+    });
+  }
+
+  /** Stream partition into Parquet file, remaining partitions are aborted once job has failed */
+  private void exportPartition(
+      final Job job,
+      ExportSource.Partition partition,
+      Path file,
+      Configuration hadoopConf,
+      Map<String, String> metadata,
+      int rowGroupBytes) throws IOException {
+    if (job.getError() != null) return;
+    final ParquetWriter<INode> writer = new INodeWriteSupport.Builder(file, metadata)
+      .withConf(hadoopConf)
+      .withWriteMode(ParquetFileWriter.Mode.CREATE)
+      .withCompressionCodec(CompressionCodecName.SNAPPY)
+      .withRowGroupSize(rowGroupBytes)
+      .withPageSize(ParquetWriter.DEFAULT_PAGE_SIZE)
+      .withDictionaryPageSize(ParquetWriter.DEFAULT_PAGE_SIZE)
+      .withDictionaryEncoding(true)
+      .withValidation(false)
+      .withWriterVersion(ParquetProperties.WriterVersion.PARQUET_1_0)
+      .build();
+    try {
+      partition.scan(new ExportSource.Sink() {
+        @Override
+        public void write(INode node) throws IOException {
+          if (job.getError() != null) {
+            throw new IOException("Export is aborted: " + job.getError());
+          }
+          writer.write(node);
+          job.rows.incrementAndGet();
+        }
+      });
+    } finally {
+      writer.close();
+    }
+    LOG.debug("Exported partition {}", file);
+  }
+
+  @Override
+  public String toString() {
+    return "NamespaceExport(namespace=" + this.manager.getNamespace() + ", threads=" +
+      this.executor.getMaximumPoolSize() + ")";
+  }
+}
@@ -0,0 +1,107 @@
+package com.github.lightcopy.fs;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.fs.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.lightcopy.conf.AppConf;
+import com.github.lightcopy.conf.HdfsSource;
+
+/**
+ * [[NamespaceManager]] runs one [[HdfsManager]] per configured hdfs source. Each manager has its
+ * own inotify stream, event processing thread, checkpoint and metadata collections, while
+ * connection to metadata backend is shared through [[MetadataStoreProvider]]. Namespaces are
+ * indexed in parallel on start.
+ */
+public class NamespaceManager {
+  private static final Logger LOG = LoggerFactory.getLogger(NamespaceManager.class);
+
+  private final MetadataStoreProvider provider;
+  private final LinkedHashMap<String, HdfsManager> managers;
+
+  public NamespaceManager(AppConf conf) {
+    this.provider = new MetadataStoreProvider(conf);
+    this.managers = new LinkedHashMap<String, HdfsManager>();
+    for (HdfsSource source : conf.hdfsSources()) {
+      LOG.info("Initialize namespace {}", source);
+      HdfsManager manager = new HdfsManager(conf, source.getName(), source.getURI(),
+        new Path(source.getRoot()), this.provider.create(source.getName()));
+      this.managers.put(source.getName(), manager);
+    }
+  }
+
+  /** Get manager for namespace, or null if namespace does not exist */
+  public HdfsManager get(String namespace) {
+    return this.managers.get(namespace);
+  }
+
+  /** Get all managers keyed by namespace in configuration order */
+  public Map<String, HdfsManager> getAll() {
+    return this.managers;
+  }
+
+  /** Start all managers in parallel, fails if any of the managers fails to start */
+  public void start() {
+    long startTime = System.nanoTime();
+    ExecutorService executor = Executors.newFixedThreadPool(this.managers.size());
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (final HdfsManager manager : this.managers.values()) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            manager.start();
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException err) {
+      throw new RuntimeException("Interrupted while starting namespaces", err);
+    } catch (ExecutionException err) {
+      throw new RuntimeException("Failed to start namespaces", err.getCause());
+    } finally {
+      executor.shutdown();
+    }
+    long endTime = System.nanoTime();
+    LOG.info("Started {} namespaces in {} ms", this.managers.size(), (endTime - startTime) / 1e6);
+  }
+
+  /** Whether or not all namespaces are running */
+  public boolean status() {
+    boolean isAlive = true;
+    for (Map.Entry<String, HdfsManager> entry : this.managers.entrySet()) {
+      if (!entry.getValue().status()) {
+        LOG.warn("Namespace {} is not running", entry.getKey());
+        isAlive = false;
+      }
+    }
+    return isAlive;
+  }
+
+  /** Stop all managers and release shared resources */
+  public void stop() {
+    for (HdfsManager manager : this.managers.values()) {
+      manager.stop();
+    }
+    this.provider.close();
+  }
+
+  @Override
+  public String toString() {
+    return "NamespaceManager" + this.managers.keySet();
+  }
+}
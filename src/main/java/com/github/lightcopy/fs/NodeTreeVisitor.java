@@ -6,19 +6,29 @@ import java.util.ArrayList;
 import org.apache.hadoop.fs.FileStatus;
 
 /**
- * Internal implementation of the tree visitor for HDFS manager.
+ * Internal implementation of the tree visitor for HDFS manager. Leaves are inserted in batches of
+ * at most `batchSize` nodes, so memory is bounded for very large directories.
  */
 public class NodeTreeVisitor implements TreeVisitor {
-  // mongo file system to store nodes
-  private final MongoFileSystem fs;
+  // file system store to store nodes
+  private final FileSystemStore fs;
+  // maximum number of buffered leaves
+  private final int batchSize;
   // leaf nodes that can be inserted directly
   private ArrayList<INode> leaves;
   // current inode
   private INode current;
+  // combined entry hashes of children visited so far
+  private long childHash;
 
-  public NodeTreeVisitor(MongoFileSystem fs) {
+  public NodeTreeVisitor(FileSystemStore fs, int batchSize) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Expected positive batch size, found " + batchSize);
+    }
     this.fs = fs;
+    this.batchSize = batchSize;
     this.current = null;
+    this.childHash = 0L;
     this.leaves = new ArrayList<INode>();
   }
 
@@ -33,20 +43,49 @@ public class NodeTreeVisitor implements TreeVisitor {
 
   @Override
   public void visitChild(FileStatus child) {
-    this.leaves.add(new INode(child));
+    INode node = new INode(child);
+    this.childHash ^= node.entryHash();
+    this.leaves.add(node);
+    if (this.leaves.size() >= this.batchSize) {
+      try {
+        flush();
+        this.leaves.clear();
+      } catch (IOException ioe) {
+        throw new RuntimeException("Failed to traverse nodes, reason: " + ioe, ioe);
+      }
+    }
+  }
+
+  /** Insert buffered leaves, recorded as flight recorder event */
+  private void flush() throws IOException {
+    FlightEvents.IndexFlush flight = new FlightEvents.IndexFlush();
+    flight.begin();
+    this.fs.insert(this.leaves);
+    if (flight.shouldCommit()) {
+      INodePath path = this.current.getPath();
+      flight.path = path.toPathString();
+      flight.depth = path.getDepth();
+      flight.batchSize = this.leaves.size();
+      flight.commit();
+    }
   }
 
   @Override
   public void visitChild(TreeVisitor visitor) {
-    // right now we do need to check level visitor
+    // level visitor is complete at this point, only its directory contributes to the hash
+    INode child = ((NodeTreeVisitor) visitor).getCurrent();
+    if (child != null) {
+      this.childHash ^= child.entryHash();
+    }
   }
 
   @Override
   public void visitAfter() {
     try {
       // insert leaves + current node
+      this.current.setChildHash(this.childHash);
       this.leaves.add(this.current);
-      this.fs.insert(this.leaves);
+      flush();
       // clear all children and leaves
       this.leaves = null;
     } catch (IOException ioe) {
@@ -0,0 +1,65 @@
+package com.github.lightcopy.fs;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * [[PathHash]] provides stable 64-bit hash of inode path, the same path always results in the
+ * same hash across processes and restarts. Uses FNV-1a over UTF-8 bytes of path elements, each
+ * element is prefixed with separator, so different splits of the same characters do not collide
+ * trivially. Helpers to hash arbitrary strings and numbers are reused for other stable hashes of
+ * inode attributes.
+ */
+public class PathHash {
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+  private static final byte SEPARATOR = '/';
+
+  private PathHash() { }
+
+  /** Hash of the first `depth` elements of the path, depth must not exceed path depth */
+  public static long hash(INodePath path, int depth) {
+    long hash = FNV_OFFSET_BASIS;
+    for (int i = 0; i < depth; i++) {
+      hash ^= SEPARATOR;
+      hash *= FNV_PRIME;
+      byte[] bytes = path.getElement(i).getBytes(StandardCharsets.UTF_8);
+      for (byte b : bytes) {
+        hash ^= (b & 0xff);
+        hash *= FNV_PRIME;
+      }
+    }
+    return hash;
+  }
+
+  /** Hash of the full path */
+  public static long hash(INodePath path) {
+    return hash(path, path.getDepth());
+  }
+
+  /** Hash of the string, null is hashed as empty string */
+  public static long hash(String value) {
+    return mix(FNV_OFFSET_BASIS, value);
+  }
+
+  /** Mix UTF-8 bytes of string into hash, null is mixed as empty string */
+  public static long mix(long hash, String value) {
+    if (value != null) {
+      for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+        hash ^= (b & 0xff);
+        hash *= FNV_PRIME;
+      }
+    }
+    hash ^= SEPARATOR;
+    hash *= FNV_PRIME;
+    return hash;
+  }
+
+  /** Mix 8 bytes of value into hash */
+  public static long mix(long hash, long value) {
+    for (int i = 0; i < 8; i++) {
+      hash ^= (value >>> (i * 8)) & 0xff;
+      hash *= FNV_PRIME;
+    }
+    return hash;
+  }
+}
@@ -0,0 +1,147 @@
+package com.github.lightcopy.fs;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bson.Document;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read path that routes metadata queries to replica set members selected by read preference of
+ * separate client, while ingest writes keep using primary connection. Replica file system is used
+ * only when it is fresh enough, otherwise query falls back to primary:
+ * - staleness is estimated from checkpoint document, which records time of the last checkpoint,
+ * as difference between checkpoint time on primary and on replica;
+ * - query that must observe transaction (read-your-writes) is routed to replica only if replica
+ * checkpoint has reached that transaction.
+ *
+ * Checkpoints are probed at most once per PROBE_INTERVAL_MS. Probe and query can be served by
+ * different members, so guarantees are best-effort with more than one secondary; "primary" read
+ * preference should be used when strict reads are required.
+ */
+public class ReplicaReadPath {
+  private static final Logger LOG = LoggerFactory.getLogger(ReplicaReadPath.class);
+  // minimum interval in milliseconds between checkpoint probes
+  public static final long PROBE_INTERVAL_MS = 1000L;
+
+  private final FileSystemStore primary;
+  private final FileSystemStore replica;
+  private final MongoCollection<Document> primaryCheckpoints;
+  private final MongoCollection<Document> replicaCheckpoints;
+  private final long maxStalenessMs;
+  private final boolean pinTransactions;
+  private long lastProbeTime;
+  private volatile boolean available;
+  private volatile long replicaTransactionId;
+  private volatile long lagMs;
+  private final AtomicLong primaryReads;
+  private final AtomicLong replicaReads;
+
+  /**
+   * Create read path.
+   * @param primary file system store of ingest connection
+   * @param replica file system store of read connection
+   * @param primaryCheckpoints checkpoint collection of ingest connection
+   * @param replicaCheckpoints checkpoint collection of read connection
+   * @param maxStalenessMs maximum estimated lag of replica, 0 to disable check
+   * @param pinTransactions whether or not queries can require transaction to be observed
+   */
+  public ReplicaReadPath(
+      FileSystemStore primary,
+      FileSystemStore replica,
+      MongoCollection<Document> primaryCheckpoints,
+      MongoCollection<Document> replicaCheckpoints,
+      long maxStalenessMs,
+      boolean pinTransactions) {
+    if (maxStalenessMs < 0) {
+      throw new IllegalArgumentException("Expected non-negative max staleness, found " +
+        maxStalenessMs);
+    }
+    this.primary = primary;
+    this.replica = replica;
+    this.primaryCheckpoints = primaryCheckpoints;
+    this.replicaCheckpoints = replicaCheckpoints;
+    this.maxStalenessMs = maxStalenessMs;
+    this.pinTransactions = pinTransactions;
+    this.lastProbeTime = 0L;
+    this.available = false;
+    this.replicaTransactionId = -1L;
+    this.lagMs = 0L;
+    this.primaryReads = new AtomicLong(0L);
+    this.replicaReads = new AtomicLong(0L);
+  }
+
+  /** Read checkpoint document, returns null if checkpoint does not exist */
+  private static Document checkpoint(MongoCollection<Document> collection) {
+    return collection.find(
+      Filters.eq(MongoMetadataStore.FIELD_ID, MongoMetadataStore.CHECKPOINT_ID)).first();
+  }
+
+  private static long getLong(Document doc, String field, long defaultValue) {
+    Object value = (doc == null) ? null : doc.get(field);
+    return (value instanceof Number) ? ((Number) value).longValue() : defaultValue;
+  }
+
+  /** Refresh replica checkpoint and lag estimate, if probe interval has elapsed */
+  private synchronized void probe() {
+    long now = System.currentTimeMillis();
+    if (now - this.lastProbeTime < PROBE_INTERVAL_MS) return;
+    this.lastProbeTime = now;
+    try {
+      Document replicaDoc = checkpoint(this.replicaCheckpoints);
+      long replicaTxid = getLong(replicaDoc, MongoMetadataStore.FIELD_TRANSACTION_ID, -1L);
+      long lag = 0L;
+      if (this.maxStalenessMs > 0) {
+        Document primaryDoc = checkpoint(this.primaryCheckpoints);
+        long primaryTxid = getLong(primaryDoc, MongoMetadataStore.FIELD_TRANSACTION_ID, -1L);
+        if (replicaTxid < primaryTxid) {
+          // checkpoint written before time was recorded is treated as infinitely stale
+          lag = getLong(primaryDoc, MongoMetadataStore.FIELD_CHECKPOINT_TIME, Long.MAX_VALUE) -
+            getLong(replicaDoc, MongoMetadataStore.FIELD_CHECKPOINT_TIME, 0L);
+        }
+      }
+      this.replicaTransactionId = replicaTxid;
+      this.lagMs = lag;
+      this.available = true;
+    } catch (MongoException err) {
+      LOG.warn("Failed to probe replica checkpoint, route reads to primary", err);
+      this.available = false;
+    }
+  }
+
+  /**
+   * Select file system store for query.
+   * @param transactionId transaction that query must observe, or -1 for any
+   * @return replica store if it is fresh enough, otherwise primary store
+   */
+  public FileSystemStore route(long transactionId) {
+    probe();
+    boolean useReplica = this.available &&
+      (this.maxStalenessMs == 0 || this.lagMs <= this.maxStalenessMs) &&
+      (!this.pinTransactions || transactionId <= this.replicaTransactionId);
+    if (useReplica) {
+      this.replicaReads.incrementAndGet();
+      return this.replica;
+    }
+    this.primaryReads.incrementAndGet();
+    return this.primary;
+  }
+
+  /** Replica file system, used to close resources */
+  FileSystemStore replica() {
+    return this.replica;
+  }
+
+  @Override
+  public String toString() {
+    return "ReplicaReadPath(maxStaleness=" + this.maxStalenessMs + " ms, pinTransactions=" +
+      this.pinTransactions + ", replicaTxid=" + this.replicaTransactionId + ", lag=" +
+      this.lagMs + " ms, primaryReads=" + this.primaryReads.get() + ", replicaReads=" +
+      this.replicaReads.get() + ")";
+  }
+}
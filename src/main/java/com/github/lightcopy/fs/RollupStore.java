@@ -0,0 +1,19 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * [[RollupStore]] persists usage accumulated by [[UsageRollup]], so usage is available to
+ * standby instances and survives restart without rescanning file system.
+ */
+public interface RollupStore {
+  /**
+   * Save usage of kind, either owner or group. Names with empty usage are removed from store,
+   * names not present in map are left unchanged.
+   */
+  public void save(String kind, Map<String, UsageRollup.Usage> usage) throws IOException;
+
+  /** Load persisted usage of kind, returns empty map if nothing has been saved */
+  public Map<String, UsageRollup.Usage> load(String kind) throws IOException;
+}
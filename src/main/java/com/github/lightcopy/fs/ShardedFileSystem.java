@@ -0,0 +1,300 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * [[ShardedFileSystem]] routes nodes to one of several [[FileSystemStore]] shards by stable hash
+ * of the path prefix of configured depth, e.g. with depth 2 all nodes under "/a/b" are stored in
+ * the same shard. Nodes above routing depth are routed by their full path. Subtree operations on
+ * paths at or below routing depth touch single shard, operations on paths above routing depth are
+ * scattered to all shards in parallel and results are gathered.
+ *
+ * Rename that changes shard of any node moves nodes: subtree is read from source shards, written
+ * into destination shards and only then deleted from source shards, so nodes are never lost if
+ * operation fails half way. Nodes are written with conditional upsert stamped with transaction of
+ * the rename, so replaying rename after failure does not duplicate nodes already written and does
+ * not overwrite newer nodes.
+ */
+public class ShardedFileSystem implements FileSystemStore, ExportSource {
+  private static final Logger LOG = LoggerFactory.getLogger(ShardedFileSystem.class);
+
+  private final List<FileSystemStore> shards;
+  private final int depth;
+  private final ExecutorService executor;
+  // lock for modification operations, cross-shard rename must not interleave with other updates
+  private final ReentrantLock modificationLock;
+
+  public ShardedFileSystem(List<FileSystemStore> shards, int depth) {
+    if (shards.isEmpty()) {
+      throw new IllegalArgumentException("Expected at least one shard");
+    }
+    if (depth <= 0) {
+      throw new IllegalArgumentException("Expected positive routing depth, found " + depth);
+    }
+    this.shards = shards;
+    this.depth = depth;
+    this.executor = Executors.newFixedThreadPool(shards.size());
+    this.modificationLock = new ReentrantLock();
+  }
+
+  /** Stores of all shards, in routing order */
+  List<FileSystemStore> getShards() {
+    return Collections.unmodifiableList(this.shards);
+  }
+
+  /** Shard index for the path */
+  int shardIndex(INodePath path) {
+    long hash = PathHash.hash(path, Math.min(path.getDepth(), this.depth));
+    return (int) ((hash & Long.MAX_VALUE) % this.shards.size());
+  }
+
+  /** Shard for the path */
+  private FileSystemStore shard(INodePath path) {
+    return this.shards.get(shardIndex(path));
+  }
+
+  /** Whether or not path and all its children are stored in single shard */
+  private boolean isLocal(INodePath path) {
+    return path.getDepth() >= this.depth;
+  }
+
+  /** Interface for operation that is executed on each shard */
+  private static interface ShardOperation<T> {
+    T apply(int index, FileSystemStore shard) throws IOException;
+  }
+
+  /** Run operation on all shards in parallel and return results in shard order */
+  private <T> List<T> scatter(final ShardOperation<T> operation) throws IOException {
+    List<Future<T>> futures = new ArrayList<Future<T>>();
+    for (int i = 0; i < this.shards.size(); i++) {
+      final int index = i;
+      futures.add(this.executor.submit(new Callable<T>() {
+        @Override
+        public T call() throws IOException {
+          return operation.apply(index, shards.get(index));
+        }
+      }));
+    }
+    List<T> results = new ArrayList<T>();
+    try {
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException err) {
+      throw new IOException("Interrupted while waiting for shards", err);
+    } catch (ExecutionException err) {
+      throw new IOException("Shard operation failed", err.getCause());
+    }
+    return results;
+  }
+
+  /** Group nodes by shard index */
+  private Map<Integer, List<INode>> groupByShard(List<INode> nodes) {
+    Map<Integer, List<INode>> groups = new HashMap<Integer, List<INode>>();
+    for (INode node : nodes) {
+      int index = shardIndex(node.getPath());
+      List<INode> group = groups.get(index);
+      if (group == null) {
+        group = new ArrayList<INode>();
+        groups.put(index, group);
+      }
+      group.add(node);
+    }
+    return groups;
+  }
+
+  /** Insert grouped nodes into shards in parallel */
+  private void insertGroups(final Map<Integer, List<INode>> groups) throws IOException {
+    scatter(new ShardOperation<Void>() {
+      @Override
+      public Void apply(int index, FileSystemStore shard) throws IOException {
+        List<INode> group = groups.get(index);
+        if (group != null) {
+          shard.insert(group);
+        }
+        return null;
+      }
+    });
+  }
+
+  /** Upsert grouped nodes into shards in parallel, nodes of the same shard are written in order */
+  private void upsertGroups(final Map<Integer, List<INode>> groups) throws IOException {
+    scatter(new ShardOperation<Void>() {
+      @Override
+      public Void apply(int index, FileSystemStore shard) throws IOException {
+        List<INode> group = groups.get(index);
+        if (group != null) {
+          for (INode node : group) {
+            shard.upsert(node);
+          }
+        }
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public INode get(INodePath path) {
+    return shard(path).get(path);
+  }
+
+  @Override
+  public List<INode> list(final INodePath path, final boolean recursive) throws IOException {
+    if (isLocal(path)) {
+      return shard(path).list(path, recursive);
+    }
+    List<INode> nodes = new ArrayList<INode>();
+    for (List<INode> part : scatter(new ShardOperation<List<INode>>() {
+      @Override
+      public List<INode> apply(int index, FileSystemStore shard) throws IOException {
+        return shard.list(path, recursive);
+      }
+    })) {
+      nodes.addAll(part);
+    }
+    return nodes;
+  }
+
+  /** Delete subtree from the shard that owns it or from all shards */
+  private void deleteSubtree(final INodePath path, final long transactionId) throws IOException {
+    if (isLocal(path)) {
+      shard(path).delete(path, transactionId);
+    } else {
+      scatter(new ShardOperation<Void>() {
+        @Override
+        public Void apply(int index, FileSystemStore shard) throws IOException {
+          shard.delete(path, transactionId);
+          return null;
+        }
+      });
+    }
+  }
+
+  @Override
+  public void delete(INodePath path, long transactionId) throws IOException {
+    this.modificationLock.lock();
+    try {
+      deleteSubtree(path, transactionId);
+    } finally {
+      this.modificationLock.unlock();
+    }
+  }
+
+  @Override
+  public void upsert(INode node) throws IOException {
+    this.modificationLock.lock();
+    try {
+      shard(node.getPath()).upsert(node);
+    } finally {
+      this.modificationLock.unlock();
+    }
+  }
+
+  @Override
+  public void insert(List<INode> nodes) throws IOException {
+    this.modificationLock.lock();
+    try {
+      insertGroups(groupByShard(nodes));
+    } finally {
+      this.modificationLock.unlock();
+    }
+  }
+
+  @Override
+  public void rename(INodePath srcPath, INodePath dstPath, long transactionId)
+      throws IOException {
+    this.modificationLock.lock();
+    try {
+      if (isLocal(srcPath) && isLocal(dstPath) && shardIndex(srcPath) == shardIndex(dstPath)) {
+        // routing prefix of every node changes to the same shard, rename within the shard
+        shard(srcPath).rename(srcPath, dstPath, transactionId);
+        return;
+      }
+      // collect subtree, including source node itself, nodes newer than rename stay in place
+      List<INode> nodes = new ArrayList<INode>();
+      INode root = get(srcPath);
+      if (root != null && !root.isNewerThan(transactionId)) {
+        nodes.add(root);
+      }
+      for (INode node : list(srcPath, true)) {
+        if (!node.isNewerThan(transactionId)) {
+          nodes.add(node);
+        }
+      }
+      for (INode node : nodes) {
+        node.setPath(node.getPath().withUpdatedPrefix(srcPath, dstPath));
+        if (transactionId != INode.NO_TRANSACTION) {
+          node.setTransactionId(transactionId);
+        }
+      }
+      // write nodes into destination shards first, then remove source subtree; upsert keeps
+      // replay of partially applied rename idempotent
+      upsertGroups(groupByShard(nodes));
+      deleteSubtree(srcPath, transactionId);
+      LOG.info("Moved {} nodes across shards from {} to {}", nodes.size(), srcPath, dstPath);
+    } finally {
+      this.modificationLock.unlock();
+    }
+  }
+
+  @Override
+  public void update(INodePath path, INodeUpdate builder) throws IOException {
+    this.modificationLock.lock();
+    try {
+      shard(path).update(path, builder);
+    } finally {
+      this.modificationLock.unlock();
+    }
+  }
+
+  /** Split each shard into partitions, shards must support export */
+  @Override
+  public List<ExportSource.Partition> partitions(int count) throws IOException {
+    List<ExportSource.Partition> partitions = new ArrayList<ExportSource.Partition>();
+    int perShard = Math.max(1, (count + this.shards.size() - 1) / this.shards.size());
+    for (FileSystemStore shard : this.shards) {
+      partitions.addAll(exportSource(shard).partitions(perShard));
+    }
+    return partitions;
+  }
+
+  @Override
+  public long estimatedSize() throws IOException {
+    long size = 0L;
+    for (FileSystemStore shard : this.shards) {
+      size += exportSource(shard).estimatedSize();
+    }
+    return size;
+  }
+
+  private static ExportSource exportSource(FileSystemStore shard) {
+    if (!(shard instanceof ExportSource)) {
+      throw new UnsupportedOperationException("Shard " + shard + " does not support export");
+    }
+    return (ExportSource) shard;
+  }
+
+  /** Release executor used to scatter operations */
+  public void close() {
+    this.executor.shutdown();
+  }
+
+  @Override
+  public String toString() {
+    return "ShardedFileSystem(shards=" + this.shards.size() + ", depth=" + this.depth + ")";
+  }
+}
@@ -0,0 +1,287 @@
+package com.github.lightcopy.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.apache.hadoop.hdfs.inotify.Event;
+import org.apache.hadoop.hdfs.inotify.EventBatch;
+
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonType;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of event batches on local disk. Journal consists of memory-mapped segment
+ * files named after transaction id of the first batch, each record is [length, txid, bson] where
+ * bson document contains events of the batch encoded with [[EventCodec]]. Batches are read back
+ * in the order they were appended, segments are deleted once they are fully read.
+ *
+ * Journal is a memory overflow for the running process only and is not durable: segments are
+ * deleted on open and on close. Batches in journal are never applied, so checkpoint stays behind
+ * them and they are read again from NameNode after restart; this requires edit logs of NameNode
+ * to be retained at least for the transactions in journal. Class is not thread-safe, see
+ * [[IngestQueue]].
+ */
+public class SpillJournal {
+  private static final Logger LOG = LoggerFactory.getLogger(SpillJournal.class);
+  // record header: length of bson (int) and transaction id (long)
+  private static final int HEADER_BYTES = 12;
+  private static final String FIELD_EVENTS = "events";
+
+  /** Memory-mapped segment file */
+  static class Segment {
+    private final File file;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+    private int writePosition;
+    private int readPosition;
+
+    Segment(File file, int size) throws IOException {
+      this.file = file;
+      this.raf = new RandomAccessFile(file, "rw");
+      this.buffer = this.raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+      this.writePosition = 0;
+      this.readPosition = 0;
+    }
+
+    boolean hasCapacity(int bytes) {
+      return this.buffer.capacity() - this.writePosition >= bytes;
+    }
+
+    boolean hasUnread() {
+      return this.readPosition < this.writePosition;
+    }
+
+    /** Unmap buffer, close and delete file; segment must not be used afterwards */
+    void delete() {
+      unmap(this.buffer);
+      try {
+        this.raf.close();
+      } catch (IOException ioe) {
+        LOG.warn("Failed to close segment " + this.file, ioe);
+      }
+      if (!this.file.delete()) {
+        LOG.warn("Failed to delete segment {}", this.file);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "Segment(" + this.file.getName() + ", read=" + this.readPosition + ", write=" +
+        this.writePosition + ")";
+    }
+  }
+
+  /**
+   * Release mapping of buffer immediately instead of waiting for garbage collection, which keeps
+   * file space allocated (and file locked on Windows) after delete. There is no public API for
+   * this, so cleaner is invoked reflectively: `Unsafe.invokeCleaner` on Java 9+, buffer cleaner
+   * on older versions. If neither is available, mapping is released by garbage collection.
+   */
+  static void unmap(MappedByteBuffer buffer) {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner = null;
+      try {
+        invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      } catch (NoSuchMethodException err) {
+        // Java 8 and older
+      }
+      if (invokeCleaner != null) {
+        Field field = unsafeClass.getDeclaredField("theUnsafe");
+        field.setAccessible(true);
+        invokeCleaner.invoke(field.get(null), buffer);
+      } else {
+        Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+        cleanerMethod.setAccessible(true);
+        Object cleaner = cleanerMethod.invoke(buffer);
+        if (cleaner != null) {
+          cleaner.getClass().getMethod("clean").invoke(cleaner);
+        }
+      }
+    } catch (Exception err) {
+      LOG.debug("Failed to unmap buffer, it is released by garbage collection", err);
+    }
+  }
+
+  private final File directory;
+  private final int segmentBytes;
+  private final EventCodec codec;
+  private final Deque<Segment> segments;
+  private long sizeBytes;
+  private long numRecords;
+  private long firstTxid;
+  private long lastTxid;
+
+  /**
+   * Open journal in directory.
+   * @param directory journal directory, existing segments are deleted
+   * @param segmentBytes size of segment file, segment is mapped as a whole, so it cannot exceed
+   *        2 GB
+   */
+  public SpillJournal(File directory, long segmentBytes) throws IOException {
+    if (segmentBytes <= 0 || segmentBytes > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Expected segment size in (0, " + Integer.MAX_VALUE +
+        "] bytes, found " + segmentBytes);
+    }
+    this.directory = directory;
+    this.segmentBytes = (int) segmentBytes;
+    this.codec = new EventCodec();
+    this.segments = new ArrayDeque<Segment>();
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Failed to create journal directory " + directory);
+    }
+    File[] stale = directory.listFiles();
+    if (stale != null) {
+      for (File file : stale) {
+        LOG.info("Delete stale journal segment {}", file);
+        file.delete();
+      }
+    }
+    reset();
+  }
+
+  private void reset() {
+    this.sizeBytes = 0L;
+    this.numRecords = 0L;
+    this.firstTxid = -1L;
+    this.lastTxid = -1L;
+  }
+
+  /** Encode batch as bson document */
+  private byte[] encode(EventBatch batch) {
+    BasicOutputBuffer output = new BasicOutputBuffer();
+    BsonBinaryWriter writer = new BsonBinaryWriter(output);
+    EncoderContext context = EncoderContext.builder().build();
+    writer.writeStartDocument();
+    writer.writeStartArray(FIELD_EVENTS);
+    for (Event event : batch.getEvents()) {
+      this.codec.encode(writer, new EventContainer(batch.getTxid(), event), context);
+    }
+    writer.writeEndArray();
+    writer.writeEndDocument();
+    writer.close();
+    return output.toByteArray();
+  }
+
+  /** Decode batch from bson document */
+  private EventBatch decode(long txid, byte[] bytes) {
+    BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(bytes));
+    DecoderContext context = DecoderContext.builder().build();
+    Deque<Event> events = new ArrayDeque<Event>();
+    reader.readStartDocument();
+    reader.readName(FIELD_EVENTS);
+    reader.readStartArray();
+    while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+      events.add(this.codec.decode(reader, context).getEvent());
+    }
+    reader.readEndArray();
+    reader.readEndDocument();
+    reader.close();
+    return new EventBatch(txid, events.toArray(new Event[events.size()]));
+  }
+
+  /** Append batch to the end of journal */
+  public void append(EventBatch batch) throws IOException {
+    byte[] bytes = encode(batch);
+    int recordBytes = HEADER_BYTES + bytes.length;
+    Segment segment = this.segments.peekLast();
+    if (segment == null || !segment.hasCapacity(recordBytes)) {
+      File file = new File(this.directory, String.format("%020d.journal", batch.getTxid()));
+      segment = new Segment(file, Math.max(this.segmentBytes, recordBytes));
+      LOG.debug("Roll journal segment {}", segment);
+      this.segments.addLast(segment);
+    }
+    segment.buffer.position(segment.writePosition);
+    segment.buffer.putInt(bytes.length);
+    segment.buffer.putLong(batch.getTxid());
+    segment.buffer.put(bytes);
+    segment.writePosition += recordBytes;
+    this.sizeBytes += recordBytes;
+    this.numRecords++;
+    if (this.firstTxid < 0) {
+      this.firstTxid = batch.getTxid();
+    }
+    this.lastTxid = batch.getTxid();
+  }
+
+  /** Read and remove the oldest batch, or return null if journal is empty */
+  public EventBatch poll() {
+    Segment segment = this.segments.peekFirst();
+    if (segment == null || !segment.hasUnread()) return null;
+    segment.buffer.position(segment.readPosition);
+    int length = segment.buffer.getInt();
+    long txid = segment.buffer.getLong();
+    byte[] bytes = new byte[length];
+    segment.buffer.get(bytes);
+    segment.readPosition += HEADER_BYTES + length;
+    this.sizeBytes -= HEADER_BYTES + length;
+    this.numRecords--;
+    // drop segment once it is read, unless it is still being written to
+    if (!segment.hasUnread() && this.segments.size() > 1) {
+      this.segments.pollFirst().delete();
+    }
+    if (this.numRecords == 0) {
+      while (!this.segments.isEmpty()) {
+        this.segments.pollFirst().delete();
+      }
+      reset();
+    } else {
+      this.firstTxid = txid + 1;
+    }
+    return decode(txid, bytes);
+  }
+
+  /** Whether or not journal has unread batches */
+  public boolean isEmpty() {
+    return this.numRecords == 0;
+  }
+
+  /** Size of unread records in bytes */
+  public long getSizeBytes() {
+    return this.sizeBytes;
+  }
+
+  /** Number of unread batches */
+  public long getNumRecords() {
+    return this.numRecords;
+  }
+
+  /** Transaction id of the oldest unread batch (lower bound), or -1 if empty */
+  public long getFirstTxid() {
+    return this.firstTxid;
+  }
+
+  /** Transaction id of the newest batch, or -1 if empty */
+  public long getLastTxid() {
+    return this.lastTxid;
+  }
+
+  /** Delete all segments, unread batches are discarded and read again from checkpoint */
+  public void close() {
+    while (!this.segments.isEmpty()) {
+      this.segments.pollFirst().delete();
+    }
+    reset();
+  }
+
+  @Override
+  public String toString() {
+    return "SpillJournal(dir=" + this.directory + ", records=" + this.numRecords + ", bytes=" +
+      this.sizeBytes + ", txid=[" + this.firstTxid + ", " + this.lastTxid + "])";
+  }
+}
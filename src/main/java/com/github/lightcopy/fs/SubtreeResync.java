@@ -0,0 +1,388 @@
+package com.github.lightcopy.fs;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resync engine that reconciles subtree of metadata store with HDFS without dropping state.
+ * Directories of subtree are listed in parallel, children are compared with stored children and
+ * only differences are applied: missing nodes are inserted, changed nodes are replaced and nodes
+ * that no longer exist are deleted. Event processing keeps running while resync is in progress.
+ * Changes are stamped with checkpoint at the start of the job, so nodes modified by events applied
+ * after that are not overwritten. Node can be deleted after its directory is listed and its
+ * delete event can be applied before resync writes it, which would leave node that no longer
+ * exists; every written node is therefore checked in file system after the write, see `write()`.
+ */
+public class SubtreeResync {
+  private static final Logger LOG = LoggerFactory.getLogger(SubtreeResync.class);
+  // maximum number of finished jobs to keep for reporting
+  public static final int MAX_FINISHED_JOBS = 100;
+
+  /** State of resync job */
+  public static enum State {
+    RUNNING, SUCCEEDED, FAILED
+  }
+
+  /** Resync of single subtree */
+  public static class Job {
+    private final long id;
+    private final INodePath path;
+    private final long transactionId;
+    private final long startTime;
+    private volatile long endTime;
+    private volatile State state;
+    private volatile String error;
+    // number of directory tasks that are submitted, but not finished yet
+    private final AtomicInteger pending;
+    private final CountDownLatch done;
+    private final AtomicLong directories;
+    private final AtomicLong inserted;
+    private final AtomicLong updated;
+    private final AtomicLong deleted;
+
+    Job(long id, INodePath path, long transactionId) {
+      this.id = id;
+      this.path = path;
+      this.transactionId = transactionId;
+      this.startTime = System.currentTimeMillis();
+      this.endTime = -1L;
+      this.state = State.RUNNING;
+      this.error = null;
+      this.pending = new AtomicInteger(0);
+      this.done = new CountDownLatch(1);
+      this.directories = new AtomicLong(0L);
+      this.inserted = new AtomicLong(0L);
+      this.updated = new AtomicLong(0L);
+      this.deleted = new AtomicLong(0L);
+    }
+
+    private synchronized void fail(Throwable err) {
+      if (this.error == null) {
+        this.error = String.valueOf(err);
+      }
+    }
+
+    private void taskFinished() {
+      if (this.pending.decrementAndGet() == 0) {
+        this.state = (this.error == null) ? State.SUCCEEDED : State.FAILED;
+        this.endTime = System.currentTimeMillis();
+        this.done.countDown();
+        LOG.info("Finished {}", this);
+      }
+    }
+
+    public long getId() {
+      return this.id;
+    }
+
+    public INodePath getPath() {
+      return this.path;
+    }
+
+    public long getStartTime() {
+      return this.startTime;
+    }
+
+    /** End time of the job, or -1 if job is running */
+    public long getEndTime() {
+      return this.endTime;
+    }
+
+    public State getState() {
+      return this.state;
+    }
+
+    /** First error occurred during resync, or null */
+    public String getError() {
+      return this.error;
+    }
+
+    public long getDirectories() {
+      return this.directories.get();
+    }
+
+    public long getInserted() {
+      return this.inserted.get();
+    }
+
+    public long getUpdated() {
+      return this.updated.get();
+    }
+
+    public long getDeleted() {
+      return this.deleted.get();
+    }
+
+    /** Wait for job to finish */
+    public void await() throws InterruptedException {
+      this.done.await();
+    }
+
+    @Override
+    public String toString() {
+      return "ResyncJob(id=" + this.id + ", path=" + this.path + ", state=" + this.state +
+        ", directories=" + getDirectories() + ", inserted=" + getInserted() + ", updated=" +
+        getUpdated() + ", deleted=" + getDeleted() + ", error=" + this.error + ")";
+    }
+  }
+
+  private final HdfsManager manager;
+  private final ThreadPoolExecutor executor;
+  private final AtomicLong nextId;
+  private final LinkedHashMap<Long, Job> jobs;
+
+  public SubtreeResync(HdfsManager manager, int numThreads) {
+    this.manager = manager;
+    final String name = "SubtreeResync-" + manager.getNamespace() + "-";
+    this.executor = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+      new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger(0);
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, name + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    this.nextId = new AtomicLong(0L);
+    this.jobs = new LinkedHashMap<Long, Job>();
+  }
+
+  /**
+   * Start resync of subtree, returns running job if the same or covering subtree is already
+   * being resynced. Path must be accepted by ingest rules of the manager.
+   */
+  public synchronized Job submit(INodePath path) {
+    checkScope(path);
+    for (Job job : this.jobs.values()) {
+      if (job.getState() == State.RUNNING && path.hasPrefix(job.getPath())) {
+        LOG.info("Path {} is covered by {}", path, job);
+        return job;
+      }
+    }
+    return start(path);
+  }
+
+  /**
+   * Start resync of subtree even if covering subtree is being resynced, used when caller waits
+   * for the job, e.g. event processing, so it does not wait for resync of the whole covering tree.
+   */
+  public synchronized Job submitExclusive(INodePath path) {
+    checkScope(path);
+    return start(path);
+  }
+
+  private void checkScope(INodePath path) {
+    if (!this.manager.getRules().accept(path)) {
+      throw new IllegalArgumentException("Path " + path.toPathString() +
+        " is outside of ingest scope or excluded, " + this.manager.getRules());
+    }
+  }
+
+  /** Create and start new job, must be called under lock */
+  private Job start(INodePath path) {
+    long transactionId = Math.max(this.manager.metadataStore().getCheckpoint(),
+      INode.NO_TRANSACTION);
+    Job job = new Job(this.nextId.incrementAndGet(), path, transactionId);
+    this.jobs.put(job.getId(), job);
+    evictFinishedJobs();
+    LOG.info("Start {}", job);
+    submitTask(job, path, true);
+    return job;
+  }
+
+  /** Get job by id, or null if job does not exist or was evicted */
+  public synchronized Job get(long id) {
+    return this.jobs.get(id);
+  }
+
+  /** Get all tracked jobs in submission order */
+  public synchronized List<Job> getAll() {
+    return new ArrayList<Job>(this.jobs.values());
+  }
+
+  /** Resize thread pool, running tasks finish on their threads */
+  public void setThreads(int numThreads) {
+    HdfsManager.resize(this.executor, numThreads);
+  }
+
+  /** Stop all running jobs, method is called only once */
+  public void stop() {
+    this.executor.shutdownNow();
+  }
+
+  private void evictFinishedJobs() {
+    int finished = 0;
+    for (Job job : this.jobs.values()) {
+      if (job.getState() != State.RUNNING) finished++;
+    }
+    Iterator<Job> iter = this.jobs.values().iterator();
+    while (finished > MAX_FINISHED_JOBS && iter.hasNext()) {
+      if (iter.next().getState() != State.RUNNING) {
+        iter.remove();
+        finished--;
+      }
+    }
+  }
+
+  /** Submit task to resync path, if `isRoot` is true, path itself is reconciled too */
+  private void submitTask(final Job job, final INodePath path, final boolean isRoot) {
+    job.pending.incrementAndGet();
+    this.executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          if (isRoot) {
+            resyncRoot(job, path);
+          } else {
+            resyncChildren(job, path);
+          }
+        } catch (Exception err) {
+          LOG.error("Failed to resync " + path + " for job " + job.getId(), err);
+          job.fail(err);
+        } finally {
+          job.taskFinished();
+        }
+      }
+    });
+  }
+
+  /** Reconcile root of the subtree and continue with children if root is a directory */
+  private void resyncRoot(Job job, INodePath path) throws IOException {
+    FileSystemStore store = this.manager.fileSystemStore();
+    INode stored = store.get(path);
+    FileStatus status;
+    try {
+      status = this.manager.getFileSystem().getFileStatus(toPath(path));
+    } catch (FileNotFoundException err) {
+      if (stored != null) {
+        store.delete(path, job.transactionId);
+        job.deleted.incrementAndGet();
+      }
+      return;
+    }
+    INode node = new INode(status).setTransactionId(job.transactionId);
+    reconcile(job, store, stored, node);
+    if (node.isDirectory()) {
+      resyncChildren(job, path);
+    }
+  }
+
+  /** Diff children of directory and submit tasks for child directories */
+  private void resyncChildren(Job job, INodePath path) throws IOException {
+    job.directories.incrementAndGet();
+    FileSystemStore store = this.manager.fileSystemStore();
+    FileStatus[] statuses;
+    try {
+      statuses = this.manager.getRules().filter(
+        this.manager.getFileSystem().listStatus(toPath(path)));
+    } catch (FileNotFoundException err) {
+      // directory was removed after parent was listed, event will delete it
+      return;
+    }
+    Map<String, INode> stored = new HashMap<String, INode>();
+    for (INode child : store.list(path, false)) {
+      stored.put(child.getName(), child);
+    }
+    long hash = 0L;
+    for (FileStatus status : statuses) {
+      INode node = new INode(status).setTransactionId(job.transactionId);
+      hash ^= node.entryHash();
+      reconcile(job, store, stored.remove(node.getName()), node);
+      if (node.isDirectory()) {
+        submitTask(job, node.getPath(), false);
+      }
+    }
+    for (INode extra : stored.values()) {
+      store.delete(extra.getPath(), job.transactionId);
+      job.deleted.incrementAndGet();
+    }
+    if (store instanceof DirectoryHashFileSystem) {
+      ((DirectoryHashFileSystem) store).setChildHash(path, hash);
+    }
+  }
+
+  /** Apply minimal change to make stored node match actual node */
+  private void reconcile(Job job, FileSystemStore store, INode stored, INode node)
+      throws IOException {
+    if (stored == null) {
+      write(job, store, node);
+      job.inserted.incrementAndGet();
+    } else if (stored.isDirectory() != node.isDirectory()) {
+      // type change invalidates subtree, replace node entirely
+      store.delete(stored.getPath(), job.transactionId);
+      write(job, store, node);
+      job.updated.incrementAndGet();
+    } else if (!sameAttributes(stored, node)) {
+      write(job, store, node);
+      job.updated.incrementAndGet();
+    }
+  }
+
+  /**
+   * Upsert listed node and check that it still exists in file system. Delete that happened
+   * before the check could have been applied as event before upsert, so node is removed again;
+   * removal is stamped with job transaction and does not affect node recreated by newer event.
+   * Delete after the check is applied as event after upsert.
+   */
+  private void write(Job job, FileSystemStore store, INode node) throws IOException {
+    store.upsert(node);
+    if (!this.manager.getFileSystem().exists(toPath(node.getPath()))) {
+      LOG.info("Node {} was deleted while resync of job {} was in progress", node.getPath(),
+        job.getId());
+      store.delete(node.getPath(), job.transactionId);
+    }
+  }
+
+  /**
+   * Whether or not nodes have the same attributes. Access time is not compared, since it is not
+   * always reported as event; size and modification time are not compared for directories.
+   */
+  static boolean sameAttributes(INode stored, INode node) {
+    if (!node.isDirectory() && (stored.getSize() != node.getSize() ||
+        stored.getModificationTime() != node.getModificationTime())) {
+      return false;
+    }
+    return stored.getTypeName().equals(node.getTypeName()) &&
+      stored.getBlockSize() == node.getBlockSize() &&
+      stored.getReplicationFactor() == node.getReplicationFactor() &&
+      equals(stored.getOwner(), node.getOwner()) &&
+      equals(stored.getGroup(), node.getGroup()) &&
+      equals(stored.getPermission(), node.getPermission());
+  }
+
+  private static boolean equals(String left, String right) {
+    return (left == null) ? right == null : left.equals(right);
+  }
+
+  /** Convert inode path into hadoop path */
+  private static Path toPath(INodePath path) {
+    return new Path(path.toPathString());
+  }
+
+  @Override
+  public String toString() {
+    return "SubtreeResync(namespace=" + this.manager.getNamespace() + ")";
+  }
+}
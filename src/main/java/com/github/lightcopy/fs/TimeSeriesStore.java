@@ -0,0 +1,26 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * [[TimeSeriesStore]] keeps namespace growth samples captured by [[GrowthSampler]], one sample
+ * per subtree, tier and bucket, see [[GrowthTier]].
+ */
+public interface TimeSeriesStore {
+  /** Save sample, replaces sample of the same subtree, tier and bucket */
+  public void record(GrowthSample sample) throws IOException;
+
+  /**
+   * Get samples of subtree and tier with bucket time in range [from, to), sorted by time.
+   * @param subtree subtree path
+   * @param tier tier to query
+   * @param from start of range in milliseconds, inclusive
+   * @param to end of range in milliseconds, exclusive
+   */
+  public List<GrowthSample> query(String subtree, GrowthTier tier, long from, long to)
+    throws IOException;
+
+  /** Remove samples of tier with bucket time before provided time */
+  public void expire(GrowthTier tier, long before) throws IOException;
+}
@@ -0,0 +1,144 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * [[FileSystemStore]] that keeps [[UsageRollup]] up to date with modifications of another
+ * store. Each modification reads previous state of the node and moves its usage to the new
+ * owner, group, size or replication. Deleting directory reads the whole subtree before delete,
+ * one directory at a time, and collects aggregated usage of the subtree, so subtree is never
+ * materialized in memory. Renames are passed through unless they move nodes between subtrees
+ * tracked by rollup, in this case renamed subtree is read as well. Updates that cannot change
+ * usage, e.g. times, permission or directory hash, do not cost additional read.
+ */
+public class UsageFileSystem implements FileSystemStore {
+  private final FileSystemStore store;
+  private final UsageRollup rollup;
+
+  public UsageFileSystem(FileSystemStore store, UsageRollup rollup) {
+    this.store = store;
+    this.rollup = rollup;
+  }
+
+  @Override
+  public INode get(INodePath path) {
+    return this.store.get(path);
+  }
+
+  @Override
+  public List<INode> list(INodePath path, boolean recursive) throws IOException {
+    return this.store.list(path, recursive);
+  }
+
+  @Override
+  public synchronized void delete(INodePath path, long transactionId) throws IOException {
+    INode previous = this.store.get(path);
+    if (previous == null || previous.isNewerThan(transactionId)) {
+      this.store.delete(path, transactionId);
+      return;
+    }
+    UsageRollup removed = new UsageRollup(this.rollup.getSubtrees());
+    removed.add(previous);
+    if (previous.isDirectory()) {
+      collect(path, transactionId, removed, null, null);
+    }
+    this.store.delete(path, transactionId);
+    this.rollup.merge(removed, -1);
+  }
+
+  /**
+   * Walk subtree of directory one level at a time and add descendants that are not newer than
+   * transaction to usage delta; newer nodes are not modified by store. If rename paths are
+   * provided, descendants are also added to moved delta with their destination path. Memory is
+   * bounded by the largest directory and the number of directories waiting to be listed.
+   */
+  private void collect(INodePath path, long transactionId, UsageRollup delta,
+      UsageRollup moved, INodePath dstPath) throws IOException {
+    Deque<INodePath> directories = new ArrayDeque<INodePath>();
+    directories.push(path);
+    while (!directories.isEmpty()) {
+      for (INode child : this.store.list(directories.pop(), false)) {
+        if (child.isDirectory()) {
+          directories.push(child.getPath());
+        }
+        if (!child.isNewerThan(transactionId)) {
+          delta.add(child);
+          if (moved != null) {
+            INode node = child.copy();
+            node.setPath(child.getPath().withUpdatedPrefix(path, dstPath));
+            moved.add(node);
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public synchronized void upsert(INode node) throws IOException {
+    INode previous = this.store.get(node.getPath());
+    this.store.upsert(node);
+    if (previous == null) {
+      this.rollup.add(node);
+    } else if (!previous.isNewerThan(node.getTransactionId())) {
+      this.rollup.replace(previous, node);
+    }
+  }
+
+  @Override
+  public synchronized void insert(List<INode> nodes) throws IOException {
+    this.store.insert(nodes);
+    for (INode node : nodes) {
+      this.rollup.add(node);
+    }
+  }
+
+  @Override
+  public synchronized void rename(INodePath srcPath, INodePath dstPath, long transactionId)
+      throws IOException {
+    if (!this.rollup.affectsSubtrees(srcPath, dstPath)) {
+      this.store.rename(srcPath, dstPath, transactionId);
+      return;
+    }
+    INode previous = this.store.get(srcPath);
+    if (previous == null || previous.isNewerThan(transactionId)) {
+      this.store.rename(srcPath, dstPath, transactionId);
+      return;
+    }
+    // owner and group usage is the same in both deltas, only subtree usage changes
+    UsageRollup removed = new UsageRollup(this.rollup.getSubtrees());
+    UsageRollup added = new UsageRollup(this.rollup.getSubtrees());
+    removed.add(previous);
+    INode moved = previous.copy();
+    moved.setPath(dstPath);
+    added.add(moved);
+    if (previous.isDirectory()) {
+      collect(srcPath, transactionId, removed, added, dstPath);
+    }
+    this.store.rename(srcPath, dstPath, transactionId);
+    this.rollup.merge(removed, -1);
+    this.rollup.merge(added, 1);
+  }
+
+  @Override
+  public synchronized void update(INodePath path, INodeUpdate builder) throws IOException {
+    if (!builder.affectsUsage()) {
+      this.store.update(path, builder);
+      return;
+    }
+    INode previous = this.store.get(path);
+    this.store.update(path, builder);
+    if (previous != null && !previous.isNewerThan(builder.getTransactionId())) {
+      INode current = previous.copy();
+      builder.apply(current);
+      this.rollup.replace(previous, current);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "UsageFileSystem(" + this.store + ")";
+  }
+}
@@ -0,0 +1,297 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory accumulators of per-owner and per-group usage: number of files and directories,
+ * bytes and replicated bytes (size multiplied by replication factor). Accumulators are updated
+ * for every modification of file system store, see [[UsageFileSystem]], and are periodically
+ * flushed to [[RollupStore]], so reading usage never requires a scan of file system collection.
+ *
+ * Optionally usage is also accumulated for a fixed set of subtrees, keyed by subtree path, which
+ * is sampled by [[GrowthSampler]]. Subtrees that have no persisted usage when rollup is loaded,
+ * e.g. added to configuration after indexing, are recomputed from file system store, see
+ * `HdfsManager.promote()`, and persisted usage of subtrees that are no longer tracked is dropped.
+ */
+public class UsageRollup {
+  private static final Logger LOG = LoggerFactory.getLogger(UsageRollup.class);
+
+  public static final String KIND_OWNER = "owner";
+  public static final String KIND_GROUP = "group";
+  public static final String KIND_SUBTREE = "subtree";
+
+  /** Usage counters of a single owner or group */
+  public static class Usage {
+    private long files;
+    private long directories;
+    private long bytes;
+    private long replicatedBytes;
+
+    public Usage() {
+      this(0L, 0L, 0L, 0L);
+    }
+
+    public Usage(long files, long directories, long bytes, long replicatedBytes) {
+      this.files = files;
+      this.directories = directories;
+      this.bytes = bytes;
+      this.replicatedBytes = replicatedBytes;
+    }
+
+    /** Add (sign = 1) or subtract (sign = -1) usage of the node */
+    synchronized void add(INode node, int sign) {
+      if (node.isDirectory()) {
+        this.directories += sign;
+      } else {
+        this.files += sign;
+        this.bytes += sign * node.getSize();
+        this.replicatedBytes += sign * node.getSize() * node.getReplicationFactor();
+      }
+    }
+
+    /** Add (sign = 1) or subtract (sign = -1) other usage */
+    void add(Usage other, int sign) {
+      Usage copy = other.copy();
+      synchronized (this) {
+        this.files += sign * copy.files;
+        this.directories += sign * copy.directories;
+        this.bytes += sign * copy.bytes;
+        this.replicatedBytes += sign * copy.replicatedBytes;
+      }
+    }
+
+    public synchronized long getFiles() {
+      return this.files;
+    }
+
+    public synchronized long getDirectories() {
+      return this.directories;
+    }
+
+    public synchronized long getBytes() {
+      return this.bytes;
+    }
+
+    public synchronized long getReplicatedBytes() {
+      return this.replicatedBytes;
+    }
+
+    /** Whether or not usage does not account for any node */
+    public synchronized boolean isEmpty() {
+      return this.files == 0 && this.directories == 0;
+    }
+
+    public synchronized Usage copy() {
+      return new Usage(this.files, this.directories, this.bytes, this.replicatedBytes);
+    }
+
+    @Override
+    public synchronized String toString() {
+      return "Usage(files=" + this.files + ", directories=" + this.directories + ", bytes=" +
+        this.bytes + ", replicatedBytes=" + this.replicatedBytes + ")";
+    }
+  }
+
+  private final ConcurrentHashMap<String, Usage> owners;
+  private final ConcurrentHashMap<String, Usage> groups;
+  private final List<INodePath> subtreePaths;
+  private final ConcurrentHashMap<String, Usage> subtrees;
+  // number of modifications since creation, used to skip flush when nothing changed
+  private final AtomicLong modifications;
+  private volatile long flushedModifications;
+
+  public UsageRollup() {
+    this(Collections.<INodePath>emptyList());
+  }
+
+  public UsageRollup(List<INodePath> subtreePaths) {
+    this.owners = new ConcurrentHashMap<String, Usage>();
+    this.groups = new ConcurrentHashMap<String, Usage>();
+    this.subtreePaths = new ArrayList<INodePath>(subtreePaths);
+    this.subtrees = new ConcurrentHashMap<String, Usage>();
+    this.modifications = new AtomicLong(0L);
+    this.flushedModifications = 0L;
+  }
+
+  private static void add(ConcurrentHashMap<String, Usage> map, String key, INode node, int sign) {
+    // owner or group can be missing for nodes created by older versions
+    if (key == null) key = "";
+    usage(map, key).add(node, sign);
+  }
+
+  private static Usage usage(ConcurrentHashMap<String, Usage> map, String key) {
+    Usage usage = map.get(key);
+    if (usage == null) {
+      Usage created = new Usage();
+      usage = map.putIfAbsent(key, created);
+      if (usage == null) usage = created;
+    }
+    return usage;
+  }
+
+  /** Apply node with sign to every tracked subtree that contains path */
+  private void addSubtrees(INodePath path, INode node, int sign) {
+    for (INodePath subtree : this.subtreePaths) {
+      if (path.hasPrefix(subtree)) {
+        add(this.subtrees, subtree.toPathString(), node, sign);
+      }
+    }
+  }
+
+  /** Account for node that was added to file system store */
+  public void add(INode node) {
+    add(this.owners, node.getOwner(), node, 1);
+    add(this.groups, node.getGroup(), node, 1);
+    addSubtrees(node.getPath(), node, 1);
+    this.modifications.incrementAndGet();
+  }
+
+  /** Account for node that was removed from file system store */
+  public void remove(INode node) {
+    add(this.owners, node.getOwner(), node, -1);
+    add(this.groups, node.getGroup(), node, -1);
+    addSubtrees(node.getPath(), node, -1);
+    this.modifications.incrementAndGet();
+  }
+
+  /**
+   * Whether or not rename of source into destination can change usage of tracked subtrees, e.g.
+   * source and destination belong to different subtrees, or either of them contains subtree.
+   */
+  public boolean affectsSubtrees(INodePath srcPath, INodePath dstPath) {
+    for (INodePath subtree : this.subtreePaths) {
+      if (srcPath.hasPrefix(subtree) != dstPath.hasPrefix(subtree) ||
+          subtree.hasPrefix(srcPath) || subtree.hasPrefix(dstPath)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Add (sign = 1) or subtract (sign = -1) all usage accumulated by other rollup, e.g. delta
+   * collected for a subtree before it is modified in store.
+   */
+  public void merge(UsageRollup delta, int sign) {
+    for (String kind : new String[] {KIND_OWNER, KIND_GROUP, KIND_SUBTREE}) {
+      for (Map.Entry<String, Usage> entry : delta.map(kind).entrySet()) {
+        usage(map(kind), entry.getKey()).add(entry.getValue(), sign);
+      }
+    }
+    this.modifications.incrementAndGet();
+  }
+
+  /** Get tracked subtrees */
+  public List<INodePath> getSubtrees() {
+    return Collections.unmodifiableList(this.subtreePaths);
+  }
+
+  /** Account for node that was replaced with current state */
+  public void replace(INode previous, INode current) {
+    remove(previous);
+    add(current);
+  }
+
+  private ConcurrentHashMap<String, Usage> map(String kind) {
+    if (KIND_OWNER.equals(kind)) return this.owners;
+    if (KIND_GROUP.equals(kind)) return this.groups;
+    if (KIND_SUBTREE.equals(kind)) return this.subtrees;
+    throw new IllegalArgumentException("Unknown usage kind '" + kind + "'");
+  }
+
+  /** Copy of usage for kind, either owner, group or subtree, sorted by name */
+  public Map<String, Usage> get(String kind) {
+    Map<String, Usage> map = map(kind);
+    Map<String, Usage> copy = new TreeMap<String, Usage>();
+    for (Map.Entry<String, Usage> entry : map.entrySet()) {
+      if (!entry.getValue().isEmpty()) {
+        copy.put(entry.getKey(), entry.getValue().copy());
+      }
+    }
+    return copy;
+  }
+
+  /** Reset all accumulators */
+  public void clear() {
+    this.owners.clear();
+    this.groups.clear();
+    this.subtrees.clear();
+    this.modifications.incrementAndGet();
+  }
+
+  /**
+   * Replace accumulators with usage persisted in store, persisted usage of subtrees that are not
+   * tracked is dropped.
+   * @return tracked subtrees without persisted usage that need to be recomputed
+   */
+  public List<INodePath> load(RollupStore store) throws IOException {
+    for (String kind : new String[] {KIND_OWNER, KIND_GROUP}) {
+      map(kind).clear();
+      map(kind).putAll(store.load(kind));
+    }
+    Map<String, Usage> persisted = store.load(KIND_SUBTREE);
+    this.subtrees.clear();
+    List<INodePath> missing = new ArrayList<INodePath>();
+    for (INodePath subtree : this.subtreePaths) {
+      Usage usage = persisted.remove(subtree.toPathString());
+      if (usage == null) {
+        missing.add(subtree);
+      } else {
+        this.subtrees.put(subtree.toPathString(), usage);
+      }
+    }
+    this.flushedModifications = this.modifications.get();
+    if (!persisted.isEmpty()) {
+      LOG.info("Drop usage of subtrees {} that are no longer tracked", persisted.keySet());
+      this.modifications.incrementAndGet();
+    }
+    LOG.info("Loaded usage of {} owners and {} groups", this.owners.size(), this.groups.size());
+    return missing;
+  }
+
+  /** Replace usage of tracked subtree with recomputed value */
+  public void setSubtree(INodePath subtree, Usage usage) {
+    if (!this.subtreePaths.contains(subtree)) {
+      throw new IllegalArgumentException("Subtree " + subtree + " is not tracked");
+    }
+    this.subtrees.put(subtree.toPathString(), usage);
+    this.modifications.incrementAndGet();
+  }
+
+  /**
+   * Write usage into store if it has changed since the last flush. Entries that no longer
+   * account for any node are removed from store.
+   */
+  public void flush(RollupStore store) throws IOException {
+    long current = this.modifications.get();
+    if (current == this.flushedModifications) return;
+    store.save(KIND_OWNER, copyAll(this.owners));
+    store.save(KIND_GROUP, copyAll(this.groups));
+    store.save(KIND_SUBTREE, copyAll(this.subtrees));
+    this.flushedModifications = current;
+    LOG.debug("Flushed usage of {} owners and {} groups", this.owners.size(), this.groups.size());
+  }
+
+  private static Map<String, Usage> copyAll(Map<String, Usage> map) {
+    Map<String, Usage> copy = new TreeMap<String, Usage>();
+    for (Map.Entry<String, Usage> entry : map.entrySet()) {
+      copy.put(entry.getKey(), entry.getValue().copy());
+    }
+    return copy;
+  }
+
+  @Override
+  public String toString() {
+    return "UsageRollup(owners=" + this.owners.size() + ", groups=" + this.groups.size() + ")";
+  }
+}
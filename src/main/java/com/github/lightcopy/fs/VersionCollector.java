@@ -0,0 +1,71 @@
+package com.github.lightcopy.fs;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.mongodb.MongoException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically removes versions of versioned [[MongoFileSystem]] that are no longer visible to
+ * any snapshot, see `MongoFileSystem.collectVersions()`. Interval also bounds how long snapshot
+ * can stay unused before its versions are removed.
+ */
+public class VersionCollector implements Runnable {
+  private static final Logger LOG = LoggerFactory.getLogger(VersionCollector.class);
+
+  private final MongoFileSystem fs;
+  private final long intervalMs;
+  // released on termination to wake up thread between collections
+  private final CountDownLatch termination;
+  private volatile boolean stopped;
+  private long removed;
+
+  public VersionCollector(MongoFileSystem fs, long intervalMs) {
+    if (intervalMs <= 0) {
+      throw new IllegalArgumentException("Expected positive interval, found " + intervalMs);
+    }
+    this.fs = fs;
+    this.intervalMs = intervalMs;
+    this.termination = new CountDownLatch(1);
+    this.stopped = false;
+    this.removed = 0L;
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (!this.stopped) {
+        this.termination.await(this.intervalMs, TimeUnit.MILLISECONDS);
+        if (!this.stopped) {
+          try {
+            this.removed += this.fs.collectVersions();
+          } catch (MongoException err) {
+            LOG.warn("Failed to remove old versions, retry in " + this.intervalMs + " ms", err);
+          }
+        }
+      }
+    } catch (InterruptedException err) {
+      LOG.info("Version collector interrupted");
+    } finally {
+      this.stopped = true;
+    }
+  }
+
+  public boolean isStopped() {
+    return this.stopped;
+  }
+
+  /** Mark collector thread as terminated */
+  public void terminate() {
+    this.stopped = true;
+    this.termination.countDown();
+  }
+
+  @Override
+  public String toString() {
+    return "VersionCollector(interval=" + this.intervalMs + " ms, removed=" + this.removed + ")";
+  }
+}
@@ -0,0 +1,672 @@
+package com.github.lightcopy.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+
+import org.bson.Document;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.lightcopy.conf.AppConf;
+import com.github.lightcopy.fs.ChangeFeed;
+import com.github.lightcopy.fs.HdfsManager;
+import com.github.lightcopy.fs.INodePath;
+import com.github.lightcopy.fs.MetadataStore;
+import com.github.lightcopy.fs.MetadataStoreProvider;
+
+/**
+ * End-to-end ingest benchmark. Starts [[MiniDFSCluster]] and [[HdfsManager]] with embedded
+ * metadata store (any backend can be selected with "metadata.store" option), then drives mix of
+ * namespace operations at target rate and measures how fast manager keeps up:
+ * - throughput of issued and applied operations within measurement window;
+ * - end-to-end latency percentiles, from issuing client call to event being applied and published
+ * in change feed of the manager;
+ * - lag, sampled every second as number of issued but not yet applied operations and difference
+ * between current edit log transaction of NameNode and the last applied transaction.
+ *
+ * Rate is fixed per worker and operations are scheduled independently of completion time, so a
+ * slow NameNode call does not hide latency of the calls behind it. Results are printed as single
+ * JSON document, so runs of different builds can be compared.
+ *
+ * Usage: IngestBenchmark [key=value ...], see `usage()` for options. Other keys are passed to
+ * application configuration, e.g. "metadata.store=mongo mongo.address=localhost:27017".
+ */
+public class IngestBenchmark {
+  private static final Logger LOG = LoggerFactory.getLogger(IngestBenchmark.class);
+
+  public static final String NAMESPACE = "bench";
+  public static final String ROOT = "/bench";
+
+  public static final String RATE_KEY = "bench.rate";
+  public static final int RATE_DEFAULT = 500;
+  public static final String THREADS_KEY = "bench.threads";
+  public static final int THREADS_DEFAULT = 4;
+  public static final String WARMUP_S_KEY = "bench.warmup.s";
+  public static final int WARMUP_S_DEFAULT = 10;
+  public static final String DURATION_S_KEY = "bench.duration.s";
+  public static final int DURATION_S_DEFAULT = 60;
+  public static final String DRAIN_S_KEY = "bench.drain.s";
+  public static final int DRAIN_S_DEFAULT = 60;
+  public static final String MIX_KEY = "bench.mix";
+  public static final String MIX_DEFAULT = "create:50,mkdirs:10,rename:15,delete:15,setrep:10";
+  public static final String FILE_BYTES_KEY = "bench.file.bytes";
+  public static final int FILE_BYTES_DEFAULT = 0;
+  public static final String DATANODES_KEY = "bench.datanodes";
+  public static final int DATANODES_DEFAULT = 1;
+  public static final String SEED_KEY = "bench.seed";
+  public static final String OUTPUT_KEY = "bench.output";
+
+  // interval to sample lag
+  private static final long LAG_INTERVAL_MS = 1000L;
+  // maximum number of changes to read from feed at once
+  private static final int FEED_LIMIT = 10000;
+  // latencies are recorded in microseconds and reported in milliseconds
+  private static final double MICROS_PER_MS = 1e3;
+
+  /** Namespace operation, event type is the type of the event that completes operation */
+  enum Op {
+    CREATE("CLOSE"), MKDIRS("CREATE"), RENAME("RENAME"), DELETE("UNLINK"), SETREP("METADATA");
+
+    private final String eventType;
+
+    Op(String eventType) {
+      this.eventType = eventType;
+    }
+
+    /** Key to match operation with applied change */
+    String key(String path) {
+      return this.eventType + " " + new INodePath(path).toPathString();
+    }
+
+    static Op parse(String name) {
+      try {
+        return valueOf(name.trim().toUpperCase());
+      } catch (IllegalArgumentException err) {
+        throw new IllegalArgumentException("Unknown operation '" + name + "', expected one of " +
+          Arrays.toString(values()));
+      }
+    }
+  }
+
+  /** Samples of a metric, percentiles are computed once run is complete */
+  static class Recorder {
+    private long[] values = new long[1024];
+    private int size = 0;
+
+    synchronized void record(long value) {
+      if (this.size == this.values.length) {
+        this.values = Arrays.copyOf(this.values, this.size * 2);
+      }
+      this.values[this.size++] = value;
+    }
+
+    synchronized int size() {
+      return this.size;
+    }
+
+    synchronized void addAll(Recorder other) {
+      synchronized (other) {
+        for (int i = 0; i < other.size; i++) {
+          record(other.values[i]);
+        }
+      }
+    }
+
+    /** Summary of samples divided by unit: count, mean, max and percentiles */
+    synchronized Document summary(double unit) {
+      long[] sorted = Arrays.copyOf(this.values, this.size);
+      Arrays.sort(sorted);
+      double sum = 0.0;
+      for (long value : sorted) {
+        sum += value;
+      }
+      return new Document("count", sorted.length)
+        .append("mean", (sorted.length == 0) ? 0.0 : sum / sorted.length / unit)
+        .append("p50", percentile(sorted, 0.50) / unit)
+        .append("p90", percentile(sorted, 0.90) / unit)
+        .append("p99", percentile(sorted, 0.99) / unit)
+        .append("p999", percentile(sorted, 0.999) / unit)
+        .append("max", percentile(sorted, 1.0) / unit);
+    }
+
+    /** Nearest-rank percentile */
+    private static long percentile(long[] sorted, double rank) {
+      if (sorted.length == 0) return 0L;
+      int index = (int) Math.ceil(rank * sorted.length) - 1;
+      return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+  }
+
+  /** Per-operation statistics */
+  static class OpStats {
+    final AtomicLong issued = new AtomicLong(0L);
+    final AtomicLong failed = new AtomicLong(0L);
+    final Recorder call = new Recorder();
+    final Recorder endToEnd = new Recorder();
+
+    Document toDocument() {
+      return new Document("issued", this.issued.get())
+        .append("failed", this.failed.get())
+        .append("callLatencyMs", this.call.summary(MICROS_PER_MS))
+        .append("endToEndLatencyMs", this.endToEnd.summary(MICROS_PER_MS));
+    }
+  }
+
+  /** Issued operation awaiting its change */
+  static class Pending {
+    final Op op;
+    final long issueTime;
+    final boolean measured;
+
+    Pending(Op op, long issueTime, boolean measured) {
+      this.op = op;
+      this.issueTime = issueTime;
+      this.measured = measured;
+    }
+  }
+
+  private final Properties options;
+  private final int rate;
+  private final int threads;
+  private final long warmupMs;
+  private final long durationMs;
+  private final long drainMs;
+  private final int fileBytes;
+  private final long seed;
+  private final Op[] mix;
+  private final Map<Op, OpStats> stats;
+  // operations waiting for change, several operations on the same path are matched in order
+  private final ConcurrentHashMap<String, ConcurrentLinkedQueue<Pending>> pending;
+  private final AtomicLong outstanding;
+  private final AtomicLong applied;
+  private final AtomicLong appliedInWindow;
+  private final AtomicLong unmatched;
+  private final AtomicLong gaps;
+  private final Recorder pendingSamples;
+  private final Recorder txidLagSamples;
+  private volatile long windowStart;
+  private volatile long windowEnd;
+  private volatile boolean running;
+
+  public IngestBenchmark(Properties options) {
+    this.options = options;
+    this.rate = positive(RATE_KEY, RATE_DEFAULT);
+    this.threads = positive(THREADS_KEY, THREADS_DEFAULT);
+    this.warmupMs = nonNegative(WARMUP_S_KEY, WARMUP_S_DEFAULT) * 1000L;
+    this.durationMs = positive(DURATION_S_KEY, DURATION_S_DEFAULT) * 1000L;
+    this.drainMs = nonNegative(DRAIN_S_KEY, DRAIN_S_DEFAULT) * 1000L;
+    this.fileBytes = nonNegative(FILE_BYTES_KEY, FILE_BYTES_DEFAULT);
+    this.seed = Long.parseLong(options.getProperty(SEED_KEY,
+      Long.toString(System.currentTimeMillis())));
+    this.mix = parseMix(options.getProperty(MIX_KEY, MIX_DEFAULT));
+    this.stats = new LinkedHashMap<Op, OpStats>();
+    for (Op op : Op.values()) {
+      this.stats.put(op, new OpStats());
+    }
+    this.pending = new ConcurrentHashMap<String, ConcurrentLinkedQueue<Pending>>();
+    this.outstanding = new AtomicLong(0L);
+    this.applied = new AtomicLong(0L);
+    this.appliedInWindow = new AtomicLong(0L);
+    this.unmatched = new AtomicLong(0L);
+    this.gaps = new AtomicLong(0L);
+    this.pendingSamples = new Recorder();
+    this.txidLagSamples = new Recorder();
+  }
+
+  private int positive(String key, int defaultValue) {
+    int value = intOption(key, defaultValue);
+    if (value <= 0) {
+      throw new IllegalArgumentException("Expected positive value for " + key + ", found " +
+        value);
+    }
+    return value;
+  }
+
+  private int nonNegative(String key, int defaultValue) {
+    int value = intOption(key, defaultValue);
+    if (value < 0) {
+      throw new IllegalArgumentException("Expected non-negative value for " + key + ", found " +
+        value);
+    }
+    return value;
+  }
+
+  private int intOption(String key, int defaultValue) {
+    String value = this.options.getProperty(key);
+    if (value == null) return defaultValue;
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException err) {
+      throw new IllegalArgumentException("Invalid value '" + value + "' for " + key, err);
+    }
+  }
+
+  /**
+   * Parse weighted mix "op:weight,...", returns table of 100 operations, so that operation can be
+   * selected with single random number.
+   */
+  static Op[] parseMix(String mix) {
+    Map<Op, Integer> weights = new LinkedHashMap<Op, Integer>();
+    int total = 0;
+    for (String entry : mix.split(",")) {
+      String[] parts = entry.split(":");
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("Invalid mix entry '" + entry + "', expected op:weight");
+      }
+      int weight = Integer.parseInt(parts[1].trim());
+      if (weight < 0) {
+        throw new IllegalArgumentException("Negative weight in mix entry '" + entry + "'");
+      }
+      weights.put(Op.parse(parts[0]), weight);
+      total += weight;
+    }
+    if (total <= 0) {
+      throw new IllegalArgumentException("Mix '" + mix + "' has no operations");
+    }
+    List<Op> table = new ArrayList<Op>();
+    int accumulated = 0;
+    for (Map.Entry<Op, Integer> entry : weights.entrySet()) {
+      accumulated += entry.getValue();
+      while (table.size() < Math.round(100.0 * accumulated / total)) {
+        table.add(entry.getKey());
+      }
+    }
+    return table.toArray(new Op[table.size()]);
+  }
+
+  /** Register operation before issuing it, so change applied before call returns is matched */
+  private Pending expect(Op op, String path, long issueTime) {
+    Pending entry = new Pending(op, issueTime, issueTime >= this.windowStart &&
+      issueTime < this.windowEnd);
+    String key = op.key(path);
+    ConcurrentLinkedQueue<Pending> queue = this.pending.get(key);
+    if (queue == null) {
+      ConcurrentLinkedQueue<Pending> created = new ConcurrentLinkedQueue<Pending>();
+      queue = this.pending.putIfAbsent(key, created);
+      if (queue == null) {
+        queue = created;
+      }
+    }
+    queue.add(entry);
+    this.outstanding.incrementAndGet();
+    return entry;
+  }
+
+  /** Remove expectation of failed call, change is never emitted */
+  private void cancel(Op op, String path, Pending entry) {
+    ConcurrentLinkedQueue<Pending> queue = this.pending.get(op.key(path));
+    if (queue != null && queue.remove(entry)) {
+      this.outstanding.decrementAndGet();
+    }
+  }
+
+  /** Match applied change with pending operation and record latency */
+  private void applied(ChangeFeed.Change change, long now) {
+    ConcurrentLinkedQueue<Pending> queue =
+      this.pending.get(change.getType() + " " + change.getPath().toPathString());
+    Pending entry = (queue == null) ? null : queue.poll();
+    if (entry == null) {
+      // e.g. CREATE of the file or events of directories created by workers
+      this.unmatched.incrementAndGet();
+      return;
+    }
+    this.outstanding.decrementAndGet();
+    this.applied.incrementAndGet();
+    if (now >= this.windowStart && now < this.windowEnd) {
+      this.appliedInWindow.incrementAndGet();
+    }
+    if (entry.measured) {
+      this.stats.get(entry.op).endToEnd.record((now - entry.issueTime) / 1000L);
+    }
+  }
+
+  /** Worker issues operations at fixed rate within its own directory */
+  class Worker implements Runnable {
+    private final FileSystem fs;
+    private final String dir;
+    private final long intervalNs;
+    private final long endTime;
+    private final Random random;
+    private final List<String> files;
+    private final List<String> dirs;
+    private long counter;
+
+    Worker(FileSystem fs, int id, double rate, long endTime) {
+      this.fs = fs;
+      this.dir = ROOT + "/w" + id;
+      this.intervalNs = (long) (1e9 / rate);
+      this.endTime = endTime;
+      this.random = new Random(IngestBenchmark.this.seed + id);
+      this.files = new ArrayList<String>();
+      this.dirs = new ArrayList<String>();
+      this.dirs.add(this.dir);
+      this.counter = 0L;
+    }
+
+    private String randomDir() {
+      return this.dirs.get(this.random.nextInt(this.dirs.size()));
+    }
+
+    /** Remove random file from list, returns null if there are no files */
+    private String takeFile() {
+      if (this.files.isEmpty()) return null;
+      int index = this.random.nextInt(this.files.size());
+      String last = this.files.remove(this.files.size() - 1);
+      if (index == this.files.size()) return last;
+      return this.files.set(index, last);
+    }
+
+    private void create(String path) throws IOException {
+      FSDataOutputStream out = this.fs.create(new Path(path), false);
+      try {
+        if (IngestBenchmark.this.fileBytes > 0) {
+          out.write(new byte[IngestBenchmark.this.fileBytes]);
+        }
+      } finally {
+        out.close();
+      }
+    }
+
+    /** Run single operation, operations on files fall back to create if there are no files */
+    private void step(long issueTime) {
+      Op op = IngestBenchmark.this.mix[this.random.nextInt(IngestBenchmark.this.mix.length)];
+      String file = (op == Op.RENAME || op == Op.DELETE || op == Op.SETREP) ? takeFile() : null;
+      if (file == null && op != Op.MKDIRS) {
+        op = Op.CREATE;
+      }
+      String path = (op == Op.CREATE || op == Op.MKDIRS) ?
+        randomDir() + "/" + (op == Op.CREATE ? "f" : "d") + this.counter++ : file;
+      OpStats opStats = IngestBenchmark.this.stats.get(op);
+      Pending entry = expect(op, path, issueTime);
+      try {
+        switch (op) {
+          case CREATE:
+            create(path);
+            this.files.add(path);
+            break;
+          case MKDIRS:
+            this.fs.mkdirs(new Path(path));
+            this.dirs.add(path);
+            break;
+          case RENAME:
+            String dst = randomDir() + "/r" + this.counter++;
+            if (!this.fs.rename(new Path(path), new Path(dst))) {
+              throw new IOException("Failed to rename " + path + " to " + dst);
+            }
+            this.files.add(dst);
+            break;
+          case DELETE:
+            if (!this.fs.delete(new Path(path), false)) {
+              throw new IOException("Failed to delete " + path);
+            }
+            break;
+          case SETREP:
+            short replication = this.fs.getFileStatus(new Path(path)).getReplication();
+            this.fs.setReplication(new Path(path), (short) (replication == 1 ? 2 : 1));
+            this.files.add(path);
+            break;
+          default:
+            throw new UnsupportedOperationException("Unsupported operation " + op);
+        }
+      } catch (IOException err) {
+        LOG.warn("Failed operation {} on {}: {}", op, path, err.getMessage());
+        cancel(op, path, entry);
+        opStats.failed.incrementAndGet();
+      }
+      long endTime = System.nanoTime();
+      opStats.issued.incrementAndGet();
+      if (entry.measured) {
+        opStats.call.record((endTime - issueTime) / 1000L);
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        this.fs.mkdirs(new Path(this.dir));
+        long next = System.nanoTime();
+        while (IngestBenchmark.this.running && next < this.endTime) {
+          long delay = next - System.nanoTime();
+          if (delay > 0) {
+            Thread.sleep(delay / 1000000L, (int) (delay % 1000000L));
+          }
+          // latency is measured from scheduled time, includes time spent behind slow calls
+          step(next);
+          next += this.intervalNs;
+        }
+      } catch (IOException err) {
+        LOG.error("Worker " + this.dir + " failed", err);
+      } catch (InterruptedException err) {
+        LOG.info("Worker {} interrupted", this.dir);
+      }
+    }
+  }
+
+  /** Collector reads change feed of manager and matches changes with pending operations */
+  class Collector implements Runnable {
+    private final ChangeFeed feed;
+
+    Collector(ChangeFeed feed) {
+      this.feed = feed;
+    }
+
+    @Override
+    public void run() {
+      long from = this.feed.getLastTransactionId();
+      while (IngestBenchmark.this.running) {
+        try {
+          ChangeFeed.Slice slice = this.feed.read(from, null, null, FEED_LIMIT, 200L);
+          long now = System.nanoTime();
+          for (ChangeFeed.Change change : slice.getChanges()) {
+            applied(change, now);
+          }
+          from = slice.getNextTransactionId();
+        } catch (ChangeFeed.GapException err) {
+          LOG.warn("Collector is behind change feed, {}", err.getMessage());
+          IngestBenchmark.this.gaps.incrementAndGet();
+          from = this.feed.getLastTransactionId();
+        } catch (InterruptedException err) {
+          return;
+        }
+      }
+    }
+  }
+
+  /** Start cluster and manager, run workload and return results */
+  public Document run() throws Exception {
+    Properties props = new Properties();
+    props.setProperty(AppConf.METADATA_STORE_KEY, AppConf.METADATA_STORE_EMBEDDED);
+    props.putAll(this.options);
+    AppConf conf = new AppConf(props);
+
+    LOG.info("Start MiniDFSCluster with {} datanodes", intOption(DATANODES_KEY,
+      DATANODES_DEFAULT));
+    Configuration hadoopConf = new Configuration();
+    File baseDir = new File(System.getProperty("java.io.tmpdir"),
+      "dbfs-bench-" + System.currentTimeMillis());
+    hadoopConf.set(MiniDFSCluster.HDFS_MINIDFS_BASEDIR, baseDir.getAbsolutePath());
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(hadoopConf)
+      .numDataNodes(positive(DATANODES_KEY, DATANODES_DEFAULT))
+      .build();
+    MetadataStoreProvider provider = null;
+    HdfsManager manager = null;
+    try {
+      cluster.waitActive();
+      FileSystem fs = cluster.getFileSystem();
+      fs.mkdirs(new Path(ROOT));
+      provider = new MetadataStoreProvider(conf);
+      MetadataStore store = provider.create(NAMESPACE);
+      manager = new HdfsManager(conf, NAMESPACE, cluster.getURI(), new Path("/"), store);
+      manager.start();
+      return runWorkload(cluster, fs, manager);
+    } finally {
+      this.running = false;
+      if (manager != null) {
+        manager.stop();
+      }
+      if (provider != null) {
+        provider.close();
+      }
+      cluster.shutdown(true);
+    }
+  }
+
+  private Document runWorkload(MiniDFSCluster cluster, FileSystem fs, HdfsManager manager)
+      throws Exception {
+    this.running = true;
+    long startTime = System.nanoTime();
+    this.windowStart = startTime + this.warmupMs * 1000000L;
+    this.windowEnd = this.windowStart + this.durationMs * 1000000L;
+    LOG.info("Run workload at {} ops/s with {} threads, warmup {} ms, duration {} ms", this.rate,
+      this.threads, this.warmupMs, this.durationMs);
+
+    Thread collector = new Thread(new Collector(manager.getChangeFeed()), "BenchCollector");
+    collector.setDaemon(true);
+    collector.start();
+    List<Thread> workers = new ArrayList<Thread>();
+    for (int i = 0; i < this.threads; i++) {
+      Thread worker = new Thread(
+        new Worker(fs, i, (double) this.rate / this.threads, this.windowEnd), "BenchWorker-" + i);
+      worker.setDaemon(true);
+      worker.start();
+      workers.add(worker);
+    }
+    boolean alive = true;
+    while (alive) {
+      Thread.sleep(LAG_INTERVAL_MS);
+      sampleLag(cluster, manager);
+      alive = false;
+      for (Thread worker : workers) {
+        alive |= worker.isAlive();
+      }
+    }
+    // wait for outstanding operations to be applied, this measures time to catch up
+    long drainStart = System.nanoTime();
+    long drainDeadline = drainStart + this.drainMs * 1000000L;
+    while (this.outstanding.get() > 0 && System.nanoTime() < drainDeadline) {
+      Thread.sleep(10L);
+    }
+    long drainTime = System.nanoTime() - drainStart;
+    this.running = false;
+    collector.interrupt();
+    collector.join();
+    return result(drainTime);
+  }
+
+  private void sampleLag(MiniDFSCluster cluster, HdfsManager manager) throws IOException {
+    long now = System.nanoTime();
+    if (now < this.windowStart || now >= this.windowEnd) return;
+    this.pendingSamples.record(this.outstanding.get());
+    long namenodeTxid = cluster.getNameNodeRpc().getCurrentEditLogTxid();
+    long appliedTxid = manager.getChangeFeed().getLastTransactionId();
+    this.txidLagSamples.record(Math.max(0L, namenodeTxid - appliedTxid));
+  }
+
+  private Document result(long drainTime) {
+    double seconds = this.durationMs / 1e3;
+    long issued = 0L;
+    Document ops = new Document();
+    Recorder all = new Recorder();
+    for (Map.Entry<Op, OpStats> entry : this.stats.entrySet()) {
+      issued += entry.getValue().issued.get();
+      ops.append(entry.getKey().name().toLowerCase(), entry.getValue().toDocument());
+      all.addAll(entry.getValue().endToEnd);
+    }
+    Document config = new Document();
+    for (String key : this.options.stringPropertyNames()) {
+      config.append(key, this.options.getProperty(key));
+    }
+    int measured = 0;
+    for (OpStats opStats : this.stats.values()) {
+      measured += opStats.call.size();
+    }
+    return new Document("benchmark", "ingest")
+      .append("timestamp", System.currentTimeMillis())
+      .append("java", System.getProperty("java.version"))
+      .append("options", config)
+      .append("rate", this.rate)
+      .append("threads", this.threads)
+      .append("durationS", seconds)
+      .append("mix", this.options.getProperty(MIX_KEY, MIX_DEFAULT))
+      .append("issuedPerSecond", measured / seconds)
+      .append("appliedPerSecond", this.appliedInWindow.get() / seconds)
+      .append("issued", issued)
+      .append("applied", this.applied.get())
+      .append("outstanding", this.outstanding.get())
+      .append("unmatched", this.unmatched.get())
+      .append("feedGaps", this.gaps.get())
+      .append("drainMs", drainTime / 1e6)
+      .append("endToEndLatencyMs", all.summary(MICROS_PER_MS))
+      .append("pendingOps", this.pendingSamples.summary(1.0))
+      .append("txidLag", this.txidLagSamples.summary(1.0))
+      .append("operations", ops);
+  }
+
+  private static void usage() {
+    System.err.println("Usage: IngestBenchmark [key=value ...]\n" +
+      "  " + RATE_KEY + "=" + RATE_DEFAULT + "  target operations per second\n" +
+      "  " + THREADS_KEY + "=" + THREADS_DEFAULT + "  number of client threads\n" +
+      "  " + WARMUP_S_KEY + "=" + WARMUP_S_DEFAULT + "  seconds before measurement starts\n" +
+      "  " + DURATION_S_KEY + "=" + DURATION_S_DEFAULT + "  measurement window in seconds\n" +
+      "  " + DRAIN_S_KEY + "=" + DRAIN_S_DEFAULT + "  max seconds to wait for catch up\n" +
+      "  " + MIX_KEY + "=" + MIX_DEFAULT + "\n" +
+      "  " + FILE_BYTES_KEY + "=" + FILE_BYTES_DEFAULT + "  bytes written per created file\n" +
+      "  " + DATANODES_KEY + "=" + DATANODES_DEFAULT + "  number of datanodes\n" +
+      "  " + SEED_KEY + "=<time>  random seed\n" +
+      "  " + OUTPUT_KEY + "=<file>  write JSON result to file in addition to stdout\n" +
+      "  any application option, e.g. " + AppConf.METADATA_STORE_KEY + "=mongo");
+  }
+
+  public static void main(String[] args) {
+    Properties options = new Properties();
+    for (String arg : args) {
+      int index = arg.indexOf('=');
+      if (index <= 0) {
+        usage();
+        System.exit(1);
+      }
+      options.setProperty(arg.substring(0, index).trim(), arg.substring(index + 1).trim());
+    }
+    try {
+      Document result = new IngestBenchmark(options).run();
+      String json = result.toJson();
+      System.out.println(json);
+      String output = options.getProperty(OUTPUT_KEY);
+      if (output != null) {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(output),
+          StandardCharsets.UTF_8);
+        try {
+          writer.write(json);
+          writer.write('\n');
+        } finally {
+          writer.close();
+        }
+      }
+      System.exit(0);
+    } catch (Exception err) {
+      LOG.error("Benchmark failed", err);
+      System.exit(1);
+    }
+  }
+}
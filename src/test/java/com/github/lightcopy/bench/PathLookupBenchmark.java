@@ -0,0 +1,313 @@
+package com.github.lightcopy.bench;
+
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientURI;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.lightcopy.conf.AppConf;
+import com.github.lightcopy.fs.FsFilters;
+import com.github.lightcopy.fs.INode;
+import com.github.lightcopy.fs.INodeCodec;
+import com.github.lightcopy.fs.INodePath;
+import com.github.lightcopy.fs.INodeSchema;
+import com.github.lightcopy.fs.MongoFileSystem;
+import com.github.lightcopy.fs.MongoMetadataStore;
+import com.github.lightcopy.fs.MongoNameDictionary;
+
+/**
+ * Point lookup benchmark for path layout of Mongo file system collection. Loads synthetic tree
+ * into scratch collection and compares filter on path elements (depth plus one equality per
+ * level) with filter on indexed hash of the full path, see `FsFilters.hashedPath()`:
+ * - latency percentiles of single-node lookups of random existing paths, modes are interleaved,
+ * so both observe the same cache state;
+ * - query plan, keys and documents examined for lookup of the deepest path, from explain.
+ *
+ * Element filter is not indexed by default, same as collection created by the application; set
+ * "bench.element.index=true" to also build compound index on depth and path elements, which is
+ * the alternative to path hash. Results are printed as single JSON document.
+ *
+ * Usage: PathLookupBenchmark [key=value ...], see `usage()` for options. Requires running
+ * MongoDB, scratch collections are dropped before and after run.
+ */
+public class PathLookupBenchmark {
+  private static final Logger LOG = LoggerFactory.getLogger(PathLookupBenchmark.class);
+
+  public static final String COLLECTION = "bench_pathlookup";
+  public static final String DICTIONARY = "bench_dictionary";
+
+  public static final String NODES_KEY = "bench.nodes";
+  public static final int NODES_DEFAULT = 100000;
+  public static final String DEPTH_KEY = "bench.depth";
+  public static final int DEPTH_DEFAULT = 8;
+  public static final String FANOUT_KEY = "bench.fanout";
+  public static final int FANOUT_DEFAULT = 10;
+  public static final String LOOKUPS_KEY = "bench.lookups";
+  public static final int LOOKUPS_DEFAULT = 20000;
+  public static final String WARMUP_KEY = "bench.warmup";
+  public static final int WARMUP_DEFAULT = 2000;
+  public static final String ELEMENT_INDEX_KEY = "bench.element.index";
+  public static final String SEED_KEY = "bench.seed";
+  public static final String OUTPUT_KEY = "bench.output";
+
+  // nodes inserted per batch when loading tree
+  private static final int LOAD_BATCH_SIZE = 1000;
+  // latencies are recorded in nanoseconds and reported in microseconds
+  private static final double NANOS_PER_MICRO = 1e3;
+
+  /** Lookup filter under test */
+  enum Mode {
+    ELEMENTS, HASH;
+
+    Bson filter(INodeSchema schema, INodePath path) {
+      return (this == HASH) ? FsFilters.hashedPath(schema, path) : FsFilters.path(schema, path);
+    }
+  }
+
+  private final Properties options;
+  private final AppConf conf;
+  private final int nodes;
+  private final int depth;
+  private final int fanout;
+  private final int lookups;
+  private final int warmup;
+  private final boolean elementIndex;
+  private final Random random;
+
+  public PathLookupBenchmark(Properties options) {
+    this.options = options;
+    this.conf = new AppConf(options);
+    this.nodes = Integer.parseInt(options.getProperty(NODES_KEY, "" + NODES_DEFAULT));
+    this.depth = Integer.parseInt(options.getProperty(DEPTH_KEY, "" + DEPTH_DEFAULT));
+    this.fanout = Integer.parseInt(options.getProperty(FANOUT_KEY, "" + FANOUT_DEFAULT));
+    this.lookups = Integer.parseInt(options.getProperty(LOOKUPS_KEY, "" + LOOKUPS_DEFAULT));
+    this.warmup = Integer.parseInt(options.getProperty(WARMUP_KEY, "" + WARMUP_DEFAULT));
+    this.elementIndex = Boolean.parseBoolean(options.getProperty(ELEMENT_INDEX_KEY, "false"));
+    String seed = options.getProperty(SEED_KEY, "" + System.currentTimeMillis());
+    this.random = new Random(Long.parseLong(seed));
+    this.options.setProperty(SEED_KEY, seed);
+    if (this.nodes <= 0 || this.depth <= 0 || this.fanout <= 0 || this.lookups <= 0) {
+      throw new IllegalArgumentException("Expected positive nodes, depth, fanout and lookups");
+    }
+  }
+
+  /** Random file path at benchmark depth, directories are picked from fanout on each level */
+  private INodePath randomPath(int index) {
+    StringBuilder path = new StringBuilder();
+    for (int level = 0; level < this.depth - 1; level++) {
+      path.append("/dir-").append(level).append("-").append(this.random.nextInt(this.fanout));
+    }
+    path.append("/file-").append(index);
+    return new INodePath(path.toString());
+  }
+
+  private static INode file(INodePath path, String name) {
+    return new INode(0L, 0L, 1024L, 128L * 1024 * 1024, 3, "hdfs", "hdfs", "rw-r--r--", name,
+      path, "FILE");
+  }
+
+  /** Load synthetic tree, returns paths of loaded files */
+  private List<INodePath> load(MongoFileSystem fs) throws Exception {
+    List<INodePath> paths = new ArrayList<INodePath>(this.nodes);
+    List<INode> batch = new ArrayList<INode>(LOAD_BATCH_SIZE);
+    for (int i = 0; i < this.nodes; i++) {
+      INodePath path = randomPath(i);
+      paths.add(path);
+      batch.add(file(path, "file-" + i));
+      if (batch.size() == LOAD_BATCH_SIZE) {
+        fs.insert(batch);
+        batch.clear();
+      }
+    }
+    fs.insert(batch);
+    return paths;
+  }
+
+  /** Compound index that serves element filter: depth followed by path elements */
+  private void createElementIndex(MongoCollection<INode> collection, INodeSchema schema) {
+    Document keys = new Document(schema.pathKey(schema.depth()), 1);
+    for (int i = 0; i < this.depth; i++) {
+      keys.append(schema.pathKey(INodePath.FIELD_NAME(i)), 1);
+    }
+    LOG.info("Create element index {}", keys);
+    collection.createIndex(keys);
+  }
+
+  /** Chain of plan stages, e.g. "FETCH <- IXSCAN(index)" */
+  private static String plan(BsonDocument stage) {
+    StringBuilder chain = new StringBuilder();
+    while (stage != null) {
+      if (chain.length() > 0) chain.append(" <- ");
+      chain.append(stage.getString("stage").getValue());
+      if (stage.containsKey("indexName")) {
+        chain.append("(").append(stage.getString("indexName").getValue()).append(")");
+      }
+      BsonValue input = stage.get("inputStage");
+      stage = (input == null) ? null : input.asDocument();
+    }
+    return chain.toString();
+  }
+
+  /** Execution statistics of lookup */
+  private static Document explain(MongoDatabase database, MongoCollection<INode> collection,
+      Bson filter) {
+    BsonDocument find = new BsonDocument("find", new BsonString(collection.getNamespace()
+      .getCollectionName()))
+      .append("filter", filter.toBsonDocument(INode.class, collection.getCodecRegistry()));
+    BsonDocument result = database.runCommand(new BsonDocument("explain", find)
+      .append("verbosity", new BsonString("executionStats")), BsonDocument.class);
+    BsonDocument stats = result.getDocument("executionStats");
+    return new Document("plan",
+        plan(result.getDocument("queryPlanner").getDocument("winningPlan")))
+      .append("keysExamined", stats.getNumber("totalKeysExamined").longValue())
+      .append("docsExamined", stats.getNumber("totalDocsExamined").longValue())
+      .append("returned", stats.getNumber("nReturned").longValue());
+  }
+
+  public Document run() throws Exception {
+    INodeSchema schema = INodeSchema.forName(this.conf.mongoSchema());
+    MongoClient mongo = new MongoClient(new MongoClientURI(this.conf.mongoConnectionString()));
+    MongoDatabase database = mongo.getDatabase(MongoMetadataStore.MONGO_DATABASE);
+    try {
+      database.getCollection(COLLECTION).drop();
+      database.getCollection(DICTIONARY).drop();
+      INodeCodec codec = new INodeCodec(schema,
+        new MongoNameDictionary(database.getCollection(DICTIONARY)));
+      MongoFileSystem fs = new MongoFileSystem(database.getCollection(COLLECTION), codec);
+      fs.ensureIndexes();
+      long loadStart = System.nanoTime();
+      List<INodePath> paths = load(fs);
+      double loadMs = (System.nanoTime() - loadStart) / 1e6;
+      LOG.info("Loaded {} nodes at depth {} in {} ms", this.nodes, this.depth, loadMs);
+
+      CodecRegistry registry = CodecRegistries.fromRegistries(
+        database.getCollection(COLLECTION).getCodecRegistry(), CodecRegistries.fromCodecs(codec));
+      MongoCollection<INode> collection = database.getCollection(COLLECTION)
+        .withCodecRegistry(registry).withDocumentClass(INode.class);
+      if (this.elementIndex) {
+        createElementIndex(collection, schema);
+      }
+
+      IngestBenchmark.Recorder[] latencies = new IngestBenchmark.Recorder[Mode.values().length];
+      for (Mode mode : Mode.values()) {
+        latencies[mode.ordinal()] = new IngestBenchmark.Recorder();
+      }
+      long misses = 0L;
+      for (int i = 0; i < this.warmup + this.lookups; i++) {
+        INodePath path = paths.get(this.random.nextInt(paths.size()));
+        // alternate order, so neither mode benefits from the other one warming up cache
+        Mode[] order = Mode.values();
+        if (i % 2 == 1) {
+          order = new Mode[] { order[1], order[0] };
+        }
+        for (Mode mode : order) {
+          long start = System.nanoTime();
+          INode node = collection.find(mode.filter(schema, path)).first();
+          long elapsed = System.nanoTime() - start;
+          if (node == null) {
+            misses++;
+          }
+          if (i >= this.warmup) {
+            latencies[mode.ordinal()].record(elapsed);
+          }
+        }
+      }
+
+      Document config = new Document();
+      List<String> keys = new ArrayList<String>(this.options.stringPropertyNames());
+      Collections.sort(keys);
+      for (String key : keys) {
+        config.append(key, this.options.getProperty(key));
+      }
+      INodePath sample = paths.get(paths.size() - 1);
+      Document modes = new Document();
+      for (Mode mode : Mode.values()) {
+        modes.append(mode.name().toLowerCase(), new Document("latencyUs",
+            latencies[mode.ordinal()].summary(NANOS_PER_MICRO))
+          .append("explain", explain(database, collection, mode.filter(schema, sample))));
+      }
+      return new Document("benchmark", "path-lookup")
+        .append("timestamp", System.currentTimeMillis())
+        .append("java", System.getProperty("java.version"))
+        .append("options", config)
+        .append("schema", schema.getName())
+        .append("nodes", this.nodes)
+        .append("depth", this.depth)
+        .append("elementIndex", this.elementIndex)
+        .append("loadMs", loadMs)
+        .append("misses", misses)
+        .append("modes", modes);
+    } finally {
+      database.getCollection(COLLECTION).drop();
+      database.getCollection(DICTIONARY).drop();
+      mongo.close();
+    }
+  }
+
+  private static void usage() {
+    System.err.println("Usage: PathLookupBenchmark [key=value ...]\n" +
+      "  " + NODES_KEY + "=" + NODES_DEFAULT + "  number of loaded files\n" +
+      "  " + DEPTH_KEY + "=" + DEPTH_DEFAULT + "  depth of file paths\n" +
+      "  " + FANOUT_KEY + "=" + FANOUT_DEFAULT + "  directories per level\n" +
+      "  " + LOOKUPS_KEY + "=" + LOOKUPS_DEFAULT + "  measured lookups per mode\n" +
+      "  " + WARMUP_KEY + "=" + WARMUP_DEFAULT + "  lookups per mode before measurement\n" +
+      "  " + ELEMENT_INDEX_KEY + "=false  build compound index for element filter\n" +
+      "  " + SEED_KEY + "=<time>  random seed\n" +
+      "  " + OUTPUT_KEY + "=<file>  write JSON result to file in addition to stdout\n" +
+      "  " + AppConf.MONGO_CONN_KEY + "=" + AppConf.MONGO_CONN_DEFAULT + "\n" +
+      "  " + AppConf.MONGO_SCHEMA_KEY + "=" + AppConf.MONGO_SCHEMA_DEFAULT);
+  }
+
+  public static void main(String[] args) {
+    Properties options = new Properties();
+    for (String arg : args) {
+      int index = arg.indexOf('=');
+      if (index <= 0) {
+        usage();
+        System.exit(1);
+      }
+      options.setProperty(arg.substring(0, index).trim(), arg.substring(index + 1).trim());
+    }
+    try {
+      Document result = new PathLookupBenchmark(options).run();
+      String json = result.toJson();
+      System.out.println(json);
+      String output = options.getProperty(OUTPUT_KEY);
+      if (output != null) {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(output),
+          StandardCharsets.UTF_8);
+        try {
+          writer.write(json);
+          writer.write('\n');
+        } finally {
+          writer.close();
+        }
+      }
+      System.exit(0);
+    } catch (Exception err) {
+      LOG.error("Benchmark failed", err);
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package com.github.lightcopy.fs;
+
+import java.util.List;
+
+import org.apache.hadoop.hdfs.inotify.Event;
+
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Event batches are re-applied after failure or from checkpoint, so storing the same event of
+ * transaction again must not duplicate it in event store.
+ */
+public class EmbeddedEventPoolTest {
+  private static Event unlink(String path) {
+    return new Event.UnlinkEvent.Builder().path(path).timestamp(1L).build();
+  }
+
+  @Test
+  public void testReplayReplacesEvents() {
+    EmbeddedEventPool pool = new EmbeddedEventPool(10);
+    for (int attempt = 0; attempt < 2; attempt++) {
+      pool.insert(new EventContainer(5L, 0, unlink("/a")));
+      pool.insert(new EventContainer(5L, 1, unlink("/b")));
+      pool.insert(new EventContainer(6L, 0, unlink("/c")));
+    }
+    List<EventContainer> events = pool.scan(0L, 10);
+    assertEquals(3, events.size());
+    assertEquals("/a", ((Event.UnlinkEvent) events.get(0).getEvent()).getPath());
+    assertEquals("/b", ((Event.UnlinkEvent) events.get(1).getEvent()).getPath());
+    assertEquals("/c", ((Event.UnlinkEvent) events.get(2).getEvent()).getPath());
+  }
+
+  @Test
+  public void testCodecWritesEventId() {
+    EventCodec codec = new EventCodec();
+    EventContainer container = new EventContainer(5L, 3, unlink("/a"));
+    BsonDocument doc = new BsonDocument();
+    codec.encode(new BsonDocumentWriter(doc), container, EncoderContext.builder().build());
+    assertEquals(EventCodec.id(container), doc.get(EventContainer.FIELD_ID));
+    EventContainer decoded =
+      codec.decode(new BsonDocumentReader(doc), DecoderContext.builder().build());
+    assertEquals(5L, decoded.getTransactionId());
+    assertEquals(3, decoded.getIndex());
+  }
+}
@@ -0,0 +1,141 @@
+package com.github.lightcopy.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.github.lightcopy.conf.AppConf;
+import com.github.lightcopy.conf.HdfsSource;
+
+/**
+ * Promotion from checkpoint recomputes usage of tracked subtrees without persisted usage on
+ * promotion thread, so election thread is not blocked and recompute is aborted by demotion.
+ */
+public class HdfsManagerPromotionTest {
+  /** Embedded file system that blocks listing until released */
+  static class BlockingFileSystem extends EmbeddedFileSystem {
+    final CountDownLatch listed = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger lists = new AtomicInteger(0);
+
+    @Override
+    public List<INode> list(INodePath path, boolean recursive) {
+      this.lists.incrementAndGet();
+      this.listed.countDown();
+      try {
+        this.release.await();
+      } catch (InterruptedException err) {
+        throw new RuntimeException(err);
+      }
+      return super.list(path, recursive);
+    }
+  }
+
+  /** Embedded store that serves file system with blocking listing */
+  static class BlockingMetadataStore extends EmbeddedMetadataStore {
+    final BlockingFileSystem fs = new BlockingFileSystem();
+
+    @Override
+    public FileSystemStore fileSystem() {
+      return this.fs;
+    }
+  }
+
+  private MiniDFSCluster cluster;
+  private BlockingMetadataStore store;
+  private HdfsManager manager;
+
+  private static INode directory(String path) {
+    INodePath nodePath = new INodePath(path);
+    return new INode(0L, 0L, 0L, 0L, 0, "group", "owner", "rwxr-xr-x", nodePath.getName(),
+      nodePath, "DIRECTORY");
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    Configuration hadoopConf = new Configuration();
+    File baseDir = new File(System.getProperty("java.io.tmpdir"),
+      "dbfs-promotion-" + System.nanoTime());
+    hadoopConf.set(MiniDFSCluster.HDFS_MINIDFS_BASEDIR, baseDir.getAbsolutePath());
+    this.cluster = new MiniDFSCluster.Builder(hadoopConf).numDataNodes(1).build();
+    this.cluster.waitActive();
+    Properties props = new Properties();
+    props.setProperty(AppConf.METADATA_STORE_KEY, AppConf.METADATA_STORE_EMBEDDED);
+    props.setProperty(AppConf.TIMESERIES_SUBTREES_KEY, "/data");
+    props.setProperty(AppConf.INGEST_JOURNAL_DIR_KEY, new File(baseDir, "journal").getPath());
+    this.store = new BlockingMetadataStore();
+    // subtree is stored, but its usage is not persisted, e.g. it was added after indexing
+    this.store.fs.upsert(directory("/data"));
+    this.store.fs.upsert(directory("/data/a"));
+    this.store.checkpoint(1L);
+    this.manager = new HdfsManager(new AppConf(props), HdfsSource.DEFAULT_NAME,
+      this.cluster.getURI(), new Path("/"), this.store);
+  }
+
+  @After
+  public void tearDown() {
+    this.store.fs.release.countDown();
+    if (this.manager != null) {
+      this.manager.stop();
+    }
+    if (this.cluster != null) {
+      this.cluster.shutdown(true);
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testRecomputeDoesNotBlockPromote() throws Exception {
+    this.manager.promote();
+    // promote returned while recompute is blocked on listing
+    assertTrue(this.store.fs.listed.await(10, TimeUnit.SECONDS));
+    assertTrue(this.manager.isPromoting());
+    assertFalse(this.manager.isProcessingEvents());
+    this.store.fs.release.countDown();
+    while (!this.manager.isProcessingEvents()) {
+      Thread.sleep(10L);
+    }
+    assertFalse(this.manager.isPromoting());
+    UsageRollup.Usage usage = this.manager.getUsage(UsageRollup.KIND_SUBTREE).get("/data");
+    assertEquals(2L, usage.getDirectories());
+    assertEquals(0L, usage.getFiles());
+  }
+
+  @Test(timeout = 60000)
+  public void testDemoteAbortsRecompute() throws Exception {
+    this.manager.promote();
+    assertTrue(this.store.fs.listed.await(10, TimeUnit.SECONDS));
+    Thread demotion = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        manager.demote();
+      }
+    });
+    demotion.start();
+    // demote marks promotion as aborted and waits for promotion thread
+    while (demotion.getState() != Thread.State.WAITING && demotion.isAlive()) {
+      Thread.sleep(10L);
+    }
+    this.store.fs.release.countDown();
+    demotion.join();
+    assertFalse(this.manager.isPromoting());
+    assertFalse(this.manager.isProcessingEvents());
+    // recompute stops before listing the next directory
+    assertEquals(1, this.store.fs.lists.get());
+  }
+}
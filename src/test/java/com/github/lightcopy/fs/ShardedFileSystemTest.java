@@ -0,0 +1,118 @@
+package com.github.lightcopy.fs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Cross-shard rename of [[ShardedFileSystem]] is applied at least once, since event batches are
+ * replayed after failure, so replay must not duplicate nodes.
+ */
+public class ShardedFileSystemTest {
+  /**
+   * Embedded shard that counts inserts of existing paths, which duplicate documents in Mongo,
+   * and can fail the next delete.
+   */
+  static class RecordingFileSystem extends EmbeddedFileSystem {
+    int duplicates = 0;
+    boolean failDelete = false;
+
+    @Override
+    public void insert(List<INode> nodes) throws IOException {
+      for (INode node : nodes) {
+        if (get(node.getPath()) != null) {
+          this.duplicates++;
+        }
+      }
+      super.insert(nodes);
+    }
+
+    @Override
+    public void delete(INodePath path, long transactionId) throws IOException {
+      if (this.failDelete) {
+        this.failDelete = false;
+        throw new IOException("Test failure of delete " + path);
+      }
+      super.delete(path, transactionId);
+    }
+  }
+
+  private static final String[] NODES = {"", "/file", "/dir", "/dir/file"};
+
+  private List<RecordingFileSystem> shards;
+  private ShardedFileSystem fs;
+  private INodePath srcPath;
+  private INodePath dstPath;
+
+  private static INode node(String path, boolean directory, long transactionId) {
+    INodePath nodePath = new INodePath(path);
+    INode node = new INode(0L, 0L, directory ? 0L : 1L, 0L, 1, "group", "owner", "rw-r--r--",
+      nodePath.getName(), nodePath, directory ? "DIRECTORY" : "FILE");
+    node.setTransactionId(transactionId);
+    return node;
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    this.shards = new ArrayList<RecordingFileSystem>();
+    List<FileSystemStore> stores = new ArrayList<FileSystemStore>();
+    for (int i = 0; i < 2; i++) {
+      RecordingFileSystem shard = new RecordingFileSystem();
+      this.shards.add(shard);
+      stores.add(shard);
+    }
+    this.fs = new ShardedFileSystem(stores, 1);
+    this.srcPath = new INodePath("/src");
+    // pick destination routed to another shard, so rename moves nodes
+    int index = 0;
+    do {
+      this.dstPath = new INodePath("/dst" + index++);
+    } while (this.fs.shardIndex(this.dstPath) == this.fs.shardIndex(this.srcPath));
+    for (String suffix : NODES) {
+      this.fs.upsert(node("/src" + suffix, !suffix.endsWith("file"), 1L));
+    }
+  }
+
+  /** Assert that every moved path is stored exactly once across shards */
+  private void assertMoved() throws IOException {
+    for (String suffix : NODES) {
+      INodePath path = new INodePath(this.dstPath.toPathString() + suffix);
+      int copies = 0;
+      for (RecordingFileSystem shard : this.shards) {
+        if (shard.get(path) != null) copies++;
+        assertEquals(0, shard.duplicates);
+      }
+      assertEquals("Copies of " + path, 1, copies);
+      assertEquals(5L, this.fs.get(path).getTransactionId());
+      assertNull(this.fs.get(new INodePath("/src" + suffix)));
+    }
+  }
+
+  @Test
+  public void testReplayCrossShardRename() throws IOException {
+    assertNotEquals(this.fs.shardIndex(this.srcPath), this.fs.shardIndex(this.dstPath));
+    this.fs.rename(this.srcPath, this.dstPath, 5L);
+    this.fs.rename(this.srcPath, this.dstPath, 5L);
+    assertMoved();
+  }
+
+  @Test
+  public void testReplayCrossShardRenameAfterFailedDelete() throws IOException {
+    // nodes are copied into destination shard, but source is not deleted
+    this.shards.get(this.fs.shardIndex(this.srcPath)).failDelete = true;
+    try {
+      this.fs.rename(this.srcPath, this.dstPath, 5L);
+    } catch (IOException err) {
+      // expected, batch is replayed
+    }
+    this.fs.rename(this.srcPath, this.dstPath, 5L);
+    assertMoved();
+  }
+}